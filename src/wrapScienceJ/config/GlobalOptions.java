@@ -9,6 +9,7 @@
 
 package wrapScienceJ.config;
 
+import java.awt.GraphicsEnvironment;
 import java.io.File;
 
 import wrapScienceJ.factory.gui.GuiFrameworkFactoryIJ;
@@ -55,6 +56,40 @@ public class GlobalOptions {
 														+File.separator+"wrapTmpData"
 														+File.separator;
 	
+	/**
+	 * Global Option to set the number of threads used to process the slices of images in parallel.
+	 * Initialized from the system property wrapScienceJ.parallelism if set,
+	 * and to the number of available processors otherwise.
+	 */
+	private static volatile int m_parallelism = Integer.getInteger("wrapScienceJ.parallelism",
+														Runtime.getRuntime().availableProcessors());
+	
+	/**
+	 * Global Option to bound the total size (in bytes) of the arrays kept for reuse by
+	 * the buffer pool. Initialized from the system property wrapScienceJ.bufferPoolCapacity
+	 * if set, and to a quarter of the maximum heap size otherwise.
+	 * The default memory budget of the batch runner excludes that capacity
+	 * (see wrapScienceJ.wrapImaJ.process.BatchImageProcessRunner).
+	 */
+	private static volatile long m_bufferPoolCapacity = Long.getLong("wrapScienceJ.bufferPoolCapacity",
+														Runtime.getRuntime().maxMemory()/4);
+	
+	/**
+	 * Global Option to enable the display of images by the render tools.
+	 * Initialized from the system property wrapScienceJ.display if set,
+	 * and to false if the Java virtual machine is headless, to true otherwise.
+	 */
+	private static volatile boolean m_displayEnabled = System.getProperty("wrapScienceJ.display") != null 
+														? Boolean.getBoolean("wrapScienceJ.display")
+														: !GraphicsEnvironment.isHeadless();
+	
+	/**
+	 * Global Option to enable the progress logs of the long computations (e.g. the labeling
+	 * of the connected components) on the standard error stream.
+	 * Initialized from the system property wrapScienceJ.verbose, and to false if it is not set.
+	 */
+	private static volatile boolean m_verbose = Boolean.getBoolean("wrapScienceJ.verbose");
+	
 	/**
 	 * Specifies a default directory where images and other high weight data sets will be stored,
 	 * so that in case of specification of a non absolute path, this directory will be used as root
@@ -105,4 +140,81 @@ public class GlobalOptions {
 	public static RenderTool getDefaultRenderTool(){
 		return RenderToolFactoryIJ.getInstance().getRenderTool();
 	}
+	
+	/**
+	 * @return The number of threads used to process the slices of an image in parallel.
+	 * @see wrapScienceJ.utils.SliceScheduler
+	 */
+	public static int getParallelism(){
+		return m_parallelism;
+	}
+	
+	/**
+	 * Sets the number of threads used to process the slices of an image in parallel.
+	 * A value of 1 makes all slice operations sequential.
+	 * @param parallelism The number of threads, at least 1.
+	 * @see wrapScienceJ.utils.SliceScheduler
+	 */
+	public static void setParallelism(int parallelism){
+		if (parallelism < 1){
+			throw new IllegalArgumentException("The parallelism must be at least 1.");
+		}
+		m_parallelism = parallelism;
+	}
+	
+	/**
+	 * @return The maximal total size (in bytes) of the arrays kept for reuse by the buffer pool.
+	 * @see wrapScienceJ.wrapImaJ.core.ImageBufferPool
+	 */
+	public static long getBufferPoolCapacity(){
+		return m_bufferPoolCapacity;
+	}
+	
+	/**
+	 * Sets the maximal total size of the arrays kept for reuse by the buffer pool.
+	 * A value of 0 disables the pooling.
+	 * @param bufferPoolCapacity The capacity in bytes, at least 0.
+	 * @see wrapScienceJ.wrapImaJ.core.ImageBufferPool
+	 */
+	public static void setBufferPoolCapacity(long bufferPoolCapacity){
+		if (bufferPoolCapacity < 0){
+			throw new IllegalArgumentException("The buffer pool capacity must not be negative.");
+		}
+		m_bufferPoolCapacity = bufferPoolCapacity;
+	}
+	
+	/**
+	 * @return true if the render tools display the images, false if the display
+	 * 		   is disabled (e.g. for batch processing).
+	 * @see RenderTool#display(wrapScienceJ.wrapImaJ.core.ImageCore)
+	 */
+	public static boolean isDisplayEnabled(){
+		return m_displayEnabled;
+	}
+	
+	/**
+	 * Enables or disables the display of images by the render tools, so that the processes
+	 * which display their intermediate results can run without any window.
+	 * @param displayEnabled false to disable the display
+	 * @see RenderTool#display(wrapScienceJ.wrapImaJ.core.ImageCore)
+	 */
+	public static void setDisplayEnabled(boolean displayEnabled){
+		m_displayEnabled = displayEnabled;
+	}
+	
+	/**
+	 * @return true if the long computations log their progress on the standard error stream.
+	 */
+	public static boolean isVerbose(){
+		return m_verbose;
+	}
+	
+	/**
+	 * Enables or disables the progress logs of the long computations, so that they
+	 * don't slow down (or clutter the output of) batch processing and benchmarks.
+	 * @param verbose true to log the progress on the standard error stream
+	 */
+	public static void setVerbose(boolean verbose){
+		m_verbose = verbose;
+	}
 }
@@ -134,6 +134,20 @@ public abstract class ImageCoreFactory {
 	 */
 	public abstract ImageCore getEmptyImageCore(int width, int height, int depth, int bitDepth);
 	
+	/**
+	 * Releases the memory of an image which is no longer used (typically a temporary image
+	 * created by {@link #getEmptyImageCore(int, int, int, int)}), making the image unusable.
+	 * The implementers may give the slices back to the buffer pool
+	 * ({@link wrapScienceJ.wrapImaJ.core.ImageBufferPool}) for reuse by later allocations,
+	 * in which case the image must own its slices (e.g. not be a view on another image)
+	 * and no other reference to its slices must be used afterwards.
+	 * By default, the memory is released by {@link ImageCore#deleteMemory()}.
+	 * @param image The image to release
+	 */
+	public void releaseImageCore(ImageCore image){
+		image.deleteMemory();
+	}
+	
 	/**
 	 * Converts an array of java.awt.Image to an ImageCore. The returned image has only one slice.
 	 * @param images An array of image as AWT Image instance to initialize slices of an image core. 
@@ -90,6 +90,19 @@ public class ImageCoreFactoryIJ extends ImageCoreFactory {
 		return image;
 	}
 	
+	/**
+	 * The slices of images of this factory are given back to the buffer pool.
+	 * @see wrapScienceJ.factory.image.ImageCoreFactory#releaseImageCore(wrapScienceJ.wrapImaJ.core.ImageCore)
+	 */
+	@Override
+	public void releaseImageCore(ImageCore image){
+		if (image instanceof ImageCoreIJ){
+			((ImageCoreIJ)image).releaseSlicesToPool();
+		}else{
+			image.deleteMemory();
+		}
+	}
+	
 	/**
 	 * Converts an array of java.awt.Image to an ImageCore. The returned image has only one slice.
 	 * @param images An array of image as AWT Image instance to initialize slices of an image core. 
@@ -0,0 +1,160 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File: ImageCoreFactoryMapped.java                                        * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+
+package wrapScienceJ.factory.image;
+
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteOrder;
+
+import wrapScienceJ.metaData.container.MetaDataRetriever.RetrievalPolicy;
+import wrapScienceJ.wrapImaJ.core.ImageCore;
+import wrapScienceJ.wrapImaJ.wrappers.imagej.core.ImageCoreIJ;
+import wrapScienceJ.wrapImaJ.wrappers.mapped.core.ImageCoreMapped;
+
+
+
+/**
+ * Factory for images whose gray levels are mapped from a file
+ * instead of being loaded in the heap, which allows to process
+ * stacks larger than the maximum heap size.
+ * The slices are loaded by the operating system when they are accessed.
+ *
+ * @see ImageCoreMapped
+ *
+ * @author Rémy Malgouyres
+ */
+public class ImageCoreFactoryMapped extends ImageCoreFactory {
+
+	/**
+	 * Unique instance of this factory
+	 */
+	private static ImageCoreFactoryMapped m_instance;
+
+	/**
+	 * Private constructor for the singleton pattern
+	 */
+	private ImageCoreFactoryMapped(){
+		// Nothing to do
+	}
+
+	/**
+	 * @return The unique instance of this Factory class
+	 */
+	public static ImageCoreFactoryMapped getInstance(){
+		if (m_instance == null){
+			m_instance = new ImageCoreFactoryMapped();
+		}
+		return m_instance;
+	}
+
+	/**
+	 * Constructs an instance by mapping an uncompressed TIFF file for reading.
+	 * The gray levels are not modified while mapping the file, so neither
+	 * conversion to GRAY8 nor maximization of the values range are supported.
+	 * @param path path to the image source file on disk.
+	 * @param convertTo8bits Must be false.
+	 * @param maximizeValuesRange Must be false.
+	 * @param retrievalPolicy The policy to retrieve predefined metadata for the resource of type ImageCore.
+	 * @see RetrievalPolicy
+	 * @return Instance of the Image mapped from the file.
+	 * @throws IOException IOException in case of failure to map the image from file
+	 */
+	@Override
+	public ImageCoreMapped getImageCore(String path, boolean convertTo8bits,
+										boolean maximizeValuesRange,
+										RetrievalPolicy retrievalPolicy)
+												throws IOException {
+		if (convertTo8bits || maximizeValuesRange){
+			throw new IllegalArgumentException("Mapped images cannot be converted while loading.");
+		}
+		return new ImageCoreMapped(path, false, retrievalPolicy);
+	}
+
+
+	/**
+	 * Constructs an instance by mapping an uncompressed TIFF file.
+	 * @param path path to the image source file on disk.
+	 * @param writable If true, the modifications of the image are written to the file.
+	 * @param retrievalPolicy The policy to retrieve predefined metadata for the resource of type ImageCore.
+	 * @return Instance of the Image mapped from the file.
+	 * @throws IOException IOException in case of failure to map the image from file
+	 */
+	public ImageCoreMapped getImageCore(String path, boolean writable,
+										RetrievalPolicy retrievalPolicy) throws IOException {
+		return new ImageCoreMapped(path, writable, retrievalPolicy);
+	}
+
+
+	/**
+	 * Constructs an instance by mapping a raw file, in which the slices
+	 * are stored one after the other, without gaps, after a header of given size.
+	 * @param path path to the raw file on disk.
+	 * @param width Width of the image in the first voxel coordinate
+	 * @param height Height of the image in the second voxel coordinate
+	 * @param depth Depth  of the image in the third voxel coordinate
+	 * @param bitDepth Number of bits per voxel (8 or 16)
+	 * @param offset Size of the file's header in bytes
+	 * @param byteOrder Byte order of the 16 bits values in the file
+	 * @param writable If true, the modifications of the image are written to the file.
+	 * @return Instance of the Image mapped from the file.
+	 * @throws IOException IOException in case of failure to map the image from file
+	 */
+	public ImageCoreMapped getImageCoreRaw(String path, int width, int height, int depth, int bitDepth,
+										   long offset, ByteOrder byteOrder, boolean writable)
+												   throws IOException {
+		return new ImageCoreMapped(path, width, height, depth, bitDepth, offset, byteOrder,
+								   writable, RetrievalPolicy.UseKnownValues);
+	}
+
+
+	/**
+	 * Allocates and returns a black image with given dimensions and type (GRAY8 or GRAY16),
+	 * mapped from a temporary file which is deleted when the virtual machine terminates.
+	 * The image has a default title and no meatdata such as calibration data.
+	 *
+	 * @param width Width of the image in the first voxel coordinate
+	 * @param height Height of the image in the second voxel coordinate
+	 * @param depth Depth  of the image in the third voxel coordinate
+	 * @param bitDepth Number of bits per voxel
+	 * @return An instance of ImageCore implementer
+	 */
+	@Override
+	public ImageCoreMapped getEmptyImageCore(int width, int height, int depth, int bitDepth){
+		return ImageCoreMapped.createTemporary(width, height, depth, bitDepth);
+	}
+
+	/**
+	 * Images created from AWT images are small and are thus created in memory.
+	 * @see ImageCoreFactoryIJ#createFromAwtImages(BufferedImage[])
+	 */
+	@Override
+	public ImageCoreIJ createFromAwtImages(BufferedImage[] images){
+		return ImageCoreFactoryIJ.getInstance().createFromAwtImages(images);
+	}
+
+	/**
+	 * The image is created in memory since the array already is.
+	 * @see ImageCoreFactoryIJ#createFromRegularArray(short[][], int, int)
+	 */
+	@Override
+	public ImageCore createFromRegularArray(short[][] voxelValues, int width, int bitDepth){
+		return ImageCoreFactoryIJ.getInstance().createFromRegularArray(voxelValues, width, bitDepth);
+	}
+
+	/**
+	 * The image is created in memory since the array already is.
+	 * @see ImageCoreFactoryIJ#createFromRegularArray(byte[][], int, int)
+	 */
+	@Override
+	public ImageCoreIJ createFromRegularArray(byte[][] voxelValues, int width, int bitDepth){
+		return ImageCoreFactoryIJ.getInstance().createFromRegularArray(voxelValues, width, bitDepth);
+	}
+}
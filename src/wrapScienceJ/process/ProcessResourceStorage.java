@@ -37,6 +37,13 @@ public class ProcessResourceStorage extends ProcessInputOutput implements Policy
 		this.m_inputResource = inputResource;
 	}
 	
+	/** 
+	 * @return Input Resource on which this process is to be applied
+	 */
+	protected ResourceCore getInputResource(){
+		return this.m_inputResource;
+	}
+	
 	/** 
 	 * @return Current Resource on which this process is currently working 
 	 */
@@ -83,11 +90,14 @@ public class ProcessResourceStorage extends ProcessInputOutput implements Policy
 		}
 	}
 
-	/** Clears the Data to release memory */
+	/**
+	 * Clears the references to the resources, so that their memory can be reclaimed.
+	 * The resources are not closed, since they may still be used elsewhere:
+	 * their owner releases their memory deterministically with {@link ResourceCore#close()}.
+	 */
 	public void clearCurrentResource(){
 		this.m_inputResource = null;
 		this.m_currentResource = null;
-		System.gc();
 	}
 	
 	
@@ -19,7 +19,7 @@ import wrapScienceJ.wrapImaJ.gui.render.RenderTool;
  * GeneralInterface for resources such as images, videos, DNA sequence, signal, etc.
  *
  */
-public interface ResourceCore {
+public interface ResourceCore extends AutoCloseable {
 	
     /**
      * Duplicates the image (invocation of the operation)
@@ -119,5 +119,14 @@ public interface ResourceCore {
 	 */
 	public ResourceCore writeToFileWithMetaData(String directory, String basename, String extension) throws IOException;
 	
+	/**
+	 * Releases the memory held by the resource as soon as it is no longer used, instead of
+	 * waiting for the garbage collector, making the resource unusable. The memory may be reused
+	 * by later allocations (e.g. the slices of the images are given back to the buffer pool).
+	 * Allows for use in a try-with-resources statement.
+	 */
+	@Override
+	public void close();
+	
 
 }
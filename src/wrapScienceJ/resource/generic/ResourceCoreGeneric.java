@@ -62,6 +62,11 @@ public abstract class ResourceCoreGeneric implements ResourceCore {
 	 * @see wrapScienceJ.resource.ResourceCore#getFileHelper()
 	 */
 	public abstract FileHelper getFileHelper();
+	
+	/**
+	 * @see wrapScienceJ.resource.ResourceCore#close()
+	 */
+	public abstract void close();
 
 	/**
 	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getMetaData()
@@ -0,0 +1,123 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File: IntFifo.java                                                       * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+
+package wrapScienceJ.utils;
+
+/**
+ * First In First Out queue of primitive integers, implemented as a ring buffer
+ * which grows (doubling its capacity) when full.
+ *
+ * As opposed to a java.util.LinkedList of boxed values or voxel objects,
+ * adding and polling elements doesn't allocate any object, which makes
+ * the queue suited for breadth first searches over millions of voxels.
+ * The same instance can be re-used for several searches (see {@link #clear()}).
+ *
+ * @author Rémy Malgouyres
+ */
+public class IntFifo {
+
+	/** Ring buffer containing the elements of the queue */
+	private int[] m_buffer;
+
+	/** Index of the head of the queue (next element to poll) in the ring buffer */
+	private int m_head;
+
+	/** Number of elements currently in the queue */
+	private int m_size;
+
+	/**
+	 * Creates an empty queue.
+	 * @param initialCapacity Initial number of elements which can be stored
+	 * 						  before the ring buffer needs to grow.
+	 * @throws IllegalArgumentException if the initial capacity is not positive
+	 */
+	public IntFifo(int initialCapacity) throws IllegalArgumentException {
+		if (initialCapacity < 1){
+			throw new IllegalArgumentException("The capacity of a FIFO must be positive.");
+		}
+		this.m_buffer = new int[initialCapacity];
+		this.m_head = 0;
+		this.m_size = 0;
+	}
+
+	/**
+	 * @return true if the queue contains no element
+	 */
+	public boolean isEmpty(){
+		return this.m_size == 0;
+	}
+
+	/**
+	 * @return The number of elements in the queue
+	 */
+	public int size(){
+		return this.m_size;
+	}
+
+	/**
+	 * Removes all the elements from the queue, keeping the allocated capacity.
+	 */
+	public void clear(){
+		this.m_head = 0;
+		this.m_size = 0;
+	}
+
+	/**
+	 * Appends an element at the tail of the queue.
+	 * @param value The element to add
+	 */
+	public void add(int value){
+		if (this.m_size == this.m_buffer.length){
+			grow();
+		}
+		int tail = this.m_head + this.m_size;
+		if (tail >= this.m_buffer.length){
+			tail -= this.m_buffer.length;
+		}
+		this.m_buffer[tail] = value;
+		this.m_size++;
+	}
+
+	/**
+	 * Retrieves and removes the head of the queue.
+	 * @return The element which has been in the queue for the longest time
+	 * @throws IllegalStateException if the queue is empty
+	 */
+	public int poll() throws IllegalStateException {
+		if (this.m_size == 0){
+			throw new IllegalStateException("Cannot poll an element from an empty FIFO.");
+		}
+		int value = this.m_buffer[this.m_head];
+		this.m_head++;
+		if (this.m_head == this.m_buffer.length){
+			this.m_head = 0;
+		}
+		this.m_size--;
+		return value;
+	}
+
+	/**
+	 * Doubles the capacity of the ring buffer, moving the elements
+	 * so that the head of the queue is at index 0.
+	 * @throws IllegalStateException if the capacity cannot be increased any further
+	 */
+	private void grow() throws IllegalStateException {
+		if (this.m_buffer.length == Integer.MAX_VALUE){
+			throw new IllegalStateException("FIFO capacity exceeded.");
+		}
+		int newCapacity = (int)Math.min(2L*this.m_buffer.length, Integer.MAX_VALUE);
+		int[] newBuffer = new int[newCapacity];
+		int firstPartLength = Math.min(this.m_size, this.m_buffer.length - this.m_head);
+		System.arraycopy(this.m_buffer, this.m_head, newBuffer, 0, firstPartLength);
+		System.arraycopy(this.m_buffer, 0, newBuffer, firstPartLength, this.m_size - firstPartLength);
+		this.m_buffer = newBuffer;
+		this.m_head = 0;
+	}
+
+} // End of class
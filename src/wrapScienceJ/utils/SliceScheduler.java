@@ -0,0 +1,198 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File: SliceScheduler.java                                                * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+
+
+package wrapScienceJ.utils;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import wrapScienceJ.config.GlobalOptions;
+
+/**
+ * Allows to run a task on each slice of an image (or more generally on each index
+ * of a range) in parallel, using a shared fork-join pool whose number of threads
+ * is given by {@link GlobalOptions#getParallelism()}.
+ * 
+ * The tasks for distinct slices must be independent (e.g. point-wise operations,
+ * or operations writing only into the slice they read). Under that condition, the results are
+ * identical to those of the sequential loop, whatever the parallelism.
+ * Reductions (minimum, maximum, histograms...) should store one partial result per slice
+ * and combine the partial results in slice order once {@link #forEachSlice(int, SliceTask)} returns.
+ * 
+ * If the parallelism is 1, the slices are processed sequentially in the calling thread.
+ * 
+ * @author Rémy Malgouyres
+ */
+public class SliceScheduler {
+	
+	/**
+	 * A task to be performed independently on each slice.
+	 */
+	public interface SliceTask {
+		/**
+		 * Processes one slice. May be called concurrently for distinct slices.
+		 * @param zCoord The index of the slice to process
+		 */
+		public void processSlice(int zCoord);
+	}
+	
+	
+	/**
+	 * Shared pool of worker threads, replaced when the global parallelism changes.
+	 */
+	private static SharedPool m_pool = null;
+	
+	
+	/**
+	 * Retrieves the shared pool for an invocation, which must be followed by a call to
+	 * {@link #releasePool(SharedPool)} once the invocation is over. If the global parallelism
+	 * has changed, a new pool is created, and the previous one is only shut down once all
+	 * its invocations are over.
+	 * @return The shared pool, with the current global parallelism.
+	 */
+	private static synchronized SharedPool acquirePool(){
+		int parallelism = GlobalOptions.getParallelism();
+		if (m_pool == null || m_pool.m_forkJoinPool.getParallelism() != parallelism){
+			if (m_pool != null){
+				m_pool.m_retired = true;
+				if (m_pool.m_nInvocations == 0){
+					m_pool.m_forkJoinPool.shutdown();
+				}
+			}
+			m_pool = new SharedPool(new ForkJoinPool(parallelism));
+		}
+		m_pool.m_nInvocations++;
+		return m_pool;
+	}
+	
+	
+	/**
+	 * Records the end of an invocation in a pool returned by {@link #acquirePool()},
+	 * and shuts the pool down if it has been replaced and this was its last invocation.
+	 * @param pool The pool of the invocation
+	 */
+	private static synchronized void releasePool(SharedPool pool){
+		pool.m_nInvocations--;
+		if (pool.m_retired && pool.m_nInvocations == 0){
+			pool.m_forkJoinPool.shutdown();
+		}
+	}
+	
+	
+	/**
+	 * Runs a task on each slice z with 0 &lt;= z &lt; depth, and returns when all slices
+	 * have been processed. Any runtime exception thrown by the task is rethrown.
+	 * @param depth The number of slices
+	 * @param task The task to run on each slice
+	 */
+	public static void forEachSlice(int depth, SliceTask task){
+		forEachSlice(0, depth, task);
+	}
+	
+	
+	/**
+	 * Runs a task on each slice z with zMin &lt;= z &lt; zMax, and returns when all slices
+	 * have been processed. Any runtime exception thrown by the task is rethrown.
+	 * @param zMin The first slice to process
+	 * @param zMax The slice after the last slice to process
+	 * @param task The task to run on each slice
+	 */
+	public static void forEachSlice(int zMin, int zMax, SliceTask task){
+		if (zMax - zMin <= 1 || GlobalOptions.getParallelism() <= 1){
+			for (int z=zMin ; z<zMax ; z++){
+				task.processSlice(z);
+			}
+			return;
+		}
+		SliceRangeAction action = new SliceRangeAction(task, zMin, zMax);
+		if (ForkJoinTask.inForkJoinPool()){
+			// Nested call from a worker: the pool of the worker takes care of the subtasks
+			action.invoke();
+		}else{
+			SharedPool pool = acquirePool();
+			try {
+				pool.m_forkJoinPool.invoke(action);
+			}finally{
+				releasePool(pool);
+			}
+		}
+	}
+	
+	
+	/**
+	 * A fork-join pool with the number of invocations in progress in it,
+	 * so that it is not shut down before they are over.
+	 * The fields are accessed while holding the lock of the SliceScheduler class.
+	 */
+	private static class SharedPool {
+		
+		/** The pool of worker threads */
+		private final ForkJoinPool m_forkJoinPool;
+		
+		/** Number of invocations in progress in the pool */
+		private int m_nInvocations = 0;
+		
+		/** true if the pool has been replaced by a pool with another parallelism */
+		private boolean m_retired = false;
+		
+		/**
+		 * @param forkJoinPool The pool of worker threads
+		 */
+		SharedPool(ForkJoinPool forkJoinPool){
+			this.m_forkJoinPool = forkJoinPool;
+		}
+	}
+	
+	
+	/**
+	 * Recursive splitting of a range of slices, down to single slices.
+	 */
+	private static class SliceRangeAction extends RecursiveAction {
+		
+		/** Serialization version, required by RecursiveAction */
+		private static final long serialVersionUID = 1L;
+
+		/** The task to run on each slice */
+		private final SliceTask m_task;
+		
+		/** The first slice of the range */
+		private final int m_zMin;
+		
+		/** The slice after the last slice of the range */
+		private final int m_zMax;
+		
+		/**
+		 * @param task The task to run on each slice
+		 * @param zMin The first slice of the range
+		 * @param zMax The slice after the last slice of the range
+		 */
+		SliceRangeAction(SliceTask task, int zMin, int zMax){
+			this.m_task = task;
+			this.m_zMin = zMin;
+			this.m_zMax = zMax;
+		}
+
+		/**
+		 * @see java.util.concurrent.RecursiveAction#compute()
+		 */
+		@Override
+		protected void compute() {
+			if (this.m_zMax - this.m_zMin == 1){
+				this.m_task.processSlice(this.m_zMin);
+				return;
+			}
+			int zMiddle = (this.m_zMin + this.m_zMax) >>> 1;
+			invokeAll(new SliceRangeAction(this.m_task, this.m_zMin, zMiddle),
+					  new SliceRangeAction(this.m_task, zMiddle, this.m_zMax));
+		}
+	}
+	
+} // End of class
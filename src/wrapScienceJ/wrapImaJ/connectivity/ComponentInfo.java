@@ -20,40 +20,25 @@ import wrapScienceJ.wrapImaJ.core.VoxelShort;
 /**
  * Represents the informations relative to a connected component in a binary image.
  * 
+ * The informations are stored in a row of a {@link ComponentTable}, and an instance
+ * is only a view on that row: the setters write into the table. The view is valid
+ * as long as the rows of the table are not removed or reordered (e.g. by the filtering
+ * of the components).
+ * 
  * @author Remy Malgouyres
  */
 public class ComponentInfo
 {
 
 	/**
-	 * Label (ID) of the connected component (i.e. color in the labels image array)
-	 */
-	private short m_label;
-
-	/**
-	 * Cardinality of the connected component. 
-	 * Can be zero if the connected component has been filtered out
-	 * (e.g. threshold size or border components exclusion)
-	 */
-	private long m_numberOfPoints;
-
-	/**
-	 * Voxel representative of the component (one voxel in the component)
-	 * Currently, this representative has minimal depth Z
-	 * TODO extend usage using a comparison predicate possibly other that comparing depth.
+	 * Table which contains the informations of the component
 	 */
-	private VoxelInt m_voxelRepresentant;
+	private ComponentTable m_table;
 
 	/**
-	 * Number of voxels in the component that are on the edge of the image.
-	 * (allows filtering out connected component which touch the edge of the image.)
+	 * Index of the row of the component in the table
 	 */
-	private int m_nVoxelsOnTheBorder;
-	
-	/**
-	 * Bounding Box for the voxels of this component.
-	 */
-	private BoxROI m_boundingBox;
+	private int m_index;
 	
 	/**
 	 * Constructor
@@ -62,29 +47,37 @@ public class ComponentInfo
 	 * @param voxelRepresentant (initial) voxel representative of the component (one voxel in the component)
 	 * @param nVoxelsOnTheBorder Number of voxels in the component which are on the the edge of the image.
 	 */
-	public ComponentInfo(short label, int numberOfPoints,
+	public ComponentInfo(int label, int numberOfPoints,
 			VoxelInt voxelRepresentant, int nVoxelsOnTheBorder) {
-		this.m_label = label;
-		this.m_numberOfPoints = numberOfPoints;
-		this.m_voxelRepresentant = voxelRepresentant;
-		this.m_nVoxelsOnTheBorder = nVoxelsOnTheBorder;
-		this.m_boundingBox = new BoxROI();
+		this.m_table = new ComponentTable(1);
+		this.m_index = this.m_table.add(label, numberOfPoints, voxelRepresentant.getX(),
+										voxelRepresentant.getY(), voxelRepresentant.getZ(), nVoxelsOnTheBorder);
+	}
+
+	/**
+	 * Creates a view on a row of a table
+	 * @param table Table which contains the informations of the component
+	 * @param index Index of the row of the component in the table
+	 */
+	ComponentInfo(ComponentTable table, int index) {
+		this.m_table = table;
+		this.m_index = index;
 	}
 
 	/**
 	 * Getter.
 	 * @return the label of the component
 	 */
-	public short getLabel(){ 
-		return this.m_label; 
+	public int getLabel(){ 
+		return this.m_table.getLabel(this.m_index); 
 	}
 
 	/**
 	 * Setter  for the label of the component
 	 * @param label the label to use
 	 */
-	public void setLabel(short label){ 
-		this.m_label = label; 
+	public void setLabel(int label){ 
+		this.m_table.setLabel(this.m_index, label); 
 	}
 
 	/**
@@ -92,16 +85,17 @@ public class ComponentInfo
 	 * @return the cardinality of the component
 	 */
 	public long getnumberOfPoints(){ 
-		return this.m_numberOfPoints; 
+		return this.m_table.getNumberOfPoints(this.m_index); 
 	}
 	
 	
 	/**
 	 * Bounding Box for the voxels of this component.
-	 * @return The bounding box of the voxels of this compnents.
+	 * @return A copy of the bounding box of the voxels of this compnents
+	 * 		   (use {@link #updateBox(int, int, int)} to modify the box).
 	 */
 	public BoxROI getBoundingBox(){
-		return this.m_boundingBox;
+		return this.m_table.getBoundingBox(this.m_index);
 	}
 	
 	/**
@@ -110,14 +104,25 @@ public class ComponentInfo
 	 * @param voxelInTheBox A voxel that should be contained in the box.
 	 */
 	public void updateBox(VoxelShort voxelInTheBox){
-		this.m_boundingBox.updateBox(voxelInTheBox);
+		updateBox(voxelInTheBox.getX(), voxelInTheBox.getY(), voxelInTheBox.getZ());
+	}
+	
+	/**
+	 * Update the boundaries of the BoxROI to take into account that a given voxel
+	 * must be in the box.
+	 * @param x first coordinate of a voxel that should be contained in the box.
+	 * @param y second coordinate of a voxel that should be contained in the box.
+	 * @param z third coordinate of a voxel that should be contained in the box.
+	 */
+	public void updateBox(int x, int y, int z){
+		this.m_table.updateBox(this.m_index, x, y, z);
 	}
 	
 	/**
 	 * Increments the cardinality
 	 */
 	public void incrementNumberOfPoints(){
-		this.m_numberOfPoints++;
+		this.m_table.incrementNumberOfPoints(this.m_index);
 	}
 
 	/**
@@ -125,7 +130,7 @@ public class ComponentInfo
 	 * @param numberOfPoints the cardinality to set
 	 */
 	public void setNumberOfPoints(int numberOfPoints){
-		this.m_numberOfPoints = numberOfPoints;
+		this.m_table.setNumberOfPoints(this.m_index, numberOfPoints);
 	}
 
 	/**
@@ -133,33 +138,43 @@ public class ComponentInfo
 	 * @return returns the component's flag indicating whether the component is on the border.
 	 */
 	public boolean isOnTheeBorder(){
-		return this.m_nVoxelsOnTheBorder > 0;
+		return this.m_table.isOnTheBorder(this.m_index);
 	}
 
 	/**
 	 * Getter
-	 * @return the voxel representative of the component (one voxel in the component)
+	 * @return A copy of the voxel representative of the component (one voxel in the component)
+	 * 		   (use {@link #setRepresentant(int, int, int)} to modify the representative).
 	 */
 	public VoxelInt getRepresentant() {
-		return this.m_voxelRepresentant; 
+		return this.m_table.getRepresentant(this.m_index); 
+	}
+
+	/**
+	 * Setter
+	 * @param x first coordinate of the voxel representative of the component
+	 * @param y second coordinate of the voxel representative of the component
+	 * @param z third coordinate of the voxel representative of the component
+	 */
+	public void setRepresentant(int x, int y, int z) {
+		this.m_table.setRepresentant(this.m_index, x, y, z); 
 	}
 
 	/**
 	 * Increments the number of voxels in the component which are on the edge of the image.
 	 */
 	public void incrementNVoxelsOnTheeBorder() {
-		this.m_nVoxelsOnTheBorder++;
+		this.m_table.incrementNVoxelsOnTheBorder(this.m_index);
 	}
 
 	/**
 	 * Allows to swap coordinates axis in the voxel's domain by modifying the attributes
-	 * depending on coordinates such as {@link #m_voxelRepresentant} or {@link #m_boundingBox}.
+	 * depending on coordinates such as the voxel representative or the bounding box.
 	 * @param axis1 The first axis to be swapped
 	 * @param axis2 The second axis to be swapped
 	 */
 	public void getAxisSwapped(CoordinateAxis axis1, CoordinateAxis axis2){
-		this.m_voxelRepresentant.getAxisSwapped(axis1, axis2);
-		this.m_boundingBox.getAxisSwapped(axis1, axis2);
+		this.m_table.getAxisSwapped(this.m_index, axis1, axis2);
 	}
 	
 	/**
@@ -168,8 +183,7 @@ public class ComponentInfo
 	 */
 	@Override
 	public String toString() {
-		return "Component label : "+this.m_label+", Number of points : "+this.m_numberOfPoints;
+		return "Component label : "+getLabel()+", Number of points : "+getnumberOfPoints();
 	}
 
 } // end of class ComponentInfo
-
@@ -0,0 +1,276 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File: ComponentMeasurements.java                                         * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+
+
+package wrapScienceJ.wrapImaJ.connectivity;
+
+import wrapScienceJ.config.GlobalOptions;
+import wrapScienceJ.utils.SliceScheduler;
+import wrapScienceJ.utils.SliceScheduler.SliceTask;
+import wrapScienceJ.wrapImaJ.core.ImageCalibration;
+import wrapScienceJ.wrapImaJ.core.ImageCore;
+import wrapScienceJ.wrapImaJ.core.LabelSlices;
+import wrapScienceJ.wrapImaJ.core.SliceBuffer;
+import wrapScienceJ.wrapImaJ.core.VoxelDouble;
+
+/**
+ * Table of intensity and shape statistics of the regions of a label image (e.g. the
+ * connected components), indexed by label: number of voxels, calibrated volume, total and
+ * mean intensity, centroid, second moments and inertia tensor.
+ *
+ * All the statistics are computed in a single pass over the label image and an intensity image
+ * by {@link #measure(ImageCore, ImageCore, int, ImageCalibration)} (or over labels stored as ints
+ * by {@link #measure(LabelSlices, ImageCore, int, ImageCalibration)}). Each task accumulates
+ * integer sums for all the labels over a block of slices, and the partial sums are added once
+ * the pass is over, so that the result doesn't depend on the parallelism.
+ *
+ * Note that for slice by slice labelings, in which the labels are re-used from slice to slice,
+ * the components with the same label share their statistics.
+ *
+ * @author Rémy Malgouyres
+ */
+public class ComponentMeasurements {
+
+	/** Index of the number of voxels in the sums of a label */
+	private static final int COUNT = 0;
+	/** Index of the sum of the gray levels in the sums of a label */
+	private static final int INTENSITY = 1;
+	/** Index of the sums of the coordinates in the sums of a label */
+	private static final int X = 2, Y = 3, Z = 4;
+	/** Index of the sums of the products of the coordinates in the sums of a label */
+	private static final int XX = 5, YY = 6, ZZ = 7, XY = 8, XZ = 9, YZ = 10;
+	/** Number of sums for each label */
+	private static final int N_SUMS = 11;
+
+	/** Sums of all the labels, the N_SUMS sums of each label being stored consecutively */
+	private long[] m_sums;
+
+	/** Largest label in the table */
+	private int m_maxLabel;
+
+	/** Edge lengths of the voxels */
+	private double m_voxelWidth, m_voxelHeight, m_voxelDepth;
+
+
+	/**
+	 * @param sums Sums of all the labels
+	 * @param maxLabel Largest label in the table
+	 * @param calibration The calibration of the image
+	 */
+	private ComponentMeasurements(long[] sums, int maxLabel, ImageCalibration calibration){
+		this.m_sums = sums;
+		this.m_maxLabel = maxLabel;
+		this.m_voxelWidth = calibration.getVoxelWidth();
+		this.m_voxelHeight = calibration.getVoxelHeight();
+		this.m_voxelDepth = calibration.getVoxelDepth();
+	}
+
+
+	/**
+	 * Computes the statistics of all the regions of a label image in a single pass.
+	 * @param labels An 8 or 16 bits image, the gray levels of which are labels.
+	 * @param intensity An 8 or 16 bits image with the same size as the label image, the gray levels
+	 * 					of which are measured, or null to measure only the shape of the regions.
+	 * @param maxLabel The largest label to consider (the voxels with larger labels are ignored).
+	 * @param calibration The calibration of the image, which gives the volume and the physical
+	 * 					  coordinates of the voxels.
+	 * @return The statistics of the labels from 0 (background) to maxLabel.
+	 * @throws IllegalArgumentException if the intensity image does not have the same size as the
+	 * 		   label image.
+	 */
+	public static ComponentMeasurements measure(ImageCore labels, ImageCore intensity, int maxLabel,
+												ImageCalibration calibration){
+		return measure(new LabelSlices(labels), intensity, maxLabel, calibration);
+	}
+
+
+	/**
+	 * Computes the statistics of all the regions of a label volume in a single pass.
+	 * @param labels The labels of the voxels (e.g. the labels of the connected components as ints).
+	 * @param intensity An 8 or 16 bits image with the same size as the label volume, the gray levels
+	 * 					of which are measured, or null to measure only the shape of the regions.
+	 * @param maxLabel The largest label to consider (the voxels with larger labels are ignored).
+	 * @param calibration The calibration of the image, which gives the volume and the physical
+	 * 					  coordinates of the voxels.
+	 * @return The statistics of the labels from 0 (background) to maxLabel.
+	 * @throws IllegalArgumentException if the intensity image does not have the same size as the
+	 * 		   label volume.
+	 */
+	public static ComponentMeasurements measure(final LabelSlices labels, ImageCore intensity, final int maxLabel,
+												ImageCalibration calibration){
+		if (intensity != null && (intensity.getWidth() != labels.getWidth() ||
+								  intensity.getHeight() != labels.getHeight() ||
+								  intensity.getDepth() != labels.getDepth())){
+			throw new IllegalArgumentException("The intensity image must have the same size as the label image.");
+		}
+		final SliceBuffer[] intensitySlices = intensity == null ? null : SliceBuffer.getSliceBuffers(intensity);
+		final int width = labels.getWidth();
+		final int height = labels.getHeight();
+		final int nSlices = labels.getDepth();
+		final int nBlocks = Math.max(0, Math.min(nSlices, GlobalOptions.getParallelism()));
+		final long[][] partialSums = new long[nBlocks][];
+		SliceScheduler.forEachSlice(nBlocks, new SliceTask() {
+			@Override
+			public void processSlice(int block) {
+				long[] sums = new long[(maxLabel+1)*N_SUMS];
+				int zMax = (int)(((long)(block+1)*nSlices)/nBlocks);
+				for (int z=(int)(((long)block*nSlices)/nBlocks) ; z<zMax ; z++){
+					SliceBuffer intensitySlice = intensitySlices == null ? null : intensitySlices[z];
+					for (int y=0 ; y<height ; y++){
+						int index = y*width;
+						for (int x=0 ; x<width ; x++, index++){
+							int label = labels.get(z, index);
+							if (label <= maxLabel){
+								int offset = label*N_SUMS;
+								sums[offset + COUNT]++;
+								if (intensitySlice != null){
+									sums[offset + INTENSITY] += intensitySlice.get(index);
+								}
+								sums[offset + X] += x;
+								sums[offset + Y] += y;
+								sums[offset + Z] += z;
+								sums[offset + XX] += (long)x*x;
+								sums[offset + YY] += (long)y*y;
+								sums[offset + ZZ] += (long)z*z;
+								sums[offset + XY] += (long)x*y;
+								sums[offset + XZ] += (long)x*z;
+								sums[offset + YZ] += (long)y*z;
+							}
+						}
+					}
+				}
+				partialSums[block] = sums;
+			}
+		});
+		long[] sums = new long[(maxLabel+1)*N_SUMS];
+		for (int block=0 ; block<nBlocks ; block++){
+			for (int i=0 ; i<sums.length ; i++){
+				sums[i] += partialSums[block][i];
+			}
+		}
+		return new ComponentMeasurements(sums, maxLabel, calibration);
+	}
+
+
+	/**
+	 * @return The largest label in the table
+	 */
+	public int getMaxLabel(){
+		return this.m_maxLabel;
+	}
+
+
+	/**
+	 * @param label A label between 0 and {@link #getMaxLabel()}
+	 * @return The number of voxels with the label
+	 */
+	public long getNumberOfVoxels(int label){
+		return this.m_sums[label*N_SUMS + COUNT];
+	}
+
+
+	/**
+	 * @param label A label between 0 and {@link #getMaxLabel()}
+	 * @return The volume of the voxels with the label, taking into account the calibration
+	 */
+	public double getVolume(int label){
+		return getNumberOfVoxels(label)*this.m_voxelWidth*this.m_voxelHeight*this.m_voxelDepth;
+	}
+
+
+	/**
+	 * @param label A label between 0 and {@link #getMaxLabel()}
+	 * @return The sum of the gray levels of the voxels with the label
+	 * 		   (0 if no intensity image has been measured)
+	 */
+	public long getTotalIntensity(int label){
+		return this.m_sums[label*N_SUMS + INTENSITY];
+	}
+
+
+	/**
+	 * @param label A label between 0 and {@link #getMaxLabel()}
+	 * @return The mean gray level of the voxels with the label, or 0 if there is no such voxel.
+	 */
+	public double getMeanIntensity(int label){
+		long count = getNumberOfVoxels(label);
+		return count == 0 ? 0.0 : (double)getTotalIntensity(label)/count;
+	}
+
+
+	/**
+	 * @param label A label between 0 and {@link #getMaxLabel()}
+	 * @return The centroid of the voxels with the label, in voxel coordinates
+	 * 		   (or null if there is no such voxel).
+	 */
+	public VoxelDouble getCentroid(int label){
+		long count = getNumberOfVoxels(label);
+		if (count == 0){
+			return null;
+		}
+		int offset = label*N_SUMS;
+		return new VoxelDouble((double)this.m_sums[offset + X]/count,
+							   (double)this.m_sums[offset + Y]/count,
+							   (double)this.m_sums[offset + Z]/count);
+	}
+
+
+	/**
+	 * Computes the central second moments (covariance matrix) of the positions of the voxels
+	 * with a label, in physical units (taking into account the calibration).
+	 * @param label A label between 0 and {@link #getMaxLabel()}
+	 * @return The symmetric 3x3 matrix of the second moments, the rows and columns being
+	 * 		   in the order X, Y, Z (or null if there is no voxel with the label).
+	 */
+	public double[][] getSecondMoments(int label){
+		long count = getNumberOfVoxels(label);
+		if (count == 0){
+			return null;
+		}
+		int offset = label*N_SUMS;
+		int[] coordinates = {X, Y, Z};
+		int[][] products = {{XX, XY, XZ}, {XY, YY, YZ}, {XZ, YZ, ZZ}};
+		double[] scales = {this.m_voxelWidth, this.m_voxelHeight, this.m_voxelDepth};
+		double[][] moments = new double[3][3];
+		for (int i=0 ; i<3 ; i++){
+			for (int j=0 ; j<3 ; j++){
+				double meanI = (double)this.m_sums[offset + coordinates[i]]/count;
+				double meanJ = (double)this.m_sums[offset + coordinates[j]]/count;
+				double meanProduct = (double)this.m_sums[offset + products[i][j]]/count;
+				moments[i][j] = (meanProduct - meanI*meanJ)*scales[i]*scales[j];
+			}
+		}
+		return moments;
+	}
+
+
+	/**
+	 * Computes the inertia tensor of the voxels with a label with respect to their centroid,
+	 * in physical units, each voxel having a mass equal to its volume.
+	 * @param label A label between 0 and {@link #getMaxLabel()}
+	 * @return The symmetric 3x3 inertia tensor, the rows and columns being in the order X, Y, Z
+	 * 		   (or null if there is no voxel with the label).
+	 */
+	public double[][] getInertiaTensor(int label){
+		double[][] moments = getSecondMoments(label);
+		if (moments == null){
+			return null;
+		}
+		double mass = getVolume(label);
+		double trace = moments[0][0] + moments[1][1] + moments[2][2];
+		double[][] inertia = new double[3][3];
+		for (int i=0 ; i<3 ; i++){
+			for (int j=0 ; j<3 ; j++){
+				inertia[i][j] = mass*((i == j ? trace : 0.0) - moments[i][j]);
+			}
+		}
+		return inertia;
+	}
+
+} // End of class
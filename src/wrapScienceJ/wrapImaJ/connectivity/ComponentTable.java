@@ -0,0 +1,416 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File: ComponentTable.java                                                * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+
+
+package wrapScienceJ.wrapImaJ.connectivity;
+
+import wrapScienceJ.wrapImaJ.core.BoxROI;
+import wrapScienceJ.wrapImaJ.core.CoordinateAxis;
+import wrapScienceJ.wrapImaJ.core.VoxelInt;
+
+/**
+ * Table of the informations relative to the connected components of a binary image
+ * (label, cardinality, bounding box, voxel representative, number of voxels on the edge
+ * of the image), stored as columns of primitive values, with one row per component.
+ *
+ * The table avoids the allocation of several objects per component when there are
+ * many (small) components. A {@link ComponentInfo} is a view on a row of a table
+ * (see {@link #get(int)}), which remains valid as long as the rows are not removed
+ * or reordered (e.g. by the filtering of the components).
+ *
+ * @author Remy Malgouyres
+ */
+public class ComponentTable {
+
+	/** Indices of the coordinates of the bounding box in the record of a row */
+	private static final int X_MIN = 0, Y_MIN = 1, Z_MIN = 2, X_MAX = 3, Y_MAX = 4, Z_MAX = 5;
+	/** Number of coordinates of a bounding box */
+	private static final int BOX_SIZE = 6;
+
+	/** Labels of the components */
+	private int[] m_labels;
+
+	/** Cardinalities of the components */
+	private long[] m_numberOfPoints;
+
+	/** Numbers of voxels of the components which are on the edge of the image */
+	private int[] m_nVoxelsOnTheBorder;
+
+	/** Bounding boxes of the components (BOX_SIZE values per row, the maxima being excluded, as in {@link BoxROI}) */
+	private short[] m_boxes;
+
+	/** Coordinates x, y, z of the voxel representatives of the components (3 values per row) */
+	private int[] m_representants;
+
+	/** Number of rows */
+	private int m_size;
+
+
+	/**
+	 * Creates an empty table
+	 * @param capacity The initial number of rows which can be added without reallocation
+	 */
+	public ComponentTable(int capacity){
+		capacity = Math.max(capacity, 1);
+		this.m_labels = new int[capacity];
+		this.m_numberOfPoints = new long[capacity];
+		this.m_nVoxelsOnTheBorder = new int[capacity];
+		this.m_boxes = new short[capacity*BOX_SIZE];
+		this.m_representants = new int[capacity*3];
+		this.m_size = 0;
+	}
+
+
+	/**
+	 * Creates a copy of a table
+	 * @param table The table to copy
+	 */
+	public ComponentTable(ComponentTable table){
+		this.m_labels = table.m_labels.clone();
+		this.m_numberOfPoints = table.m_numberOfPoints.clone();
+		this.m_nVoxelsOnTheBorder = table.m_nVoxelsOnTheBorder.clone();
+		this.m_boxes = table.m_boxes.clone();
+		this.m_representants = table.m_representants.clone();
+		this.m_size = table.m_size;
+	}
+
+
+	/**
+	 * @return The number of rows (components) of the table.
+	 */
+	public int size(){
+		return this.m_size;
+	}
+
+
+	/**
+	 * Adds a component with an empty bounding box.
+	 * @param label label of the connected component
+	 * @param numberOfPoints (initial) cardinality of the connected component.
+	 * @param x first coordinate of the (initial) voxel representative of the component
+	 * @param y second coordinate of the (initial) voxel representative of the component
+	 * @param z third coordinate of the (initial) voxel representative of the component
+	 * @param nVoxelsOnTheBorder Number of voxels in the component which are on the the edge of the image.
+	 * @return The index of the new row
+	 */
+	public int add(int label, long numberOfPoints, int x, int y, int z, int nVoxelsOnTheBorder){
+		if (this.m_size == this.m_labels.length){
+			grow();
+		}
+		int index = this.m_size++;
+		this.m_labels[index] = label;
+		this.m_numberOfPoints[index] = numberOfPoints;
+		this.m_nVoxelsOnTheBorder[index] = nVoxelsOnTheBorder;
+		int box = index*BOX_SIZE;
+		this.m_boxes[box + X_MIN] = Short.MAX_VALUE;
+		this.m_boxes[box + Y_MIN] = Short.MAX_VALUE;
+		this.m_boxes[box + Z_MIN] = Short.MAX_VALUE;
+		this.m_boxes[box + X_MAX] = Short.MIN_VALUE;
+		this.m_boxes[box + Y_MAX] = Short.MIN_VALUE;
+		this.m_boxes[box + Z_MAX] = Short.MIN_VALUE;
+		setRepresentant(index, x, y, z);
+		return index;
+	}
+
+
+	/**
+	 * Doubles the capacity of the columns.
+	 * @throws IllegalStateException in case of overflow of the number of components
+	 */
+	private void grow(){
+		if (this.m_labels.length >= Integer.MAX_VALUE/(2*BOX_SIZE)){
+			throw new IllegalStateException("Too many connected components.");
+		}
+		int capacity = 2*this.m_labels.length;
+		int[] labels = new int[capacity];
+		System.arraycopy(this.m_labels, 0, labels, 0, this.m_size);
+		this.m_labels = labels;
+		long[] numberOfPoints = new long[capacity];
+		System.arraycopy(this.m_numberOfPoints, 0, numberOfPoints, 0, this.m_size);
+		this.m_numberOfPoints = numberOfPoints;
+		int[] nVoxelsOnTheBorder = new int[capacity];
+		System.arraycopy(this.m_nVoxelsOnTheBorder, 0, nVoxelsOnTheBorder, 0, this.m_size);
+		this.m_nVoxelsOnTheBorder = nVoxelsOnTheBorder;
+		short[] boxes = new short[capacity*BOX_SIZE];
+		System.arraycopy(this.m_boxes, 0, boxes, 0, this.m_size*BOX_SIZE);
+		this.m_boxes = boxes;
+		int[] representants = new int[capacity*3];
+		System.arraycopy(this.m_representants, 0, representants, 0, this.m_size*3);
+		this.m_representants = representants;
+	}
+
+
+	/**
+	 * Removes the last row (e.g. a component dropped during the labeling)
+	 */
+	public void removeLast(){
+		if (this.m_size == 0){
+			throw new IllegalStateException("The component table is empty.");
+		}
+		this.m_size--;
+	}
+
+
+	/**
+	 * Keeps only some of the rows, in the same order, removing the other rows.
+	 * @param indices The increasing indices of the rows to keep
+	 * @param count The number of rows to keep (the first count values of indices are used)
+	 */
+	public void retain(int[] indices, int count){
+		for (int row=0 ; row<count ; row++){
+			int index = indices[row];
+			if (index < row || (row > 0 && index <= indices[row-1])){
+				throw new IllegalArgumentException("The indices of the rows to keep must be increasing.");
+			}
+			this.m_labels[row] = this.m_labels[index];
+			this.m_numberOfPoints[row] = this.m_numberOfPoints[index];
+			this.m_nVoxelsOnTheBorder[row] = this.m_nVoxelsOnTheBorder[index];
+			System.arraycopy(this.m_boxes, index*BOX_SIZE, this.m_boxes, row*BOX_SIZE, BOX_SIZE);
+			System.arraycopy(this.m_representants, index*3, this.m_representants, row*3, 3);
+		}
+		this.m_size = count;
+	}
+
+
+	/**
+	 * @param index The index of a row
+	 * @return A view on the row, the modifications of which are written into the table.
+	 * @throws IndexOutOfBoundsException if the index is not the index of a row.
+	 */
+	public ComponentInfo get(int index){
+		checkIndex(index);
+		return new ComponentInfo(this, index);
+	}
+
+
+	/**
+	 * @param index The index of a row
+	 * @throws IndexOutOfBoundsException if the index is not the index of a row.
+	 */
+	private void checkIndex(int index){
+		if (index < 0 || index >= this.m_size){
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.m_size);
+		}
+	}
+
+
+	/**
+	 * @param index The index of a row
+	 * @return the label of the component
+	 */
+	public int getLabel(int index){
+		return this.m_labels[index];
+	}
+
+
+	/**
+	 * @param index The index of a row
+	 * @param label the label of the component
+	 */
+	public void setLabel(int index, int label){
+		this.m_labels[index] = label;
+	}
+
+
+	/**
+	 * @param index The index of a row
+	 * @return the cardinality of the component
+	 */
+	public long getNumberOfPoints(int index){
+		return this.m_numberOfPoints[index];
+	}
+
+
+	/**
+	 * @param index The index of a row
+	 * @param numberOfPoints the cardinality of the component
+	 */
+	public void setNumberOfPoints(int index, long numberOfPoints){
+		this.m_numberOfPoints[index] = numberOfPoints;
+	}
+
+
+	/**
+	 * Increments the cardinality of a component
+	 * @param index The index of a row
+	 */
+	public void incrementNumberOfPoints(int index){
+		this.m_numberOfPoints[index]++;
+	}
+
+
+	/**
+	 * @param index The index of a row
+	 * @return true if at least one voxel of the component is on the edge of the image.
+	 */
+	public boolean isOnTheBorder(int index){
+		return this.m_nVoxelsOnTheBorder[index] > 0;
+	}
+
+
+	/**
+	 * Increments the number of voxels of a component which are on the edge of the image.
+	 * @param index The index of a row
+	 */
+	public void incrementNVoxelsOnTheBorder(int index){
+		this.m_nVoxelsOnTheBorder[index]++;
+	}
+
+
+	/**
+	 * @param index The index of a row
+	 * @param axis A coordinate axis
+	 * @return The minimal coordinate of the voxels of the component along the axis
+	 */
+	public int getBoxMin(int index, CoordinateAxis axis){
+		return this.m_boxes[index*BOX_SIZE + (axis.getValue()-1)];
+	}
+
+
+	/**
+	 * @param index The index of a row
+	 * @param axis A coordinate axis
+	 * @return The maximal coordinate of the voxels of the component along the axis, plus one
+	 */
+	public int getBoxMax(int index, CoordinateAxis axis){
+		return this.m_boxes[index*BOX_SIZE + 3 + (axis.getValue()-1)];
+	}
+
+
+	/**
+	 * @param index The index of a row
+	 * @return A copy of the bounding box of the voxels of the component
+	 */
+	public BoxROI getBoundingBox(int index){
+		int box = index*BOX_SIZE;
+		return new BoxROI(this.m_boxes[box + X_MIN], this.m_boxes[box + Y_MIN], this.m_boxes[box + Z_MIN],
+						  this.m_boxes[box + X_MAX], this.m_boxes[box + Y_MAX], this.m_boxes[box + Z_MAX]);
+	}
+
+
+	/**
+	 * @param index The index of a row
+	 * @return The number of voxels of the bounding box of the component
+	 */
+	public long getBoxVolume(int index){
+		int box = index*BOX_SIZE;
+		return Math.max(0L, (long)(this.m_boxes[box + X_MAX] - this.m_boxes[box + X_MIN])
+							*(this.m_boxes[box + Y_MAX] - this.m_boxes[box + Y_MIN])
+							*(this.m_boxes[box + Z_MAX] - this.m_boxes[box + Z_MIN]));
+	}
+
+
+	/**
+	 * Update the bounding box of a component to take into account that a given voxel
+	 * must be in the box.
+	 * @param index The index of a row
+	 * @param x first coordinate of a voxel that should be contained in the box.
+	 * @param y second coordinate of a voxel that should be contained in the box.
+	 * @param z third coordinate of a voxel that should be contained in the box.
+	 */
+	public void updateBox(int index, int x, int y, int z){
+		int box = index*BOX_SIZE;
+		if (x < this.m_boxes[box + X_MIN]){
+			this.m_boxes[box + X_MIN] = (short)x;
+		}
+		if (x >= this.m_boxes[box + X_MAX]){
+			this.m_boxes[box + X_MAX] = (short)(x+1);
+		}
+		if (y < this.m_boxes[box + Y_MIN]){
+			this.m_boxes[box + Y_MIN] = (short)y;
+		}
+		if (y >= this.m_boxes[box + Y_MAX]){
+			this.m_boxes[box + Y_MAX] = (short)(y+1);
+		}
+		if (z < this.m_boxes[box + Z_MIN]){
+			this.m_boxes[box + Z_MIN] = (short)z;
+		}
+		if (z >= this.m_boxes[box + Z_MAX]){
+			this.m_boxes[box + Z_MAX] = (short)(z+1);
+		}
+	}
+
+
+	/**
+	 * @param index The index of a row
+	 * @param axis A coordinate axis
+	 * @return The coordinate of the voxel representative of the component along the axis
+	 */
+	public int getRepresentant(int index, CoordinateAxis axis){
+		return this.m_representants[index*3 + (axis.getValue()-1)];
+	}
+
+
+	/**
+	 * @param index The index of a row
+	 * @return A copy of the voxel representative of the component
+	 */
+	public VoxelInt getRepresentant(int index){
+		return new VoxelInt(this.m_representants[index*3], this.m_representants[index*3 + 1],
+							this.m_representants[index*3 + 2]);
+	}
+
+
+	/**
+	 * @param index The index of a row
+	 * @param x first coordinate of the voxel representative of the component
+	 * @param y second coordinate of the voxel representative of the component
+	 * @param z third coordinate of the voxel representative of the component
+	 */
+	public void setRepresentant(int index, int x, int y, int z){
+		this.m_representants[index*3] = x;
+		this.m_representants[index*3 + 1] = y;
+		this.m_representants[index*3 + 2] = z;
+	}
+
+
+	/**
+	 * Allows to swap coordinates axis in the voxel's domain for one component, by modifying
+	 * the columns depending on coordinates (voxel representative and bounding box).
+	 * @param index The index of a row
+	 * @param axis1 The first axis to be swapped
+	 * @param axis2 The second axis to be swapped
+	 */
+	public void getAxisSwapped(int index, CoordinateAxis axis1, CoordinateAxis axis2){
+		swap(this.m_representants, index*3 + (axis1.getValue()-1), index*3 + (axis2.getValue()-1));
+		int box = index*BOX_SIZE;
+		short swap = this.m_boxes[box + (axis1.getValue()-1)];
+		this.m_boxes[box + (axis1.getValue()-1)] = this.m_boxes[box + (axis2.getValue()-1)];
+		this.m_boxes[box + (axis2.getValue()-1)] = swap;
+		swap = this.m_boxes[box + 3 + (axis1.getValue()-1)];
+		this.m_boxes[box + 3 + (axis1.getValue()-1)] = this.m_boxes[box + 3 + (axis2.getValue()-1)];
+		this.m_boxes[box + 3 + (axis2.getValue()-1)] = swap;
+	}
+
+
+	/**
+	 * Allows to swap coordinates axis in the voxel's domain for all the components.
+	 * @param axis1 The first axis to be swapped
+	 * @param axis2 The second axis to be swapped
+	 */
+	public void getAxisSwapped(CoordinateAxis axis1, CoordinateAxis axis2){
+		for (int index=0 ; index<this.m_size ; index++){
+			getAxisSwapped(index, axis1, axis2);
+		}
+	}
+
+
+	/**
+	 * Swaps two values of an array
+	 * @param array The array
+	 * @param i The index of the first value
+	 * @param j The index of the second value
+	 */
+	private static void swap(int[] array, int i, int j){
+		int swap = array[i];
+		array[i] = array[j];
+		array[j] = swap;
+	}
+
+} // End of class
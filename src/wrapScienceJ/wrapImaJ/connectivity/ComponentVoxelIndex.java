@@ -0,0 +1,300 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File: ComponentVoxelIndex.java                                           * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+
+
+package wrapScienceJ.wrapImaJ.connectivity;
+
+import wrapScienceJ.config.GlobalOptions;
+import wrapScienceJ.utils.SliceScheduler;
+import wrapScienceJ.utils.SliceScheduler.SliceTask;
+import wrapScienceJ.wrapImaJ.core.BoxROI;
+import wrapScienceJ.wrapImaJ.core.ImageCore;
+import wrapScienceJ.wrapImaJ.core.LabelSlices;
+import wrapScienceJ.wrapImaJ.core.SliceBuffer;
+
+/**
+ * Index of the voxels of the regions of a label image (e.g. the connected components),
+ * in compressed sparse row format: the linear indices (z*width*height + y*width + x) of the voxels
+ * of all the labels are packed in a single array, sorted by label and then by linear index,
+ * and the voxels of a label are those between its offset and the offset of the next label.
+ *
+ * The index allows to iterate over the voxels of a region in time proportional to its size
+ * (e.g. to measure or export a single object) instead of scanning the whole image or the
+ * bounding box of the region. It is built by {@link #build(LabelSlices, int)} in a counting pass
+ * and a filling pass over the labels, each task handling a block of slices.
+ * The background (label 0) is not indexed.
+ *
+ * Note that for slice by slice labelings, in which the labels are re-used from slice to slice,
+ * the components with the same label share their voxels in the index.
+ *
+ * @author Rémy Malgouyres
+ */
+public class ComponentVoxelIndex {
+
+	/**
+	 * Callback for the voxels of a region (see {@link ComponentVoxelIndex#forEachVoxel(int, VoxelVisitor)})
+	 */
+	public interface VoxelVisitor {
+		/**
+		 * Processes a voxel of the region
+		 * @param x first coordinate of the voxel
+		 * @param y second coordinate of the voxel
+		 * @param z third coordinate of the voxel
+		 */
+		public void visit(int x, int y, int z);
+	}
+
+	/** Offsets of the labels in m_voxels (maxLabel+2 values, the voxels of label l being between m_offsets[l] and m_offsets[l+1]) */
+	private int[] m_offsets;
+
+	/** Linear indices of the voxels of all the labels */
+	private int[] m_voxels;
+
+	/** Width of the label image */
+	private int m_width;
+
+	/** Height of the label image */
+	private int m_height;
+
+
+	/**
+	 * @param offsets Offsets of the labels in the voxels array
+	 * @param voxels Linear indices of the voxels of all the labels
+	 * @param width Width of the label image
+	 * @param height Height of the label image
+	 */
+	private ComponentVoxelIndex(int[] offsets, int[] voxels, int width, int height){
+		this.m_offsets = offsets;
+		this.m_voxels = voxels;
+		this.m_width = width;
+		this.m_height = height;
+	}
+
+
+	/**
+	 * Builds the index of the voxels of all the regions of a label image.
+	 * @param labels An 8 or 16 bits image, the gray levels of which are labels.
+	 * @param maxLabel The largest label to index (the voxels with larger labels are ignored).
+	 * @return The index of the voxels of the labels from 1 to maxLabel.
+	 * @throws IllegalStateException if the number of voxels of the image doesn't fit into an int.
+	 */
+	public static ComponentVoxelIndex build(ImageCore labels, int maxLabel){
+		return build(new LabelSlices(labels), maxLabel);
+	}
+
+
+	/**
+	 * Builds the index of the voxels of all the regions of a label volume.
+	 * @param labels The labels of the voxels (e.g. the labels of the connected components as ints).
+	 * @param maxLabel The largest label to index (the voxels with larger labels are ignored).
+	 * @return The index of the voxels of the labels from 1 to maxLabel.
+	 * @throws IllegalStateException if the number of voxels of the volume doesn't fit into an int.
+	 */
+	public static ComponentVoxelIndex build(final LabelSlices labels, final int maxLabel){
+		final int width = labels.getWidth();
+		final int height = labels.getHeight();
+		final int nSlices = labels.getDepth();
+		if ((long)width*height*nSlices > Integer.MAX_VALUE){
+			throw new IllegalStateException("Too many voxels to index the voxels of the components.");
+		}
+		final int nBlocks = Math.max(0, Math.min(nSlices, GlobalOptions.getParallelism()));
+
+		// First pass: count the voxels of each label in each block
+		final int[][] blockCounts = new int[nBlocks][];
+		SliceScheduler.forEachSlice(nBlocks, new SliceTask() {
+			@Override
+			public void processSlice(int block) {
+				int[] counts = new int[maxLabel+1];
+				int zMax = getBlockStart(block+1, nSlices, nBlocks);
+				for (int z=getBlockStart(block, nSlices, nBlocks) ; z<zMax ; z++){
+					for (int y=0 ; y<height ; y++){
+						int index = y*width;
+						for (int x=0 ; x<width ; x++, index++){
+							int label = labels.get(z, index);
+							if (label <= maxLabel){
+								counts[label]++;
+							}
+						}
+					}
+				}
+				blockCounts[block] = counts;
+			}
+		});
+
+		// Offsets of the labels, and positions of the first voxel of each label in each block
+		int[] offsets = new int[maxLabel+2];
+		int position = 0;
+		for (int label=1 ; label<=maxLabel ; label++){
+			offsets[label] = position;
+			for (int block=0 ; block<nBlocks ; block++){
+				int count = blockCounts[block][label];
+				blockCounts[block][label] = position;
+				position += count;
+			}
+		}
+		// offsets[0] = offsets[1] = 0: the background is not indexed
+		offsets[maxLabel+1] = position;
+
+		// Second pass: fill the voxels of each label, in the order of their linear indices
+		final int[] voxels = new int[position];
+		SliceScheduler.forEachSlice(nBlocks, new SliceTask() {
+			@Override
+			public void processSlice(int block) {
+				int[] positions = blockCounts[block];
+				int zMax = getBlockStart(block+1, nSlices, nBlocks);
+				for (int z=getBlockStart(block, nSlices, nBlocks) ; z<zMax ; z++){
+					int linearIndex = z*width*height;
+					for (int y=0 ; y<height ; y++){
+						int index = y*width;
+						for (int x=0 ; x<width ; x++, index++, linearIndex++){
+							int label = labels.get(z, index);
+							if (label > 0 && label <= maxLabel){
+								voxels[positions[label]++] = linearIndex;
+							}
+						}
+					}
+				}
+			}
+		});
+		return new ComponentVoxelIndex(offsets, voxels, width, height);
+	}
+
+
+	/**
+	 * @param block The index of a block of slices (or the number of blocks)
+	 * @param nSlices The number of slices
+	 * @param nBlocks The number of blocks
+	 * @return The first slice of the block (or the number of slices)
+	 */
+	private static int getBlockStart(int block, int nSlices, int nBlocks){
+		return (int)(((long)block*nSlices)/nBlocks);
+	}
+
+
+	/**
+	 * @return The largest label in the index
+	 */
+	public int getMaxLabel(){
+		return this.m_offsets.length-2;
+	}
+
+
+	/**
+	 * @param label A label between 1 and {@link #getMaxLabel()}
+	 * @return The position of the first voxel of the label (see {@link #getVoxelIndex(int)})
+	 */
+	public int getStart(int label){
+		return this.m_offsets[label];
+	}
+
+
+	/**
+	 * @param label A label between 1 and {@link #getMaxLabel()}
+	 * @return The position after the last voxel of the label (see {@link #getVoxelIndex(int)})
+	 */
+	public int getEnd(int label){
+		return this.m_offsets[label+1];
+	}
+
+
+	/**
+	 * @param label A label between 1 and {@link #getMaxLabel()}
+	 * @return The number of voxels with the label
+	 */
+	public int getNumberOfVoxels(int label){
+		return this.m_offsets[label+1] - this.m_offsets[label];
+	}
+
+
+	/**
+	 * @param position A position between {@link #getStart(int)} and {@link #getEnd(int)} for a label
+	 * @return The linear index (z*width*height + y*width + x) of the voxel at that position.
+	 */
+	public int getVoxelIndex(int position){
+		return this.m_voxels[position];
+	}
+
+
+	/**
+	 * @param voxelIndex The linear index of a voxel
+	 * @return The first coordinate of the voxel
+	 */
+	public int getX(int voxelIndex){
+		return voxelIndex % this.m_width;
+	}
+
+
+	/**
+	 * @param voxelIndex The linear index of a voxel
+	 * @return The second coordinate of the voxel
+	 */
+	public int getY(int voxelIndex){
+		return (voxelIndex / this.m_width) % this.m_height;
+	}
+
+
+	/**
+	 * @param voxelIndex The linear index of a voxel
+	 * @return The third coordinate of the voxel
+	 */
+	public int getZ(int voxelIndex){
+		return voxelIndex / (this.m_width*this.m_height);
+	}
+
+
+	/**
+	 * Calls a visitor on each voxel of a label, in the order of their linear indices.
+	 * @param label A label between 1 and {@link #getMaxLabel()}
+	 * @param visitor The callback for the voxels
+	 */
+	public void forEachVoxel(int label, VoxelVisitor visitor){
+		int sliceSize = this.m_width*this.m_height;
+		for (int position=this.m_offsets[label] ; position<this.m_offsets[label+1] ; position++){
+			int voxelIndex = this.m_voxels[position];
+			int z = voxelIndex / sliceSize;
+			int indexInSlice = voxelIndex - z*sliceSize;
+			visitor.visit(indexInSlice % this.m_width, indexInSlice / this.m_width, z);
+		}
+	}
+
+
+	/**
+	 * @param label A label between 1 and {@link #getMaxLabel()}
+	 * @return The bounding box of the voxels with the label (an empty box if there are none)
+	 */
+	public BoxROI getBoundingBox(int label){
+		final BoxROI box = new BoxROI();
+		forEachVoxel(label, new VoxelVisitor() {
+			@Override
+			public void visit(int x, int y, int z) {
+				box.updateBox(x, y, z);
+			}
+		});
+		return box;
+	}
+
+
+	/**
+	 * @param label A label between 1 and {@link #getMaxLabel()}
+	 * @param intensity An image with the same size as the label image
+	 * @return The sum of the gray levels of the voxels with the label in the image
+	 */
+	public long getTotalIntensity(int label, ImageCore intensity){
+		final SliceBuffer[] slices = SliceBuffer.getSliceBuffers(intensity);
+		final long[] sum = new long[1];
+		forEachVoxel(label, new VoxelVisitor() {
+			@Override
+			public void visit(int x, int y, int z) {
+				sum[0] += slices[z].get(x, y);
+			}
+		});
+		return sum[0];
+	}
+
+} // End of class
@@ -12,13 +12,24 @@ package wrapScienceJ.wrapImaJ.connectivity;
 
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
+import wrapScienceJ.utils.SliceScheduler;
+import wrapScienceJ.utils.SliceScheduler.SliceTask;
+import wrapScienceJ.wrapImaJ.connectivity.filtering.ComponentLevelPredicate;
+import wrapScienceJ.wrapImaJ.connectivity.filtering.ComponentPredicateValue;
 import wrapScienceJ.wrapImaJ.connectivity.filtering.ComponentRemovalPredicate;
 import wrapScienceJ.wrapImaJ.connectivity.filtering.predefined.ComponentRemovalNone;
+import wrapScienceJ.wrapImaJ.core.BoxROI;
 import wrapScienceJ.wrapImaJ.core.CoordinateAxis;
 import wrapScienceJ.wrapImaJ.core.ImageCore;
+import wrapScienceJ.wrapImaJ.core.LabelSlices;
+import wrapScienceJ.wrapImaJ.core.SliceBuffer;
 import wrapScienceJ.wrapImaJ.core.VoxelInt;
 import wrapScienceJ.wrapImaJ.core.VoxelShort;
+import wrapScienceJ.wrapImaJ.core.operation.ImageThresholding;
+import wrapScienceJ.wrapImaJ.core.operation.ThresholdingOption;
+import wrapScienceJ.wrapImaJ.wrappers.view.core.ImageCoreView;
 
 
 /**
@@ -32,12 +43,15 @@ import wrapScienceJ.wrapImaJ.core.VoxelShort;
  * </ul>
  * An option in the filtering method allows to modify the input image to set random grey
  * levels on each component.
+ * Optionally, the labeling before the filtering is kept, so that the components can be
+ * filtered again with other criteria (e.g. for parameter sweeps) by
+ * {@link #refilterComponents(ImageCore, boolean, double, ComponentRemovalPredicate, boolean, boolean)},
+ * in a single pass over the voxels, without labeling them again.
  *
  * RESTRICTIONS
- * The total number of connected components labeled must remain smaller
- * than the number of labels available which is less than 2* Short.MAX_VALUE -2.
- * This can be guaranteed by imposing the connected components considered
- * have at least (total number of voxels)/(2* Short.MAX_VALUE -2) voxels.
+ * The labels are stored as integers, so that the number of connected components
+ * is not limited in practice. However, the labels can only be converted to an image
+ * by {@link #getLabelsAsImage()} if there are at most 65535 components (GRAY16).
  * 
  */
 public abstract class ConnectedComponent {
@@ -54,13 +68,26 @@ public abstract class ConnectedComponent {
 
 	/**
 	 * Components Information (cardinality, label, voxel representative, etc.)
+	 * with one row per component.
 	 */
-	protected ArrayList<ComponentInfo> m_compInfo;
+	protected ComponentTable m_components;
 	
 	/**
-	 * Array containing the label of each voxel
+	 * Array containing the label of each voxel, for the labelings whose number of labels
+	 * is not bounded (null if the labels are stored as shorts)
 	 */
-	private short[][] m_labels;
+	private int[][] m_labels;
+	
+	/**
+	 * Array containing the label of each voxel as an unsigned short, for the labelings
+	 * whose labels fit into 16 bits (null if the labels are stored as ints)
+	 */
+	private short[][] m_shortLabels;
+	
+	/**
+	 * true if the labels are stored as unsigned shorts (two bytes per voxel instead of four)
+	 */
+	private boolean m_useShortLabels;
 	
 	/**
 	 * Image width for labels array access withour method call
@@ -70,7 +97,7 @@ public abstract class ConnectedComponent {
 	/**
 	 * Once components are labeled, their memory footprint might be reduced to a byte.
 	 * In that process, they will be stored in an ImageCore. The {@link #getLabel(int, int, int)}
-	 * and {@link #setLabel(int, int, int, short)} methods then use that image.
+	 * and {@link #setLabel(int, int, int, int)} methods then use that image.
 	 * 
 	 */
 	private ImageCore m_labelsImage;
@@ -86,6 +113,25 @@ public abstract class ConnectedComponent {
 	 */
 	private LabelingPolicy m_labelingPolicy;
 	
+	/**
+	 * Labels of the voxels before the filtering of the components, kept to filter
+	 * the components again with other criteria without labeling them again
+	 * (null unless the labeling is kept, see {@link #refilterComponents(ImageCore, boolean, double, ComponentRemovalPredicate, boolean, boolean)}).
+	 */
+	private LabelSlices m_rawLabels;
+	
+	/**
+	 * Components Information before the filtering of the components
+	 * (null unless the labeling is kept).
+	 */
+	private ComponentTable m_rawComponents;
+	
+	/**
+	 * Index of the voxels of each component, built on demand from the labels
+	 * (see {@link #getComponentVoxelIndex()}).
+	 */
+	private ComponentVoxelIndex m_voxelIndex;
+	
 	
 	/**
 	 * @return The image which is used as input for labeling
@@ -100,34 +146,68 @@ public abstract class ConnectedComponent {
 	 * @param x first coordinate of the voxel
 	 * @param y second coordinate of the voxel
 	 * @param z third coordinate of the voxel
-	 * @return the label of the input voxel (0 if not in any connected component)
+	 * @return the label of the input voxel ({@link #undefinedLabel()} if not in any connected component)
 	 */
-	public short getLabel(int x, int y, int z){
+	public int getLabel(int x, int y, int z){
 		if (this.m_labelsImage != null){
-			return (short)this.m_labelsImage.getVoxel(x, y, z);
+			return this.m_labelsImage.getVoxel(x, y, z);
+		}
+		return getLabelAt(z, y*this.m_width+x);
+	}
+	
+	/**
+	 * Retrieves the label of a voxel during the labeling process
+	 * (before the labels are converted to an image by {@link #getLabelsAsImage()}).
+	 * @param z third coordinate of the voxel
+	 * @param index linear index y*width+x of the voxel in its slice
+	 * @return the label of the voxel ({@link #undefinedLabel()} if not in any connected component)
+	 */
+	protected final int getLabelAt(int z, int index){
+		if (this.m_useShortLabels){
+			return this.m_shortLabels[z][index] & 0xffff;
+		}
+		return this.m_labels[z][index];
+	}
+	
+	/**
+	 * Sets the label of a voxel during the labeling process.
+	 * @param z third coordinate of the voxel
+	 * @param index linear index y*width+x of the voxel in its slice
+	 * @param label the label of the voxel ({@link #undefinedLabel()} if not in any connected component)
+	 * @throws IllegalStateException if the labels are stored as shorts and the label exceeds 65535.
+	 */
+	protected final void setLabelAt(int z, int index, int label){
+		if (this.m_useShortLabels){
+			if (label > 0xffff){
+				throw new IllegalStateException("Too many connected components for labels stored as shorts.");
+			}
+			this.m_shortLabels[z][index] = (short)label;
+		}else{
+			this.m_labels[z][index] = label;
 		}
-		return this.m_labels[z][y*this.m_width+x];
 	}
 
 	/**
-	 * Returns the short label value corresponding to an unlabeled voxel.
+	 * Returns the label value corresponding to an unlabeled voxel.
 	 * This "undefined" label is smaller than all the used labels which are contiguous.
-	 * @return Short.MIN_VALUE
+	 * It is also the gray level of the background in the image returned by
+	 * {@link #getLabelsAsImage()}.
+	 * @return 0
 	 */
-	protected static short undefinedLabel(){
-		return Short.MIN_VALUE;
+	protected static int undefinedLabel(){
+		return 0;
 	}
 	
 	/**
 	 * Returns a non negative index to map the set of used labels (greater than
-	 * {@link #undefinedLabel()}) to consecutive non-negative unsigned shorts,
+	 * {@link #undefinedLabel()}) to consecutive non-negative integers,
 	 * to be used as keys in an indexed list (e.g. {@link ArrayList}).
 	 * 
-	 * @param label A used connected component label (grater than {@link Short.MIN_VALUE})
+	 * @param label A used connected component label (greater than {@link #undefinedLabel()})
 	 * @return A non negative integer to be used as index
 	 */
-	protected static int indexFromLabel(short label){
-		return -Short.MIN_VALUE+label-1;
+	protected static int indexFromLabel(int label){
+		return label-1;
 	}
 	/**
 	 * retrieves the label of a voxel (after calling doComponents)
@@ -136,18 +216,64 @@ public abstract class ConnectedComponent {
 	 * @param z third coordinate of the voxel
 	 * @param label the label of the input voxel (0 if not in any connected component)
 	 */
-	protected void setLabel(int x, int y, int z, short label){
-		this.m_labels[z][y*this.m_width+x] = label;
+	protected void setLabel(int x, int y, int z, int label){
+		setLabelAt(z, y*this.m_width+x, label);
+	}
+
+	/**
+	 * Allows direct access to the labels of a slice during the labeling process
+	 * (before the labels are converted to an image by {@link #getLabelsAsImage()}),
+	 * for the labelings whose labels are stored as ints.
+	 * The label of the voxel (x, y, z) is at index y*width+x in the returned array.
+	 * @param z third coordinate of the slice
+	 * @return the array of the labels of the slice (not a copy)
+	 * @throws IllegalStateException if the labels are stored as shorts.
+	 */
+	protected int[] getLabelsSlice(int z){
+		if (this.m_useShortLabels){
+			throw new IllegalStateException("The labels are stored as shorts.");
+		}
+		return this.m_labels[z];
 	}
 	
+	/**
+	 * Allocates the labels of the voxels, all set to {@link #undefinedLabel()}.
+	 */
+	private void allocateLabels(){
+		int depth = this.m_inputImage.getDepth();
+		int sliceSize = this.m_inputImage.getWidth()*this.m_inputImage.getHeight();
+		// Java initializes the labels to 0, which is the undefined label
+		if (this.m_useShortLabels){
+			this.m_shortLabels = new short[depth][sliceSize];
+		}else{
+			this.m_labels = new int[depth][sliceSize];
+		}
+	}
+
 	/**
 	 * Initializes the fields of this instance (to be called in derived classes constructors)
 	 * The input image must have type Gray8.
+	 * The labels are stored as ints.
 	 * @param inputImage : input (probably binary) image, the components of which to compute.
 	 * @param foregroundColor label of the 1's in the input image ip
 	 * @throws IllegalStateException if the image doesn't have type GRAY8.
 	 */
 	protected ConnectedComponent(ImageCore inputImage, int foregroundColor) throws IllegalStateException {
+		this(inputImage, foregroundColor, false);
+	}
+
+	/**
+	 * Initializes the fields of this instance (to be called in derived classes constructors)
+	 * The input image must have type Gray8.
+	 * @param inputImage : input (probably binary) image, the components of which to compute.
+	 * @param foregroundColor label of the 1's in the input image ip
+	 * @param useShortLabels true if the labels should be stored as unsigned shorts (two bytes per voxel),
+	 * 						 for the labelings whose labels never exceed 65535, and false if they
+	 * 						 should be stored as ints (four bytes per voxel).
+	 * @throws IllegalStateException if the image doesn't have type GRAY8.
+	 */
+	protected ConnectedComponent(ImageCore inputImage, int foregroundColor, boolean useShortLabels)
+								 throws IllegalStateException {
 		if (inputImage.getBitDepth() != 8){
 			throw new IllegalStateException("Images must have type GRAY8 (typically binary)" +
 											" for their connected components to be labeled.");
@@ -160,16 +286,10 @@ public abstract class ConnectedComponent {
 		this.m_voxelVolume =  this.m_inputImage.getImageCalibration().getVolume();
 
 		this.m_foregroundColor = foregroundColor;
-		this.m_labels = new short[this.m_inputImage.getDepth()][this.m_inputImage.getWidth()*this.m_inputImage.getHeight()];
-		for (int k=0 ; k<this.m_inputImage.getDepth() ; k++){
-			for (int j=0 ; j<this.m_inputImage.getHeight() ; j++){
-				for (int i=0 ; i<this.m_inputImage.getWidth() ; i++){
-					this.m_labels[k][j*this.m_inputImage.getWidth()+i] = Short.MIN_VALUE;
-				}
-			}
-		}
+		this.m_useShortLabels = useShortLabels;
+		allocateLabels();
 		
-		this.m_compInfo = new ArrayList<ComponentInfo>();    
+		this.m_components = new ComponentTable(16);
 	}
 
 	
@@ -190,7 +310,7 @@ public abstract class ConnectedComponent {
 	 * @param thresholdComponentVolume minimal volume for filtering (taking into account the calibration) for the components. 0 if no minimal volume is required 
 	 * @param setRandomColors true if the colors of the original image should be set according to the components labels.
 	 * @return an instance of a concrete derived class for ConnectedComponent
-	 * @throws IllegalStateException in case the number of connected components exceeds the Short.MAX_VALUE (32767)
+	 * @throws IllegalStateException in case of overflow of the number of connected components
 	 * 	 							 or if the image doesn't have type GRAY8.
 	 */
 	public static ConnectedComponent getLabeledComponents(
@@ -219,7 +339,8 @@ public abstract class ConnectedComponent {
 	 * components labeling against an axis other than Z.
 	 * @param inputImage The input image for the components labeling process
 	 * @param swappedImage The image with axis swapped for labeling against another axis than Z
-	 * 					   and which should be copied back to the input image in case the colors changed.
+	 * 					   (a view on the input image) and which should be copied back to
+	 * 					   the input image in case the colors changed.
 	 * @param labelingPolicy Can be 3D components labeling, or slice by slice against a given axis.
 	 * 
 	 */
@@ -237,14 +358,15 @@ public abstract class ConnectedComponent {
 										 .getAxisSwapped(axisToSwap, CoordinateAxis.Z);
 			this.m_labelsImage = labelsSwapped;
 			
-			swappedImage.getImageDomainTransform().copyAxisSwapped(inputImage, axisToSwap, CoordinateAxis.Z);
+			// The swapped image is a copy on write view: only copy back if the colors changed
+			if (!(swappedImage instanceof ImageCoreView) || ((ImageCoreView)swappedImage).hasPrivateSlices()){
+				swappedImage.getImageDomainTransform().copyAxisSwapped(inputImage, axisToSwap, CoordinateAxis.Z);
+			}
 			this.m_inputImage = inputImage;
 			
 			this.m_width = inputImage.getWidth();
 			
-			for (ComponentInfo compInfo: this.m_compInfo){
-				compInfo.getAxisSwapped(axisToSwap, CoordinateAxis.Z);
-			}
+			this.m_components.getAxisSwapped(axisToSwap, CoordinateAxis.Z);
 		}
 	}
 	
@@ -266,7 +388,7 @@ public abstract class ConnectedComponent {
 	 * @param keepPredicate true if we should keep the components with a voxel satisfying removalPredicate, and false if we should remove the components with a voxel satisfying removalPredicate 
 	 * @param setRandomColors true if the colors of the original image should be set according to the components labels.
 	 * @return an instance of a concrete derived class for ConnectedComponent
-	 * @throws IllegalStateException  in case the number of connected components exceeds the Short.MAX_VALUE (32767)
+	 * @throws IllegalStateException  in case of overflow of the number of connected components
 	 * 	 							 or if the image doesn't have type GRAY8.
 	 */
 	public static ConnectedComponent getLabeledComponents(
@@ -280,23 +402,78 @@ public abstract class ConnectedComponent {
 												boolean setRandomColors
 												) throws IllegalStateException {
 		
+		return getLabeledComponents(inputImage, labelingPolicy, foregroundColor,
+									removeBorderComponent, thresholdComponentVolume,
+									removalPredicate, keepPredicate, setRandomColors,
+									false // Don't keep the labeling before the filtering
+									);
+	}
+	
+	/**
+	 * Constructs a ConnectedComponent derived class instance with relevant dimension
+	 * (2D or 3D) and labels the components.
+	 * The input image must have type Gray8.
+	 * Filters the image components according to two criteria:
+	 * <ul>
+	 *    <li>Possibly remove the components which are on the edge of the image</li>
+	 *    <li>Possibly remove the components with size bellow some threshold</li>
+	 * </ul>
+	 * @param inputImage : input (probably binary) image, the components of which to compute.
+	 * @param labelingPolicy Can be 3D components labeling, or slice by slice against a given axis.
+	 * @param foregroundColor label of the 1's in the input image inputImage
+	 * @param removeBorderComponent true if the components which are on the edge of the image should be removed by filtering
+	 * @param thresholdComponentVolume minimal volume for filtering (taking into account the calibration) for the components. 0 if no minimal volume is required 
+	 * @param removalPredicate a predicate according to which components should be filtered out
+	 * @param keepPredicate true if we should keep the components with a voxel satisfying removalPredicate, and false if we should remove the components with a voxel satisfying removalPredicate 
+	 * @param setRandomColors true if the colors of the original image should be set according to the components labels.
+	 * @param keepRawLabeling true if the labeling before the filtering should be kept, so that the components can be
+	 * 						  filtered again by {@link #refilterComponents(ImageCore, boolean, double, ComponentRemovalPredicate, boolean, boolean)}
+	 * 						  (which requires another array of labels in memory, i.e. 2 bytes per voxel
+	 * 						  for the Full3D and slice by slice policies and 4 bytes per voxel for the other
+	 * 						  policies, until {@link #releaseRawLabeling()} is called).
+	 * @return an instance of a concrete derived class for ConnectedComponent
+	 * @throws IllegalStateException  in case of overflow of the number of connected components
+	 * 	 							 or if the image doesn't have type GRAY8.
+	 * @throws IllegalArgumentException if the labeling should be kept with a slice by slice labeling
+	 * 									against another axis than Z.
+	 */
+	public static ConnectedComponent getLabeledComponents(
+												ImageCore inputImage,
+												LabelingPolicy labelingPolicy,
+												int foregroundColor,
+												boolean removeBorderComponent, 
+												double thresholdComponentVolume,
+												ComponentRemovalPredicate removalPredicate,
+												boolean keepPredicate,
+												boolean setRandomColors,
+												boolean keepRawLabeling
+												) throws IllegalStateException {
+		if (keepRawLabeling && (labelingPolicy == LabelingPolicy.X_2D || labelingPolicy == LabelingPolicy.Y_2D)){
+			throw new IllegalArgumentException("The labeling can only be kept for 3D labelings or "
+											   + "slice by slice labelings against the Z axis.");
+		}
+		
 		ConnectedComponent cc;
 		ImageCore swappedImage = null;
 		switch(labelingPolicy){
 			case Full3D:
-				cc = new ConnectedComponent3D(inputImage, foregroundColor);
+				// The minimal size of the components bounds their number
+				cc = new ConnectedComponent3D(inputImage, foregroundColor, true);
 				break;
 			case Full3D_noSecureSize:
-				cc = new ConnectedComponent3D(inputImage, foregroundColor);
+				cc = new ConnectedComponent3D(inputImage, foregroundColor, false);
+				break;
+			case Full3D_Parallel:
+				cc = new ConnectedComponent3DUnionFind(inputImage, foregroundColor);
 				break;
 			case X_2D :
 				swappedImage = inputImage.getImageDomainTransform()
-										 .getAxisSwapped(CoordinateAxis.X, CoordinateAxis.Z);
+										 .getAxisSwappedView(CoordinateAxis.X, CoordinateAxis.Z);
 				cc = new ConnectedComponent2D(swappedImage, foregroundColor);
 				break;
 			case Y_2D :
 				swappedImage = inputImage.getImageDomainTransform()
-										 .getAxisSwapped(CoordinateAxis.Y, CoordinateAxis.Z);
+										 .getAxisSwappedView(CoordinateAxis.Y, CoordinateAxis.Z);
 				cc = new ConnectedComponent2D(swappedImage, foregroundColor);
 				break;
 			case Z_2D :
@@ -308,25 +485,12 @@ public abstract class ConnectedComponent {
 		
 		cc.m_labelingPolicy = labelingPolicy;
 		
-		// Limit lowest volume of components so that labels can fit into a short
-		int lowThresholdNbPoints;
-		if (labelingPolicy == LabelingPolicy.Full3D){
-			// The total number of connected components labeled must remain smaller
-			// than the number of labels available which is less than 2* Short.MAX_VALUE -2.
-			// This can be guaranteed by imposing the connected components considered
-			// have at least (total number of voxels)/(2* Short.MAX_VALUE -2) voxels.
-			lowThresholdNbPoints = (inputImage.getWidth()*inputImage.getHeight()
-									*inputImage.getDepth())/(2* Short.MAX_VALUE -2);
-		}else{
-			if (labelingPolicy == LabelingPolicy.Full3D_noSecureSize){
-				lowThresholdNbPoints = 0;
-			}else{
-				lowThresholdNbPoints = (inputImage.getWidth()*inputImage.getHeight())/(2*Short.MAX_VALUE-2);
-			}
+		cc.doLabelConnectedComponent(getLowThresholdNbPoints(inputImage, labelingPolicy));
+		
+		if (keepRawLabeling){
+			cc.keepRawLabeling();
 		}
 
-		cc.doLabelConnectedComponent(lowThresholdNbPoints);
-
 		cc.filterComponents(removeBorderComponent, thresholdComponentVolume, 
 				removalPredicate,
 				keepPredicate,
@@ -337,28 +501,143 @@ public abstract class ConnectedComponent {
 		return cc;
 	}	
 	
+	/**
+	 * Binarizes an image and labels its 3D connected components, the binarization being
+	 * performed during the labeling: each slice is binarized by the task which labels its slab,
+	 * just before it is labeled, so that the image is not read in a separate pass.
+	 * The voxels with gray level greater than or equal to the threshold are set to 255 and
+	 * the other voxels are set to 0, as by
+	 * {@link wrapScienceJ.wrapImaJ.core.operation.ImageThresholding#applyImageThresholdAndBinarize(int, boolean)}.
+	 * The components are labeled by {@link ConnectedComponent3DUnionFind}, which gives the same
+	 * labels as {@link ConnectedComponent3D}.
+	 * @param inputImage : input GRAY8 image, which is binarized.
+	 * @param threshold The binarization threshold
+	 * @param labelingPolicy A 3D labeling policy, which determines the lowest number of
+	 * 						 voxels of the components kept by the labeling.
+	 * @param foregroundColor label of the 1's in the binarized image (typically 255)
+	 * @param removeBorderComponent true if the components which are on the edge of the image should be removed by filtering
+	 * @param thresholdComponentVolume minimal volume for filtering (taking into account the calibration) for the components. 0 if no minimal volume is required 
+	 * @param setRandomColors true if the colors of the original image should be set according to the components labels.
+	 * @return the labeled connected components
+	 * @throws IllegalStateException  in case of overflow of the number of connected components
+	 * 	 							 or if the image doesn't have type GRAY8.
+	 * @throws IllegalArgumentException if the labeling policy is a slice by slice policy.
+	 */
+	public static ConnectedComponent getLabeledComponentsBinarized(
+												ImageCore inputImage,
+												int threshold,
+												LabelingPolicy labelingPolicy,
+												int foregroundColor,
+												boolean removeBorderComponent, 
+												double thresholdComponentVolume,
+												boolean setRandomColors
+												) throws IllegalStateException {
+		if (labelingPolicy != LabelingPolicy.Full3D &&
+			labelingPolicy != LabelingPolicy.Full3D_noSecureSize &&
+			labelingPolicy != LabelingPolicy.Full3D_Parallel){
+			throw new IllegalArgumentException("Binarization during the labeling requires a 3D labeling policy.");
+		}
+		ConnectedComponent3DUnionFind unionFind = new ConnectedComponent3DUnionFind(inputImage, foregroundColor);
+		unionFind.setBinarizationThreshold(threshold);
+		ConnectedComponent cc = unionFind;
+		cc.m_labelingPolicy = labelingPolicy;
+		cc.doLabelConnectedComponent(getLowThresholdNbPoints(inputImage, labelingPolicy));
+		cc.filterComponents(removeBorderComponent, thresholdComponentVolume, setRandomColors);
+		
+		return cc;
+	}
+	
+	/**
+	 * @param inputImage The image to label
+	 * @param labelingPolicy The labeling policy
+	 * @return The lowest number of voxels of the components kept by the labeling.
+	 */
+	private static int getLowThresholdNbPoints(ImageCore inputImage, LabelingPolicy labelingPolicy){
+		if (labelingPolicy == LabelingPolicy.Full3D){
+			// Historically, labels were stored as shorts, and the components
+			// were required to have at least (total number of voxels)/(2* Short.MAX_VALUE -2)
+			// voxels so that their number could not exceed 2* Short.MAX_VALUE -2.
+			// The same minimal size is kept so that the results remain unchanged.
+			return (inputImage.getWidth()*inputImage.getHeight()
+					*inputImage.getDepth())/(2* Short.MAX_VALUE -2);
+		}
+		if (labelingPolicy == LabelingPolicy.Full3D_noSecureSize ||
+			labelingPolicy == LabelingPolicy.Full3D_Parallel){
+			return 0;
+		}
+		return (inputImage.getWidth()*inputImage.getHeight())/(2*Short.MAX_VALUE-2);
+	}
+	
+	/**
+	 * Keeps a copy of the labels and of the components informations before the filtering,
+	 * so that the components can be filtered again.
+	 */
+	private void keepRawLabeling(){
+		int width = this.m_inputImage.getWidth();
+		int height = this.m_inputImage.getHeight();
+		if (this.m_useShortLabels){
+			final short[][] labels = this.m_shortLabels;
+			final short[][] rawLabels = new short[labels.length][];
+			SliceScheduler.forEachSlice(labels.length, new SliceTask() {
+				@Override
+				public void processSlice(int z) {
+					rawLabels[z] = labels[z].clone();
+				}
+			});
+			this.m_rawLabels = new LabelSlices(rawLabels, width, height);
+		}else{
+			final int[][] labels = this.m_labels;
+			final int[][] rawLabels = new int[labels.length][];
+			SliceScheduler.forEachSlice(labels.length, new SliceTask() {
+				@Override
+				public void processSlice(int z) {
+					rawLabels[z] = labels[z].clone();
+				}
+			});
+			this.m_rawLabels = new LabelSlices(rawLabels, width, height);
+		}
+		this.m_rawComponents = new ComponentTable(this.m_components);
+	}
+	
+	/**
+	 * Releases the labeling kept before the filtering (if any), e.g. when the labeled image
+	 * has been modified, so that the components can no longer be filtered again.
+	 */
+	public void releaseRawLabeling(){
+		this.m_rawLabels = null;
+		this.m_rawComponents = null;
+	}
+	
+	/**
+	 * @return true if the labeling before the filtering is kept, so that the components can be
+	 * 		   filtered again by {@link #refilterComponents(ImageCore, boolean, double, ComponentRemovalPredicate, boolean, boolean)}.
+	 */
+	public boolean hasRawLabeling(){
+		return this.m_rawLabels != null;
+	}
+	
 	/**
 	 * retrieves the number of connected components (as constructed by doComponents)
 	 * @return the number of components detected.
 	 */
 	public int getNumberOfComponents(){
-		return this.m_compInfo.size();
+		return this.m_components.size();
 	}
 
 
 	/**
 	 * Retrieves the informations about a component for its label
 	 * may return null if the component does not exist or has been erased because below volume threshold or on the border.
-	 * @param label the component label (Can be negative and can be shifted to access a list index)
+	 * @param label the component label (can be shifted to access a list index)
 	 * @return the ComponentInfo instance of the component with the considered label. returns null if the component info is undefined
-	 * @see #indexFromLabel(short)
+	 * @see #indexFromLabel(int)
 	 */
-	public ComponentInfo getComponentInfo(short label){
+	public ComponentInfo getComponentInfoFromLabel(int label){
 		try{
-			if (label == Short.MIN_VALUE){
+			if (label == undefinedLabel()){
 				return null;
 			}
-			ComponentInfo ci = this.m_compInfo.get(indexFromLabel(label));
+			ComponentInfo ci = this.m_components.get(indexFromLabel(label));
 			if (ci.getnumberOfPoints() ==0){
 				return null;
 			}
@@ -379,7 +658,7 @@ public abstract class ConnectedComponent {
 			if (labelIndex < 0){
 				return null;
 			}			
-			ComponentInfo ci = this.m_compInfo.get(labelIndex);
+			ComponentInfo ci = this.m_components.get(labelIndex);
 			if (ci.getnumberOfPoints() ==0){
 				return null;
 			}
@@ -395,9 +674,9 @@ public abstract class ConnectedComponent {
 	 */
 	public ArrayList<VoxelInt> getVoxelRepresentants(){
 		ArrayList<VoxelInt> tabVoxels = new ArrayList<VoxelInt>();
-		for (ComponentInfo ci : this.m_compInfo){
-			if (ci.getnumberOfPoints() > 0){
-				tabVoxels.add(ci.getRepresentant());
+		for (int i = 0 ; i < this.m_components.size() ; ++i){
+			if (this.m_components.getNumberOfPoints(i) > 0){
+				tabVoxels.add(this.m_components.getRepresentant(i));
 			}
 		}
 		return tabVoxels;
@@ -407,7 +686,7 @@ public abstract class ConnectedComponent {
 	 * labels the connected components of the input image (attribute this.m_ip)
 	 * @param lowThresholdNbPoints Lower limit of number of points below which
 	 * 							   connected components will be dropped
-	 * @throws IllegalStateException in case the number of connected components exceeds the Short.MAX_VALUE (32767)
+	 * @throws IllegalStateException in case of overflow of the number of connected components
 	 */ 	
 	abstract void doLabelConnectedComponent(int lowThresholdNbPoints) throws IllegalStateException;
 
@@ -416,9 +695,11 @@ public abstract class ConnectedComponent {
 	 * for further processing.
 	 * If the largest label fits into a Byte, the output image has type GRAY8.
 	 * Otherwise, the output image has type GRAY16.
+	 * The background voxels have gray level {@link #undefinedLabel()}.
 	 * 
 	 * @return An image with gray level values giving the connected component label
 	 *         for each voxel.
+	 * @throws IllegalStateException if the largest label doesn't fit into a GRAY16 image.
 	 */
 	public ImageCore getLabelsAsImage(){
 		
@@ -428,34 +709,68 @@ public abstract class ConnectedComponent {
 
 		// Note that in the case of a slice by slice component labeling,
 		// the labels are re-used from slice to slice, so that the
-		// maximal label value can be smaller than this.m_compInfo.size()
+		// maximal label value can be smaller than this.m_components.size()
 		int maxLabel = undefinedLabel();
-		for (int i = 0 ; i < this.m_compInfo.size() ; ++i){
-			if (this.m_compInfo.get(i).getLabel() > maxLabel){
-				maxLabel = this.m_compInfo.get(i).getLabel();
+		for (int i = 0 ; i < this.m_components.size() ; ++i){
+			if (this.m_components.getLabel(i) > maxLabel){
+				maxLabel = this.m_components.getLabel(i);
 			}
 		}
 		
 		// If the number of components fits into a byte, we can save memory
 		// which might be worthwhile.
 		int bitDepth = 16;
-		if (maxLabel - undefinedLabel() < 256){
+		if (maxLabel < 256){
 			bitDepth = 8;
 		}
+		if (maxLabel > 0xffff){
+			throw new IllegalStateException("Too many connected components to represent the labels"
+											+ " as a GRAY16 image.");
+		}
 		
-		this.m_labelsImage = this.m_inputImage.getPreferedFactory()
-											  .createFromRegularArray(this.m_labels,
-																	  this.m_inputImage.getWidth(),
-																	  bitDepth);
+		ImageCore labelsImage = this.m_inputImage.getPreferedFactory()
+												 .getEmptyImageCore(this.m_inputImage.getWidth(),
+														 			this.m_inputImage.getHeight(),
+														 			this.m_inputImage.getDepth(),
+														 			bitDepth);
+		final SliceBuffer[] slices = SliceBuffer.getSliceBuffers(labelsImage);
+		final LabelSlices labels = getLabelSlices();
+		SliceScheduler.forEachSlice(slices.length, new SliceTask() {
+			@Override
+			public void processSlice(int z) {
+				SliceBuffer slice = slices[z];
+				for (int i=0 ; i<slice.getSize() ; i++){
+					slice.set(i, labels.get(z, i));
+				}
+			}
+		});
+		this.m_labelsImage = labelsImage;
 		this.m_labelsImage.mergeMetaData(this.m_inputImage)
 						  .setTitle("Image composed of Labels");
 
 		this.m_labels = null;
-		System.gc();
+		this.m_shortLabels = null;
 
 		return this.m_labelsImage;
 	}		
 
+	/**
+	 * Gives a read only access to the labels of the voxels where they are stored,
+	 * without converting them to an image (and thus without limit on the largest label).
+	 * @return The labels of the voxels, read from the image of labels if they have already
+	 * 		   been converted by {@link #getLabelsAsImage()}, or from the array of labels otherwise.
+	 */
+	private LabelSlices getLabelSlices(){
+		if (this.m_labelsImage != null){
+			return new LabelSlices(this.m_labelsImage);
+		}
+		if (this.m_useShortLabels){
+			return new LabelSlices(this.m_shortLabels, this.m_inputImage.getWidth(), this.m_inputImage.getHeight());
+		}
+		return new LabelSlices(this.m_labels, this.m_inputImage.getWidth(), this.m_inputImage.getHeight());
+	}
+
+
 	/**
 	 * Filters the image components according to two criteria:
 	 * <ul>
@@ -499,109 +814,481 @@ public abstract class ConnectedComponent {
 									boolean setRandomColors) {
 		
 
-		ArrayList<Boolean> existsVoxelSatisfyingPredicate = new ArrayList<Boolean>();
-		for (int i = 0 ; i < this.m_compInfo.size() ; ++i){
-			existsVoxelSatisfyingPredicate.add(Boolean.valueOf(false));
+		filterComponents(this.m_components, getLabelSlices(), removeBorderComponent, thresholdComponentVolume,
+						 removalPredicate, keepPredicate, setRandomColors);
+	}
+
+
+	/**
+	 * Filters again the components of the labeling before the filtering, according to other criteria,
+	 * without labeling them again: the labels of the kept components are renumbered through
+	 * a look up table in a single pass over the voxels, and the image is set as if the components
+	 * had been labeled and filtered with these criteria. The components informations
+	 * and the labels given by {@link #getLabelsAsImage()} are those of the new filtering.
+	 * The informations returned before by {@link #getComponentInfo(int)} must not be used any more.
+	 * Requires that the labeling has been kept
+	 * (see {@link #getLabeledComponents(ImageCore, LabelingPolicy, int, boolean, double, ComponentRemovalPredicate, boolean, boolean, boolean)}).
+	 * @param image The image to set according to the filtered components, which becomes the image of this
+	 * 				instance: the labeled image itself, or an image with the same size
+	 * 				(e.g. a copy of the image before the filtering).
+	 * @param removeBorderComponent true if the components which are on the edge of the image should be removed by filtering
+	 * @param thresholdComponentVolume minimal volume for filtering (taking into account the calibration) for the components. 0 if no minimal volume is required 
+	 * @param removalPredicate a predicate according to which components should be filtered out
+	 * @param keepPredicate true if we should keep only the components with at least one voxel satisfying removalPredicate, and false if we should remove the components with at least one voxel satisfying removalPredicate 
+	 * @param setRandomColors true if the colors of the image should be set according to the components labels.
+	 * @throws IllegalStateException if the labeling before the filtering has not been kept
+	 * 								 (or has been released by {@link #releaseRawLabeling()}).
+	 * @throws IllegalArgumentException if the image doesn't have the same size as the labeled image.
+	 */
+	public void refilterComponents(ImageCore image,
+								   boolean removeBorderComponent, 
+								   double thresholdComponentVolume, 
+								   ComponentRemovalPredicate removalPredicate,
+								   boolean keepPredicate,
+								   boolean setRandomColors) {
+		if (this.m_rawLabels == null){
+			throw new IllegalStateException("The labeling before the filtering has not been kept.");
 		}
-		
-		// Check the predicate
-		VoxelShort voxelToTest = new VoxelShort();
-		for (voxelToTest.setZ((short)0); voxelToTest.getZ() < this.m_inputImage.getDepth(); voxelToTest.incrementCoord(2)){
-			for (voxelToTest.setY((short)0); voxelToTest.getY() < this.m_inputImage.getHeight(); voxelToTest.incrementCoord(1)){
-				for (voxelToTest.setX((short)0); voxelToTest.getX() < this.m_inputImage.getWidth(); voxelToTest.incrementCoord(0)){
-					// get the voxel's label
-					short label = getLabel(voxelToTest.getX(), voxelToTest.getY(), voxelToTest.getZ());
-					if (label > undefinedLabel()){ // if not a background voxel
-						ComponentInfo ci = this.m_compInfo.get(indexFromLabel(label));
-						// test the predicate
-						if(removalPredicate.keepVoxelComponent(voxelToTest, ci)){
-							existsVoxelSatisfyingPredicate.set(indexFromLabel(label),
-															   Boolean.valueOf(true)
-															  );
-						}
-					}
-				}
-			}
+		int width = this.m_inputImage.getWidth();
+		int height = this.m_inputImage.getHeight();
+		int depth = this.m_inputImage.getDepth();
+		if (image.getWidth() != width || image.getHeight() != height || image.getDepth() != depth){
+			throw new IllegalArgumentException("The image must have the same size as the labeled image.");
 		}
-		
-		// if the keep predicate is true for at least one voxel
-		// and we should remove
-		// the components with a voxel satisfying removalPredicate 
-		// or
-		// if the keep predicate is false for all the voxels
-		// and we should keep only
-		// the components with a voxel satisfying removalPredicate 
-		for (int i = 0 ; i < this.m_compInfo.size() ; ++i){
-			if (((!existsVoxelSatisfyingPredicate.get(i).booleanValue()) && keepPredicate) ||
-				(existsVoxelSatisfyingPredicate.get(i).booleanValue() && !keepPredicate)){
-				// remove the component
-				this.m_compInfo.get(i).setNumberOfPoints(0);
-			}
+		this.m_inputImage = image;
+		// The labels image (if any) is computed again from the new labels
+		this.m_labelsImage = null;
+		this.m_voxelIndex = null;
+		if (this.m_labels == null && this.m_shortLabels == null){
+			allocateLabels();
 		}
+		filterComponents(new ComponentTable(this.m_rawComponents), this.m_rawLabels,
+						 removeBorderComponent, thresholdComponentVolume,
+						 removalPredicate, keepPredicate, setRandomColors);
+	}
 
+
+	/**
+	 * Filters again the components of the labeling before the filtering, according to other criteria
+	 * (see {@link #refilterComponents(ImageCore, boolean, double, ComponentRemovalPredicate, boolean, boolean)}).
+	 * @param image The image to set according to the filtered components, which becomes the image of this
+	 * 				instance: the labeled image itself, or an image with the same size.
+	 * @param removeBorderComponent true if the components which are on the edge of the image should be removed by filtering
+	 * @param thresholdComponentVolume minimal volume for filtering (taking into account the calibration) for the components. 0 if no minimal volume is required 
+	 * @param setRandomColors true if the colors of the image should be set according to the components labels.
+	 * @throws IllegalStateException if the labeling before the filtering has not been kept.
+	 * @throws IllegalArgumentException if the image doesn't have the same size as the labeled image.
+	 */
+	public void refilterComponents(ImageCore image,
+								   boolean removeBorderComponent, 
+								   double thresholdComponentVolume, 
+								   boolean setRandomColors) {
+		refilterComponents(image, removeBorderComponent, thresholdComponentVolume,
+						   new ComponentRemovalNone(), true, setRandomColors);
+	}
+
+
+	/**
+	 * Filters components according to the criteria of
+	 * {@link #filterComponents(boolean, double, ComponentRemovalPredicate, boolean, boolean)}.
+	 * The kept components are renumbered through a look up table (old label to new label),
+	 * which is applied to the source labels in a single pass, writing the labels of this instance
+	 * and the colors of the image.
+	 * @param components The informations of the components to filter, which becomes the components
+	 * 					 informations of this instance.
+	 * @param sourceLabels The labels of the voxels for the components (possibly the labels of this instance)
+	 * @param removeBorderComponent true if the components which are on the edge of the image should be removed by filtering
+	 * @param thresholdComponentVolume minimal volume for filtering (taking into account the calibration) for the components. 0 if no minimal volume is required 
+	 * @param removalPredicate a predicate according to which components should be filtered out
+	 * @param keepPredicate true if we should keep only the components with at least one voxel satisfying removalPredicate, and false if we should remove the components with at least one voxel satisfying removalPredicate 
+	 * @param setRandomColors true if the colors of the original image should be set according to the components labels.
+	 */
+	private void filterComponents(ComponentTable components,
+								  LabelSlices sourceLabels,
+								  boolean removeBorderComponent, 
+								  double thresholdComponentVolume, 
+								  ComponentRemovalPredicate removalPredicate,
+								  boolean keepPredicate,
+								  boolean setRandomColors) {
+
+		boolean[] existsVoxelSatisfyingPredicate = getComponentsSatisfyingPredicate(removalPredicate,
+																					components, sourceLabels);
 		
-		
+		int nComponents = components.size();
 		int thresholdNVoxel = (int)(thresholdComponentVolume/this.m_voxelVolume);
-		ArrayList<Short> newLabels = new ArrayList<Short>(this.m_compInfo.size());
-		ArrayList<ComponentInfo> newTabComponents = new ArrayList<ComponentInfo>();
+		// look up table of the new labels, indexed by the index of the old label
+		int[] newLabels = new int[nComponents];
+		// indices of the rows of the components which survive the filtering
+		int[] keptIndices = new int[nComponents];
 
-		short componentsCount = undefinedLabel();
+		int componentsCount = undefinedLabel();
 
 		// For each label
-		for (short label=1 ; label<=this.m_compInfo.size() ; label++){
-			ComponentInfo ci = this.m_compInfo.get(label-1);
+		for (int label=1 ; label<=nComponents ; label++){
+			int index = indexFromLabel(label);
 
-			// If the component survives the filtering criteria
-			if (ci != null && ci.getnumberOfPoints() > 0 &&
-					ci.getnumberOfPoints() >= thresholdNVoxel && 
-					((!removeBorderComponent) || !ci.isOnTheeBorder())){
+			// If the component survives the filtering criteria:
+			// the keep predicate is true for at least one voxel
+			// and we should keep only the components with a voxel satisfying removalPredicate 
+			// or the keep predicate is false for all the voxels
+			// and we should remove the components with a voxel satisfying removalPredicate,
+			// and the component is large enough and possibly not on the edge of the image.
+			if (existsVoxelSatisfyingPredicate[index] == keepPredicate &&
+					components.getNumberOfPoints(index) > 0 &&
+					components.getNumberOfPoints(index) >= thresholdNVoxel && 
+					((!removeBorderComponent) || !components.isOnTheBorder(index))){
+				// register the component in the final table
+				keptIndices[componentsCount] = index;
 				componentsCount++;
 				// old label/new label correspondence
-				newLabels.add(new Short(componentsCount));
-				// register the component in the final array
-				newTabComponents.add(ci);
+				newLabels[index] = componentsCount;
+			}else{
+				newLabels[index] = undefinedLabel();
+			}
+		}
+		components.retain(keptIndices, componentsCount);
+		for (int row=0 ; row<componentsCount ; row++){
+			components.setLabel(row, row+1);
+		}
+		this.m_components = components;
+
+		final int[] componentsColors = new int[componentsCount];
+		for (int i=0 ; i<componentsCount ; i++){
+			componentsColors[i] = (int)(100 + Math.random()*(255 - 100));
+		}
+		// Shift of the colors of each slice for the 2D labelings
+		final int[] colorShifts = new int[this.m_inputImage.getDepth()];
+		if (!this.m_labelingPolicy.is3D()){
+			for (int z=0 ; z<colorShifts.length ; z++){
+				colorShifts[z] = (int)(Math.random()*(255-100));
+			}
+		}
+
+		final LabelSlices labels = sourceLabels;
+		final int[] lut = newLabels;
+		final boolean setColors = setRandomColors;
+		if (this.m_inputImage instanceof ImageCoreView){
+			// Only the slices of a view which are actually changed are copied
+			for (int z=0 ; z<colorShifts.length ; z++){
+				relabelSlice(z, labels, lut, componentsColors, colorShifts[z], setColors, null);
+			}
+		}else{
+			final SliceBuffer[] slices = SliceBuffer.getSliceBuffers(this.m_inputImage);
+			SliceScheduler.forEachSlice(slices.length, new SliceTask() {
+				@Override
+				public void processSlice(int z) {
+					relabelSlice(z, labels, lut, componentsColors, colorShifts[z], setColors, slices[z]);
+				}
+			});
+		}
+	}
+
+
+	/**
+	 * Applies the look up table of the new labels to the source labels of a slice, writing the labels
+	 * of this instance and the gray levels of the input image (only where they change).
+	 * @param z third coordinate of the slice
+	 * @param sourceLabels The labels of the voxels before the filtering
+	 * @param newLabels New label indexed by the index of the old label ({@link #undefinedLabel()} if removed)
+	 * @param componentsColors The colors of the components indexed by the index of the new label
+	 * @param colorShift The shift of the colors in this slice
+	 * @param setRandomColors true if the colors of the input image should be set according to the components labels.
+	 * @param slice The slice buffer of the input image, or null to access the voxels through the image
+	 */
+	private void relabelSlice(int z, LabelSlices sourceLabels, int[] newLabels, int[] componentsColors,
+							  int colorShift, boolean setRandomColors, SliceBuffer slice){
+		int width = this.m_width;
+		int size = width*this.m_inputImage.getHeight();
+		for (int index=0 ; index<size ; index++){
+			int label = sourceLabels.get(z, index);
+			int newLabel = label > undefinedLabel() ? newLabels[indexFromLabel(label)] : undefinedLabel();
+			setLabelAt(z, index, newLabel);
+			int color;
+			if (newLabel == undefinedLabel()){
+				color = 0; // remove the voxel
+			}else if (setRandomColors){
+				color = componentsColors[indexFromLabel(newLabel)];
+				if (!this.m_labelingPolicy.is3D()){
+					color = (((color-100) + colorShift)%(255-100)) + 100;
+				}
 			}else{
-				ci.setNumberOfPoints(0);
-				newLabels.add(new Short(undefinedLabel()));
+				color = this.m_foregroundColor; // restores the voxels removed by a previous filtering
+			}
+			// Only write actual changes, so that the cached histogram is kept and views are not copied needlessly
+			if (slice != null){
+				if (slice.get(index) != color){
+					slice.set(index, color);
+				}
+			}else if (this.m_inputImage.getVoxel(index%width, index/width, z) != color){
+				this.m_inputImage.setVoxel(index%width, index/width, z, color);
+			}
+		}
+	}
+
+
+	/**
+	 * Determines, for each component, whether at least one of its voxels satisfies a predicate.
+	 * If the predicate is a {@link ComponentLevelPredicate} and each label is used by a single
+	 * component (3D labelings), the predicate is first evaluated on each component, and only
+	 * the voxels of the undecided components are tested, within their bounding boxes
+	 * (or in a single scan of the image if the boxes are larger than the image altogether).
+	 * In all cases, the voxels of a component are no longer tested once one of them
+	 * satisfies the predicate.
+	 * @param removalPredicate a predicate on the voxels and their components
+	 * @param components The informations of the components
+	 * @param labels The labels of the voxels for the components
+	 * @return an array indexed by the label index, whose values are true for the components
+	 * 		   with at least one voxel satisfying the predicate.
+	 */
+	private boolean[] getComponentsSatisfyingPredicate(ComponentRemovalPredicate removalPredicate,
+													   ComponentTable components, LabelSlices labels){
+		
+		int nComponents = components.size();
+		boolean[] existsVoxelSatisfyingPredicate = new boolean[nComponents];
+		boolean[] undecided = new boolean[nComponents];
+		Arrays.fill(undecided, true);
+		int nUndecided = nComponents;
+		
+		// In slice by slice labelings, the labels are re-used from slice to slice, so that
+		// a component's information doesn't account for all the voxels with its label.
+		boolean componentLevel = (removalPredicate instanceof ComponentLevelPredicate) &&
+								 this.m_labelingPolicy != null && this.m_labelingPolicy.is3D();
+		long undecidedBoxesVolume = 0;
+		if (componentLevel){
+			ComponentLevelPredicate componentPredicate = (ComponentLevelPredicate)removalPredicate;
+			for (int i = 0 ; i < nComponents ; ++i){
+				ComponentPredicateValue value = components.getNumberOfPoints(i) > 0 ?
+													componentPredicate.evaluateOnComponent(components.get(i)) :
+													ComponentPredicateValue.Undecided;
+				if (value == ComponentPredicateValue.Undecided){
+					undecidedBoxesVolume += components.getBoxVolume(i);
+				}else{
+					existsVoxelSatisfyingPredicate[i] = (value == ComponentPredicateValue.TrueForAllVoxels);
+					undecided[i] = false;
+					nUndecided--;
+				}
+			}
+		}
+		if (nUndecided == 0){
+			return existsVoxelSatisfyingPredicate;
+		}
+		
+		int width = this.m_inputImage.getWidth();
+		int height = this.m_inputImage.getHeight();
+		int depth = this.m_inputImage.getDepth();
+		VoxelShort voxelToTest = new VoxelShort();
+		if (componentLevel && undecidedBoxesVolume <= (long)width*height*depth){
+			// Test the voxels of each undecided component within its bounding box
+			for (int i = 0 ; i < nComponents ; ++i){
+				if (undecided[i]){
+					ComponentInfo ci = components.get(i);
+					existsVoxelSatisfyingPredicate[i] = existsVoxelSatisfyingPredicate(
+															removalPredicate, ci, ci.getBoundingBox(),
+															labels, voxelToTest);
+				}
 			}
+			return existsVoxelSatisfyingPredicate;
 		}
 
-		ArrayList<Integer> componentsColors = new ArrayList<Integer>(newTabComponents.size());
-
-		for (int i=0 ; i<newTabComponents.size() ; i++){
-			componentsColors.add(new Integer((int)(100 + Math.random()*(255 - 100))));
-		}
-
-		for (int k = 0; k < this.m_inputImage.getDepth(); ++k){
-			int component2DcolorShift = (int)(Math.random()*(255-100));
-			for (int j = 0; j < this.m_inputImage.getHeight(); ++j){
-				for (int i = 0; i < this.m_inputImage.getWidth(); ++i ){
-					
-					short label = getLabel(i, j, k);
-					
-					// if not a background voxel and component not removed
-					if (label > undefinedLabel() && 
-							newLabels.get(indexFromLabel(label)).intValue() > undefinedLabel()){
-						short newLabel = newLabels.get(indexFromLabel(label)).shortValue(); // get new label from old label
-						ComponentInfo ci = newTabComponents.get(indexFromLabel(newLabel));
-						ci.setLabel(newLabel); // Set new label for the component
-						setLabel(i, j, k, newLabel); // Set new label for the voxel
-						// Possibly change the color on the whole component
-						if (setRandomColors){
-							int color = componentsColors.get(indexFromLabel(newLabel)).intValue();
-							if (this.m_labelingPolicy != LabelingPolicy.Full3D){
-								color = (((color-100) + component2DcolorShift)%(255-100)) + 100;
+		// Check the predicate in a single scan of the image
+		// (the views on the components are created once for all the voxels)
+		ComponentInfo[] componentInfos = new ComponentInfo[nComponents];
+		for (int z = 0 ; z < depth ; z++){
+			voxelToTest.setZ((short)z);
+			for (int y = 0 ; y < height ; y++){
+				voxelToTest.setY((short)y);
+				for (int x = 0 ; x < width ; x++){
+					// get the voxel's label
+					int label = labels.get(z, y*width + x);
+					if (label > undefinedLabel()){ // if not a background voxel
+						int labelIndex = indexFromLabel(label);
+						if (undecided[labelIndex] && !existsVoxelSatisfyingPredicate[labelIndex]){
+							voxelToTest.setX((short)x);
+							if (componentInfos[labelIndex] == null){
+								componentInfos[labelIndex] = components.get(labelIndex);
 							}
-							this.m_inputImage.setVoxel(i, j, k, color);
+							// test the predicate
+							existsVoxelSatisfyingPredicate[labelIndex] =
+									removalPredicate.keepVoxelComponent(voxelToTest, componentInfos[labelIndex]);
 						}
-					}else{
-						setLabel(i, j, k, undefinedLabel()); // Set label to background (remove the voxel)
-						this.m_inputImage.setVoxel(i, j, k, 0);
 					}
 				}
 			}
 		}
-		this.m_compInfo = newTabComponents;
+		return existsVoxelSatisfyingPredicate;
+	}
+	
+	
+	/**
+	 * Tests the voxels with the label of a component within a box, until one of them
+	 * satisfies a predicate.
+	 * @param removalPredicate a predicate on the voxels and their components
+	 * @param ci The information of the component
+	 * @param box A box containing the voxels of the component
+	 * @param labels The labels of the voxels for the component
+	 * @param voxelToTest A voxel instance used to pass the coordinates to the predicate
+	 * @return true if at least one voxel of the component satisfies the predicate.
+	 */
+	private boolean existsVoxelSatisfyingPredicate(ComponentRemovalPredicate removalPredicate,
+												   ComponentInfo ci, BoxROI box, LabelSlices labels,
+												   VoxelShort voxelToTest){
+		int label = ci.getLabel();
+		int width = this.m_inputImage.getWidth();
+		for (int z = box.getMin(CoordinateAxis.Z) ; z < box.getMax(CoordinateAxis.Z) ; z++){
+			voxelToTest.setZ((short)z);
+			for (int y = box.getMin(CoordinateAxis.Y) ; y < box.getMax(CoordinateAxis.Y) ; y++){
+				voxelToTest.setY((short)y);
+				for (int x = box.getMin(CoordinateAxis.X) ; x < box.getMax(CoordinateAxis.X) ; x++){
+					if (labels.get(z, y*width + x) == label){
+						voxelToTest.setX((short)x);
+						if (removalPredicate.keepVoxelComponent(voxelToTest, ci)){
+							return true;
+						}
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+
+	/**
+	 * Gives the index of the voxels of each component, which allows to iterate over the voxels
+	 * of a component in time proportional to its size. The index is built on the first call,
+	 * in two parallel passes over the labels (without converting them to an image),
+	 * and kept until the components are filtered again.
+	 * @return The index of the voxels of the components, by label
+	 * 		   (see {@link ComponentInfo#getLabel()}).
+	 * @see ComponentVoxelIndex
+	 */
+	public ComponentVoxelIndex getComponentVoxelIndex(){
+		if (this.m_voxelIndex == null){
+			int maxLabel = undefinedLabel();
+			for (int i = 0 ; i < this.m_components.size() ; ++i){
+				if (this.m_components.getNumberOfPoints(i) > 0){
+					maxLabel = Math.max(maxLabel, this.m_components.getLabel(i));
+				}
+			}
+			this.m_voxelIndex = ComponentVoxelIndex.build(getLabelSlices(), maxLabel);
+		}
+		return this.m_voxelIndex;
+	}
+
+
+	/**
+	 * Exports a single component as a binary image cropped to its bounding box, the voxels
+	 * of the component being set to the foreground color. Only the voxels of the component
+	 * are visited (see {@link #getComponentVoxelIndex()}).
+	 * @param label the label of the component (see {@link ComponentInfo#getLabel()})
+	 * @return A GRAY8 image with the size of the bounding box of the component,
+	 * 		   or null if there is no voxel with that label.
+	 */
+	public ImageCore getComponentImage(int label){
+		ComponentVoxelIndex voxelIndex = getComponentVoxelIndex();
+		if (label <= undefinedLabel() || label > voxelIndex.getMaxLabel() ||
+			voxelIndex.getNumberOfVoxels(label) == 0){
+			return null;
+		}
+		BoxROI box = voxelIndex.getBoundingBox(label);
+		final int xmin = box.getMin(CoordinateAxis.X);
+		final int ymin = box.getMin(CoordinateAxis.Y);
+		final int zmin = box.getMin(CoordinateAxis.Z);
+		final ImageCore componentImage = this.m_inputImage.getPreferedFactory()
+							.getEmptyImageCore(box.getMax(CoordinateAxis.X) - xmin,
+											   box.getMax(CoordinateAxis.Y) - ymin,
+											   box.getMax(CoordinateAxis.Z) - zmin,
+											   8);
+		final int foregroundColor = this.m_foregroundColor;
+		voxelIndex.forEachVoxel(label, new ComponentVoxelIndex.VoxelVisitor() {
+			@Override
+			public void visit(int x, int y, int z) {
+				componentImage.setVoxel(x - xmin, y - ymin, z - zmin, foregroundColor);
+			}
+		});
+		componentImage.mergeMetaData(this.m_inputImage)
+					  .setTitle("Component " + label);
+		return componentImage;
+	}
+
+
+	/**
+	 * Measures the intensity and shape statistics of all the connected components (number
+	 * of voxels, calibrated volume, total and mean intensity, centroid, second moments, inertia)
+	 * in a single parallel pass over the labels and an intensity image. The labels are read
+	 * where they are stored, without being converted to an image (see {@link #getLabelsAsImage()}).
+	 * @param intensityImage A gray levels image with the same size as the labeled image
+	 * 						 (e.g. the image before the segmentation), or null to measure
+	 * 						 only the shape of the components.
+	 * @return The statistics of the components, indexed by their label
+	 * 		   (see {@link ComponentInfo#getLabel()}).
+	 * @see ComponentMeasurements
+	 */
+	public ComponentMeasurements getComponentMeasurements(ImageCore intensityImage){
+		int maxLabel = undefinedLabel();
+		for (int i = 0 ; i < this.m_components.size() ; ++i){
+			if (this.m_components.getNumberOfPoints(i) > 0){
+				maxLabel = Math.max(maxLabel, this.m_components.getLabel(i));
+			}
+		}
+		return ComponentMeasurements.measure(getLabelSlices(), intensityImage, maxLabel,
+											 this.m_inputImage.getImageCalibration());
+	}
+
+
+	/**
+	 * Computes a local binarization threshold for a connected component, using the histogram
+	 * of the gray levels of an image restricted to the component. Only the voxels of the bounding
+	 * box of the component are read, so that the component need not be cropped, and the labels
+	 * are read without being converted to an image.
+	 * @param image A gray levels image with the same size as the labeled image
+	 * 				(e.g. the image before the segmentation).
+	 * @param method the thresholding method
+	 * @param labelIndex the label index of the component (see {@link #getComponentInfo(int)})
+	 * @return the threshold for the component, or -1 if the component has been filtered out.
+	 */
+	public int getComponentBinarizationThreshold(ImageThresholding image, ThresholdingOption method,
+												 int labelIndex){
+		ComponentInfo ci = getComponentInfo(labelIndex);
+		if (ci == null){
+			return -1;
+		}
+		return image.getBinarizationThreshold(method, getLabelSlices(), ci.getLabel(), ci.getBoundingBox());
+	}
+	
+	
+	/**
+	 * Computes a local binarization threshold for each connected component (e.g. local Otsu
+	 * thresholds for each nucleus), using the histogram of the gray levels of an image restricted
+	 * to the component. The histograms of all the components are computed in a single pass over
+	 * the union of the bounding boxes of the components, without cropping the components
+	 * nor converting the labels to an image.
+	 * Note that for slice by slice labelings, in which the labels are re-used from slice to slice,
+	 * the components with the same label share their histogram.
+	 * @param image A gray levels image with the same size as the labeled image
+	 * 				(e.g. the image before the segmentation).
+	 * @param method the thresholding method
+	 * @return An array containing the threshold of each component, indexed by the label index
+	 * 		   (see {@link #getComponentInfo(int)}), with -1 for the components which have been filtered out.
+	 */
+	public int[] getComponentsBinarizationThresholds(ImageThresholding image, ThresholdingOption method){
+		int maxLabel = undefinedLabel();
+		BoxROI box = new BoxROI();
+		ComponentTable components = this.m_components;
+		for (int i = 0 ; i < components.size() ; ++i){
+			if (components.getNumberOfPoints(i) > 0){
+				maxLabel = Math.max(maxLabel, components.getLabel(i));
+				box.updateBox(components.getBoxMin(i, CoordinateAxis.X), components.getBoxMin(i, CoordinateAxis.Y),
+							  components.getBoxMin(i, CoordinateAxis.Z));
+				box.updateBox(components.getBoxMax(i, CoordinateAxis.X)-1, components.getBoxMax(i, CoordinateAxis.Y)-1,
+							  components.getBoxMax(i, CoordinateAxis.Z)-1);
+			}
+		}
+		int[] labelThresholds = image.getBinarizationThresholds(method, getLabelSlices(), maxLabel, box);
+		int[] thresholds = new int[components.size()];
+		for (int i=0 ; i<thresholds.length ; i++){
+			thresholds[i] = components.getNumberOfPoints(i) > 0 ? labelThresholds[components.getLabel(i)] : -1;
+		}
+		return thresholds;
 	}
 
 	
@@ -613,9 +1300,9 @@ public abstract class ConnectedComponent {
 	public String toString() {
 		StringBuilder builder = new StringBuilder();
 		builder.append("Connected components of the image "+ this.m_inputImage.getTitle()
-				      +"(" + this.m_compInfo.size() + " Components)\n");
-		//for (ComponentInfo compInfo : this.m_compInfo){
-		//	builder.append(compInfo + "\n");
+				      +"(" + this.m_components.size() + " Components)\n");
+		//for (int i = 0 ; i < this.m_components.size() ; ++i){
+		//	builder.append(this.m_components.get(i) + "\n");
 		//}
 		return builder.toString();
 	}
@@ -11,8 +11,8 @@
 package wrapScienceJ.wrapImaJ.connectivity;
 
 
+import wrapScienceJ.wrapImaJ.core.CoordinateAxis;
 import wrapScienceJ.wrapImaJ.core.ImageCore;
-import wrapScienceJ.wrapImaJ.core.VoxelInt;
 import wrapScienceJ.wrapImaJ.core.VoxelShort;
 
 import java.util.LinkedList;
@@ -29,12 +29,14 @@ public class ConnectedComponent2D extends ConnectedComponent
 {
 
 	/**
-	 * Constructor from an ImageWrapper representing a binary image and the foreground color in this image
+	 * Constructor from an ImageWrapper representing a binary image and the foreground color in this image.
+	 * The labels are stored as shorts, since the minimal size of the components
+	 * bounds their number in each slice.
 	 * @param inputImage input (probably binary) image, the components of which to compute.
 	 * @param foregroundColor label of the 1's in the input image inputImage
 	 */
 	protected ConnectedComponent2D(ImageCore inputImage, int foregroundColor) {
-		super(inputImage, foregroundColor);
+		super(inputImage, foregroundColor, true);
 	}
 
 
@@ -42,16 +44,16 @@ public class ConnectedComponent2D extends ConnectedComponent
 	 * Performs a breadth first search of the connected component for labeling
 	 * The method goes over all the voxels in the connected component of the object
 	 * of the initial voxel.
-	 * The method sets the fields of the ComponentInfo parameter to record the status of the component.
+	 * The method sets the fields of the row of the component table to record the status of the component.
 	 * 
 	 * @param voxelShort initial voxel of the connected component
 	 * @param labelToSet label to set for the voxels of the component
 	 * @throws IllegalStateException if the FIFO's size exceeds the number of preallocated voxels
 	 */
 	protected void breadthFirstSearch(VoxelShort voxelShort,
-									  short labelToSet, 
-									  short foregroundLabel,
-									  ComponentInfo componentInfo) throws IllegalStateException {
+									  int labelToSet, 
+									  int foregroundLabel,
+									  int componentIndex) throws IllegalStateException {
 
 		// FIFO for the Breadth First Search algorithm
 		// LinkedList is more efficient than ArrayList 
@@ -76,26 +78,26 @@ public class ConnectedComponent2D extends ConnectedComponent
 				imin = (short)(iV-1);
 			}else{
 				imin = 0;
-				componentInfo.incrementNVoxelsOnTheeBorder();
+				this.m_components.incrementNVoxelsOnTheBorder(componentIndex);
 			}
 			if (jV-1 >= 0){
 				jmin = (short)(jV-1);
 			}else{
 				jmin = 0;
-				componentInfo.incrementNVoxelsOnTheeBorder();
+				this.m_components.incrementNVoxelsOnTheBorder(componentIndex);
 			}
 
 			if (iV+1 < this.m_inputImage.getWidth()){
 				imax = (short)(iV+1);
 			}else{
 				imax = (short)(this.m_inputImage.getWidth()-1);
-				componentInfo.incrementNVoxelsOnTheeBorder();
+				this.m_components.incrementNVoxelsOnTheBorder(componentIndex);
 			}
 			if (jV+1 < this.m_inputImage.getHeight()){
 				jmax = (short)(jV+1);
 			}else{
 				jmax = (short)(this.m_inputImage.getHeight()-1);
-				componentInfo.incrementNVoxelsOnTheeBorder();
+				this.m_components.incrementNVoxelsOnTheBorder(componentIndex);
 			}
 
 			short kk = kV;
@@ -108,18 +110,13 @@ public class ConnectedComponent2D extends ConnectedComponent
 						
 						// Set the voxel's label
 						setLabel(ii, jj, kk, labelToSet); 
-						componentInfo.incrementNumberOfPoints(); // increment component's cardinality	
+						this.m_components.incrementNumberOfPoints(componentIndex); // increment component's cardinality	
 						VoxelShort fifoVoxel = new VoxelShort(ii, jj, kk);
-						componentInfo.updateBox(fifoVoxel);
+						this.m_components.updateBox(componentIndex, ii, jj, kk);
 						voxelFifo.add(fifoVoxel); // add to FIFO
-						if (labelToSet == 0){
-							this.m_inputImage.setVoxel(ii,jj,kk, 0);
-						}
 						// check for minimal depth representative and update if necessary
-						if (kk < componentInfo.getRepresentant().getZ()){
-							componentInfo.getRepresentant().setX(ii);
-							componentInfo.getRepresentant().setY(jj);
-							componentInfo.getRepresentant().setZ(kk);
+						if (kk < this.m_components.getRepresentant(componentIndex, CoordinateAxis.Z)){
+							this.m_components.setRepresentant(componentIndex, ii, jj, kk);
 						}
 					}
 				}
@@ -136,12 +133,12 @@ public class ConnectedComponent2D extends ConnectedComponent
 	@Override
 	public void doLabelConnectedComponent(int lowThresholdNbPoints) throws IllegalStateException {
 
-		short unsetLabel = undefinedLabel();
+		int unsetLabel = undefinedLabel();
 		
 		for (short k = 0; k < this.m_inputImage.getDepth(); k++){
 			// Labels are re-initialized for re-use at each slice
 			// (slice by slice labeling)
-			short currentLabel = undefinedLabel();
+			int currentLabel = undefinedLabel();
 			boolean incrementLabel = true;
 			
 			for (short j = 0; j < this.m_inputImage.getHeight(); j++){
@@ -152,37 +149,36 @@ public class ConnectedComponent2D extends ConnectedComponent
 							currentLabel++;	
 						}
 						incrementLabel = true;
-						if (currentLabel == Short.MAX_VALUE){
+						if (currentLabel == Integer.MAX_VALUE){
 							throw new IllegalStateException("Too many connected components.");
 						}
 						setLabel(i, j, k, currentLabel);
 						
-						ComponentInfo componentInfo = new ComponentInfo(
+						int componentIndex = this.m_components.add(
 											currentLabel, 
 											1, // Number of points
-											new VoxelInt(i, j, k), 
+											i, j, k, // Voxel representative
 											0 // Number of voxels on the image's edge
 											);
+						this.m_components.updateBox(componentIndex, i, j, k);
 
 						breadthFirstSearch(new VoxelShort(i, j, k),
 										   currentLabel,
 										   unsetLabel,
-										   componentInfo);
+										   componentIndex);
 						
-						if (componentInfo.getnumberOfPoints() < lowThresholdNbPoints){
+						if (this.m_components.getNumberOfPoints(componentIndex) < lowThresholdNbPoints){
 							breadthFirstSearch(
 								new VoxelShort(i, j, k),
 								unsetLabel,
 								currentLabel,
-								componentInfo);
+								componentIndex);
 								incrementLabel = false;
-						}else{
-							this.m_compInfo.add(componentInfo);
+								this.m_components.removeLast();
 						}
 					}
 				}
 			}
-			System.gc();
 		}
 	}
 	
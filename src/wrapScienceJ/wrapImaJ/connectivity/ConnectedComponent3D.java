@@ -11,28 +11,46 @@
 package wrapScienceJ.wrapImaJ.connectivity;
 
 
+import wrapScienceJ.config.GlobalOptions;
+import wrapScienceJ.utils.IntFifo;
+import wrapScienceJ.wrapImaJ.core.CoordinateAxis;
 import wrapScienceJ.wrapImaJ.core.ImageCore;
-import wrapScienceJ.wrapImaJ.core.VoxelInt;
-import wrapScienceJ.wrapImaJ.core.VoxelShort;
-
-import java.util.LinkedList;
 
 
 
 /**
  * Class dedicated to connected components labeling in 3D images
  * 
+ * The breadth first search works directly on the pixel arrays of the slices
+ * and stores the voxels to visit as packed integers in a primitive FIFO,
+ * so that no object is allocated per voxel.
+ * 
  * @author Remy Malgouyres
  */
 public class ConnectedComponent3D extends ConnectedComponent {
 
+	/**
+	 * Pixel arrays of the slices of the input image (GRAY8), indexed by the z coordinate.
+	 */
+	private byte[][] m_inputSlices;
+
+	/**
+	 * FIFO for the Breadth First Search algorithm, re-used from one component to the next.
+	 * Each voxel is stored as two consecutive elements: its linear index y*width+x
+	 * in the slice, and its z coordinate.
+	 */
+	private IntFifo m_voxelFifo;
+
 	/**
 	 * Constructor from an ImageWrapper representing a binary image and the foreground color in this image
 	 * @param inputImage input (probably binary) image, the components of which to compute.
 	 * @param foregroundColor label of the 1's in the input image inputImage
+	 * @param useShortLabels true if the labels should be stored as shorts, when the number
+	 * 						 of components is bounded by their minimal size.
 	 */
-	protected ConnectedComponent3D(ImageCore inputImage, int foregroundColor) {
-		super(inputImage, foregroundColor);
+	protected ConnectedComponent3D(ImageCore inputImage, int foregroundColor, boolean useShortLabels) {
+		super(inputImage, foregroundColor, useShortLabels);
+		this.m_voxelFifo = new IntFifo(1024);
 	}
 
 
@@ -40,98 +58,102 @@ public class ConnectedComponent3D extends ConnectedComponent {
 	 * Performs a breadth first search of the connected component for labeling
 	 * The method goes over all the voxels in the connected component of the object
 	 * of the initial voxel.
-	 * The method sets the fields of the ComponentInfo parameter to record the status of the component.
+	 * The method sets the fields of the row of the component table to record the status of the component.
 	 * 
-	 * @param voxelShort initial voxel of the connected component
+	 * @param xInit first coordinate of the initial voxel of the connected component
+	 * @param yInit second coordinate of the initial voxel of the connected component
+	 * @param zInit third coordinate of the initial voxel of the connected component
 	 * @param labelToSet label to set for the voxels of the component
-	 * @throws IllegalStateException if the FIFO's size exceeds the number of preallocated voxels
+	 * @param foregroundLabel label of the voxels which can be reached by the search
+	 * @param componentIndex the index of the record of the component's status to update 
+	 * @throws IllegalStateException if the FIFO's size exceeds its maximal capacity
 	 */
-	protected void breadthFirstSearch(VoxelShort voxelShort,
-									  short labelToSet, 
-									  short foregroundLabel,
-									  ComponentInfo componentInfo) throws IllegalStateException {
-
-		// FIFO for the Breadth First Search algorithm
-		// LinkedList is more efficient than ArrayList 
-		// because poll() (alias Remove(0)) is constant time !!!
-		LinkedList<VoxelShort> voxelFifo =  new LinkedList<VoxelShort>();
+	protected void breadthFirstSearch(int xInit, int yInit, int zInit,
+									  int labelToSet, 
+									  int foregroundLabel,
+									  int componentIndex) throws IllegalStateException {
+
+		int width = this.m_inputImage.getWidth();
+		int height = this.m_inputImage.getHeight();
+		int depth = this.m_inputImage.getDepth();
+		byte foregroundColor = (byte)this.m_foregroundColor;
+		
+		IntFifo voxelFifo = this.m_voxelFifo;
+		voxelFifo.clear();
 		
 		// add initial voxel to the FIFO
-		voxelFifo.add(voxelShort);
+		voxelFifo.add(yInit*width + xInit);
+		voxelFifo.add(zInit);
 
 		while (!voxelFifo.isEmpty())
 		{
 			// Retrieve and remove the head of the FIFO
-			VoxelShort polledVoxelShort = voxelFifo.poll();
-
-			short iV = polledVoxelShort.getX();
-			short jV = polledVoxelShort.getY();
-			short kV = polledVoxelShort.getZ();
+			int indexV = voxelFifo.poll();
+			int kV = voxelFifo.poll();
+			int jV = indexV / width;
+			int iV = indexV - jV*width;
 
 			// Determine the neighborhood taking into account the image's boundaries
-			short imin, imax, jmin, jmax, kmin, kmax;
+			int imin, imax, jmin, jmax, kmin, kmax;
 			if (iV-1 >= 0){
-				imin = (short)(iV-1);
+				imin = iV-1;
 			}else{
 				imin = 0;
-				componentInfo.incrementNVoxelsOnTheeBorder();
+				this.m_components.incrementNVoxelsOnTheBorder(componentIndex);
 			}
 			if (jV-1 >= 0){
-				jmin = (short)(jV-1);
+				jmin = jV-1;
 			}else{
 				jmin = 0;
-				componentInfo.incrementNVoxelsOnTheeBorder();
+				this.m_components.incrementNVoxelsOnTheBorder(componentIndex);
 			}
 			if (kV-1 >= 0){
-				kmin = (short)(kV-1);
+				kmin = kV-1;
 			}else{
 				kmin = 0;
-				componentInfo.incrementNVoxelsOnTheeBorder();
+				this.m_components.incrementNVoxelsOnTheBorder(componentIndex);
 			}
 
-			if (iV+1 < this.m_inputImage.getWidth()){
-				imax = (short)(iV+1);
+			if (iV+1 < width){
+				imax = iV+1;
 			}else{
-				imax = (short)(this.m_inputImage.getWidth()-1);
-				componentInfo.incrementNVoxelsOnTheeBorder();
+				imax = width-1;
+				this.m_components.incrementNVoxelsOnTheBorder(componentIndex);
 			}
-			if (jV+1 < this.m_inputImage.getHeight()){
-				jmax = (short)(jV+1);
+			if (jV+1 < height){
+				jmax = jV+1;
 			}else{
-				jmax = (short)(this.m_inputImage.getHeight()-1);
-				componentInfo.incrementNVoxelsOnTheeBorder();
+				jmax = height-1;
+				this.m_components.incrementNVoxelsOnTheBorder(componentIndex);
 			}
-			if (kV+1 < this.m_inputImage.getDepth()){
-				kmax = (short)(kV+1);
+			if (kV+1 < depth){
+				kmax = kV+1;
 			}else{
-				kmax = (short)(this.m_inputImage.getDepth()-1);
-				componentInfo.incrementNVoxelsOnTheeBorder();
+				kmax = depth-1;
+				this.m_components.incrementNVoxelsOnTheBorder(componentIndex);
 			}
 			
 			// For each neighbor :
-			for (short kk = kmin ; kk <= kmax; kk++){
-				//this.m_inputImage.setCurrentSlice(kk);
-				for (short ii = imin ; ii <= imax ; ii++){
-					for (short jj = jmin ; jj <= jmax; jj++){
+			for (int kk = kmin ; kk <= kmax; kk++){
+				byte[] inputSlice = this.m_inputSlices[kk];
+				for (int jj = jmin ; jj <= jmax; jj++){
+					int rowIndex = jj*width;
+					for (int ii = imin ; ii <= imax ; ii++){
+						int index = rowIndex + ii;
 						// If the neighbor (different from VoxelRecordShort) is a 1 and not labeled
-						if ((getLabel(ii, jj, kk) == foregroundLabel) && 
-							(this.m_inputImage.getVoxel(ii,jj,kk) == this.m_foregroundColor)	
+						if ((getLabelAt(kk, index) == foregroundLabel) && 
+							(inputSlice[index] == foregroundColor)	
 							)
 						{
 							// Set the voxel's label
-							setLabel(ii, jj, kk, labelToSet); 
-							componentInfo.incrementNumberOfPoints(); // increment component's cardinality	
-							VoxelShort fifoVoxel = new VoxelShort(ii, jj, kk);
-							componentInfo.updateBox(fifoVoxel);
-							voxelFifo.add(fifoVoxel); // add to FIFO
-							if (labelToSet == 0){
-								this.m_inputImage.setVoxel(ii,jj,kk, 0);
-							}
+							setLabelAt(kk, index, labelToSet);
+							this.m_components.incrementNumberOfPoints(componentIndex); // increment component's cardinality	
+							this.m_components.updateBox(componentIndex, ii, jj, kk);
+							voxelFifo.add(index); // add to FIFO
+							voxelFifo.add(kk);
 							// check for minimal depth representative and update if necessary
-							if (kk < componentInfo.getRepresentant().getZ()){
-								componentInfo.getRepresentant().setX(ii);
-								componentInfo.getRepresentant().setY(jj);
-								componentInfo.getRepresentant().setZ(kk);
+							if (kk < this.m_components.getRepresentant(componentIndex, CoordinateAxis.Z)){
+								this.m_components.setRepresentant(componentIndex, ii, jj, kk);
 							}
 						}
 					}
@@ -151,57 +173,69 @@ public class ConnectedComponent3D extends ConnectedComponent {
 	@Override
 	public void doLabelConnectedComponent(int lowThresholdNbPoints) throws IllegalStateException {
 
-		short currentLabel = undefinedLabel();
-		short unsetLabel = undefinedLabel();
+		int currentLabel = undefinedLabel();
+		int unsetLabel = undefinedLabel();
 		
 		boolean incrementLabel = true;
 
-		for (short k = 0; k < this.m_inputImage.getDepth(); k++){	
-			System.err.print("z = " + k + ", ");
-			if (k%10 == 0){
-				System.err.print("\nCurrent Label: " + (currentLabel-Short.MIN_VALUE) + ". " );
+		int width = this.m_inputImage.getWidth();
+		byte foregroundColor = (byte)this.m_foregroundColor;
+		
+		this.m_inputSlices = new byte[this.m_inputImage.getDepth()][];
+		for (int k = 0; k < this.m_inputImage.getDepth(); k++){
+			this.m_inputSlices[k] = this.m_inputImage.getSliceBuffer(k).getBytesOrCopy();
+		}
+		
+		boolean verbose = GlobalOptions.isVerbose();
+		for (int k = 0; k < this.m_inputImage.getDepth(); k++){	
+			if (verbose){
+				System.err.print("z = " + k + ", ");
+				if (k%10 == 0){
+					System.err.print("\nCurrent Label: " + currentLabel + ". " );
+				}
 			}
-			for (short j = 0; j < this.m_inputImage.getHeight(); j++){
-				for (short i = 0; i < this.m_inputImage.getWidth(); i++){
-					if (this.m_inputImage.getVoxel(i, j, k) == this.m_foregroundColor
-							&& getLabel(i, j, k) == unsetLabel){
+			byte[] inputSlice = this.m_inputSlices[k];
+			for (int j = 0; j < this.m_inputImage.getHeight(); j++){
+				for (int i = 0; i < width; i++){
+					int index = j*width + i;
+					if (inputSlice[index] == foregroundColor
+							&& getLabelAt(k, index) == unsetLabel){
 						if (incrementLabel){
 							currentLabel++;	
 						}
 						incrementLabel = true;
-						if (currentLabel == Short.MAX_VALUE){
+						if (currentLabel == Integer.MAX_VALUE){
 							throw new IllegalStateException("Too many connected components.");
 						}
-						setLabel(i, j, k, currentLabel);
+						setLabelAt(k, index, currentLabel);
 						
-						ComponentInfo componentInfo = new ComponentInfo(
-								currentLabel, 
-								1, // Number of points
-								new VoxelInt(i, j, k), 
-								0 // Number of voxels on the image's edge
-								);
+						int componentIndex = this.m_components.add(
+											currentLabel, 
+											1, // Number of points
+											i, j, k, // Voxel representative
+											0 // Number of voxels on the image's edge
+											);
+						this.m_components.updateBox(componentIndex, i, j, k);
 
 						breadthFirstSearch(
-								new VoxelShort(i, j, k),
+								i, j, k,
 								currentLabel,
 								unsetLabel,
-								componentInfo);
-						if (componentInfo.getnumberOfPoints() < lowThresholdNbPoints){
+								componentIndex);
+						if (this.m_components.getNumberOfPoints(componentIndex) < lowThresholdNbPoints){
 							breadthFirstSearch(
-								new VoxelShort(i, j, k),
+								i, j, k,
 								unsetLabel,
 								currentLabel,
-								componentInfo);
+								componentIndex);
 								incrementLabel = false;
-						}else{
-							this.m_compInfo.add(componentInfo);
+								this.m_components.removeLast();
 						}
 					}
 				}
 			}
-			System.gc();
 		}
+		this.m_inputSlices = null;
 	}
 	
 } // end of class
-
@@ -0,0 +1,547 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File: ConnectedComponent3DUnionFind.java                                 * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+
+
+package wrapScienceJ.wrapImaJ.connectivity;
+
+
+import wrapScienceJ.config.GlobalOptions;
+import wrapScienceJ.utils.SliceScheduler;
+import wrapScienceJ.utils.SliceScheduler.SliceTask;
+import wrapScienceJ.wrapImaJ.core.ImageCore;
+import wrapScienceJ.wrapImaJ.core.SliceBuffer;
+
+
+
+/**
+ * Class dedicated to connected components labeling in 3D images
+ * using all the available cores (see {@link GlobalOptions#getParallelism()}).
+ *
+ * The image is split into slabs of consecutive slices, and the labeling
+ * is performed by a two-pass union-find algorithm with 26-adjacency:
+ * <ol>
+ * 	<li>Each slab is scanned (in parallel) and its voxels are given provisional labels,
+ * 		the equivalences between provisional labels being recorded in a union-find structure.
+ * 		The cardinality, bounding box, etc. of the provisional labels are computed on the fly.</li>
+ * 	<li>The equivalences across the boundaries between slabs are merged, and the
+ * 		provisional labels are resolved to final labels (sequentially, which only involves
+ * 		the boundary slices and the provisional labels)</li>
+ * 	<li>The final labels are set on the voxels (in parallel).</li>
+ * </ol>
+ * The components are numbered in the order of their first voxel (by z, then y, then x),
+ * so that the labels and the {@link ComponentInfo} records are the same as with
+ * {@link ConnectedComponent3D}, and do not depend on the number of slabs.
+ *
+ * Optionally (see {@link #setBinarizationThreshold(int)}), the input image is binarized
+ * during the first pass, each slice being binarized by the task which labels its slab
+ * just before it is labeled, which avoids a separate pass over the image.
+ *
+ * @author Remy Malgouyres
+ */
+public class ConnectedComponent3DUnionFind extends ConnectedComponent {
+
+	/**
+	 * Provisional labels of a slab and their union-find structure.
+	 * For each provisional label, a record stores the label's parent in the union-find
+	 * structure and the statistics of the voxels with that label.
+	 * Provisional labels start at 1 (0 being the undefined label).
+	 */
+	private static class ProvisionalLabels {
+
+		/** Index of the parent label in the union-find structure */
+		static final int PARENT = 0;
+		/** Number of voxels with the label */
+		static final int N_POINTS = 1;
+		/** Number of voxels with the label on the image's edge (counted as in {@link ConnectedComponent3D}) */
+		static final int N_BORDER = 2;
+		/** Minimal coordinates of the voxels with the label */
+		static final int X_MIN = 3, Y_MIN = 4, Z_MIN = 5;
+		/** Maximal coordinates of the voxels with the label */
+		static final int X_MAX = 6, Y_MAX = 7, Z_MAX = 8;
+		/** Coordinates of the first voxel (by z, then y, then x) with the label */
+		static final int FIRST_X = 9, FIRST_Y = 10, FIRST_Z = 11;
+		/** Number of integers in the record of a label */
+		static final int RECORD_SIZE = 12;
+
+		/** First slice of the slab */
+		final int m_zMin;
+
+		/** Last slice of the slab plus one */
+		final int m_zMax;
+
+		/** Records of the labels (record of label l at index l*RECORD_SIZE) */
+		int[] m_records;
+
+		/** Number of provisional labels created */
+		int m_nLabels;
+
+		/** Number of provisional labels in the previous slabs (global label = offset + label) */
+		int m_offset;
+
+		/**
+		 * Creates an empty set of provisional labels for a slab
+		 * @param zMin First slice of the slab
+		 * @param zMax Last slice of the slab plus one
+		 */
+		ProvisionalLabels(int zMin, int zMax){
+			this.m_zMin = zMin;
+			this.m_zMax = zMax;
+			this.m_records = new int[64*RECORD_SIZE];
+			this.m_nLabels = 0;
+		}
+
+		/**
+		 * Creates a new provisional label from its first voxel
+		 * (the voxel itself has to be added by {@link #addVoxel(int, int, int, int, int)})
+		 * @return the new label
+		 * @throws IllegalStateException in case of overflow of the number of labels
+		 */
+		int newLabel(int x, int y, int z) throws IllegalStateException {
+			if (this.m_nLabels == Integer.MAX_VALUE/RECORD_SIZE - 1){
+				throw new IllegalStateException("Too many connected components.");
+			}
+			int label = ++this.m_nLabels;
+			int record = label*RECORD_SIZE;
+			if (record + RECORD_SIZE > this.m_records.length){
+				int[] records = new int[(int)Math.min(2L*this.m_records.length,
+						 						   (long)(Integer.MAX_VALUE/RECORD_SIZE)*RECORD_SIZE)];
+				System.arraycopy(this.m_records, 0, records, 0, this.m_records.length);
+				this.m_records = records;
+			}
+			this.m_records[record+PARENT] = label;
+			this.m_records[record+N_POINTS] = 0;
+			this.m_records[record+N_BORDER] = 0;
+			this.m_records[record+X_MIN] = x;
+			this.m_records[record+Y_MIN] = y;
+			this.m_records[record+Z_MIN] = z;
+			this.m_records[record+X_MAX] = x;
+			this.m_records[record+Y_MAX] = y;
+			this.m_records[record+Z_MAX] = z;
+			this.m_records[record+FIRST_X] = x;
+			this.m_records[record+FIRST_Y] = y;
+			this.m_records[record+FIRST_Z] = z;
+			return label;
+		}
+
+		/**
+		 * Updates the statistics of a label to take into account a new voxel.
+		 * Voxels must be added by increasing (z, y, x).
+		 */
+		void addVoxel(int label, int x, int y, int z, int nBorder){
+			int record = label*RECORD_SIZE;
+			this.m_records[record+N_POINTS]++;
+			this.m_records[record+N_BORDER] += nBorder;
+			if (x < this.m_records[record+X_MIN]){
+				this.m_records[record+X_MIN] = x;
+			}
+			if (x > this.m_records[record+X_MAX]){
+				this.m_records[record+X_MAX] = x;
+			}
+			if (y < this.m_records[record+Y_MIN]){
+				this.m_records[record+Y_MIN] = y;
+			}
+			if (y > this.m_records[record+Y_MAX]){
+				this.m_records[record+Y_MAX] = y;
+			}
+			this.m_records[record+Z_MAX] = z;
+		}
+
+		/**
+		 * Finds the root of a label in the union-find structure (with path halving)
+		 * @return the root, which is the smallest label in the equivalence class
+		 */
+		int find(int label){
+			int current = label;
+			while (this.m_records[current*RECORD_SIZE+PARENT] != current){
+				int parent = this.m_records[current*RECORD_SIZE+PARENT];
+				int grandParent = this.m_records[parent*RECORD_SIZE+PARENT];
+				this.m_records[current*RECORD_SIZE+PARENT] = grandParent;
+				current = grandParent;
+			}
+			return current;
+		}
+
+		/**
+		 * Records that two labels are equivalent.
+		 * The root with the larger label is linked to the other one.
+		 */
+		void union(int label1, int label2){
+			int root1 = find(label1);
+			int root2 = find(label2);
+			if (root1 < root2){
+				this.m_records[root2*RECORD_SIZE+PARENT] = root1;
+			}else if (root2 < root1){
+				this.m_records[root1*RECORD_SIZE+PARENT] = root2;
+			}
+		}
+
+		/**
+		 * Accumulates the statistics of a label of a (possibly other) slab into the statistics of a label.
+		 * The other label's voxels must all come after the first voxel of this label.
+		 */
+		void merge(int label, ProvisionalLabels other, int otherLabel){
+			int record = label*RECORD_SIZE;
+			int otherRecord = otherLabel*RECORD_SIZE;
+			int[] otherRecords = other.m_records;
+			this.m_records[record+N_POINTS] += otherRecords[otherRecord+N_POINTS];
+			this.m_records[record+N_BORDER] += otherRecords[otherRecord+N_BORDER];
+			for (int field = X_MIN ; field <= Z_MIN ; field++){
+				this.m_records[record+field] = Math.min(this.m_records[record+field],
+														otherRecords[otherRecord+field]);
+			}
+			for (int field = X_MAX ; field <= Z_MAX ; field++){
+				this.m_records[record+field] = Math.max(this.m_records[record+field],
+														otherRecords[otherRecord+field]);
+			}
+		}
+
+		/**
+		 * @return the value of a field in the record of a label.
+		 */
+		int get(int label, int field){
+			return this.m_records[label*RECORD_SIZE+field];
+		}
+	}
+
+
+	/**
+	 * Pixel arrays of the slices of the input image (GRAY8), indexed by the z coordinate.
+	 */
+	private byte[][] m_inputSlices;
+
+	/**
+	 * Slice buffers of the input image, indexed by the z coordinate
+	 * (to write back the binarized slices which are not backed by an array).
+	 */
+	private SliceBuffer[] m_inputBuffers;
+
+	/**
+	 * If non negative, the voxels of the input image are binarized before being labeled:
+	 * the gray levels greater than or equal to the threshold are set to 255, and the others to 0.
+	 */
+	private int m_binarizationThreshold = -1;
+
+
+	/**
+	 * Constructor from an ImageWrapper representing a binary image and the foreground color in this image
+	 * @param inputImage input (probably binary) image, the components of which to compute.
+	 * @param foregroundColor label of the 1's in the input image inputImage
+	 */
+	protected ConnectedComponent3DUnionFind(ImageCore inputImage, int foregroundColor) {
+		super(inputImage, foregroundColor);
+	}
+
+
+	/**
+	 * Requires the input image to be binarized during the labeling, each slice being binarized
+	 * just before it is labeled: the gray levels greater than or equal to the threshold are
+	 * set to 255, and the others to 0 (as by
+	 * {@link wrapScienceJ.wrapImaJ.core.operation.ImageThresholding#applyImageThresholdAndBinarize(int, boolean)}).
+	 * @param threshold The binarization threshold (in the gray levels range of the image),
+	 * 					or -1 if the input image is already binary.
+	 */
+	void setBinarizationThreshold(int threshold){
+		this.m_binarizationThreshold = threshold;
+	}
+
+
+	/**
+	 * Binarizes a slice of the input image with the binarization threshold (see
+	 * {@link #setBinarizationThreshold(int)}) and writes the result back to the image.
+	 * @param z third coordinate of the slice
+	 */
+	private void binarizeSlice(int z){
+		byte[] inputSlice = this.m_inputSlices[z];
+		int threshold = this.m_binarizationThreshold;
+		for (int i = 0 ; i < inputSlice.length ; i++){
+			inputSlice[i] = (inputSlice[i] & 0xff) >= threshold ? (byte)255 : 0;
+		}
+		SliceBuffer inputBuffer = this.m_inputBuffers[z];
+		if (inputBuffer.getBytes() != inputSlice){
+			for (int i = 0 ; i < inputSlice.length ; i++){
+				inputBuffer.set(i, inputSlice[i] & 0xff);
+			}
+		}
+	}
+
+
+	/**
+	 * Scans the voxels of a slab and gives them provisional labels (first pass).
+	 * Only the 13 neighbors of each voxel which are before the voxel
+	 * (by z, then y, then x) within the slab are considered.
+	 * @param slab The slab to label, with no provisional label yet.
+	 */
+	private void labelSlab(ProvisionalLabels slab){
+		int width = this.m_inputImage.getWidth();
+		int height = this.m_inputImage.getHeight();
+		int depth = this.m_inputImage.getDepth();
+		byte foregroundColor = (byte)this.m_foregroundColor;
+
+		for (int z = slab.m_zMin ; z < slab.m_zMax ; z++){
+			if (this.m_binarizationThreshold >= 0){
+				binarizeSlice(z);
+			}
+			byte[] inputSlice = this.m_inputSlices[z];
+			int[] labelsSlice = getLabelsSlice(z);
+			int[] previousLabelsSlice = z > slab.m_zMin ? getLabelsSlice(z-1) : null;
+			int nBorderZ = (z == 0 ? 1 : 0) + (z == depth-1 ? 1 : 0);
+			for (int y = 0 ; y < height ; y++){
+				int nBorderYZ = nBorderZ + (y == 0 ? 1 : 0) + (y == height-1 ? 1 : 0);
+				for (int x = 0 ; x < width ; x++){
+					int index = y*width + x;
+					if (inputSlice[index] != foregroundColor){
+						continue;
+					}
+					int label = undefinedLabel();
+					// Neighbors in the same slice
+					if (x > 0){
+						label = mergeLabels(slab, label, labelsSlice[index-1]);
+					}
+					if (y > 0){
+						int previousRow = index-width;
+						if (x > 0){
+							label = mergeLabels(slab, label, labelsSlice[previousRow-1]);
+						}
+						label = mergeLabels(slab, label, labelsSlice[previousRow]);
+						if (x < width-1){
+							label = mergeLabels(slab, label, labelsSlice[previousRow+1]);
+						}
+					}
+					// Neighbors in the previous slice
+					if (previousLabelsSlice != null){
+						for (int yy = Math.max(0, y-1) ; yy <= Math.min(height-1, y+1) ; yy++){
+							for (int xx = Math.max(0, x-1) ; xx <= Math.min(width-1, x+1) ; xx++){
+								label = mergeLabels(slab, label, previousLabelsSlice[yy*width + xx]);
+							}
+						}
+					}
+					if (label == undefinedLabel()){
+						label = slab.newLabel(x, y, z);
+					}
+					labelsSlice[index] = label;
+					slab.addVoxel(label, x, y, z,
+								  nBorderYZ + (x == 0 ? 1 : 0) + (x == width-1 ? 1 : 0));
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Merges the provisional label of a voxel with the label of one of its neighbors.
+	 * @param slab The slab containing the voxel and its neighbor
+	 * @param label The label found so far for the voxel (possibly undefined)
+	 * @param neighborLabel The label of the neighbor (possibly undefined)
+	 * @return The label to use for the voxel
+	 */
+	private static int mergeLabels(ProvisionalLabels slab, int label, int neighborLabel){
+		if (neighborLabel == undefinedLabel()){
+			return label;
+		}
+		if (label == undefinedLabel()){
+			return neighborLabel;
+		}
+		if (neighborLabel != label){
+			slab.union(label, neighborLabel);
+		}
+		return label;
+	}
+
+
+	/**
+	 * Finds the root of a global provisional label (with path halving)
+	 * @param parents The union-find structure on the global provisional labels
+	 * @param label A global provisional label
+	 * @return the root, which is the smallest label in the equivalence class
+	 */
+	private static int find(int[] parents, int label){
+		int current = label;
+		while (parents[current] != current){
+			parents[current] = parents[parents[current]];
+			current = parents[current];
+		}
+		return current;
+	}
+
+
+	/**
+	 * Finds the slab containing a global provisional label
+	 * @param slabs The slabs, in increasing order of z
+	 * @param globalLabel A global provisional label
+	 * @return The index of the slab whose provisional labels contain globalLabel
+	 */
+	private static int findSlab(ProvisionalLabels[] slabs, int globalLabel){
+		int low = 0;
+		int high = slabs.length-1;
+		while (low < high){
+			int middle = (low + high + 1)/2;
+			if (slabs[middle].m_offset < globalLabel){
+				low = middle;
+			}else{
+				high = middle-1;
+			}
+		}
+		return low;
+	}
+
+
+	/**
+	 * Labels the connected components of the input image
+	 * @param lowThresholdNbPoints Lower limit of number of points below which
+	 * 							   connected components will be dropped
+	 * @throws IllegalStateException in case of overflow of the number of connected components
+	 */
+	@Override
+	public void doLabelConnectedComponent(int lowThresholdNbPoints) throws IllegalStateException {
+
+		int width = this.m_inputImage.getWidth();
+		int height = this.m_inputImage.getHeight();
+		int depth = this.m_inputImage.getDepth();
+
+		this.m_inputSlices = new byte[depth][];
+		this.m_inputBuffers = new SliceBuffer[depth];
+		for (int k = 0; k < depth; k++){
+			this.m_inputBuffers[k] = this.m_inputImage.getSliceBuffer(k);
+			this.m_inputSlices[k] = this.m_inputBuffers[k].getBytesOrCopy();
+		}
+
+		// First pass on each slab in parallel
+		int nSlabs = Math.max(1, Math.min(depth, GlobalOptions.getParallelism()));
+		final ProvisionalLabels[] slabs = new ProvisionalLabels[nSlabs];
+		final int[] slabOfSlice = new int[depth];
+		for (int s = 0 ; s < nSlabs ; s++){
+			slabs[s] = new ProvisionalLabels((int)((long)s*depth/nSlabs), (int)((long)(s+1)*depth/nSlabs));
+			for (int z = slabs[s].m_zMin ; z < slabs[s].m_zMax ; z++){
+				slabOfSlice[z] = s;
+			}
+		}
+		// One task per slab
+		SliceScheduler.forEachSlice(nSlabs, new SliceTask() {
+			@Override
+			public void processSlice(int s) {
+				labelSlab(slabs[s]);
+			}
+		});
+
+		// Global union-find structure on the provisional labels
+		long nGlobalLabels = 0;
+		for (ProvisionalLabels slab : slabs){
+			slab.m_offset = (int)nGlobalLabels;
+			nGlobalLabels += slab.m_nLabels;
+		}
+		if (nGlobalLabels >= Integer.MAX_VALUE){
+			throw new IllegalStateException("Too many connected components.");
+		}
+		int[] parents = new int[(int)nGlobalLabels+1];
+		for (ProvisionalLabels slab : slabs){
+			for (int label = 1 ; label <= slab.m_nLabels ; label++){
+				parents[slab.m_offset + label] = slab.m_offset + slab.find(label);
+			}
+		}
+
+		// Merge the equivalences across the slabs' boundaries
+		for (int s = 1 ; s < nSlabs ; s++){
+			int z = slabs[s].m_zMin;
+			int[] labelsSlice = getLabelsSlice(z);
+			int[] previousLabelsSlice = getLabelsSlice(z-1);
+			int offset = slabs[s].m_offset;
+			int previousOffset = slabs[s-1].m_offset;
+			for (int y = 0 ; y < height ; y++){
+				for (int x = 0 ; x < width ; x++){
+					int label = labelsSlice[y*width + x];
+					if (label == undefinedLabel()){
+						continue;
+					}
+					for (int yy = Math.max(0, y-1) ; yy <= Math.min(height-1, y+1) ; yy++){
+						for (int xx = Math.max(0, x-1) ; xx <= Math.min(width-1, x+1) ; xx++){
+							int neighborLabel = previousLabelsSlice[yy*width + xx];
+							if (neighborLabel != undefinedLabel()){
+								int root1 = find(parents, offset + label);
+								int root2 = find(parents, previousOffset + neighborLabel);
+								if (root1 < root2){
+									parents[root2] = root1;
+								}else if (root2 < root1){
+									parents[root1] = root2;
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+
+		// Resolve the roots (parents are smaller than their children)
+		// and accumulate the statistics of each component into its root
+		for (int s = 0 ; s < nSlabs ; s++){
+			ProvisionalLabels slab = slabs[s];
+			for (int label = 1 ; label <= slab.m_nLabels ; label++){
+				int globalLabel = slab.m_offset + label;
+				int root = parents[parents[globalLabel]];
+				parents[globalLabel] = root;
+				if (root != globalLabel){
+					int rootSlab = findSlab(slabs, root);
+					slabs[rootSlab].merge(root - slabs[rootSlab].m_offset, slab, label);
+				}
+			}
+		}
+
+		// Number the components by the order of their first voxel,
+		// which is the order of their roots.
+		final int[] finalLabels = new int[parents.length];
+		int currentLabel = undefinedLabel();
+		for (int s = 0 ; s < nSlabs ; s++){
+			ProvisionalLabels slab = slabs[s];
+			for (int label = 1 ; label <= slab.m_nLabels ; label++){
+				int globalLabel = slab.m_offset + label;
+				if (parents[globalLabel] != globalLabel){
+					finalLabels[globalLabel] = finalLabels[parents[globalLabel]];
+				}else if (slab.get(label, ProvisionalLabels.N_POINTS) < lowThresholdNbPoints){
+					finalLabels[globalLabel] = undefinedLabel();
+				}else{
+					currentLabel++;
+					finalLabels[globalLabel] = currentLabel;
+					int componentIndex = this.m_components.add(
+							currentLabel,
+							slab.get(label, ProvisionalLabels.N_POINTS),
+							slab.get(label, ProvisionalLabels.FIRST_X),
+							slab.get(label, ProvisionalLabels.FIRST_Y),
+							slab.get(label, ProvisionalLabels.FIRST_Z),
+							slab.get(label, ProvisionalLabels.N_BORDER)
+							);
+					this.m_components.updateBox(componentIndex,
+											slab.get(label, ProvisionalLabels.X_MIN),
+											slab.get(label, ProvisionalLabels.Y_MIN),
+											slab.get(label, ProvisionalLabels.Z_MIN));
+					this.m_components.updateBox(componentIndex,
+											slab.get(label, ProvisionalLabels.X_MAX),
+											slab.get(label, ProvisionalLabels.Y_MAX),
+											slab.get(label, ProvisionalLabels.Z_MAX));
+				}
+			}
+		}
+
+		// Second pass: set the final labels in parallel
+		SliceScheduler.forEachSlice(depth, new SliceTask() {
+			@Override
+			public void processSlice(int z) {
+				int[] labelsSlice = getLabelsSlice(z);
+				int offset = slabs[slabOfSlice[z]].m_offset;
+				for (int i = 0 ; i < labelsSlice.length ; i++){
+					if (labelsSlice[i] != undefinedLabel()){
+						labelsSlice[i] = finalLabels[offset + labelsSlice[i]];
+					}
+				}
+			}
+		});
+
+		this.m_inputSlices = null;
+		this.m_inputBuffers = null;
+	}
+
+} // end of class
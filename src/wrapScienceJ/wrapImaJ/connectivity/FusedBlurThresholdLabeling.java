@@ -0,0 +1,307 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File: FusedBlurThresholdLabeling.java                                    * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+
+
+package wrapScienceJ.wrapImaJ.connectivity;
+
+import wrapScienceJ.config.GlobalOptions;
+import wrapScienceJ.utils.SliceScheduler;
+import wrapScienceJ.utils.SliceScheduler.SliceTask;
+import wrapScienceJ.wrapImaJ.core.ImageCore;
+import wrapScienceJ.wrapImaJ.core.SliceBuffer;
+import wrapScienceJ.wrapImaJ.core.histogram.HistogramBuilder;
+import wrapScienceJ.wrapImaJ.core.operation.ThresholdingOption;
+import wrapScienceJ.wrapImaJ.wrappers.imagej.core.HistogramIJ;
+
+/**
+ * Segments an image by a binomial blur, a global thresholding and a 3D connected components
+ * labeling, in two passes over the stack instead of a separate full stack pass for each step
+ * (and for the histogram):
+ * <ol>
+ * 	<li>The blur is computed in place, the slabs of consecutive slices being processed in parallel.
+ * 		Each task blurs the slices of its slab in X and Y one at a time, and keeps the last
+ * 		nPointsZ of them to blur in Z. The halo slices which a slab reads from its neighbors
+ * 		are copied before the blur. The histogram of the blurred image is accumulated
+ * 		as the blurred slices are written.</li>
+ * 	<li>The threshold is computed from that histogram, without reading the image.</li>
+ * 	<li>The binarization is fused with the first pass of the union-find labeling
+ * 		(see {@link ConnectedComponent#getLabeledComponentsBinarized(ImageCore, int, LabelingPolicy, int, boolean, double, boolean)}).</li>
+ * </ol>
+ * This saves passes over the stack, not memory: the image is not streamed. Since the global
+ * threshold depends on the histogram of the whole blurred image, the labeling starts once the whole
+ * image is blurred, and the labeling is the union-find labeling of the whole volume.
+ * Besides the image, which is modified in place, the memory used is:
+ * <ul>
+ * 	<li>during the blur, nPointsZ+1 slices as ints per task, and the copies (as ints) of the
+ * 		halo slices, that is nPointsZ-1 slices per slab boundary;</li>
+ * 	<li>during the labeling, the labels of all the voxels, one int per voxel (four times the
+ * 		size of a GRAY8 image), which the returned {@link ConnectedComponent} keeps
+ * 		(as for {@link LabelingPolicy#Full3D_Parallel}), and the union-find records
+ * 		of the provisional labels.</li>
+ * </ul>
+ * The peak memory is thus the same as for the labeling of the binarized image
+ * with {@link LabelingPolicy#Full3D_Parallel}.
+ * The binomial blur is normalized (the mask has mass one) so that the gray levels keep
+ * their range, and the image borders are extended by replicating the border voxels.
+ * Along each axis, the mask with nPoints points has the binomial coefficients of
+ * order nPoints-1 as weights, and is centered (up to one voxel for even numbers of points).
+ *
+ * @author Rémy Malgouyres
+ */
+public class FusedBlurThresholdLabeling {
+
+	/** Largest supported number of points of the mask along an axis (no overflow for GRAY16 images) */
+	private static final int MAX_N_POINTS = 15;
+
+	/** The image to segment, which is modified in place */
+	private ImageCore m_image;
+
+	/** Weights of the binomial mask along the X axis */
+	private int[] m_weightsX;
+
+	/** Weights of the binomial mask along the Y axis */
+	private int[] m_weightsY;
+
+	/** Weights of the binomial mask along the Z axis */
+	private int[] m_weightsZ;
+
+
+	/**
+	 * @param image The GRAY8 or GRAY16 image to segment, which is modified in place.
+	 * @param nPointsX cardinality of the support of the smoothing mask; first coordinate
+	 * @param nPointsY cardinality of the support of the smoothing mask; second coordinate
+	 * @param nPointsZ cardinality of the support of the smoothing mask; third coordinate
+	 * @throws IllegalArgumentException if the image is neither GRAY8 nor GRAY16, or if a number
+	 * 		   of points is not between 1 and 15.
+	 */
+	public FusedBlurThresholdLabeling(ImageCore image, int nPointsX, int nPointsY, int nPointsZ){
+		HistogramBuilder.getNumberOfGrayLevels(image.getBitDepth());
+		this.m_image = image;
+		this.m_weightsX = getBinomialWeights(nPointsX);
+		this.m_weightsY = getBinomialWeights(nPointsY);
+		this.m_weightsZ = getBinomialWeights(nPointsZ);
+	}
+
+
+	/**
+	 * @param nPoints cardinality of the support of the mask
+	 * @return The binomial coefficients of order nPoints-1
+	 * @throws IllegalArgumentException if the number of points is not between 1 and 15.
+	 */
+	private static int[] getBinomialWeights(int nPoints){
+		if (nPoints < 1 || nPoints > MAX_N_POINTS){
+			throw new IllegalArgumentException("The number of points of the binomial mask must be between 1 and "
+											   + MAX_N_POINTS + ".");
+		}
+		int[] weights = new int[nPoints];
+		weights[0] = 1;
+		for (int n = 1 ; n < nPoints ; n++){
+			for (int k = n ; k > 0 ; k--){
+				weights[k] += weights[k-1];
+			}
+		}
+		return weights;
+	}
+
+
+	/**
+	 * Applies the weights of a binomial mask to a sum and normalizes the result.
+	 * @param sum The weighted sum of the values
+	 * @param weights The weights of the mask, with sum 2^(weights.length-1)
+	 * @return The normalized value, rounded to the nearest integer.
+	 */
+	private static int normalize(int sum, int[] weights){
+		int shift = weights.length-1;
+		return shift == 0 ? sum : (sum + (1 << (shift-1))) >> shift;
+	}
+
+
+	/**
+	 * Blurs a slice in X and Y.
+	 * @param slice The slice to blur, with its gray levels as integers, and which receives the result.
+	 * @param width The width of the slice
+	 * @param height The height of the slice
+	 * @param temp A temporary array with the same size as the slice
+	 */
+	private void blurSliceXY(int[] slice, int width, int height, int[] temp){
+		int[] weightsX = this.m_weightsX;
+		int centerX = (weightsX.length-1)/2;
+		if (weightsX.length > 1){
+			for (int y = 0 ; y < height ; y++){
+				int row = y*width;
+				System.arraycopy(slice, row, temp, row, width);
+				for (int x = 0 ; x < width ; x++){
+					int sum = 0;
+					for (int k = 0 ; k < weightsX.length ; k++){
+						int xx = Math.min(width-1, Math.max(0, x+k-centerX));
+						sum += weightsX[k]*temp[row+xx];
+					}
+					slice[row+x] = normalize(sum, weightsX);
+				}
+			}
+		}
+		int[] weightsY = this.m_weightsY;
+		int centerY = (weightsY.length-1)/2;
+		if (weightsY.length > 1){
+			System.arraycopy(slice, 0, temp, 0, width*height);
+			for (int y = 0 ; y < height ; y++){
+				int row = y*width;
+				for (int x = 0 ; x < width ; x++){
+					slice[row+x] = 0;
+				}
+				// Rows are accumulated one at a time so that the inner loop is contiguous
+				for (int k = 0 ; k < weightsY.length ; k++){
+					int otherRow = Math.min(height-1, Math.max(0, y+k-centerY))*width;
+					int weight = weightsY[k];
+					for (int x = 0 ; x < width ; x++){
+						slice[row+x] += weight*temp[otherRow+x];
+					}
+				}
+				for (int x = 0 ; x < width ; x++){
+					slice[row+x] = normalize(slice[row+x], weightsY);
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Blurs the image in place and computes the histogram of the blurred image,
+	 * the slabs being processed in parallel.
+	 * @return The full resolution histogram of the blurred image
+	 * @see HistogramBuilder
+	 */
+	public long[] blurAndBuildHistogram(){
+		final int width = this.m_image.getWidth();
+		final int height = this.m_image.getHeight();
+		final int depth = this.m_image.getDepth();
+		final int sliceSize = width*height;
+		final int nGrayLevels = HistogramBuilder.getNumberOfGrayLevels(this.m_image.getBitDepth());
+		final int[] weightsZ = this.m_weightsZ;
+		final int windowSize = weightsZ.length;
+		final int radiusBefore = (windowSize-1)/2;
+		final int radiusAfter = windowSize-1-radiusBefore;
+
+		if (depth == 0){
+			return new long[nGrayLevels];
+		}
+		final int nSlabs = Math.max(1, Math.min(depth, GlobalOptions.getParallelism()));
+		final int[] slabLimits = new int[nSlabs+1];
+		for (int s = 0 ; s <= nSlabs ; s++){
+			slabLimits[s] = (int)((long)s*depth/nSlabs);
+		}
+
+		// Copy of the slices read by a slab in its neighbors' slices, which the neighbors modify
+		final int[][] halo = new int[depth][];
+		for (int s = 0 ; s < nSlabs ; s++){
+			for (int z = Math.max(0, slabLimits[s]-radiusBefore) ; z < slabLimits[s] ; z++){
+				halo[z] = readSlice(z);
+			}
+			for (int z = slabLimits[s+1] ; z < Math.min(depth, slabLimits[s+1]+radiusAfter) ; z++){
+				halo[z] = readSlice(z);
+			}
+		}
+
+		final long[][] partialHistograms = new long[nSlabs][];
+		SliceScheduler.forEachSlice(nSlabs, new SliceTask() {
+			@Override
+			public void processSlice(int s) {
+				int zMin = slabLimits[s];
+				int zMax = slabLimits[s+1];
+				long[] histogram = new long[nGrayLevels];
+				// Last windowSize slices blurred in X and Y (slice zz-firstZ at index (zz-firstZ) % windowSize)
+				int[][] window = new int[windowSize][];
+				int[] temp = new int[sliceSize];
+				int firstZ = zMin-radiusBefore;
+				for (int zz = firstZ ; zz < zMax+radiusAfter ; zz++){
+					int zClamped = Math.min(depth-1, Math.max(0, zz));
+					int[] slice = (zClamped >= zMin && zClamped < zMax) ? readSlice(zClamped)
+																		  : halo[zClamped].clone();
+					blurSliceXY(slice, width, height, temp);
+					window[(zz-firstZ) % windowSize] = slice;
+
+					int z = zz-radiusAfter;
+					if (z < zMin){
+						continue;
+					}
+					// The window contains the slices z-radiusBefore to z+radiusAfter
+					SliceBuffer output = FusedBlurThresholdLabeling.this.m_image.getSliceBuffer(z);
+					for (int i = 0 ; i < sliceSize ; i++){
+						int sum = 0;
+						for (int k = 0 ; k < windowSize ; k++){
+							sum += weightsZ[k]*window[(z-radiusBefore+k-firstZ) % windowSize][i];
+						}
+						int value = normalize(sum, weightsZ);
+						output.set(i, value);
+						histogram[value]++;
+					}
+				}
+				partialHistograms[s] = histogram;
+			}
+		});
+
+		long[] histogram = new long[nGrayLevels];
+		for (long[] partialHistogram : partialHistograms){
+			for (int i = 0 ; i < nGrayLevels ; i++){
+				histogram[i] += partialHistogram[i];
+			}
+		}
+		return histogram;
+	}
+
+
+	/**
+	 * @param z third coordinate of a slice of the image
+	 * @return A copy of the gray levels of the slice.
+	 */
+	private int[] readSlice(int z){
+		SliceBuffer sliceBuffer = this.m_image.getSliceBuffer(z);
+		int[] slice = new int[sliceBuffer.getSize()];
+		for (int i = 0 ; i < slice.length ; i++){
+			slice[i] = sliceBuffer.get(i);
+		}
+		return slice;
+	}
+
+
+	/**
+	 * Runs the whole pipeline: blurs the image, computes a global threshold from the histogram
+	 * of the blurred image, binarizes the image and labels its 3D connected components.
+	 * GRAY16 images are binarized and converted to GRAY8 by their thresholding operation
+	 * before the labeling, since the labeling requires a GRAY8 image.
+	 * @param method The thresholding method
+	 * @param labelingPolicy A 3D labeling policy, which determines the lowest number of
+	 * 						 voxels of the components kept by the labeling.
+	 * @param foregroundColor label of the 1's in the binarized image (typically 255)
+	 * @param removeBorderComponent true if the components which are on the edge of the image should be removed by filtering
+	 * @param thresholdComponentVolume minimal volume for filtering (taking into account the calibration) for the components. 0 if no minimal volume is required
+	 * @param setRandomColors true if the colors of the image should be set according to the components labels.
+	 * @return the labeled connected components of the binarized image
+	 * @throws IllegalStateException in case of overflow of the number of connected components
+	 */
+	public ConnectedComponent segment(ThresholdingOption method, LabelingPolicy labelingPolicy,
+									  int foregroundColor, boolean removeBorderComponent,
+									  double thresholdComponentVolume, boolean setRandomColors)
+									  throws IllegalStateException {
+		long[] histogram = blurAndBuildHistogram();
+		// Threshold in the GRAY8 range, as for ImageThresholding
+		int threshold = Math.max(0, HistogramIJ.getRegionBinarizationThreshold(method,
+															HistogramBuilder.reduce(histogram, 256)));
+		if (this.m_image.getBitDepth() != 8){
+			this.m_image.getImageThresholding().applyImageThresholdAndBinarize(threshold, true);
+			return ConnectedComponent.getLabeledComponents(this.m_image, labelingPolicy, foregroundColor,
+														   removeBorderComponent, thresholdComponentVolume,
+														   setRandomColors);
+		}
+		return ConnectedComponent.getLabeledComponentsBinarized(this.m_image, threshold, labelingPolicy,
+																foregroundColor, removeBorderComponent,
+																thresholdComponentVolume, setRandomColors);
+	}
+
+} // End of class
@@ -36,7 +36,13 @@ public enum LabelingPolicy {
 	/**
 	 * 3D Connected Components labeling. No minimal number of points
 	 */
-	Full3D_noSecureSize(5);
+	Full3D_noSecureSize(5),
+	/**
+	 * 3D Connected Components labeling using all the cores, by a two-pass
+	 * union-find algorithm on slabs of slices. No minimal number of points.
+	 * The labels and components are the same as with Full3D_noSecureSize.
+	 */
+	Full3D_Parallel(6);
 
 	private final int m_labelingPolicy;
 
@@ -45,7 +51,7 @@ public enum LabelingPolicy {
 		 * @param policy
 		 */
 		private LabelingPolicy(int policy) throws IllegalArgumentException {
-			if (policy < 1 || policy > 5){
+			if (policy < 1 || policy > 6){
 				throw new IllegalArgumentException("Undefined Connected Component Labeling Policy.");
 			}
 			this.m_labelingPolicy = policy;
@@ -58,6 +64,13 @@ public enum LabelingPolicy {
 			return this.m_labelingPolicy;
 		}
 
+		/**
+		 * @return true if the components are labeled in 3D (as opposed to slice by slice)
+		 */
+		public boolean is3D() {
+			return this.m_labelingPolicy >= 4;
+		}
+
 		/** 
 		 * @return a human readable description of the thresholding method.
 		 * @see java.lang.Enum#toString()
@@ -73,6 +86,8 @@ public enum LabelingPolicy {
 				return "2D labelling by slices orthogonal to Z";
 			case 5:
 				return "3D labelling No secure component size";
+			case 6:
+				return "3D parallel labelling";
 			default:	
 				return "3D labelling";
 			}
@@ -0,0 +1,37 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File: ComponentLevelPredicate.java                                       * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+
+
+package wrapScienceJ.wrapImaJ.connectivity.filtering;
+
+import wrapScienceJ.wrapImaJ.connectivity.ComponentInfo;
+
+/**
+ * A removal predicate which can (at least for some components) be evaluated on a whole
+ * connected component, from its information (number of voxels, border flag, bounding box, etc.),
+ * without testing its voxels one by one.
+ *
+ * The filtering of the components first evaluates the predicate on each component, and only
+ * the voxels of the undecided components (e.g. components whose bounding box straddles the
+ * decision surface of the predicate) are tested by {@link #keepVoxelComponent(wrapScienceJ.wrapImaJ.core.VoxelShort, ComponentInfo)},
+ * within the bounding box of the component and until one of them satisfies the predicate.
+ *
+ * The value on a component must be consistent with the values on its voxels.
+ *
+ * @author Remy Malgouyres
+ */
+public interface ComponentLevelPredicate extends ComponentRemovalPredicate {
+
+	/**
+	 * @param componentInfo The information concerning the connected component
+	 * @return The value of the predicate for all the voxels of the component,
+	 * 		   or {@link ComponentPredicateValue#Undecided} if it depends on the voxels.
+	 */
+	ComponentPredicateValue evaluateOnComponent(ComponentInfo componentInfo);
+}
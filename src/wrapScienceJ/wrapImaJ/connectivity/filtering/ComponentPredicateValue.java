@@ -0,0 +1,33 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File: ComponentPredicateValue.java                                       * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+
+
+package wrapScienceJ.wrapImaJ.connectivity.filtering;
+
+/**
+ * Value of a removal predicate evaluated on a whole connected component
+ * (see {@link ComponentLevelPredicate#evaluateOnComponent(wrapScienceJ.wrapImaJ.connectivity.ComponentInfo)}).
+ *
+ * @author Remy Malgouyres
+ */
+public enum ComponentPredicateValue {
+	/**
+	 * The predicate is satisfied by all the voxels of the component
+	 */
+	TrueForAllVoxels,
+	/**
+	 * The predicate is satisfied by none of the voxels of the component
+	 */
+	FalseForAllVoxels,
+	/**
+	 * The value of the predicate depends on the voxels of the component,
+	 * which must be tested one by one.
+	 */
+	Undecided;
+}
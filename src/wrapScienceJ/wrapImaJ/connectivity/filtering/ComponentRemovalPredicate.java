@@ -23,6 +23,9 @@ import wrapScienceJ.wrapImaJ.core.VoxelShort;
  * 	<li>To remove the components such none of the voxel satisfies the predicate</li>
  * </ul>
  * 
+ * Predicates which can be decided for a whole component (e.g. from its bounding box)
+ * should implement {@link ComponentLevelPredicate}, so that the voxels need not all be tested.
+ * 
  * @author Remy Malgouyres
  */
 public interface ComponentRemovalPredicate {
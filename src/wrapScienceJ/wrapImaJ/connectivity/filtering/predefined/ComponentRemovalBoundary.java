@@ -11,7 +11,8 @@
 package wrapScienceJ.wrapImaJ.connectivity.filtering.predefined;
 
 import wrapScienceJ.wrapImaJ.connectivity.ComponentInfo;
-import wrapScienceJ.wrapImaJ.connectivity.filtering.ComponentRemovalPredicate;
+import wrapScienceJ.wrapImaJ.connectivity.filtering.ComponentLevelPredicate;
+import wrapScienceJ.wrapImaJ.connectivity.filtering.ComponentPredicateValue;
 import wrapScienceJ.wrapImaJ.core.VoxelShort;
 
 /**
@@ -20,7 +21,7 @@ import wrapScienceJ.wrapImaJ.core.VoxelShort;
  *
  * @author Remy Malgouyres
  */
-public class ComponentRemovalBoundary implements ComponentRemovalPredicate {
+public class ComponentRemovalBoundary implements ComponentLevelPredicate {
 
 	/**
 	 * @see wrapScienceJ.wrapImaJ.connectivity.filtering.ComponentRemovalPredicate#keepVoxelComponent(wrapScienceJ.wrapImaJ.core.VoxelShort, wrapScienceJ.wrapImaJ.connectivity.ComponentInfo)
@@ -30,4 +31,13 @@ public class ComponentRemovalBoundary implements ComponentRemovalPredicate {
 		return !componentInfo.isOnTheeBorder();
 	}
 
+	/**
+	 * @see wrapScienceJ.wrapImaJ.connectivity.filtering.ComponentLevelPredicate#evaluateOnComponent(wrapScienceJ.wrapImaJ.connectivity.ComponentInfo)
+	 */
+	@Override
+	public ComponentPredicateValue evaluateOnComponent(ComponentInfo componentInfo) {
+		return componentInfo.isOnTheeBorder() ? ComponentPredicateValue.FalseForAllVoxels
+											  : ComponentPredicateValue.TrueForAllVoxels;
+	}
+
 }
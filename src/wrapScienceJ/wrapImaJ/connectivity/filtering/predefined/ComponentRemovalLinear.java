@@ -11,7 +11,10 @@
 package wrapScienceJ.wrapImaJ.connectivity.filtering.predefined;
 
 import wrapScienceJ.wrapImaJ.connectivity.ComponentInfo;
-import wrapScienceJ.wrapImaJ.connectivity.filtering.ComponentRemovalPredicate;
+import wrapScienceJ.wrapImaJ.connectivity.filtering.ComponentLevelPredicate;
+import wrapScienceJ.wrapImaJ.connectivity.filtering.ComponentPredicateValue;
+import wrapScienceJ.wrapImaJ.core.BoxROI;
+import wrapScienceJ.wrapImaJ.core.CoordinateAxis;
 import wrapScienceJ.wrapImaJ.core.VoxelShort;
 
 /**
@@ -22,7 +25,7 @@ import wrapScienceJ.wrapImaJ.core.VoxelShort;
  * 
  * @author Remy Malgouyres
  */
-public class ComponentRemovalLinear implements ComponentRemovalPredicate {
+public class ComponentRemovalLinear implements ComponentLevelPredicate {
 
 	private double m_xCoeff;
 	private double m_yCoeff;
@@ -51,5 +54,55 @@ public class ComponentRemovalLinear implements ComponentRemovalPredicate {
 				        + this.m_constantCoeff;
 		return ((voxel.getZ() >= zValue) && (voxel.getZ() < zValue + this.m_thickness));
 	}
+	
+	/**
+	 * The component is decided if its bounding box lies inside or outside the thick plane.
+	 * @see wrapScienceJ.wrapImaJ.connectivity.filtering.ComponentLevelPredicate#evaluateOnComponent(wrapScienceJ.wrapImaJ.connectivity.ComponentInfo)
+	 */
+	@Override
+	public ComponentPredicateValue evaluateOnComponent(ComponentInfo componentInfo) {
+		return evaluateOnBox(this.m_xCoeff, this.m_yCoeff, this.m_constantCoeff, this.m_thickness,
+							 componentInfo.getBoundingBox());
+	}
+	
+	/**
+	 * Evaluates the predicate "the voxel is in the thick plane" on all the voxels of a box.
+	 * Since the value of the plane's equation is monotonic in x and in y (including the rounding
+	 * of the floating point operations), its extreme values on the box are reached at the corners.
+	 * @param xCoeff first coefficient of the plane's equation
+	 * @param yCoeff second coefficient of the plane's equation
+	 * @param constantCoeff third coefficient of the plane's equation
+	 * @param thickness thickness of the plane
+	 * @param box A non empty box
+	 * @return The value of the predicate for all the voxels of the box, if it is the same.
+	 */
+	static ComponentPredicateValue evaluateOnBox(double xCoeff, double yCoeff, double constantCoeff,
+												 double thickness, BoxROI box){
+		int xMin = box.getMin(CoordinateAxis.X);
+		int xMax = box.getMax(CoordinateAxis.X)-1;
+		int yMin = box.getMin(CoordinateAxis.Y);
+		int yMax = box.getMax(CoordinateAxis.Y)-1;
+		int zMin = box.getMin(CoordinateAxis.Z);
+		int zMax = box.getMax(CoordinateAxis.Z)-1;
+		if (xMin > xMax || yMin > yMax || zMin > zMax){
+			return ComponentPredicateValue.Undecided;
+		}
+		double minZValue = Double.POSITIVE_INFINITY;
+		double maxZValue = Double.NEGATIVE_INFINITY;
+		for (int x : new int[]{xMin, xMax}){
+			for (int y : new int[]{yMin, yMax}){
+				double zValue = xCoeff*x + yCoeff*y + constantCoeff;
+				minZValue = Math.min(minZValue, zValue);
+				maxZValue = Math.max(maxZValue, zValue);
+			}
+		}
+		if (zMin >= maxZValue && zMax < minZValue + thickness){
+			return ComponentPredicateValue.TrueForAllVoxels;
+		}
+		if (zMax < minZValue || zMin >= maxZValue + thickness){
+			return ComponentPredicateValue.FalseForAllVoxels;
+		}
+		return ComponentPredicateValue.Undecided;
+	}
 
 }
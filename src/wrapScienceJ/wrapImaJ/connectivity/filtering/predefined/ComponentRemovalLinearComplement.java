@@ -11,7 +11,8 @@
 package wrapScienceJ.wrapImaJ.connectivity.filtering.predefined;
 
 import wrapScienceJ.wrapImaJ.connectivity.ComponentInfo;
-import wrapScienceJ.wrapImaJ.connectivity.filtering.ComponentRemovalPredicate;
+import wrapScienceJ.wrapImaJ.connectivity.filtering.ComponentLevelPredicate;
+import wrapScienceJ.wrapImaJ.connectivity.filtering.ComponentPredicateValue;
 import wrapScienceJ.wrapImaJ.core.VoxelShort;
 
 /**
@@ -24,7 +25,7 @@ import wrapScienceJ.wrapImaJ.core.VoxelShort;
  * 
  * @author Remy Malgouyres
  */
-public class ComponentRemovalLinearComplement implements ComponentRemovalPredicate {
+public class ComponentRemovalLinearComplement implements ComponentLevelPredicate {
 
 	private double m_xCoeff;
 	private double m_yCoeff;
@@ -52,5 +53,24 @@ public class ComponentRemovalLinearComplement implements ComponentRemovalPredica
 				        + this.m_constantCoeff;
 		return ((voxel.getZ() < zValue) || (voxel.getZ() >= zValue + this.m_thickness));
 	}
+	
+	/**
+	 * The component is decided if its bounding box lies inside or outside the thick plane.
+	 * @see wrapScienceJ.wrapImaJ.connectivity.filtering.ComponentLevelPredicate#evaluateOnComponent(wrapScienceJ.wrapImaJ.connectivity.ComponentInfo)
+	 */
+	@Override
+	public ComponentPredicateValue evaluateOnComponent(ComponentInfo componentInfo) {
+		ComponentPredicateValue inThePlane = ComponentRemovalLinear.evaluateOnBox(
+												this.m_xCoeff, this.m_yCoeff, this.m_constantCoeff,
+												this.m_thickness, componentInfo.getBoundingBox());
+		switch (inThePlane){
+			case TrueForAllVoxels:
+				return ComponentPredicateValue.FalseForAllVoxels;
+			case FalseForAllVoxels:
+				return ComponentPredicateValue.TrueForAllVoxels;
+			default:
+				return ComponentPredicateValue.Undecided;
+		}
+	}
 
 }
@@ -11,7 +11,8 @@
 package wrapScienceJ.wrapImaJ.connectivity.filtering.predefined;
 
 import wrapScienceJ.wrapImaJ.connectivity.ComponentInfo;
-import wrapScienceJ.wrapImaJ.connectivity.filtering.ComponentRemovalPredicate;
+import wrapScienceJ.wrapImaJ.connectivity.filtering.ComponentLevelPredicate;
+import wrapScienceJ.wrapImaJ.connectivity.filtering.ComponentPredicateValue;
 import wrapScienceJ.wrapImaJ.core.VoxelShort;
 
 /**
@@ -21,7 +22,7 @@ import wrapScienceJ.wrapImaJ.core.VoxelShort;
  * 
  * @author Remy Malgouyres
  */
-public class ComponentRemovalNone implements ComponentRemovalPredicate {
+public class ComponentRemovalNone implements ComponentLevelPredicate {
 
 	/**
 	 * @return true
@@ -32,4 +33,13 @@ public class ComponentRemovalNone implements ComponentRemovalPredicate {
 		return true;
 	}
 
+	/**
+	 * @return {@link ComponentPredicateValue#TrueForAllVoxels}
+	 * @see wrapScienceJ.wrapImaJ.connectivity.filtering.ComponentLevelPredicate#evaluateOnComponent(wrapScienceJ.wrapImaJ.connectivity.ComponentInfo)
+	 */
+	@Override
+	public ComponentPredicateValue evaluateOnComponent(ComponentInfo componentInfo) {
+		return ComponentPredicateValue.TrueForAllVoxels;
+	}
+
 }
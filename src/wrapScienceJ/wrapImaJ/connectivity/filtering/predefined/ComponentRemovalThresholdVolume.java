@@ -11,7 +11,8 @@
 package wrapScienceJ.wrapImaJ.connectivity.filtering.predefined;
 
 import wrapScienceJ.wrapImaJ.connectivity.ComponentInfo;
-import wrapScienceJ.wrapImaJ.connectivity.filtering.ComponentRemovalPredicate;
+import wrapScienceJ.wrapImaJ.connectivity.filtering.ComponentLevelPredicate;
+import wrapScienceJ.wrapImaJ.connectivity.filtering.ComponentPredicateValue;
 import wrapScienceJ.wrapImaJ.core.VoxelShort;
 
 /**
@@ -20,7 +21,7 @@ import wrapScienceJ.wrapImaJ.core.VoxelShort;
  * 
  * @author Remy Malgouyres
  */
-public class ComponentRemovalThresholdVolume implements ComponentRemovalPredicate {
+public class ComponentRemovalThresholdVolume implements ComponentLevelPredicate {
 
 	private int m_thresholdCardinality;
 	
@@ -40,4 +41,13 @@ public class ComponentRemovalThresholdVolume implements ComponentRemovalPredicat
 		return (componentInfo.getnumberOfPoints() >= this.m_thresholdCardinality);
 	}
 
+	/**
+	 * @see wrapScienceJ.wrapImaJ.connectivity.filtering.ComponentLevelPredicate#evaluateOnComponent(wrapScienceJ.wrapImaJ.connectivity.ComponentInfo)
+	 */
+	@Override
+	public ComponentPredicateValue evaluateOnComponent(ComponentInfo componentInfo) {
+		return (componentInfo.getnumberOfPoints() >= this.m_thresholdCardinality) ?
+					ComponentPredicateValue.TrueForAllVoxels : ComponentPredicateValue.FalseForAllVoxels;
+	}
+
 }
@@ -92,26 +92,37 @@ public class BoxROI {
 	 * @param voxelInTheBox A voxel that should be contained in the box.
 	 */
 	public void updateBox(VoxelShort voxelInTheBox){
+		updateBox(voxelInTheBox.getX(), voxelInTheBox.getY(), voxelInTheBox.getZ());
+	}
+	
+	/**
+	 * Update the boundaries of the BoxROI to take into account that a given voxel
+	 * must be in the box (without requiring a voxel instance).
+	 * @param x first coordinate of a voxel that should be contained in the box.
+	 * @param y second coordinate of a voxel that should be contained in the box.
+	 * @param z third coordinate of a voxel that should be contained in the box.
+	 */
+	public void updateBox(int x, int y, int z){
 		
-		if (voxelInTheBox.getX() < this.m_xmin){
-			this.m_xmin = voxelInTheBox.getX();
+		if (x < this.m_xmin){
+			this.m_xmin = (short)x;
 		}
-		if (voxelInTheBox.getX() >= this.m_xmax){
-			this.m_xmax = (short)(voxelInTheBox.getX()+1);
+		if (x >= this.m_xmax){
+			this.m_xmax = (short)(x+1);
 		}
 		
-		if (voxelInTheBox.getY() < this.m_ymin){
-			this.m_ymin = voxelInTheBox.getY();
+		if (y < this.m_ymin){
+			this.m_ymin = (short)y;
 		}
-		if (voxelInTheBox.getY() >= this.m_ymax){
-			this.m_ymax = (short)(voxelInTheBox.getY()+1);
+		if (y >= this.m_ymax){
+			this.m_ymax = (short)(y+1);
 		}
 
-		if (voxelInTheBox.getZ() < this.m_zmin){
-			this.m_zmin = voxelInTheBox.getZ();
+		if (z < this.m_zmin){
+			this.m_zmin = (short)z;
 		}
-		if (voxelInTheBox.getZ() >= this.m_zmax){
-			this.m_zmax = (short)(voxelInTheBox.getZ()+1);
+		if (z >= this.m_zmax){
+			this.m_zmax = (short)(z+1);
 		}
 	}
 	
@@ -0,0 +1,240 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File: ImageBufferPool.java                                               * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+
+
+package wrapScienceJ.wrapImaJ.core;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import wrapScienceJ.config.GlobalOptions;
+
+/**
+ * Pool of reusable arrays for the voxel values of slices (byte[] and short[]) and for
+ * the temporary buffers of the image operations (int[] and float[]), keyed by type and length.
+ *
+ * Large arrays which are allocated again and again with the same size (e.g. the slices of
+ * temporary images, or the plane buffers of the convolutions) are released explicitly
+ * to the pool once they are no longer used, and acquired from the pool instead of being
+ * allocated, so that steady state processing doesn't produce garbage.
+ * The slices of a whole image are released through
+ * {@link wrapScienceJ.factory.image.ImageCoreFactory#releaseImageCore(ImageCore)}.
+ *
+ * The acquired arrays are filled with zeros, as newly allocated arrays.
+ * An array must not be used any more after it has been released.
+ * Only the arrays handed out by the pool (and not released since) are kept when released,
+ * so that releasing an array allocated elsewhere (e.g. the slice of an image loaded from
+ * a file) or releasing an array twice has no effect.
+ * The total size of the arrays kept by the pool is bounded by
+ * {@link GlobalOptions#getBufferPoolCapacity()}: arrays released beyond that capacity
+ * are left to the garbage collector.
+ *
+ * All methods may be called concurrently.
+ *
+ * @author Rémy Malgouyres
+ */
+public class ImageBufferPool {
+
+	/** Arrays available for reuse, by type and length (see {@link #getKey(Object)}) */
+	private static final HashMap<Long, ArrayDeque<Object>> m_arrays = new HashMap<Long, ArrayDeque<Object>>();
+
+	/**
+	 * Arrays handed out by the pool and not released since (weakly referenced, arrays
+	 * having identity based hash codes and equality), guarded by m_arrays.
+	 */
+	private static final Set<Object> m_acquiredArrays = Collections.newSetFromMap(new WeakHashMap<Object, Boolean>());
+
+	/** Total size of the arrays kept by the pool, in bytes */
+	private static long m_pooledBytes = 0;
+
+
+	/**
+	 * @param length The length of the array
+	 * @return An array of bytes filled with zeros.
+	 */
+	public static byte[] acquireBytes(int length){
+		byte[] array = (byte[])acquire(getKey(0, length));
+		if (array == null){
+			return (byte[])handOut(new byte[length]);
+		}
+		Arrays.fill(array, (byte)0);
+		return array;
+	}
+
+
+	/**
+	 * @param length The length of the array
+	 * @return An array of shorts filled with zeros.
+	 */
+	public static short[] acquireShorts(int length){
+		short[] array = (short[])acquire(getKey(1, length));
+		if (array == null){
+			return (short[])handOut(new short[length]);
+		}
+		Arrays.fill(array, (short)0);
+		return array;
+	}
+
+
+	/**
+	 * @param length The length of the array
+	 * @return An array of ints filled with zeros.
+	 */
+	public static int[] acquireInts(int length){
+		int[] array = (int[])acquire(getKey(2, length));
+		if (array == null){
+			return (int[])handOut(new int[length]);
+		}
+		Arrays.fill(array, 0);
+		return array;
+	}
+
+
+	/**
+	 * @param length The length of the array
+	 * @return An array of floats filled with zeros.
+	 */
+	public static float[] acquireFloats(int length){
+		float[] array = (float[])acquire(getKey(3, length));
+		if (array == null){
+			return (float[])handOut(new float[length]);
+		}
+		Arrays.fill(array, 0.0f);
+		return array;
+	}
+
+
+	/**
+	 * Gives an array back to the pool, which may return it from a later acquisition.
+	 * The array must not be used any more by the caller.
+	 * @param array An array of bytes, shorts, ints or floats (null arrays, and arrays
+	 * 				which have not been handed out by the pool, are ignored).
+	 * @throws IllegalArgumentException if the array has another type.
+	 */
+	public static void release(Object array){
+		if (array == null){
+			return;
+		}
+		long key = getKey(array);
+		long size = getSizeInBytes(key);
+		synchronized (m_arrays) {
+			if (!m_acquiredArrays.remove(array)
+					|| m_pooledBytes + size > GlobalOptions.getBufferPoolCapacity()){
+				return;
+			}
+			ArrayDeque<Object> arrays = m_arrays.get(Long.valueOf(key));
+			if (arrays == null){
+				arrays = new ArrayDeque<Object>();
+				m_arrays.put(Long.valueOf(key), arrays);
+			}
+			arrays.push(array);
+			m_pooledBytes += size;
+		}
+	}
+
+
+	/**
+	 * Discards all the arrays kept by the pool.
+	 */
+	public static void clear(){
+		synchronized (m_arrays) {
+			m_arrays.clear();
+			m_pooledBytes = 0;
+		}
+	}
+
+
+	/**
+	 * @return The total size of the arrays kept by the pool, in bytes.
+	 */
+	public static long getPooledBytes(){
+		synchronized (m_arrays) {
+			return m_pooledBytes;
+		}
+	}
+
+
+	/**
+	 * @param key The type and length of the array
+	 * @return An array from the pool, or null if there is none.
+	 */
+	private static Object acquire(long key){
+		synchronized (m_arrays) {
+			ArrayDeque<Object> arrays = m_arrays.get(Long.valueOf(key));
+			if (arrays == null || arrays.isEmpty()){
+				return null;
+			}
+			m_pooledBytes -= getSizeInBytes(key);
+			Object array = arrays.pop();
+			m_acquiredArrays.add(array);
+			return array;
+		}
+	}
+
+
+	/**
+	 * Records that a newly allocated array is handed out by the pool, so that it is kept when released.
+	 * @param array The array
+	 * @return The array
+	 */
+	private static Object handOut(Object array){
+		synchronized (m_arrays) {
+			m_acquiredArrays.add(array);
+		}
+		return array;
+	}
+
+
+	/**
+	 * @param type 0 for bytes, 1 for shorts, 2 for ints and 3 for floats
+	 * @param length The length of the array
+	 * @return The key of the arrays with that type and length.
+	 */
+	private static long getKey(int type, int length){
+		return ((long)type << 32) | length;
+	}
+
+
+	/**
+	 * @param array An array of bytes, shorts, ints or floats
+	 * @return The key of the array
+	 * @throws IllegalArgumentException if the array has another type.
+	 */
+	private static long getKey(Object array){
+		if (array instanceof byte[]){
+			return getKey(0, ((byte[])array).length);
+		}
+		if (array instanceof short[]){
+			return getKey(1, ((short[])array).length);
+		}
+		if (array instanceof int[]){
+			return getKey(2, ((int[])array).length);
+		}
+		if (array instanceof float[]){
+			return getKey(3, ((float[])array).length);
+		}
+		throw new IllegalArgumentException("Only arrays of bytes, shorts, ints or floats can be pooled.");
+	}
+
+
+	/**
+	 * @param key The type and length of an array
+	 * @return The size of the array in bytes
+	 */
+	private static long getSizeInBytes(long key){
+		int type = (int)(key >>> 32);
+		long length = key & 0xFFFFFFFFL;
+		return length << (type == 0 ? 0 : (type == 1 ? 1 : 2));
+	}
+
+} // End of class
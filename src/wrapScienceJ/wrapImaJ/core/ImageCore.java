@@ -105,6 +105,8 @@ public interface ImageCore extends ResourceCore {
 	/**
 	 * allows to release the memory of the slices of the image, making
 	 * the image unusable.
+	 * Use {@link #close()} to also make the slices available for reuse
+	 * by later allocations.
 	 */
 	public void deleteMemory();
 	
@@ -206,6 +208,21 @@ public interface ImageCore extends ResourceCore {
 	public int getVoxel(VoxelShort voxel);
 
 	
+	/**
+	 * Retrieves a typed view on the gray levels of a slice, backed by the image data.
+	 * Values read and written through the returned buffer are those of the image, without copy,
+	 * and the current slice ({@link #setCurrentZ(int)}) is left unchanged.
+	 * This is the preferred way to process all the voxels of an image, since it avoids
+	 * the per voxel slice selection and method dispatch of {@link #getVoxel(int, int, int)}.
+	 * The buffer remains valid as long as the slices of the image are not reallocated
+	 * (e.g. by {@link #deleteMemory()} or a change in the bit depth).
+	 * @param zCoord the id (z-value) of the slice, between zero and (getDepth()-1).
+	 * @return a view on the pixel array of the slice
+	 * @see SliceBuffer
+	 */
+	public SliceBuffer getSliceBuffer(int zCoord);
+
+	
 	/**
 	 * Retrieves the Calibration Data for non isotropic images provided with a length unit
 	 * @return the Calibration Data for the Image. Returns (1.0, 1.0, 1.0) if not set.
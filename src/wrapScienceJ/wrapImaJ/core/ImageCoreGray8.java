@@ -17,14 +17,23 @@ package wrapScienceJ.wrapImaJ.core;
 public interface ImageCoreGray8 extends ImageCore {
 	
 	/**
-	 * Constructs and retrieves the histogram of an image
+	 * Constructs and retrieves the histogram of an image.
+	 * The gray levels of 16 bits per voxel images are divided by 256.
 	 * @return The histogram of the 3D image as an array of 256 values
-	 * 
-	 * TODO make this method handle any 16 bits image.
+	 * @see #buildFullResolutionHistogram()
 	 */
 	public long[] buildHistogram();
 	
 
+	/**
+	 * Constructs and retrieves the histogram of an image, with one bin per gray level.
+	 * @return The histogram of the 3D image as an array of 256 values for 8 bits per voxel
+	 * 		   images, or 65536 values for 16 bits per voxel images.
+	 * @see wrapScienceJ.wrapImaJ.core.histogram.HistogramBuilder
+	 */
+	public long[] buildFullResolutionHistogram();
+	
+
 	/**
 	 * 
 	 * Constructs and retrieves the histogram of an image.
@@ -33,8 +42,6 @@ public interface ImageCoreGray8 extends ImageCore {
 	 * 
 	 * @param backgroungGrayLevel The gray level to set to zero in the resulting histogram.
 	 * @return The histogram of the 3D image as an array of 256 values
-	 * 
-	 * TODO make this method handle any 16 bits image.
 	 */
 	public long[] buildHistogramExcludeBackground(int backgroungGrayLevel);
 	
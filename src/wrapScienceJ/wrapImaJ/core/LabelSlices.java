@@ -0,0 +1,145 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File: LabelSlices.java                                                   * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+
+
+package wrapScienceJ.wrapImaJ.core;
+
+/**
+ * Read only access to the slices of a label volume (e.g. the labels of connected components),
+ * stored either as arrays of ints, as arrays of unsigned shorts, or as the gray levels
+ * of an 8 or 16 bits image.
+ *
+ * This allows the algorithms on label volumes (measurements, histograms of regions, etc.)
+ * to read the labels where they are, without converting them to an image, which would
+ * require a copy of the labels and would limit the labels to 65535.
+ *
+ * The voxels of a slice are stored row by row, so that the linear index
+ * of the voxel (x, y) is y*getWidth()+x, as in {@link SliceBuffer}.
+ *
+ * @see wrapScienceJ.wrapImaJ.connectivity.ConnectedComponent#getLabelsAsImage()
+ *
+ * @author Rémy Malgouyres
+ */
+public final class LabelSlices {
+
+	/** Labels of the voxels, by slice (null unless the labels are stored as ints) */
+	private final int[][] m_labels;
+
+	/** Labels of the voxels as unsigned shorts, by slice (null unless the labels are stored as shorts) */
+	private final short[][] m_shortLabels;
+
+	/** Slices whose gray levels are the labels (null if the labels are stored as arrays) */
+	private final SliceBuffer[] m_slices;
+
+	/** Width (first coordinate's dimension) of the slices */
+	private final int m_width;
+
+	/** Height (second coordinate's dimension) of the slices */
+	private final int m_height;
+
+
+	/**
+	 * Creates a view on labels stored as arrays of ints, without copying them.
+	 * @param labels The labels of the voxels, by slice, each array having at least width*height elements.
+	 * @param width Width of the slices
+	 * @param height Height of the slices
+	 */
+	public LabelSlices(int[][] labels, int width, int height){
+		this.m_labels = labels;
+		this.m_shortLabels = null;
+		this.m_slices = null;
+		this.m_width = width;
+		this.m_height = height;
+	}
+
+
+	/**
+	 * Creates a view on labels stored as arrays of unsigned shorts (from 0 to 65535), without copying them.
+	 * @param labels The labels of the voxels, by slice, each array having at least width*height elements.
+	 * @param width Width of the slices
+	 * @param height Height of the slices
+	 */
+	public LabelSlices(short[][] labels, int width, int height){
+		this.m_labels = null;
+		this.m_shortLabels = labels;
+		this.m_slices = null;
+		this.m_width = width;
+		this.m_height = height;
+	}
+
+
+	/**
+	 * Creates a view on labels stored as the gray levels of slices, without copying them.
+	 * @param slices The slices, indexed by the z coordinate. The slices which are not read
+	 * 				 by the algorithm (e.g. outside a region of interest) may be null.
+	 * @param width Width of the slices
+	 * @param height Height of the slices
+	 */
+	public LabelSlices(SliceBuffer[] slices, int width, int height){
+		this.m_labels = null;
+		this.m_shortLabels = null;
+		this.m_slices = slices;
+		this.m_width = width;
+		this.m_height = height;
+	}
+
+
+	/**
+	 * Creates a view on labels stored as the gray levels of an image, without copying them.
+	 * @param labels An 8 or 16 bits image, the gray levels of which are labels.
+	 */
+	public LabelSlices(ImageCore labels){
+		this(SliceBuffer.getSliceBuffers(labels), labels.getWidth(), labels.getHeight());
+	}
+
+
+	/**
+	 * @return The width (first coordinate's dimension) of the slices
+	 */
+	public int getWidth(){
+		return this.m_width;
+	}
+
+
+	/**
+	 * @return The height (second coordinate's dimension) of the slices
+	 */
+	public int getHeight(){
+		return this.m_height;
+	}
+
+
+	/**
+	 * @return The number of slices
+	 */
+	public int getDepth(){
+		if (this.m_labels != null){
+			return this.m_labels.length;
+		}
+		return this.m_shortLabels != null ? this.m_shortLabels.length : this.m_slices.length;
+	}
+
+
+	/**
+	 * Retrieves the label of a voxel given by its slice and its linear index in the slice.
+	 * @param z the third coordinate of the voxel
+	 * @param index the linear index y*getWidth()+x of the voxel
+	 * @return the label of the voxel
+	 */
+	public int get(int z, int index){
+		if (this.m_labels != null){
+			return this.m_labels[z][index];
+		}
+		if (this.m_shortLabels != null){
+			return this.m_shortLabels[z][index] & 0xffff;
+		}
+		return this.m_slices[z].get(index);
+	}
+
+} // End of class
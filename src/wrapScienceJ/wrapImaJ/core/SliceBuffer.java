@@ -0,0 +1,395 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File: SliceBuffer.java                                                   * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+
+
+package wrapScienceJ.wrapImaJ.core;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import wrapScienceJ.wrapImaJ.core.histogram.HistogramCache;
+
+/**
+ * Typed view on the gray levels of one slice of an image, backed directly by
+ * the slice's pixel array (byte[] for GRAY8, short[] for GRAY16), or by a
+ * (possibly memory mapped) ByteBuffer for images which are not held in the heap.
+ *
+ * The voxels of the slice are stored row by row, so that the linear index
+ * of the pixel (x, y) is y*getWidth()+x (see {@link #getIndex(int, int)}).
+ * Reading and writing through the buffer changes the image data without any
+ * copy and without changing the current slice of the image, which makes it
+ * the preferred way to implement loops over all voxels of an image, as opposed
+ * to {@link ImageCore#getPixel(int, int)} or {@link ImageCore#getVoxel(int, int, int)}.
+ *
+ * The values are handled as unsigned integers, with the same conventions
+ * as {@link ImageCore#getPixel(int, int)} and {@link ImageCore#setPixel(int, int, int)}:
+ * the value set is truncated to the bit depth of the slice.
+ *
+ * If the image caches its histogram, the buffer invalidates the cache when the
+ * gray levels are written through it (including through the backing array, which
+ * is considered as written once it has been retrieved by {@link #getBytes()} or
+ * {@link #getShorts()}), even if the histogram has been computed after the buffer
+ * was retrieved.
+ *
+ * @see ImageCore#getSliceBuffer(int)
+ */
+public final class SliceBuffer {
+
+	/** Backing array for 8 bits per pixel slices (null otherwise) */
+	private final byte[] m_bytes;
+
+	/** Backing array for 16 bits per pixel slices (null otherwise) */
+	private final short[] m_shorts;
+
+	/** Backing buffer for slices which are not backed by an array (null otherwise) */
+	private final ByteBuffer m_buffer;
+
+	/** Number of bits per pixel of the slice (8 or 16) */
+	private final int m_bitDepth;
+
+	/** Width (first coordinate's dimension) of the slice */
+	private final int m_width;
+
+	/** Height (second coordinate's dimension) of the slice */
+	private final int m_height;
+
+	/** Histogram cache of the image, invalidated when the slice is written (null if none) */
+	private final HistogramCache m_histogramCache;
+
+
+	/**
+	 * Creates a view on an existing pixel array, without copying the data.
+	 * @param pixels The pixel array of the slice, either a byte[] or a short[]
+	 * 				 with at least width*height elements.
+	 * @param width Width of the slice in pixels
+	 * @param height Height of the slice in pixels
+	 */
+	public SliceBuffer(Object pixels, int width, int height){
+		this(pixels, width, height, null);
+	}
+
+
+	/**
+	 * Creates a view on an existing pixel array, without copying the data.
+	 * @param pixels The pixel array of the slice, either a byte[] or a short[]
+	 * 				 with at least width*height elements.
+	 * @param width Width of the slice in pixels
+	 * @param height Height of the slice in pixels
+	 * @param histogramCache The histogram cache of the image, which is invalidated when
+	 * 						 the slice is written (or null if the image has no cache).
+	 */
+	public SliceBuffer(Object pixels, int width, int height, HistogramCache histogramCache){
+		this.m_buffer = null;
+		this.m_histogramCache = histogramCache;
+		if (pixels instanceof byte[]){
+			this.m_bytes = (byte[])pixels;
+			this.m_shorts = null;
+			this.m_bitDepth = 8;
+		}else if (pixels instanceof short[]){
+			this.m_bytes = null;
+			this.m_shorts = (short[])pixels;
+			this.m_bitDepth = 16;
+		}else{
+			throw new IllegalArgumentException("Slice buffers are only supported for "
+											   + "8 or 16 bits per pixel images.");
+		}
+		if (getLength() < width*height){
+			throw new IllegalArgumentException("Pixel array too small for the slice size.");
+		}
+		this.m_width = width;
+		this.m_height = height;
+	}
+
+
+	/**
+	 * Creates a view on a byte buffer (e.g. a memory mapped region of a file), without copying the data.
+	 * The 16 bits values are read and written with the byte order of the buffer.
+	 * Absolute accesses only are performed, so the position of the buffer is left unchanged.
+	 * @param buffer The buffer containing the gray levels of the slice, starting at index 0,
+	 * 				 with at least width*height*bitDepth/8 bytes.
+	 * @param bitDepth Number of bits per pixel (8 or 16)
+	 * @param width Width of the slice in pixels
+	 * @param height Height of the slice in pixels
+	 */
+	public SliceBuffer(ByteBuffer buffer, int bitDepth, int width, int height){
+		if (bitDepth != 8 && bitDepth != 16){
+			throw new IllegalArgumentException("Slice buffers are only supported for "
+											   + "8 or 16 bits per pixel images.");
+		}
+		this.m_bytes = null;
+		this.m_shorts = null;
+		this.m_buffer = buffer;
+		this.m_histogramCache = null;
+		this.m_bitDepth = bitDepth;
+		if (getLength() < width*height){
+			throw new IllegalArgumentException("Pixel buffer too small for the slice size.");
+		}
+		this.m_width = width;
+		this.m_height = height;
+	}
+
+
+	/**
+	 * Retrieves the buffers of all the slices of an image, so that the slices
+	 * can be accessed randomly (e.g. along the Z axis) without changing the current slice.
+	 * @param image The image whose slices are to be viewed
+	 * @return An array of getDepth() slice buffers, indexed by the z coordinate.
+	 */
+	public static SliceBuffer[] getSliceBuffers(ImageCore image){
+		SliceBuffer[] slices = new SliceBuffer[image.getDepth()];
+		for (int z=0 ; z<slices.length ; z++){
+			slices[z] = image.getSliceBuffer(z);
+		}
+		return slices;
+	}
+
+
+	/**
+	 * @return The width (first coordinate's dimension) of the slice
+	 */
+	public int getWidth(){
+		return this.m_width;
+	}
+
+
+	/**
+	 * @return The height (second coordinate's dimension) of the slice
+	 */
+	public int getHeight(){
+		return this.m_height;
+	}
+
+
+	/**
+	 * @return The number of bits per pixel of the backing array (8 or 16)
+	 */
+	public int getBitDepth(){
+		return this.m_bitDepth;
+	}
+
+
+	/**
+	 * @return The number of pixels which can be stored in the backing array or buffer.
+	 */
+	private int getLength(){
+		if (this.m_bytes != null){
+			return this.m_bytes.length;
+		}
+		if (this.m_shorts != null){
+			return this.m_shorts.length;
+		}
+		return this.m_buffer.capacity()/(this.m_bitDepth/8);
+	}
+
+
+	/**
+	 * @return The number of pixels in the slice (getWidth()*getHeight())
+	 */
+	public int getSize(){
+		return this.m_width*this.m_height;
+	}
+
+
+	/**
+	 * Computes the linear index of a pixel, to be used with {@link #get(int)} and {@link #set(int, int)}.
+	 * @param x the (integer valued) x coordinate of the pixel
+	 * @param y the (integer valued) y coordinate of the pixel
+	 * @return the linear index y*getWidth()+x of the pixel
+	 */
+	public int getIndex(int x, int y){
+		return y*this.m_width + x;
+	}
+
+
+	/**
+	 * Retrieves the gray level of a pixel given by its linear index
+	 * @param index the linear index y*getWidth()+x of the pixel
+	 * @return the (unsigned) gray level of the pixel
+	 */
+	public int get(int index){
+		if (this.m_bytes != null){
+			return this.m_bytes[index] & 0xff;
+		}
+		if (this.m_shorts != null){
+			return this.m_shorts[index] & 0xffff;
+		}
+		if (this.m_bitDepth == 8){
+			return this.m_buffer.get(index) & 0xff;
+		}
+		return this.m_buffer.getShort(2*index) & 0xffff;
+	}
+
+
+	/**
+	 * Sets the gray level of a pixel given by its linear index.
+	 * The value is truncated to the bit depth of the slice.
+	 * @param index the linear index y*getWidth()+x of the pixel
+	 * @param value the gray level to set
+	 */
+	public void set(int index, int value){
+		markModified();
+		if (this.m_bytes != null){
+			this.m_bytes[index] = (byte)value;
+		}else if (this.m_shorts != null){
+			this.m_shorts[index] = (short)value;
+		}else if (this.m_bitDepth == 8){
+			this.m_buffer.put(index, (byte)value);
+		}else{
+			this.m_buffer.putShort(2*index, (short)value);
+		}
+	}
+
+
+	/**
+	 * Retrieves the gray level of a pixel
+	 * @param x the (integer valued) x coordinate of the pixel
+	 * @param y the (integer valued) y coordinate of the pixel
+	 * @return the (unsigned) gray level of the pixel
+	 */
+	public int get(int x, int y){
+		return get(y*this.m_width + x);
+	}
+
+
+	/**
+	 * Sets the gray level of a pixel.
+	 * The value is truncated to the bit depth of the slice.
+	 * @param x the (integer valued) x coordinate of the pixel
+	 * @param y the (integer valued) y coordinate of the pixel
+	 * @param value the gray level to set
+	 */
+	public void set(int x, int y, int value){
+		set(y*this.m_width + x, value);
+	}
+
+
+	/**
+	 * Sets all the pixels of the slice to a given gray level.
+	 * @param value the gray level to set
+	 */
+	public void fill(int value){
+		markModified();
+		if (this.m_bytes != null){
+			Arrays.fill(this.m_bytes, 0, getSize(), (byte)value);
+		}else if (this.m_shorts != null){
+			Arrays.fill(this.m_shorts, 0, getSize(), (short)value);
+		}else{
+			for (int i=0 ; i<getSize() ; i++){
+				set(i, value);
+			}
+		}
+	}
+
+
+	/**
+	 * Copies the gray levels of a range of pixels into another slice with the same bit depth.
+	 * @param srcIndex linear index of the first pixel to copy in this slice
+	 * @param dest The destination slice buffer
+	 * @param destIndex linear index of the first pixel to write in the destination slice
+	 * @param length number of consecutive pixels to copy
+	 */
+	public void copyTo(int srcIndex, SliceBuffer dest, int destIndex, int length){
+		if (dest.getBitDepth() != getBitDepth()){
+			throw new IllegalArgumentException("Cannot copy raw pixels to a slice with different bit depth");
+		}
+		dest.markModified();
+		if (this.m_bytes != null && dest.m_bytes != null){
+			System.arraycopy(this.m_bytes, srcIndex, dest.m_bytes, destIndex, length);
+		}else if (this.m_shorts != null && dest.m_shorts != null){
+			System.arraycopy(this.m_shorts, srcIndex, dest.m_shorts, destIndex, length);
+		}else{
+			for (int i=0 ; i<length ; i++){
+				dest.set(destIndex+i, get(srcIndex+i));
+			}
+		}
+	}
+
+
+	/**
+	 * Allows direct access to the backing array of a GRAY8 slice, which is considered
+	 * as modified (see {@link #getBytesOrCopy()} for read only accesses).
+	 * Note that the values must be masked (value & 0xff) to be read as unsigned.
+	 * @return The backing array, or null if the slice is not 8 bits per pixel
+	 * 		   or is not backed by an array.
+	 */
+	public byte[] getBytes(){
+		markModified();
+		return this.m_bytes;
+	}
+
+
+	/**
+	 * Retrieves the gray levels of a GRAY8 slice as an array, for read only
+	 * algorithms which need random access to the raw values.
+	 * Note that the values must be masked (value & 0xff) to be read as unsigned.
+	 * @return The backing array if the slice is backed by an array, or a copy
+	 * 		   of the gray levels otherwise (e.g. for memory mapped images).
+	 * @throws IllegalStateException if the slice is not 8 bits per pixel.
+	 */
+	public byte[] getBytesOrCopy() throws IllegalStateException {
+		if (this.m_bitDepth != 8){
+			throw new IllegalStateException("The slice is not 8 bits per pixel.");
+		}
+		if (this.m_bytes != null){
+			return this.m_bytes;
+		}
+		byte[] bytes = new byte[getSize()];
+		ByteBuffer buffer = this.m_buffer.duplicate();
+		buffer.position(0);
+		buffer.get(bytes);
+		return bytes;
+	}
+
+
+	/**
+	 * Allows direct access to the backing array of a GRAY16 slice, which is considered
+	 * as modified.
+	 * Note that the values must be masked (value & 0xffff) to be read as unsigned.
+	 * @return The backing array, or null if the slice is not 16 bits per pixel
+	 * 		   or is not backed by an array.
+	 */
+	public short[] getShorts(){
+		markModified();
+		return this.m_shorts;
+	}
+
+
+	/**
+	 * Retrieves the gray levels of a GRAY16 slice as an array, for read only
+	 * algorithms which need random access to the raw values.
+	 * Note that the values must be masked (value & 0xffff) to be read as unsigned.
+	 * @return The backing array if the slice is backed by an array, or a copy
+	 * 		   of the gray levels otherwise (e.g. for memory mapped images).
+	 * @throws IllegalStateException if the slice is not 16 bits per pixel.
+	 */
+	public short[] getShortsOrCopy() throws IllegalStateException {
+		if (this.m_bitDepth != 16){
+			throw new IllegalStateException("The slice is not 16 bits per pixel.");
+		}
+		if (this.m_shorts != null){
+			return this.m_shorts;
+		}
+		short[] shorts = new short[getSize()];
+		ByteBuffer buffer = this.m_buffer.duplicate();
+		buffer.position(0);
+		buffer.order(this.m_buffer.order()).asShortBuffer().get(shorts);
+		return shorts;
+	}
+
+
+	/**
+	 * Records a modification of the gray levels in the histogram cache of the image, if any.
+	 */
+	private void markModified(){
+		if (this.m_histogramCache != null){
+			this.m_histogramCache.invalidate();
+		}
+	}
+
+} // End of class
@@ -66,6 +66,14 @@ public abstract class HistogramBaseGeneric implements Histogram {
 		this.m_values = image.buildHistogram();
 	}
 	
+	/**
+	 * Constructor of a histogram with given values
+	 * @param values the values of the histogram (the array is copied)
+	 */
+	public HistogramBaseGeneric(long[] values) {
+		this.m_values = values.clone();
+	}
+	
 	/**
 	 * Constructor which creates a copy of another instance
 	 * @param otherHistogram the original instance.
@@ -0,0 +1,414 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File: HistogramBuilder.java                                              * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+
+
+package wrapScienceJ.wrapImaJ.core.histogram;
+
+import wrapScienceJ.config.GlobalOptions;
+import wrapScienceJ.utils.SliceScheduler;
+import wrapScienceJ.utils.SliceScheduler.SliceTask;
+import wrapScienceJ.wrapImaJ.core.BoxROI;
+import wrapScienceJ.wrapImaJ.core.CoordinateAxis;
+import wrapScienceJ.wrapImaJ.core.ImageCore;
+import wrapScienceJ.wrapImaJ.core.LabelSlices;
+import wrapScienceJ.wrapImaJ.core.SliceBuffer;
+
+/**
+ * Computes the histograms of 8 or 16 bits per voxel images in a single pass over the voxel data.
+ *
+ * The slices are split into (at most) {@link GlobalOptions#getParallelism()} blocks of
+ * consecutive slices, each block being processed by one task with its own partial histogram.
+ * The partial histograms are then summed, so that no synchronization is required
+ * during the pass. The raw pixel arrays are read directly when the slices are backed
+ * by arrays (e.g. ImageJ images).
+ *
+ * The histograms have full resolution, that is, one bin per gray level (256 bins for
+ * GRAY8 images and 65536 bins for GRAY16 images). The 256 bins histogram used by the
+ * thresholding methods is obtained with {@link #reduce(long[], int)}, which amounts
+ * to dividing the GRAY16 gray levels by 256.
+ *
+ * The histograms of regions (boxes or labels in a label image, such as connected components)
+ * are computed by reading only the voxels of the region's bounding box, and the histograms of all
+ * the regions of a label image are computed in a single pass, so that no crop needs to be made.
+ *
+ * @author Rémy Malgouyres
+ */
+public class HistogramBuilder {
+
+	/**
+	 * @param bitDepth Number of bits per voxel of an image (8 or 16)
+	 * @return The number of possible gray levels for that bit depth.
+	 * @throws IllegalArgumentException if the bit depth is neither 8 nor 16.
+	 */
+	public static int getNumberOfGrayLevels(int bitDepth){
+		switch (bitDepth){
+		case 8:
+			return 256;
+		case 16:
+			return 65536;
+		default:
+			throw new IllegalArgumentException("Histograms are only supported for "
+											   + "8 or 16 bits per voxel images.");
+		}
+	}
+
+
+	/**
+	 * Computes the full resolution histogram of an image, with partial histograms computed in parallel.
+	 * @param image An 8 or 16 bits per voxel image
+	 * @return The histogram, with one bin per gray level (256 or 65536 values).
+	 */
+	public static long[] buildHistogram(ImageCore image){
+		return buildHistogram(SliceBuffer.getSliceBuffers(image), image.getBitDepth());
+	}
+
+
+	/**
+	 * Computes the full resolution histogram of the voxels of a collection of slices,
+	 * with partial histograms computed in parallel.
+	 * @param slices The slices of an image
+	 * @param bitDepth The number of bits per voxel of the slices (8 or 16)
+	 * @return The histogram, with one bin per gray level (256 or 65536 values).
+	 */
+	public static long[] buildHistogram(final SliceBuffer[] slices, int bitDepth){
+		final int nGrayLevels = getNumberOfGrayLevels(bitDepth);
+		final int nBlocks = Math.min(slices.length, GlobalOptions.getParallelism());
+		final long[][] partialHistograms = new long[nBlocks][];
+		SliceScheduler.forEachSlice(nBlocks, new SliceTask() {
+			@Override
+			public void processSlice(int block) {
+				long[] histogram = new long[nGrayLevels];
+				int zMax = (int)(((long)(block+1)*slices.length)/nBlocks);
+				for (int z=(int)(((long)block*slices.length)/nBlocks) ; z<zMax ; z++){
+					accumulate(slices[z], histogram);
+				}
+				partialHistograms[block] = histogram;
+			}
+		});
+		if (nBlocks == 0){
+			return new long[nGrayLevels];
+		}
+		return sum(partialHistograms);
+	}
+
+
+	/**
+	 * Computes the histogram of an image, with a given number of bins.
+	 * @param image An 8 or 16 bits per voxel image
+	 * @param nBins The number of bins, which must divide the number of gray levels.
+	 * @return The histogram of the image, each bin gathering the same number of consecutive gray levels.
+	 */
+	public static long[] buildHistogram(ImageCore image, int nBins){
+		return reduce(buildHistogram(image), nBins);
+	}
+
+
+	/**
+	 * Computes the full resolution histogram of the voxels of an image which lie in a box,
+	 * without cropping the image. The slices of the box are processed in parallel.
+	 * @param image An 8 or 16 bits per voxel image
+	 * @param roi The region of interest, which is clipped to the domain of the image.
+	 * @return The histogram of the voxels of the region, with one bin per gray level.
+	 */
+	public static long[] buildHistogram(ImageCore image, BoxROI roi){
+		return buildHistogram(image, (LabelSlices)null, 0, roi);
+	}
+
+
+	/**
+	 * Computes the full resolution histogram of the voxels of an image which have a given label
+	 * in a label image, without cropping the image. The slices are processed in parallel.
+	 * @param image An 8 or 16 bits per voxel image
+	 * @param labels An image with the same size as image, the gray levels of which are labels
+	 * 				 (e.g. the labels of connected components), or null to consider all the voxels.
+	 * @param label The label of the voxels to consider (ignored if labels is null).
+	 * @param roi A box which contains all the voxels with the label (e.g. the bounding box of a
+	 * 			  connected component), so that the voxels outside the box need not be read,
+	 * 			  or null to scan the whole image.
+	 * @return The histogram of the voxels with the label, with one bin per gray level.
+	 * @throws IllegalArgumentException if the label image does not have the same size as the image.
+	 */
+	public static long[] buildHistogram(ImageCore image, ImageCore labels, int label, BoxROI roi){
+		return buildHistogram(image, getLabelSlices(image, labels, roi), label, roi);
+	}
+
+
+	/**
+	 * Computes the full resolution histogram of the voxels of an image which have a given label,
+	 * the labels being read where they are stored (e.g. the labels of connected components as ints),
+	 * without cropping the image. The slices are processed in parallel.
+	 * @param image An 8 or 16 bits per voxel image
+	 * @param labels The labels of the voxels, with the same size as image,
+	 * 				 or null to consider all the voxels.
+	 * @param label The label of the voxels to consider (ignored if labels is null).
+	 * @param roi A box which contains all the voxels with the label (e.g. the bounding box of a
+	 * 			  connected component), so that the voxels outside the box need not be read,
+	 * 			  or null to scan the whole image.
+	 * @return The histogram of the voxels with the label, with one bin per gray level.
+	 * @throws IllegalArgumentException if the labels do not have the same size as the image.
+	 */
+	public static long[] buildHistogram(ImageCore image, final LabelSlices labels, final int label, BoxROI roi){
+		final int nGrayLevels = getNumberOfGrayLevels(image.getBitDepth());
+		final int[] box = getClippedBox(image, labels, roi);
+		final SliceBuffer[] slices = getSliceBuffers(image, box);
+		final int nSlices = box[5]-box[2];
+		final int nBlocks = Math.min(nSlices, GlobalOptions.getParallelism());
+		if (nBlocks <= 0){
+			return new long[nGrayLevels];
+		}
+		final long[][] partialHistograms = new long[nBlocks][];
+		SliceScheduler.forEachSlice(nBlocks, new SliceTask() {
+			@Override
+			public void processSlice(int block) {
+				long[] histogram = new long[nGrayLevels];
+				int zMax = box[2] + (int)(((long)(block+1)*nSlices)/nBlocks);
+				for (int z=box[2] + (int)(((long)block*nSlices)/nBlocks) ; z<zMax ; z++){
+					SliceBuffer slice = slices[z];
+					for (int y=box[1] ; y<box[4] ; y++){
+						int index = slice.getIndex(box[0], y);
+						for (int x=box[0] ; x<box[3] ; x++, index++){
+							if (labels == null || labels.get(z, index) == label){
+								histogram[slice.get(index)]++;
+							}
+						}
+					}
+				}
+				partialHistograms[block] = histogram;
+			}
+		});
+		return sum(partialHistograms);
+	}
+
+
+	/**
+	 * Computes the histograms of all the regions of a label image (e.g. all the connected components),
+	 * in a single pass over the image, without cropping the image. Each task accumulates partial
+	 * histograms for a block of slices, for all the labels, which requires (maxLabel+1)*nBins
+	 * values per task.
+	 * @param image An 8 or 16 bits per voxel image
+	 * @param labels An image with the same size as image, the gray levels of which are labels.
+	 * @param maxLabel The largest label to consider (the voxels with larger labels are ignored).
+	 * @param roi A box which contains all the labeled voxels to consider (e.g. the union of the bounding
+	 * 			  boxes of the connected components), or null to scan the whole image.
+	 * @param nBins The number of bins of the histograms, which must divide the number of gray levels.
+	 * @return An array of maxLabel+1 histograms, the histogram with index l being the histogram of the
+	 * 		   voxels with label l, each bin gathering the same number of consecutive gray levels.
+	 * @throws IllegalArgumentException if the label image does not have the same size as the image,
+	 * 		   or if nBins does not divide the number of gray levels.
+	 */
+	public static long[][] buildHistograms(ImageCore image, ImageCore labels, int maxLabel,
+										   BoxROI roi, int nBins){
+		return buildHistograms(image, getLabelSlices(image, labels, roi), maxLabel, roi, nBins);
+	}
+
+
+	/**
+	 * Computes the histograms of all the regions of a label volume in a single pass over the image,
+	 * the labels being read where they are stored (e.g. the labels of connected components as ints,
+	 * which may exceed 65535), without cropping the image. Each task accumulates partial histograms
+	 * for a block of slices, for all the labels, which requires (maxLabel+1)*nBins values per task.
+	 * @param image An 8 or 16 bits per voxel image
+	 * @param labels The labels of the voxels, with the same size as image.
+	 * @param maxLabel The largest label to consider (the voxels with larger labels are ignored).
+	 * @param roi A box which contains all the labeled voxels to consider (e.g. the union of the bounding
+	 * 			  boxes of the connected components), or null to scan the whole image.
+	 * @param nBins The number of bins of the histograms, which must divide the number of gray levels.
+	 * @return An array of maxLabel+1 histograms, the histogram with index l being the histogram of the
+	 * 		   voxels with label l, each bin gathering the same number of consecutive gray levels.
+	 * @throws IllegalArgumentException if the labels do not have the same size as the image,
+	 * 		   or if nBins does not divide the number of gray levels.
+	 */
+	public static long[][] buildHistograms(ImageCore image, final LabelSlices labels, final int maxLabel,
+										   BoxROI roi, final int nBins){
+		int nGrayLevels = getNumberOfGrayLevels(image.getBitDepth());
+		if (nBins <= 0 || nGrayLevels % nBins != 0){
+			throw new IllegalArgumentException("The number of bins must divide the number of gray levels.");
+		}
+		final int ratio = nGrayLevels/nBins;
+		final int[] box = getClippedBox(image, labels, roi);
+		final SliceBuffer[] slices = getSliceBuffers(image, box);
+		final int nSlices = box[5]-box[2];
+		final int nBlocks = Math.max(0, Math.min(nSlices, GlobalOptions.getParallelism()));
+		final long[][] partialHistograms = new long[nBlocks][];
+		SliceScheduler.forEachSlice(nBlocks, new SliceTask() {
+			@Override
+			public void processSlice(int block) {
+				// Histograms of all the labels, stored consecutively
+				long[] histograms = new long[(maxLabel+1)*nBins];
+				int zMax = box[2] + (int)(((long)(block+1)*nSlices)/nBlocks);
+				for (int z=box[2] + (int)(((long)block*nSlices)/nBlocks) ; z<zMax ; z++){
+					SliceBuffer slice = slices[z];
+					for (int y=box[1] ; y<box[4] ; y++){
+						int index = slice.getIndex(box[0], y);
+						for (int x=box[0] ; x<box[3] ; x++, index++){
+							int label = labels.get(z, index);
+							if (label <= maxLabel){
+								histograms[label*nBins + slice.get(index)/ratio]++;
+							}
+						}
+					}
+				}
+				partialHistograms[block] = histograms;
+			}
+		});
+		long[] histograms = nBlocks == 0 ? new long[(maxLabel+1)*nBins] : sum(partialHistograms);
+		long[][] result = new long[maxLabel+1][nBins];
+		for (int label=0 ; label<=maxLabel ; label++){
+			System.arraycopy(histograms, label*nBins, result[label], 0, nBins);
+		}
+		return result;
+	}
+
+
+	/**
+	 * Gives an access to the gray levels of a label image in the slices of a box only.
+	 * @param image The image whose histograms are computed
+	 * @param labels A label image which must have the same size as image, or null.
+	 * @param roi The box, or null for the whole image.
+	 * @return The labels of the voxels of the slices of the box (null if labels is null).
+	 * @throws IllegalArgumentException if the label image does not have the same size as the image.
+	 */
+	private static LabelSlices getLabelSlices(ImageCore image, ImageCore labels, BoxROI roi){
+		if (labels == null){
+			return null;
+		}
+		if (labels.getWidth() != image.getWidth() ||
+			labels.getHeight() != image.getHeight() ||
+			labels.getDepth() != image.getDepth()){
+			throw new IllegalArgumentException("The label image must have the same size as the image.");
+		}
+		return new LabelSlices(getSliceBuffers(labels, getClippedBox(image, null, roi)),
+							   labels.getWidth(), labels.getHeight());
+	}
+
+
+	/**
+	 * Clips a box to the domain of an image.
+	 * @param image The image
+	 * @param labels Labels which must have the same size as image, or null.
+	 * @param roi The box to clip, or null for the whole image.
+	 * @return The clipped box as {xMin, yMin, zMin, xMax, yMax, zMax}, the maxima being excluded.
+	 * @throws IllegalArgumentException if the labels do not have the same size as the image.
+	 */
+	private static int[] getClippedBox(ImageCore image, LabelSlices labels, BoxROI roi){
+		if (labels != null && (labels.getWidth() != image.getWidth() ||
+							   labels.getHeight() != image.getHeight() ||
+							   labels.getDepth() != image.getDepth())){
+			throw new IllegalArgumentException("The labels must have the same size as the image.");
+		}
+		int[] box = {0, 0, 0, image.getWidth(), image.getHeight(), image.getDepth()};
+		if (roi != null){
+			box[0] = Math.max(box[0], roi.getMin(CoordinateAxis.X));
+			box[1] = Math.max(box[1], roi.getMin(CoordinateAxis.Y));
+			box[2] = Math.max(box[2], roi.getMin(CoordinateAxis.Z));
+			box[3] = Math.min(box[3], roi.getMax(CoordinateAxis.X));
+			box[4] = Math.min(box[4], roi.getMax(CoordinateAxis.Y));
+			box[5] = Math.min(box[5], roi.getMax(CoordinateAxis.Z));
+		}
+		return box;
+	}
+
+
+	/**
+	 * Retrieves the slice buffers of the slices of an image which intersect a box.
+	 * @param image The image
+	 * @param box The box as returned by {@link #getClippedBox(ImageCore, LabelSlices, BoxROI)}
+	 * @return An array indexed by the z coordinate, in which only the slices of the box are set.
+	 */
+	private static SliceBuffer[] getSliceBuffers(ImageCore image, int[] box){
+		SliceBuffer[] slices = new SliceBuffer[image.getDepth()];
+		for (int z=box[2] ; z<box[5] ; z++){
+			slices[z] = image.getSliceBuffer(z);
+		}
+		return slices;
+	}
+
+
+	/**
+	 * Sums partial histograms (the first one is used to store the result).
+	 * @param partialHistograms A non empty array of histograms with the same length
+	 * @return The sum of the histograms.
+	 */
+	private static long[] sum(long[][] partialHistograms){
+		long[] histogram = partialHistograms[0];
+		for (int block=1 ; block<partialHistograms.length ; block++){
+			long[] partialHistogram = partialHistograms[block];
+			for (int i=0 ; i<histogram.length ; i++){
+				histogram[i] += partialHistogram[i];
+			}
+		}
+		return histogram;
+	}
+
+
+	/**
+	 * Adds the gray levels of a slice to a histogram.
+	 * @param slice The slice to process
+	 * @param histogram The full resolution histogram to update
+	 */
+	private static void accumulate(SliceBuffer slice, long[] histogram){
+		int size = slice.getSize();
+		if (slice.getBitDepth() == 8){
+			byte[] bytes = slice.getBytesOrCopy();
+			for (int i=0 ; i<size ; i++){
+				histogram[bytes[i] & 0xff]++;
+			}
+		}else{
+			short[] shorts = slice.getShortsOrCopy();
+			for (int i=0 ; i<size ; i++){
+				histogram[shorts[i] & 0xffff]++;
+			}
+		}
+	}
+
+
+	/**
+	 * Gathers the bins of a histogram into a histogram with fewer bins.
+	 * @param histogram The histogram to reduce
+	 * @param nBins The number of bins of the result, which must divide the length of histogram.
+	 * @return histogram itself if it already has nBins values, or a new histogram in which
+	 * 		   the bin i is the sum of the bins i*k to (i+1)*k-1 of histogram, with k = histogram.length/nBins.
+	 * @throws IllegalArgumentException if nBins does not divide the length of histogram.
+	 */
+	public static long[] reduce(long[] histogram, int nBins){
+		if (nBins <= 0 || histogram.length % nBins != 0){
+			throw new IllegalArgumentException("The number of bins must divide the length of the histogram.");
+		}
+		if (nBins == histogram.length){
+			return histogram;
+		}
+		int ratio = histogram.length/nBins;
+		long[] reduced = new long[nBins];
+		for (int i=0 ; i<histogram.length ; i++){
+			reduced[i/ratio] += histogram[i];
+		}
+		return reduced;
+	}
+
+
+	/**
+	 * Computes the histogram of an image after a lookup table has been applied to its gray levels,
+	 * from the histogram before the modification (no pass over the voxel data is required).
+	 * @param histogram The full resolution histogram of the image before the modification
+	 * @param table The lookup table, which maps each gray level g to table[g].
+	 * @return The full resolution histogram of the image after the lookup table has been applied.
+	 * @throws IllegalArgumentException if the table is shorter than the histogram.
+	 */
+	public static long[] applyLookupTable(long[] histogram, int[] table){
+		if (table.length < histogram.length){
+			throw new IllegalArgumentException("The lookup table must have one value per gray level.");
+		}
+		long[] result = new long[histogram.length];
+		for (int g=0 ; g<histogram.length ; g++){
+			result[table[g]] += histogram[g];
+		}
+		return result;
+	}
+
+} // End of class
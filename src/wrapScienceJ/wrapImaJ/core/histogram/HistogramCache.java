@@ -0,0 +1,129 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File: HistogramCache.java                                                * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+
+
+package wrapScienceJ.wrapImaJ.core.histogram;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stores the full resolution histogram of an image (see {@link HistogramBuilder}),
+ * together with a version number which is incremented each time the gray levels
+ * of the image are (possibly) modified.
+ *
+ * The histogram is computed lazily: it is only stored when it has been requested
+ * since the last modification. An operation which knows how its modifications change
+ * the histogram (e.g. thresholding, lookup tables) may store the updated histogram
+ * instead of invalidating it, so that the image need not be scanned again.
+ *
+ * The histogram is stored with the version at which its computation started,
+ * so that a histogram computed concurrently with a modification is discarded.
+ *
+ * A cache belongs to the image instances which record all the modifications made through
+ * them (see {@link wrapScienceJ.wrapImaJ.core.SliceBuffer}). The histogram may be stored
+ * with a description of its source (e.g. the pixel arrays of the slices), allowing the image
+ * to detect the modifications which it could not record.
+ *
+ * @author Rémy Malgouyres
+ */
+public class HistogramCache {
+
+	/**
+	 * Incremented atomically for each (possible) modification of the image, including the
+	 * modifications made while the histogram is computed, so that a histogram computed
+	 * concurrently with a modification is never stored.
+	 */
+	private final AtomicLong m_version = new AtomicLong();
+
+	/** Cached histogram (null if not computed since the last modification) */
+	private long[] m_histogram = null;
+
+	/** Version of the image for which m_histogram was computed */
+	private long m_histogramVersion = -1;
+
+	/** Source of the image data from which m_histogram was computed (may be null) */
+	private Object m_source = null;
+
+
+	/**
+	 * @return The current version of the image, to be passed to
+	 * 		   {@link #setHistogram(long[], long)} once the histogram has been computed.
+	 */
+	public long getVersion(){
+		return this.m_version.get();
+	}
+
+
+	/**
+	 * Records a (possible) modification of the gray levels, which discards the cached histogram.
+	 * Must be called for every modification, whether a histogram is stored or not.
+	 */
+	public void invalidate(){
+		this.m_version.incrementAndGet();
+	}
+
+
+	/**
+	 * @return true if a histogram is stored and the image has not been modified since.
+	 */
+	public synchronized boolean isValid(){
+		return this.m_histogram != null && this.m_histogramVersion == this.m_version.get();
+	}
+
+
+	/**
+	 * @return The cached histogram if it is up to date, or null otherwise.
+	 * 		   The array is shared and must not be modified.
+	 */
+	public synchronized long[] getHistogram(){
+		if (this.m_histogramVersion != this.m_version.get()){
+			this.m_histogram = null;
+		}
+		return this.m_histogram;
+	}
+
+
+	/**
+	 * @return The source of the image data given with the cached histogram (see
+	 * 		   {@link #setHistogram(long[], long, Object)}), or null if there is none.
+	 */
+	public synchronized Object getSource(){
+		return this.m_source;
+	}
+
+
+	/**
+	 * Stores the histogram of the image, unless the image has been modified since
+	 * the version for which the histogram was computed. The source of the previous
+	 * histogram, if any, is kept.
+	 * @param histogram The full resolution histogram, which must not be modified afterwards.
+	 * @param version The version returned by {@link #getVersion()} before the histogram was computed.
+	 */
+	public synchronized void setHistogram(long[] histogram, long version){
+		setHistogram(histogram, version, this.m_source);
+	}
+
+
+	/**
+	 * Stores the histogram of the image, unless the image has been modified since
+	 * the version for which the histogram was computed.
+	 * @param histogram The full resolution histogram, which must not be modified afterwards.
+	 * @param version The version returned by {@link #getVersion()} before the histogram was computed.
+	 * @param source The source of the image data from which the histogram was computed,
+	 * 				 which may be checked against the image before using the histogram.
+	 */
+	public synchronized void setHistogram(long[] histogram, long version, Object source){
+		if (version == this.m_version.get()){
+			this.m_histogram = histogram;
+			this.m_histogramVersion = version;
+			this.m_source = source;
+		}
+	}
+
+} // End of class
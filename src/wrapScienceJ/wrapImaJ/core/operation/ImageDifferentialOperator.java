@@ -34,6 +34,8 @@ public interface ImageDifferentialOperator {
 	
 	
 	/**
+	 * The enlarged copy of the input image, if any, is released afterwards
+	 * (see {@link ConvolutionBase#getImageConvolved(ConvolutionNormalizationPolicy)}).
 	 * @param normalizationPolicy The policy for normalizing the results.
 	 * @return The resulting image with the convolution applied, as well as
 	 * 		   a normalization policy.
@@ -44,6 +44,38 @@ public interface ImageDomainOperation {
      */
 	public ImageCore crop(int xmin, int ymin, int zmin, int xmax, int ymax, int zmax);
 
+
+	/**
+	 * Creates a view on the Region of Interest (ROI) of the image, which shares
+	 * the voxel data of the image instead of copying it.
+	 * The bounds of the ROI are clamped as in {@link #crop(int, int, int, int, int, int)}.
+	 * The view is copy on write: modifying the view does not modify this image.
+	 * @see wrapScienceJ.wrapImaJ.wrappers.view.core.ImageCoreView
+	 * 
+	 * @param xmin minimal X coordinate of the ROI
+	 * @param ymin minimal Y coordinate of the ROI
+	 * @param zmin minimal Z coordinate of the ROI
+	 * @param xmax maximal X coordinate of the ROI plus 1
+	 * @param ymax maximal Y coordinate of the ROI plus 1
+	 * @param zmax maximal Z coordinate of the ROI plus 1
+	 * @return : A view with the size of the ROI.
+	 */
+	public ImageCore getCropView(int xmin, int ymin, int zmin, int xmax, int ymax, int zmax);
+
+	
+	/**
+	 * Creates a view on the image which retains one voxel out of a given step along each axis,
+	 * starting with the voxel (0, 0, 0), and shares the voxel data of the image instead of copying it.
+	 * The view is copy on write: modifying the view does not modify this image.
+	 * @see wrapScienceJ.wrapImaJ.wrappers.view.core.ImageCoreView
+	 * 
+	 * @param stepX Step between two consecutive voxels of the view along the X axis
+	 * @param stepY Step between two consecutive voxels of the view along the Y axis
+	 * @param stepZ Step between two consecutive voxels of the view along the Z axis
+	 * @return A subsampled view of the image.
+	 */
+	public ImageCore getSubsampledView(int stepX, int stepY, int stepZ);
+
 	
 	/**
 	 * Enlarges the domain of an image, using a completion policy.
@@ -39,6 +39,19 @@ public interface ImageDomainTransform {
 	 */
 	public ImageCore getAxisSwapped(CoordinateAxis axis1, CoordinateAxis axis2);
 	
+	/**
+	 * Creates a view on this image with two axis swapped, which shares the voxel
+	 * data of the image instead of copying it, as opposed to
+	 * {@link #getAxisSwapped(CoordinateAxis, CoordinateAxis)}.
+	 * The view is copy on write: modifying the view does not modify this image.
+	 * @see wrapScienceJ.wrapImaJ.wrappers.view.core.ImageCoreView
+	 * 
+	 * @param axis1 The first axis to be swapped
+	 * @param axis2 The second axis to be swapped
+	 * @return A view of the image with swapped axis
+	 */
+	public ImageCore getAxisSwappedView(CoordinateAxis axis1, CoordinateAxis axis2);
+	
 	/**
 	 * Copies this image into another image, with two axis swapped. This amounts to
 	 * performing a symmetry over the domain of the image.
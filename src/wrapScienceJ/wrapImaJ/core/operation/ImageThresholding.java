@@ -10,7 +10,9 @@
 
 package wrapScienceJ.wrapImaJ.core.operation;
 
+import wrapScienceJ.wrapImaJ.core.BoxROI;
 import wrapScienceJ.wrapImaJ.core.ImageCore;
+import wrapScienceJ.wrapImaJ.core.LabelSlices;
 import wrapScienceJ.wrapImaJ.core.histogram.Histogram;
 import wrapScienceJ.wrapImaJ.core.histogram.HistogramThresholding;
 
@@ -89,6 +91,67 @@ public interface ImageThresholding extends ImageCore{
      */
     public int getBinarizationThreshold(ThresholdingOption method);
 
+    /**
+     * Computes the grey level threshold value for binarizing the voxels of a box-like
+     * region of interest, using the histogram of that region only (the image is not cropped).
+     * @param method the thresholding method
+     * @param roi The region of interest, which is clipped to the domain of the image.
+     * @return the threshold for the region, or -1 if the region contains no voxel.
+     */
+    public int getBinarizationThreshold(ThresholdingOption method, BoxROI roi);
+
+    /**
+     * Computes the grey level threshold value for binarizing the voxels which have a given label
+     * in a label image (e.g. a connected component), using the histogram of these voxels only.
+     * @param method the thresholding method
+     * @param labels An image with the same size as this image, the gray levels of which are labels
+     * 				 (e.g. {@link wrapScienceJ.wrapImaJ.connectivity.ConnectedComponent#getLabelsAsImage()}).
+     * @param label The label of the region
+     * @param roi A box which contains all the voxels with the label (e.g. the bounding box of the
+     * 			  connected component), or null to scan the whole image.
+     * @return the threshold for the region, or -1 if the region contains no voxel.
+     */
+    public int getBinarizationThreshold(ThresholdingOption method, ImageCore labels, int label, BoxROI roi);
+
+    /**
+     * Computes the grey level threshold value for binarizing the voxels which have a given label
+     * (e.g. a connected component), the labels being read where they are stored
+     * (e.g. the labels of the connected components as ints, without converting them to an image).
+     * @param method the thresholding method
+     * @param labels The labels of the voxels, with the same size as this image.
+     * @param label The label of the region
+     * @param roi A box which contains all the voxels with the label (e.g. the bounding box of the
+     * 			  connected component), or null to scan the whole image.
+     * @return the threshold for the region, or -1 if the region contains no voxel.
+     */
+    public int getBinarizationThreshold(ThresholdingOption method, LabelSlices labels, int label, BoxROI roi);
+
+    /**
+     * Computes the grey level threshold values for binarizing each region of a label image
+     * (e.g. local thresholds for all the connected components), the histograms of all
+     * the regions being computed in a single pass over the image.
+     * @param method the thresholding method
+     * @param labels An image with the same size as this image, the gray levels of which are labels.
+     * @param maxLabel The largest label to consider
+     * @param roi A box which contains all the labeled voxels to consider, or null to scan the whole image.
+     * @return An array of length maxLabel+1, containing the threshold of the voxels with each label,
+     * 		   or -1 for the labels without any voxel.
+     */
+    public int[] getBinarizationThresholds(ThresholdingOption method, ImageCore labels, int maxLabel, BoxROI roi);
+
+    /**
+     * Computes the grey level threshold values for binarizing each region of a label volume
+     * in a single pass over the image, the labels being read where they are stored
+     * (e.g. the labels of the connected components as ints, which may exceed 65535).
+     * @param method the thresholding method
+     * @param labels The labels of the voxels, with the same size as this image.
+     * @param maxLabel The largest label to consider
+     * @param roi A box which contains all the labeled voxels to consider, or null to scan the whole image.
+     * @return An array of length maxLabel+1, containing the threshold of the voxels with each label,
+     * 		   or -1 for the labels without any voxel.
+     */
+    public int[] getBinarizationThresholds(ThresholdingOption method, LabelSlices labels, int maxLabel, BoxROI roi);
+
     /**
      * Performs thresholding on this image using a given method option,
      * i.e. Any voxel with a value greater than or equal to the threshold have their value set to 0.
@@ -134,4 +134,39 @@ public interface BlurFactory extends ConvolutionFactoryBase {
 												 	 VoxelDouble voxelEdgesLength
 													);
 
+
+	/**
+	 * Allows to choose how the Gaussian blur is computed, e.g. by a recursive filter,
+	 * the cost of which does not depend on the standard deviations.
+	 * 
+	 * @param sigmaX standard deviation of the Gaussian on the x coordinate
+	 * @param sigmaY standard deviation of the Gaussian on the y coordinate
+	 * @param sigmaZ standard deviation of the Gaussian on the z coordinate
+	 * @param blurPolicy The algorithm used to compute the Gaussian blur.
+	 * @return The mask allowing to convolve with a gaussian kernel
+	 * @see GaussianBlurPolicy
+	 */
+	public ConvolutionBase getGaussianBlur(double sigmaX, double sigmaY, double sigmaZ,
+										   GaussianBlurPolicy blurPolicy);
+
+
+	/**
+	 * Does the same as {@link #getGaussianBlur(double, double, double, GaussianBlurPolicy)}
+	 * except that the standard deviations are given in (approximately) multiples of
+	 * the calibration data instead of number of voxels.
+	 *
+	 * @param sigmaX standard deviation of the Gaussian on the x coordinate
+	 * @param sigmaY standard deviation of the Gaussian on the y coordinate
+	 * @param sigmaZ standard deviation of the Gaussian on the z coordinate
+	 * @param voxelEdgesLength The voxel's scale (edges' length) used as a factor to estimate
+	 * 						   actual skipping steps in each direction.
+	 * @param blurPolicy The algorithm used to compute the Gaussian blur.
+	 * @return The mask allowing to convolve with a gaussian kernel
+	 * @see GaussianBlurPolicy
+	 */
+	public ConvolutionBase getGaussianBlurCalibrated(double sigmaX, double sigmaY, double sigmaZ,
+												 	 VoxelDouble voxelEdgesLength,
+												 	 GaussianBlurPolicy blurPolicy
+													);
+
 }
@@ -29,6 +29,10 @@ public interface ConvolutionBase {
 	 * Allows to apply the mask on the image data and to normalize the results according to some policy.
 	 * The policy can aim at accuracy of the results, maximizing contrast, or preservation
 	 * of the values of an integer mask as is (without dividing by the weight of the mask).
+	 * The temporary images of the factory which built the mask (see
+	 * {@link ConvolutionFactoryBase#releaseTemporaryImages()}) are released afterwards,
+	 * so that applying the mask again, or another mask built by the same factory,
+	 * throws an {@link IllegalStateException}.
 	 * 
 	 * @see ConvolutionNormalizationPolicy
 	 * 
@@ -46,12 +50,29 @@ public interface ConvolutionBase {
 	
 	
 	/**
-	 * Allows to retrieve the input image without any normalization.
-	 * @return The embedded image in this current state.
+	 * Allows to retrieve the input image without any normalization,
+	 * with the margins added for the convolution removed.
+	 * @return A copy of the embedded image in this current state, cropped to the original domain
+	 * 		   (or the embedded image itself if no margins were added).
 	 */
 	public ImageCore getCroppedInImage();
 	
 	
+	/**
+	 * Allows to retrieve the input image without any normalization,
+	 * with the margins added for the convolution removed, without copying the voxel data
+	 * for 8 or 16 bits per voxel images.
+	 * The view is copy on write, so that modifying it does not modify the embedded image,
+	 * but it reads the voxels of the embedded image, so that it must not be used after
+	 * the temporary images of the factory have been released
+	 * (see {@link ConvolutionFactoryBase#releaseTemporaryImages()}).
+	 * @see wrapScienceJ.wrapImaJ.wrappers.view.core.ImageCoreView
+	 * @return A view of the embedded image in this current state, cropped to the original domain
+	 * 		   (or a copy for other bit depths, or the embedded image itself if no margins were added).
+	 */
+	public ImageCore getCroppedInImageView();
+	
+	
 	/**
 	 * Allows to retrieve the output image without any normalization.
 	 * @return The embedded image in this current state.
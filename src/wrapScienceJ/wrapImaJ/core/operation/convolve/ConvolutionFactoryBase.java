@@ -61,6 +61,21 @@ public interface ConvolutionFactoryBase {
 												 		BufferEnlargementPolicy enlargementPolicy);
 	
 	
+	/**
+	 * Releases the temporary images created by this instance (the enlarged copies of the
+	 * input image, see {@link #enlargeInImage(int, int, int, BufferEnlargementPolicy)}),
+	 * so that their memory is reused by later allocations
+	 * (see {@link wrapScienceJ.factory.image.ImageCoreFactory#releaseImageCore(ImageCore)}).
+	 * The images retrieved by {@link #getInImageSignPolicyEmbed()} or {@link #getCroppedInImageView()}
+	 * must not be used any more afterwards, and this instance and the masks it built throw an
+	 * {@link IllegalStateException} if they are used again (a new factory must be retrieved
+	 * from the image instead).
+	 * This is done automatically once the convolved image has been retrieved from
+	 * a mask built by this instance (see {@link ConvolutionBase#getImageConvolved(ConvolutionNormalizationPolicy)}).
+	 */
+	public void releaseTemporaryImages();
+	
+	
 	/**
 	 * Allows to retrieve the input image without any normalization.
 	 * @return The embedded image in this current state.
@@ -69,12 +84,29 @@ public interface ConvolutionFactoryBase {
 	
 	
 	/**
-	 * Allows to retrieve the input image without any normalization.
-	 * @return The embedded image in this current state.
+	 * Allows to retrieve the input image without any normalization,
+	 * with the margins added for the convolution removed.
+	 * @return A copy of the embedded image in this current state, cropped to the original domain
+	 * 		   (or the embedded image itself if no margins were added).
 	 */
 	public ImageCore getCroppedInImage();
 	
 	
+	/**
+	 * Allows to retrieve the input image without any normalization,
+	 * with the margins added for the convolution removed, without copying the voxel data
+	 * for 8 or 16 bits per voxel images.
+	 * The view is copy on write, so that modifying it does not modify the embedded image,
+	 * but it reads the voxels of the embedded image, so that it must not be used after
+	 * the temporary images of the factory have been released
+	 * (see {@link ConvolutionFactoryBase#releaseTemporaryImages()}).
+	 * @see wrapScienceJ.wrapImaJ.wrappers.view.core.ImageCoreView
+	 * @return A view of the embedded image in this current state, cropped to the original domain
+	 * 		   (or a copy for other bit depths, or the embedded image itself if no margins were added).
+	 */
+	public ImageCore getCroppedInImageView();
+	
+	
 	/**
 	 * Allows to retrieve the output image without any normalization.
 	 * @return The embedded image in this current state.
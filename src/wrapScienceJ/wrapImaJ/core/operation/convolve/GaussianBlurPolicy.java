@@ -0,0 +1,68 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File: GaussianBlurPolicy.java                                            * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+
+package wrapScienceJ.wrapImaJ.core.operation.convolve;
+
+/**
+ * Allows to specify how a Gaussian blur is computed: either by convolution with
+ * a truncated Gaussian kernel, the cost of which grows linearly with the standard deviation,
+ * or by a recursive filter approximating the Gaussian, the cost of which does not depend
+ * on the standard deviation.
+ *
+ * @see wrapScienceJ.wrapImaJ.core.operation.convolve.BlurFactory#getGaussianBlur(double, double, double, GaussianBlurPolicy)
+ */
+public enum GaussianBlurPolicy {
+	/**
+	 * Separable convolution with a truncated Gaussian kernel (most accurate for small
+	 * standard deviations)
+	 */
+	SeparableConvolution(1),
+	/**
+	 * Recursive (Young - van Vliet) approximation of the Gaussian,
+	 * with a constant cost per voxel (fastest for large standard deviations)
+	 */
+	RecursiveFilter(2);
+
+	private final int m_gaussianBlurPolicy;
+
+	/**
+	 * sets the Gaussian blur policy
+	 * @param gaussianBlurPolicy
+	 */
+	private GaussianBlurPolicy(int gaussianBlurPolicy) throws IllegalArgumentException {
+		if (gaussianBlurPolicy < 1 || gaussianBlurPolicy > 2){
+			throw new IllegalArgumentException("Undefined Gaussian Blur Policy.");
+		}
+		this.m_gaussianBlurPolicy = gaussianBlurPolicy;
+	}
+
+	/**
+	 * @return the policy's ID
+	 */
+	public int getValue() {
+		return this.m_gaussianBlurPolicy;
+	}
+
+	/**
+	 * @return a human readable description of the Gaussian blur policy.
+	 * @see java.lang.Enum#toString()
+	 */
+	@Override
+	public String toString() {
+		switch (this.m_gaussianBlurPolicy) {
+		case 1:
+			return "Separable Convolution";
+		case 2:
+			return "Recursive Filter";
+		default:
+			throw new IllegalArgumentException("Undefined Gaussian Blur Policy.");
+		}
+	}
+
+}// End of enum
@@ -8,13 +8,26 @@
 \******************************************************************************/ 
 package wrapScienceJ.wrapImaJ.core.operation.convolve.generic;
 
+import java.util.Arrays;
+
+import wrapScienceJ.config.GlobalOptions;
+import wrapScienceJ.utils.SliceScheduler;
+import wrapScienceJ.utils.SliceScheduler.SliceTask;
 import wrapScienceJ.wrapImaJ.core.CoordinateAxis;
-import wrapScienceJ.wrapImaJ.core.ImageCore;
+import wrapScienceJ.wrapImaJ.core.ImageBufferPool;
+import wrapScienceJ.wrapImaJ.core.SliceBuffer;
 import wrapScienceJ.wrapImaJ.core.VoxelInt;
 import wrapScienceJ.wrapImaJ.core.operation.ImageSignPolicyEmbed;
 import wrapScienceJ.wrapImaJ.core.operation.generic.ImageSignPolicyEmbedGeneric;
 
 /**
+ * Binomial Blur along one coordinate axis, obtained as (nPoints-1) successive sums
+ * of two voxels distant from the skipping step. The values are not normalized,
+ * the mask mass 2^(nPoints-1) being accumulated in the normalization denominator.
+ * 
+ * All the passes are applied to each line in a buffer, so that the voxels of the
+ * image are read and written only once, and the lines are processed in parallel.
+ * 
  * @author remy
  * 
  * @see wrapScienceJ.wrapImaJ.core.operation.convolve.ConvolutionBase
@@ -154,288 +167,239 @@ public class BinomialBlurGeneric extends ConvolutionBaseGeneric {
 	
 
 	/**
-	 * Builds the mask in the Z coordinate direction
-	 * @return A binomial convolution mask allowing to convolve in the Z direction.
+	 * Applies the (nPoints-1) successive sums of two values to a line cached in a buffer.
+	 * The passes alternate the scanning direction so that the resulting binomial mask is centered.
+	 * Each pass sums consecutive values along the chains of voxels distant from the skipping step,
+	 * the first voxel of a chain being left unchanged and the second one having no predecessor.
+	 * Only the values with index in [first, last), which correspond to voxels of the output image,
+	 * are modified (the values in the margins of an enlarged input image remain constant).
+	 * 
+	 * @param line The buffer containing the values of the line
+	 * @param length Number of values in the line
+	 * @param first Index of the first value to modify
+	 * @param last Index following the last value to modify
+	 */
+	private void filterLine(int[] line, int length, int first, int last){
+		for (int i = 1 ; i < this.m_nPoints ; i++){
+			boolean backward = (i & 0x00000001) == 1; // Odd passes go backward
+			for (int j=0 ; j<this.m_skippingStep ; j++){
+				int latestValue = 0;
+				for (int X=j+this.m_skippingStep ; X<length ; X+=this.m_skippingStep){
+					int x = backward ? length - 1 - X : X;
+					int savePixel = line[x];
+					if (x >= first && x < last){
+						line[x] = savePixel + latestValue;
+					}
+					latestValue = savePixel;
+				}
+			}
+		}
+	}
+	
+	
+	/**
+	 * Does the same as {@link #filterLine(int[], int, int, int)} simultaneously for all the columns
+	 * of a plane, the inner loops running over contiguous values.
+	 * 
+	 * @param plane The buffer containing the values of the plane, line after line
+	 * @param latestValues A buffer to store one line of values
+	 * @param width Number of values in each line
+	 * @param nLines Number of lines in the plane
+	 * @param first Index of the first line to modify
+	 * @param last Index following the last line to modify
 	 */
-	private ConvolutionBaseGeneric getMask_Z(){
+	private void filterAcrossLines(int[] plane, int[] latestValues, int width, int nLines, int first, int last){
+		for (int i = 1 ; i < this.m_nPoints ; i++){
+			boolean backward = (i & 0x00000001) == 1; // Odd passes go backward
+			for (int j=0 ; j<this.m_skippingStep ; j++){
+				Arrays.fill(latestValues, 0, width, 0);
+				for (int Y=j+this.m_skippingStep ; Y<nLines ; Y+=this.m_skippingStep){
+					int y = backward ? nLines - 1 - Y : Y;
+					int offset = y*width;
+					if (y >= first && y < last){
+						for (int x=0 ; x<width ; x++){
+							int savePixel = plane[offset+x];
+							plane[offset+x] = savePixel + latestValues[x];
+							latestValues[x] = savePixel;
+						}
+					}else{
+						System.arraycopy(plane, offset, latestValues, 0, width);
+					}
+				}
+			}
+		}
+	}
+	
+	
+	/**
+	 * Convolves the lines in the X direction, the slices being processed in parallel.
+	 * @param inSlices The slices of the input image
+	 * @param outSlices The slices of the output image
+	 */
+	private void blurX(final SliceBuffer[] inSlices, final SliceBuffer[] outSlices){
 		
-		final BinomialBlurGeneric that = this;
+		final VoxelInt margin = this.m_shiftOuputMargin;
+		final int width = inSlices[0].getWidth();
+		final int height = inSlices[0].getHeight();
+		final int firstX = Math.max(margin.getX(), 0);
+		final int lastX = Math.min(margin.getX() + outSlices[0].getWidth(), width);
 		
-		return new ConvolutionBaseGeneric(getInImageSignPolicyEmbed(), getOutImageSignPolicyEmbed(), 
-										  that.getNormalizationDenominator(), this.m_shiftOuputMargin) {
-			/**
-			 * @see wrapScienceJ.wrapImaJ.core.operation.convolve.generic.ConvolutionBaseGeneric#applyMask()
-			 */
+		SliceScheduler.forEachSlice(inSlices.length, new SliceTask() {
 			@Override
-			public ConvolutionBaseGeneric applyMask() {
-				
-				ImageCore inputImage = getInImageSignPolicyEmbed().getImageRaw();
-				ImageCore outputImage = getOutImageSignPolicyEmbed().getImageRaw();
-				
-				ImageCore sourceImage = inputImage;
-				
-				int [] latestValuesZ = new int[inputImage.getWidth()*inputImage.getHeight()];
-				for (int i = 1 ; i < that.m_nPoints ; i++){
-					
-					if (i >= 2 && i <  that.m_nPoints-1){
-						sourceImage = outputImage;
+			public void processSlice(int z) {
+				int zOut = z - margin.getZ();
+				if (zOut < 0 || zOut >= outSlices.length){
+					return;
+				}
+				SliceBuffer inSlice = inSlices[z];
+				SliceBuffer outSlice = outSlices[zOut];
+				int[] line = new int[width];
+				for (int y=0 ; y<height ; y++){
+					int yOut = y - margin.getY();
+					if (yOut < 0 || yOut >= outSlice.getHeight()){
+						continue;
 					}
-					
-					for (int j=0 ; j<that.m_skippingStep ; j++){
-						
-						for (int y=0 ; y<inputImage.getHeight() ; y++){
-							for (int x=0 ; x<inputImage.getWidth() ; x++){
-								latestValuesZ[y*inputImage.getWidth()+x] = 0;
-							}
-						}
-			
-						int shift = 2*(i & 0x00000001) -1; // -1 if i is even, 1 is i is odd
-			
-						for (int Z=j ; Z<inputImage.getDepth() ; Z += that.m_skippingStep){
-							int z = Z;
-							if (shift > 0){
-								z = inputImage.getDepth() - 1 - Z;
-							}
-							if (Z>=that.m_skippingStep){
-								inputImage.setCurrentZ(z);
-								int zOut = z - this.m_shiftOuputMargin.getZ();
-								if (zOut >= 0 && zOut < outputImage.getDepth()){
-									outputImage.setCurrentZ(zOut);
-								}
-								for (int y=0 ; y<inputImage.getHeight() ; y++){
-									for (int x=0 ; x<inputImage.getWidth() ; x++){
-										
-										int savePixel;
-										
-										int xOut = x - this.m_shiftOuputMargin.getX();
-										int yOut = y - this.m_shiftOuputMargin.getY();
-										if (xOut >= 0 && xOut < outputImage.getWidth() &&
-											yOut >= 0 && yOut < outputImage.getHeight() &&
-											zOut >= 0 && zOut < outputImage.getDepth()){
-											
-											if (i<2){
-												savePixel = sourceImage.getPixel(x, y);
-											}else{
-												savePixel = sourceImage.getPixel(xOut, yOut);
-											}
-											outputImage.setPixel(xOut, yOut, savePixel
-																	+ latestValuesZ[y*inputImage.getWidth()+x]);
-											
-										}else{
-											savePixel = inputImage.getPixel(x, y);
-										}
-									
-										latestValuesZ[y*inputImage.getWidth()+x] = savePixel;
-									}
-								}
-							}
-						}
+					int offset = inSlice.getIndex(0, y);
+					for (int x=0 ; x<width ; x++){
+						line[x] = inSlice.get(offset+x);
+					}
+					filterLine(line, width, firstX, lastX);
+					int offsetOut = outSlice.getIndex(0, yOut) - margin.getX();
+					for (int x=firstX ; x<lastX ; x++){
+						outSlice.set(offsetOut+x, line[x]);
 					}
 				}
-				ConvolutionBaseGeneric resultMask = getIdentityMask();
-				resultMask.setNormalizationDenominator(getNormalizationDenominator());
-				return resultMask;
 			}
-		};
+		});
 	}
 	
 	
 	/**
-	 * Builds the mask in the Y coordinate direction
-	 * @return A binomial convolution mask allowing to convolve in the Y direction.
+	 * Convolves the columns in the Y direction, the slices being processed in parallel.
+	 * @param inSlices The slices of the input image
+	 * @param outSlices The slices of the output image
 	 */
-	private ConvolutionBaseGeneric getMask_Y(){
+	private void blurY(final SliceBuffer[] inSlices, final SliceBuffer[] outSlices){
 		
-		final BinomialBlurGeneric that = this;
+		final VoxelInt margin = this.m_shiftOuputMargin;
+		final int height = inSlices[0].getHeight();
+		final int firstX = Math.max(margin.getX(), 0);
+		final int lastX = Math.min(margin.getX() + outSlices[0].getWidth(), inSlices[0].getWidth());
+		final int firstY = Math.max(margin.getY(), 0);
+		final int lastY = Math.min(margin.getY() + outSlices[0].getHeight(), height);
+		final int planeWidth = lastX - firstX;
+		if (planeWidth <= 0){
+			return;
+		}
 		
-		return new ConvolutionBaseGeneric(getInImageSignPolicyEmbed(), getOutImageSignPolicyEmbed(),
-										  getNormalizationDenominator(), this.m_shiftOuputMargin) {
-			/**
-			 * @see wrapScienceJ.wrapImaJ.core.operation.convolve.generic.ConvolutionBaseGeneric#applyMask()
-			 */
+		SliceScheduler.forEachSlice(inSlices.length, new SliceTask() {
 			@Override
-			public ConvolutionBaseGeneric applyMask() {
-				
-				ImageCore inputImage = getInImageSignPolicyEmbed().getImageRaw();
-				ImageCore outputImage = getOutImageSignPolicyEmbed().getImageRaw();
-				
-				ImageCore sourceImage = inputImage;
-
-				int [] latestValuesY = new int[inputImage.getWidth()*inputImage.getDepth()];
-				for (int i = 1 ; i < that.m_nPoints ; i++){
-					
-					if (i >= 2 && i <  that.m_nPoints-1){
-						sourceImage = outputImage;
+			public void processSlice(int z) {
+				int zOut = z - margin.getZ();
+				if (zOut < 0 || zOut >= outSlices.length){
+					return;
+				}
+				SliceBuffer inSlice = inSlices[z];
+				SliceBuffer outSlice = outSlices[zOut];
+				int[] plane = ImageBufferPool.acquireInts(planeWidth*height);
+				int[] latestValues = new int[planeWidth];
+				for (int y=0 ; y<height ; y++){
+					int offset = inSlice.getIndex(firstX, y);
+					for (int x=0 ; x<planeWidth ; x++){
+						plane[y*planeWidth+x] = inSlice.get(offset+x);
 					}
-
-					
-					for (int j=0 ; j<that.m_skippingStep ; j++){
-						for (int z=0 ; z<inputImage.getDepth() ; z++){
-							
-							for (int x=0 ; x<inputImage.getWidth() ; x++){
-								latestValuesY[z*inputImage.getWidth()+x] = 0;
-							}
-						}
-						int shift = 2*(i & 0x00000001) -1;// -1 if i is even, 1 is i is odd
-			
-						for (int z=0 ; z<inputImage.getDepth() ; z++){
-							inputImage.setCurrentZ(z);
-							int zOut = z - this.m_shiftOuputMargin.getZ();
-							if (zOut >= 0 && zOut < outputImage.getDepth()){
-								outputImage.setCurrentZ(zOut);
-							}
-							for (int Y=j ; Y<inputImage.getHeight() ; Y+=that.m_skippingStep){
-								if (Y>=that.m_skippingStep){
-									
-									int y = Y;
-									if (shift > 0){
-										y = inputImage.getHeight() - 1 - Y;
-									}
-
-									for (int x=0 ; x<inputImage.getWidth() ; x++){
-									
-										int savePixel;
-									
-										int xOut = x - this.m_shiftOuputMargin.getX();
-										int yOut = y - this.m_shiftOuputMargin.getY();
-										if (xOut >= 0 && xOut < outputImage.getWidth() &&
-											yOut >= 0 && yOut < outputImage.getHeight() &&
-											zOut >= 0 && zOut < outputImage.getDepth()){
-											
-											if (i<2){
-												savePixel = sourceImage.getPixel(x, y);
-											}else{
-												savePixel = sourceImage.getPixel(xOut, yOut);
-											}
-
-											outputImage.setPixel(xOut, yOut, savePixel
-														+ latestValuesY[z*inputImage.getWidth()+x]);
-											
-										}else{
-											savePixel = inputImage.getPixel(x, y);
-										}
-
-										latestValuesY[z*inputImage.getWidth()+x] = savePixel;
-
-									}
-								}
-							}
-						}
+				}
+				filterAcrossLines(plane, latestValues, planeWidth, height, firstY, lastY);
+				for (int y=firstY ; y<lastY ; y++){
+					int offsetOut = outSlice.getIndex(firstX - margin.getX(), y - margin.getY());
+					for (int x=0 ; x<planeWidth ; x++){
+						outSlice.set(offsetOut+x, plane[y*planeWidth+x]);
 					}
 				}
-				ConvolutionBaseGeneric resultMask = getIdentityMask();
-				resultMask.setNormalizationDenominator(getNormalizationDenominator());
-				return resultMask;
+				ImageBufferPool.release(plane);
 			}
-		};
+		});
 	}
-
+	
 	
 	/**
-	 * Builds the mask in the X coordinate direction
-	 * @return A binomial convolution mask allowing to convolve in the X direction.
+	 * Convolves the lines in the Z direction. The (x, z) planes are processed in parallel,
+	 * by blocks of consecutive rows so that the buffers are acquired once per block.
+	 * @param inSlices The slices of the input image
+	 * @param outSlices The slices of the output image
 	 */
-	private ConvolutionBaseGeneric getMask_X(){
+	private void blurZ(final SliceBuffer[] inSlices, final SliceBuffer[] outSlices){
 		
-		final BinomialBlurGeneric that = this;
+		final VoxelInt margin = this.m_shiftOuputMargin;
+		final int depth = inSlices.length;
+		final int firstX = Math.max(margin.getX(), 0);
+		final int lastX = Math.min(margin.getX() + outSlices[0].getWidth(), inSlices[0].getWidth());
+		final int firstY = Math.max(margin.getY(), 0);
+		final int lastY = Math.min(margin.getY() + outSlices[0].getHeight(), inSlices[0].getHeight());
+		final int firstZ = Math.max(margin.getZ(), 0);
+		final int lastZ = Math.min(margin.getZ() + outSlices.length, depth);
+		final int planeWidth = lastX - firstX;
+		final int nRows = lastY - firstY;
+		if (planeWidth <= 0 || nRows <= 0){
+			return;
+		}
+		final int nBlocks = Math.min(nRows, 4*GlobalOptions.getParallelism());
 		
-		return new ConvolutionBaseGeneric(getInImageSignPolicyEmbed(), getOutImageSignPolicyEmbed(), 
-										  getNormalizationDenominator(), this.m_shiftOuputMargin) {
-			/**
-			 * @see wrapScienceJ.wrapImaJ.core.operation.convolve.generic.ConvolutionBaseGeneric#applyMask()
-			 */
+		SliceScheduler.forEachSlice(nBlocks, new SliceTask() {
 			@Override
-			public ConvolutionBaseGeneric applyMask() {
-				
-				System.err.println("getMask_X, ShiftOuputMargin = " + this.m_shiftOuputMargin);
-				
-				ImageCore inputImage = getInImageSignPolicyEmbed().getImageRaw();
-				ImageCore outputImage = getOutImageSignPolicyEmbed().getImageRaw();
-				
-				ImageCore sourceImage = inputImage;
-				
-
-				int [] latestValuesX = new int[inputImage.getHeight()*inputImage.getDepth()];
-				for (int i = 1 ; i < that.m_nPoints ; i++){
-					
-					if (i >= 2 && i <  that.m_nPoints-1){
-						sourceImage = outputImage;
-					}
-					
-					for (int j=0 ; j<that.m_skippingStep ; j++){
-
-						for (int z=0 ; z<inputImage.getDepth() ; z++){
-							for (int y=0 ; y<inputImage.getHeight() ; y++){
-								latestValuesX[z*inputImage.getHeight()+y] = 0;
-							}
+			public void processSlice(int block) {
+				int[] plane = ImageBufferPool.acquireInts(planeWidth*depth);
+				int[] latestValues = new int[planeWidth];
+				for (int y=firstY+block*nRows/nBlocks ; y<firstY+(block+1)*nRows/nBlocks ; y++){
+					for (int z=0 ; z<depth ; z++){
+						int offset = inSlices[z].getIndex(firstX, y);
+						for (int x=0 ; x<planeWidth ; x++){
+							plane[z*planeWidth+x] = inSlices[z].get(offset+x);
 						}
-			
-						int shift = 2*(i & 0x00000001) -1; // -1 if i is even, 1 is i is odd
-						
-						for (int z=0 ;z<inputImage.getDepth() ; z++){
-							inputImage.setCurrentZ(z);
-							for (int y=0 ; y<inputImage.getHeight() ; y++){
-								for (int X=j ; X<inputImage.getWidth() ; X+=that.m_skippingStep){
-									
-									if (X >= that.m_skippingStep){
-										int x = X;
-										
-										if (shift > 0){
-											x = inputImage.getWidth() - 1 - X;
-										}
-			
-										int savePixel;
-										
-										int xOut = x - this.m_shiftOuputMargin.getX();
-										int yOut = y - this.m_shiftOuputMargin.getY();
-										int zOut = z - this.m_shiftOuputMargin.getZ();
-										if (xOut >= 0 && xOut < outputImage.getWidth() &&
-											yOut >= 0 && yOut < outputImage.getHeight() &&
-											zOut >= 0 && zOut < outputImage.getDepth()){
-											
-											if (i<2){
-												savePixel = sourceImage.getPixel(x, y);
-											}else{
-												savePixel = sourceImage.getPixel(xOut, yOut);
-											}
-
-											outputImage.setVoxel(xOut, yOut, zOut, savePixel
-																	+ latestValuesX[z*inputImage.getHeight()+y]);
-										}else{
-											savePixel = inputImage.getPixel(x, y);
-										}
-
-										latestValuesX[z*inputImage.getHeight()+y] = savePixel;
-									}
-								}
-							}
+					}
+					filterAcrossLines(plane, latestValues, planeWidth, depth, firstZ, lastZ);
+					for (int z=firstZ ; z<lastZ ; z++){
+						SliceBuffer outSlice = outSlices[z - margin.getZ()];
+						int offsetOut = outSlice.getIndex(firstX - margin.getX(), y - margin.getY());
+						for (int x=0 ; x<planeWidth ; x++){
+							outSlice.set(offsetOut+x, plane[z*planeWidth+x]);
 						}
 					}
 				}
-
-				ConvolutionBaseGeneric resultMask = getIdentityMask();
-				resultMask.setNormalizationDenominator(getNormalizationDenominator());
-				return resultMask;
+				ImageBufferPool.release(plane);
 			}
-		};
+		});
 	}
 
 	
 	/**
+	 * Each line along the axis is read once into a buffer, in which all the passes
+	 * of the binomial mask are applied, and the result is written once into the output image.
 	 * @see wrapScienceJ.wrapImaJ.core.operation.convolve.generic.ConvolutionBaseGeneric#applyMask()
 	 */
 	@Override
 	public ConvolutionBaseGeneric applyMask() {
+		
+		SliceBuffer[] inSlices = SliceBuffer.getSliceBuffers(getInputImageRaw());
+		SliceBuffer[] outSlices = SliceBuffer.getSliceBuffers(getOutputImageRaw());
+		
 		switch (this.m_axis){
 			case X:
-				return getMask_X().applyMask();
+				blurX(inSlices, outSlices);
+				break;
 			case Y:
-				return getMask_Y().applyMask();
+				blurY(inSlices, outSlices);
+				break;
 			case Z:
-				return getMask_Z().applyMask();
+				blurZ(inSlices, outSlices);
+				break;
 			default:
 				throw new IllegalArgumentException("Unknown Coordinate Axis");
 		}
+		
+		ConvolutionBaseGeneric resultMask = getIdentityMask();
+		resultMask.setNormalizationDenominator(getNormalizationDenominator());
+		return resultMask;
 	}
 	
 }
@@ -14,6 +14,7 @@ import wrapScienceJ.wrapImaJ.core.ImageCore;
 import wrapScienceJ.wrapImaJ.core.VoxelDouble;
 import wrapScienceJ.wrapImaJ.core.operation.convolve.BlurFactory;
 import wrapScienceJ.wrapImaJ.core.operation.convolve.ConvolutionBase;
+import wrapScienceJ.wrapImaJ.core.operation.convolve.GaussianBlurPolicy;
 
 
 /**
@@ -24,7 +25,7 @@ import wrapScienceJ.wrapImaJ.core.operation.convolve.ConvolutionBase;
  * @see wrapScienceJ.wrapImaJ.core.operation.convolve.generic.ConvolutionFactoryBaseGeneric
  * 
  */
-public abstract class BlurFactoryGeneric extends ConvolutionFactoryBaseGeneric implements BlurFactory {
+public class BlurFactoryGeneric extends ConvolutionFactoryBaseGeneric implements BlurFactory {
 
 
 	/**
@@ -59,18 +60,7 @@ public abstract class BlurFactoryGeneric extends ConvolutionFactoryBaseGeneric i
 	 */
 	@Override
 	public ConvolutionBaseGeneric getIdentityMask(){
-		return new ConvolutionBaseGeneric(this.m_inImageSignPolicyEmbed, this.m_outImageSignPolicyEmbed, 1,
-											this.m_shiftOuputMargin) {
-			
-			/**
-			 * @see wrapScienceJ.wrapImaJ.core.operation.convolve.generic.ConvolutionBaseGeneric#applyMask()
-			 */
-			@Override
-			public ConvolutionBaseGeneric applyMask() {
-				
-				return this;
-			}
-		};
+		return super.getIdentityMask();
 	}
 
 
@@ -81,21 +71,24 @@ public abstract class BlurFactoryGeneric extends ConvolutionFactoryBaseGeneric i
 	public ConvolutionBase getBinomialBlur(int nPointsX, int nPointsY, int nPointsZ,
 										   int skippingStepX, int skippingStepY, int skippingStepZ){
 
-		BinomialBlurGeneric maskX = new BinomialBlurGeneric(this.m_inImageSignPolicyEmbed,
+		BinomialBlurGeneric maskX = new BinomialBlurGeneric(getInImageSignPolicyEmbed(),
 															this.m_outImageSignPolicyEmbed,
 															CoordinateAxis.X, nPointsX,  skippingStepX,
 															this.m_shiftOuputMargin
 														    );
-		BinomialBlurGeneric maskY = new BinomialBlurGeneric(this.m_inImageSignPolicyEmbed,
+		BinomialBlurGeneric maskY = new BinomialBlurGeneric(getInImageSignPolicyEmbed(),
 															this.m_outImageSignPolicyEmbed,				
 								 							CoordinateAxis.Y, nPointsY,  skippingStepY,
 								 							this.m_shiftOuputMargin
 								 						    );
-		BinomialBlurGeneric maskZ = new BinomialBlurGeneric(this.m_inImageSignPolicyEmbed,
+		BinomialBlurGeneric maskZ = new BinomialBlurGeneric(getInImageSignPolicyEmbed(),
 															this.m_outImageSignPolicyEmbed,	
 															CoordinateAxis.Z, nPointsZ,  skippingStepZ,
 															this.m_shiftOuputMargin
 														    );
+		attachTemporaryImages(maskX);
+		attachTemporaryImages(maskY);
+		attachTemporaryImages(maskZ);
 		return maskX.composeWith(maskY.composeWith(maskZ));
 	}
 
@@ -137,27 +130,89 @@ public abstract class BlurFactoryGeneric extends ConvolutionFactoryBaseGeneric i
 															realSkippingStepZ, voxelEdgesLength.getZ(),
 															this.m_shiftOuputMargin
 															);
+		attachTemporaryImages(maskX);
+		attachTemporaryImages(maskY);
+		attachTemporaryImages(maskZ);
 		return maskX.composeWith(maskY.composeWith(maskZ));
 	}
 	
 	
 
 	/**
+	 * The Gaussian blur is performed by the separable convolution of {@link GaussianBlurSeparableGeneric}.
 	 * @see wrapScienceJ.wrapImaJ.core.operation.convolve.BlurFactory#getGaussianBlur(double, double, double)
 	 */
 	@Override
-	public abstract ConvolutionBaseGeneric getGaussianBlur(
-												double sigmaX, double sigmaY, double sigmaZ
-											);
+	public GaussianBlurGeneric getGaussianBlur(double sigmaX, double sigmaY, double sigmaZ){
+		GaussianBlurGeneric mask = new GaussianBlurSeparableGeneric(getInImageSignPolicyEmbed(),
+												getOutImageSignPolicyEmbed(),
+												sigmaX, sigmaY, sigmaZ,
+												this.m_shiftOuputMargin);
+		attachTemporaryImages(mask);
+		return mask;
+	}
 	
 
 	/**
+	 * The Gaussian blur is performed by the separable convolution of {@link GaussianBlurSeparableGeneric}.
 	 * @see wrapScienceJ.wrapImaJ.core.operation.convolve.BlurFactory#getGaussianBlurCalibrated(double, double, double, VoxelDouble)
 	 */
 	@Override	
-	public abstract ConvolutionBaseGeneric getGaussianBlurCalibrated(
-												double sigmaX, double sigmaY, double sigmaZ,
-												VoxelDouble voxelEdgesLength
-												);
+	public GaussianBlurGeneric getGaussianBlurCalibrated(double sigmaX, double sigmaY, double sigmaZ,
+														 VoxelDouble voxelEdgesLength){
+		GaussianBlurGeneric mask = new GaussianBlurSeparableGeneric(getInImageSignPolicyEmbed(),
+												getOutImageSignPolicyEmbed(),
+												sigmaX, sigmaY, sigmaZ,
+												voxelEdgesLength,
+												this.m_shiftOuputMargin);
+		attachTemporaryImages(mask);
+		return mask;
+	}
+
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.operation.convolve.BlurFactory#getGaussianBlur(double, double, double, wrapScienceJ.wrapImaJ.core.operation.convolve.GaussianBlurPolicy)
+	 */
+	@Override
+	public GaussianBlurGeneric getGaussianBlur(double sigmaX, double sigmaY, double sigmaZ,
+											   GaussianBlurPolicy blurPolicy){
+		switch (blurPolicy){
+			case SeparableConvolution:
+				return getGaussianBlur(sigmaX, sigmaY, sigmaZ);
+			case RecursiveFilter:
+				GaussianBlurGeneric mask = new GaussianBlurRecursiveGeneric(getInImageSignPolicyEmbed(),
+														getOutImageSignPolicyEmbed(),
+														sigmaX, sigmaY, sigmaZ,
+														this.m_shiftOuputMargin);
+				attachTemporaryImages(mask);
+				return mask;
+			default:
+				throw new IllegalArgumentException("Undefined Gaussian Blur Policy.");
+		}
+	}
+
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.operation.convolve.BlurFactory#getGaussianBlurCalibrated(double, double, double, VoxelDouble, wrapScienceJ.wrapImaJ.core.operation.convolve.GaussianBlurPolicy)
+	 */
+	@Override
+	public GaussianBlurGeneric getGaussianBlurCalibrated(double sigmaX, double sigmaY, double sigmaZ,
+														 VoxelDouble voxelEdgesLength,
+														 GaussianBlurPolicy blurPolicy){
+		switch (blurPolicy){
+			case SeparableConvolution:
+				return getGaussianBlurCalibrated(sigmaX, sigmaY, sigmaZ, voxelEdgesLength);
+			case RecursiveFilter:
+				GaussianBlurGeneric mask = new GaussianBlurRecursiveGeneric(getInImageSignPolicyEmbed(),
+														getOutImageSignPolicyEmbed(),
+														sigmaX, sigmaY, sigmaZ,
+														voxelEdgesLength,
+														this.m_shiftOuputMargin);
+				attachTemporaryImages(mask);
+				return mask;
+			default:
+				throw new IllegalArgumentException("Undefined Gaussian Blur Policy.");
+		}
+	}
 
-}
+}
\ No newline at end of file
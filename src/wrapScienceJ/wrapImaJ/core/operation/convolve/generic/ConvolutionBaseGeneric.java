@@ -51,6 +51,12 @@ public abstract class ConvolutionBaseGeneric implements ConvolutionBase {
 	 */
 	protected VoxelInt m_shiftOuputMargin;
 	
+	/**
+	 * The factory which created the temporary input image of this mask (e.g. an enlarged copy
+	 * of the image), released once the convolved image has been retrieved, or null if none.
+	 */
+	private ConvolutionFactoryBaseGeneric m_temporaryImagesOwner = null;
+	
 	
 
 	/**
@@ -58,24 +64,33 @@ public abstract class ConvolutionBaseGeneric implements ConvolutionBase {
 	 */
 	@Override
 	public ImageCore getImageConvolved(ConvolutionNormalizationPolicy normalizationPolicy){
-		this.applyMask();
-		switch (normalizationPolicy){
-			case Gray8_divide_256:
-				return getOutputImageRaw().getImageConvert().convertToGray8(false);
-			case Gray8_No_Normalization:
-				return getOutputImageRaw().getImageConvert().convertToGray8Clamp();
-			case Gray8_Scale_MaximizeContrast:
-				return getOutputImageRaw().getImageConvert()
-										  .convertToGray8(true);
-			case Gray16_Scale_MaximizeContrast:
-				return getOutputImageRaw().getImageContrast()
-											  .maximizeValuesRange();
-			case Gray16_QuantitativeNormalization:
-				return getOutputImageNormalized(false);
-			case Gray8_QuantitativeNormalization_Clamp:
-				return getOutputImageNormalized(true);
-			default: // No Normalization
-				return getOutputImageRaw();
+		checkInImageNotReleased();
+		try {
+			this.applyMask();
+			switch (normalizationPolicy){
+				case Gray8_divide_256:
+					return getOutputImageRaw().getImageConvert().convertToGray8(false);
+				case Gray8_No_Normalization:
+					return getOutputImageRaw().getImageConvert().convertToGray8Clamp();
+				case Gray8_Scale_MaximizeContrast:
+					return getOutputImageRaw().getImageConvert()
+											  .convertToGray8(true);
+				case Gray16_Scale_MaximizeContrast:
+					return getOutputImageRaw().getImageContrast()
+												  .maximizeValuesRange();
+				case Gray16_QuantitativeNormalization:
+					return getOutputImageNormalized(false);
+				case Gray8_QuantitativeNormalization_Clamp:
+					return getOutputImageNormalized(true);
+				default: // No Normalization
+					return getOutputImageRaw();
+			}
+		} finally {
+			// The output image is never a temporary image of the factory
+			// The reference to the factory is kept to refuse a later use of the released input image
+			if (this.m_temporaryImagesOwner != null){
+				this.m_temporaryImagesOwner.releaseTemporaryImages();
+			}
 		}
 	}
 	/**
@@ -124,6 +139,7 @@ public abstract class ConvolutionBaseGeneric implements ConvolutionBase {
 	 */
 	@Override
 	public ImageSignPolicyEmbedGeneric getInImageSignPolicyEmbed(){
+		checkInImageNotReleased();
 		return this.m_inImageSignPolicyEmbed;
 	}
 	
@@ -137,17 +153,40 @@ public abstract class ConvolutionBaseGeneric implements ConvolutionBase {
 		int xMargin = this.m_shiftOuputMargin.getX();
 		int yMargin = this.m_shiftOuputMargin.getY();
 		int zMargin = this.m_shiftOuputMargin.getZ();
+		ImageCore imageRaw = this.m_inImageSignPolicyEmbed.getImageRaw();
 		if (xMargin == 0 && yMargin == 0 && zMargin == 0){
-			return this.m_inImageSignPolicyEmbed.getImageRaw();
+			return imageRaw;
 		}
-		return this.m_inImageSignPolicyEmbed
-				.getImageRaw()
-				.getImageDomainOperation()
-				.crop(xMargin, yMargin, zMargin,
-				  this.m_inImageSignPolicyEmbed.getImageRaw().getWidth() - xMargin,
-				  this.m_inImageSignPolicyEmbed.getImageRaw().getHeight() - yMargin,
-				  this.m_inImageSignPolicyEmbed.getImageRaw().getDepth()  - zMargin
-				);
+		return imageRaw.getImageDomainOperation()
+					   .crop(xMargin, yMargin, zMargin,
+							 imageRaw.getWidth() - xMargin,
+							 imageRaw.getHeight() - yMargin,
+							 imageRaw.getDepth()  - zMargin
+							);
+	}
+	
+	
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.operation.convolve.ConvolutionBase#getCroppedInImageView()
+	 */
+	@Override
+	public ImageCore getCroppedInImageView(){
+		
+		int xMargin = this.m_shiftOuputMargin.getX();
+		int yMargin = this.m_shiftOuputMargin.getY();
+		int zMargin = this.m_shiftOuputMargin.getZ();
+		ImageCore imageRaw = this.m_inImageSignPolicyEmbed.getImageRaw();
+		// Views share the voxel data, but only support 8 or 16 bits per voxel
+		if ((xMargin == 0 && yMargin == 0 && zMargin == 0)
+				|| (imageRaw.getBitDepth() != 8 && imageRaw.getBitDepth() != 16)){
+			return getCroppedInImage();
+		}
+		return imageRaw.getImageDomainOperation()
+					   .getCropView(xMargin, yMargin, zMargin,
+							   		imageRaw.getWidth() - xMargin,
+							   		imageRaw.getHeight() - yMargin,
+							   		imageRaw.getDepth()  - zMargin
+							   	   );
 	}
 	
 	
@@ -160,6 +199,30 @@ public abstract class ConvolutionBaseGeneric implements ConvolutionBase {
 	}
 	
 
+	/**
+	 * Sets the factory whose temporary images are used by this mask, and which are released
+	 * by {@link #getImageConvolved(ConvolutionNormalizationPolicy)}.
+	 * @param factory The factory which created the input image of the mask, or null if the input
+	 * 				  image is not a temporary image.
+	 */
+	void setTemporaryImagesOwner(ConvolutionFactoryBaseGeneric factory){
+		this.m_temporaryImagesOwner = factory;
+	}
+	
+	
+	/**
+	 * Checks that the input image of this mask is not a temporary image which has been released
+	 * (by the application of this mask or of another mask built by the same factory).
+	 * @throws IllegalStateException if the input image has been released.
+	 */
+	private void checkInImageNotReleased(){
+		if (this.m_temporaryImagesOwner != null && this.m_temporaryImagesOwner.isInImageReleased()){
+			throw new IllegalStateException("The input image of the mask has been released: "
+											+ "the mask cannot be applied any more.");
+		}
+	}
+	
+	
 	/**
 	 * Allows to set the value for the Convolution Mask's common denominator factor.
 	 * @param denominator the value to use for the denominator.
@@ -192,8 +255,8 @@ public abstract class ConvolutionBaseGeneric implements ConvolutionBase {
 	 */
 	public ConvolutionBaseGeneric getIdentityMask(){
 		
-		return new ConvolutionBaseGeneric(getInImageSignPolicyEmbed(), getOutImageSignPolicyEmbed(), 1,
-											this.m_shiftOuputMargin) {
+		ConvolutionBaseGeneric identityMask = new ConvolutionBaseGeneric(getInImageSignPolicyEmbed(),
+												getOutImageSignPolicyEmbed(), 1, this.m_shiftOuputMargin) {
 			
 			/**
 			 * @see wrapScienceJ.wrapImaJ.core.operation.convolve.generic.ConvolutionBaseGeneric#applyMask()
@@ -203,7 +266,8 @@ public abstract class ConvolutionBaseGeneric implements ConvolutionBase {
 				return this;
 			}
 		};
-		
+		identityMask.m_temporaryImagesOwner = this.m_temporaryImagesOwner;
+		return identityMask;
 	}
 	
 	
@@ -309,10 +373,16 @@ public abstract class ConvolutionBaseGeneric implements ConvolutionBase {
 			if (this.m_normalizationDenominator >= rightHandSide.getNormalizationDenominator()){
 				// Apply this mask and return rhs
 				this.applyMask().normalizeOutputValues();
+				if (rhs.m_temporaryImagesOwner == null){
+					rhs.m_temporaryImagesOwner = this.m_temporaryImagesOwner;
+				}
 				return rightHandSide;
 			}
 			// Else, apply rhs mask and return this mask
 			rhs.applyMask().normalizeOutputValues();
+			if (this.m_temporaryImagesOwner == null){
+				this.m_temporaryImagesOwner = rhs.m_temporaryImagesOwner;
+			}
 			return this;
 		}
 		
@@ -355,6 +425,8 @@ public abstract class ConvolutionBaseGeneric implements ConvolutionBase {
 				return resultMask;
 			}
 		};
+		convolutionResult.m_temporaryImagesOwner = this.m_temporaryImagesOwner != null
+												   ? this.m_temporaryImagesOwner : rhs.m_temporaryImagesOwner;
 		return convolutionResult;
 	}
 	
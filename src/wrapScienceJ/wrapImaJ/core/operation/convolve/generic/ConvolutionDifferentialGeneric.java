@@ -11,8 +11,10 @@
 package wrapScienceJ.wrapImaJ.core.operation.convolve.generic;
 
 import wrapScienceJ.wrapImaJ.core.CoordinateAxis;
+import wrapScienceJ.wrapImaJ.core.ImageBufferPool;
 import wrapScienceJ.wrapImaJ.core.ImageCalibration;
 import wrapScienceJ.wrapImaJ.core.ImageCore;
+import wrapScienceJ.wrapImaJ.core.SliceBuffer;
 import wrapScienceJ.wrapImaJ.core.VoxelInt;
 import wrapScienceJ.wrapImaJ.core.operation.convolve.ConvolutionBase;
 import wrapScienceJ.wrapImaJ.core.operation.convolve.ConvolutionNormalizationPolicy;
@@ -331,11 +333,14 @@ public abstract class ConvolutionDifferentialGeneric implements ConvolutionBase
 				ImageCore inputImage = inImageSignPolicyEmbed.getImageRaw();
 				ImageCore outputImage = outImageSignPolicyEmbed.getImageRaw();
 				
-				int [] latestValuesZ = new int[inputImage.getWidth()*inputImage.getHeight()];
-				int [] nextValuesZ = new int[inputImage.getWidth()*inputImage.getHeight()];
+				int [] latestValuesZ = ImageBufferPool.acquireInts(inputImage.getWidth()*inputImage.getHeight());
+				int [] nextValuesZ = ImageBufferPool.acquireInts(inputImage.getWidth()*inputImage.getHeight());
 				
 				int zeroValueIn = inImageSignPolicyEmbed.getZero();
 				int zeroValueOut = outImageSignPolicyEmbed.getZero();
+				
+				SliceBuffer[] inputSlices = SliceBuffer.getSliceBuffers(inputImage);
+				SliceBuffer[] outputSlices = SliceBuffer.getSliceBuffers(outputImage);
 
 				for (int i = 1 ; i <= orderZ ; i++){
 					
@@ -360,18 +365,25 @@ public abstract class ConvolutionDifferentialGeneric implements ConvolutionBase
 									nextValuesZ[y*inputImage.getWidth()+x] = zeroValueIn;
 								}else{
 									nextValuesZ[y*inputImage.getWidth()+x] = 
-														inputImage.getVoxel(x, y, skippingStepZ+j);
+														inputSlices[skippingStepZ+j].get(x, y);
 								}
 							}
 						}
 			
 						for (int z=j ; z<inputImage.getDepth() ; z += skippingStepZ){
+							
+							SliceBuffer inSlice = inputSlices[z];
+							SliceBuffer nextSlice = z+2*skippingStepZ < inputImage.getDepth() ?
+															inputSlices[z+2*skippingStepZ] : null;
+							int zOut = z - this.m_shiftOuputMargin.getZ();
+							SliceBuffer outSlice = zOut >= 0 && zOut < outputImage.getDepth() ?
+															outputSlices[zOut] : null;
 
 							for (int y=0 ; y<inputImage.getHeight() ; y++){
 								for (int x=0 ; x<inputImage.getWidth() ; x++){
 									
 									
-									int savePixel = inputImage.getVoxel(x, y, z);
+									int savePixel = inSlice.get(x, y);
 								
 									int outValue = zeroValueOut
 													 + nextValuesZ[y*inputImage.getWidth()+x]
@@ -379,10 +391,9 @@ public abstract class ConvolutionDifferentialGeneric implements ConvolutionBase
 														
 									int xOut = x - this.m_shiftOuputMargin.getX();
 									int yOut = y - this.m_shiftOuputMargin.getY();
-									int zOut = z - this.m_shiftOuputMargin.getZ();
 									if (xOut >= 0 && xOut < outputImage.getWidth() &&
 										yOut >= 0 && yOut < outputImage.getHeight() &&
-										zOut >= 0 && zOut < outputImage.getDepth()){
+										outSlice != null){
 									
 										if ((absoluteValue|| squared) && outValue < zeroValueOut){
 											outValue = 2*zeroValueOut - outValue;
@@ -394,22 +405,23 @@ public abstract class ConvolutionDifferentialGeneric implements ConvolutionBase
 										if (addToOutput){
 											outValue /= this.getNormalizationDenominator();
 											outValue /= scaleDenominator;
-											outValue += outputImage.getVoxel(xOut, yOut, zOut);
+											outValue += outSlice.get(xOut, yOut);
 										}
 										
-										outputImage.setVoxel(xOut, yOut, zOut, outValue);
+										outSlice.set(xOut, yOut, outValue);
 									}
 									
 									latestValuesZ[y*inputImage.getWidth()+x] = savePixel;
 									
 									nextValuesZ[y*inputImage.getWidth()+x] = 
-											z+2*skippingStepZ < inputImage.getDepth() ?
-														inputImage.getVoxel(x, y, z+2*skippingStepZ) : zeroValueIn;
+											nextSlice != null ? nextSlice.get(x, y) : zeroValueIn;
 								}
 							}
 						}
 					}
 				}
+				ImageBufferPool.release(latestValuesZ);
+				ImageBufferPool.release(nextValuesZ);
 				ConvolutionBaseGeneric resultMask = getIdentityMask();
 				resultMask.setNormalizationDenominator(getNormalizationDenominator());
 				return resultMask;
@@ -471,12 +483,15 @@ public abstract class ConvolutionDifferentialGeneric implements ConvolutionBase
 				
 				ImageCore inputImage = inImageSignPolicyEmbed.getImageRaw();
 				ImageCore outputImage = outImageSignPolicyEmbed.getImageRaw();
-				int [] latestValuesY = new int[inputImage.getWidth()*inputImage.getDepth()];
-				int [] nextValuesY = new int[inputImage.getWidth()*inputImage.getDepth()];
+				int [] latestValuesY = ImageBufferPool.acquireInts(inputImage.getWidth()*inputImage.getDepth());
+				int [] nextValuesY = ImageBufferPool.acquireInts(inputImage.getWidth()*inputImage.getDepth());
 		
 				int zeroValueIn = inImageSignPolicyEmbed.getZero();
 				int zeroValueOut = outImageSignPolicyEmbed.getZero();
 				
+				SliceBuffer[] inputSlices = SliceBuffer.getSliceBuffers(inputImage);
+				SliceBuffer[] outputSlices = SliceBuffer.getSliceBuffers(outputImage);
+				
 				for (int i = 1 ; i <= orderY ; i++){
 					
 					if (i >= 2 && i < orderY && inputImage != outputImage){
@@ -500,16 +515,22 @@ public abstract class ConvolutionDifferentialGeneric implements ConvolutionBase
 									nextValuesY[z*inputImage.getWidth()+x] = zeroValueIn;
 								}else{
 									nextValuesY[z*inputImage.getWidth()+x] = 
-														inputImage.getVoxel(x, skippingStepY+j, z);
+														inputSlices[z].get(x, skippingStepY+j);
 								}
 							}
 						}
 			
 						for (int y=j ; y<inputImage.getHeight() ; y += skippingStepY){
 							for (int z=0 ; z<inputImage.getDepth() ; z++){
+								
+								SliceBuffer inSlice = inputSlices[z];
+								int zOut = z - this.m_shiftOuputMargin.getZ();
+								SliceBuffer outSlice = zOut >= 0 && zOut < outputImage.getDepth() ?
+																outputSlices[zOut] : null;
+								
 								for (int x=0 ; x<inputImage.getWidth() ; x++){
 									
-									int savePixel = inputImage.getVoxel(x, y, z);
+									int savePixel = inSlice.get(x, y);
 								
 									int outValue = zeroValueOut 
 													 + nextValuesY[z*inputImage.getWidth()+x]
@@ -517,10 +538,9 @@ public abstract class ConvolutionDifferentialGeneric implements ConvolutionBase
 									
 									int xOut = x - this.m_shiftOuputMargin.getX();
 									int yOut = y - this.m_shiftOuputMargin.getY();
-									int zOut = z - this.m_shiftOuputMargin.getZ();
 									if (xOut >= 0 && xOut < outputImage.getWidth() &&
 										yOut >= 0 && yOut < outputImage.getHeight() &&
-										zOut >= 0 && zOut < outputImage.getDepth()){
+										outSlice != null){
 									
 										if ((absoluteValue|| squared) && outValue < zeroValueOut){
 											outValue = 2*zeroValueOut - outValue;
@@ -532,23 +552,25 @@ public abstract class ConvolutionDifferentialGeneric implements ConvolutionBase
 										if (addToOutput){
 											outValue /= this.getNormalizationDenominator();
 											outValue /= scaleDenominator;
-											outValue += outputImage.getVoxel(xOut, yOut, zOut);
+											outValue += outSlice.get(xOut, yOut);
 										}
 										
-										outputImage.setVoxel(xOut, yOut, zOut, outValue);
+										outSlice.set(xOut, yOut, outValue);
 									}
 									
 									latestValuesY[z*inputImage.getWidth()+x] = savePixel;
 									
 									nextValuesY[z*inputImage.getWidth()+x] = 
 														y+2*skippingStepY < inputImage.getHeight() ?
-														inputImage.getVoxel(x, y+2*skippingStepY, z) : zeroValueIn;
+														inSlice.get(x, y+2*skippingStepY) : zeroValueIn;
 								
 								}
 							}
 						}
 					}
 				}
+				ImageBufferPool.release(latestValuesY);
+				ImageBufferPool.release(nextValuesY);
 				ConvolutionBaseGeneric resultMask = getIdentityMask();
 				resultMask.setNormalizationDenominator(getNormalizationDenominator());
 				return resultMask;
@@ -610,11 +632,14 @@ public abstract class ConvolutionDifferentialGeneric implements ConvolutionBase
 				ImageCore inputImage = inImageSignPolicyEmbed.getImageRaw();
 				ImageCore outputImage = outImageSignPolicyEmbed.getImageRaw();
 				
-				int [] latestValuesX = new int[inputImage.getWidth()*inputImage.getDepth()];
-				int [] nextValuesX = new int[inputImage.getWidth()*inputImage.getDepth()];
+				int [] latestValuesX = ImageBufferPool.acquireInts(inputImage.getHeight()*inputImage.getDepth());
+				int [] nextValuesX = ImageBufferPool.acquireInts(inputImage.getHeight()*inputImage.getDepth());
 				
 				int zeroValueIn = inImageSignPolicyEmbed.getZero();
 				int zeroValueOut = outImageSignPolicyEmbed.getZero();
+				
+				SliceBuffer[] inputSlices = SliceBuffer.getSliceBuffers(inputImage);
+				SliceBuffer[] outputSlices = SliceBuffer.getSliceBuffers(outputImage);
 		
 				for (int i = 1 ; i <= orderX ; i++){
 					
@@ -639,7 +664,7 @@ public abstract class ConvolutionDifferentialGeneric implements ConvolutionBase
 									nextValuesX[z*inputImage.getHeight()+y] = zeroValueIn;
 								}else{
 									nextValuesX[z*inputImage.getHeight()+y] = 
-														inputImage.getVoxel(skippingStepX+j, y, z);
+														inputSlices[z].get(skippingStepX+j, y);
 								}
 							}
 						}
@@ -647,9 +672,15 @@ public abstract class ConvolutionDifferentialGeneric implements ConvolutionBase
 						for (int x=j ; x<inputImage.getWidth() ; x += skippingStepX){
 		
 							for (int z=0 ; z<inputImage.getDepth() ; z++){
+								
+								SliceBuffer inSlice = inputSlices[z];
+								int zOut = z - this.m_shiftOuputMargin.getZ();
+								SliceBuffer outSlice = zOut >= 0 && zOut < outputImage.getDepth() ?
+																outputSlices[zOut] : null;
+								
 								for (int y=0 ; y<inputImage.getHeight() ; y++){
 									
-									int savePixel = inputImage.getVoxel(x, y, z);
+									int savePixel = inSlice.get(x, y);
 
 									int outValue = zeroValueOut
 													 + nextValuesX[z*inputImage.getHeight()+y]
@@ -657,10 +688,9 @@ public abstract class ConvolutionDifferentialGeneric implements ConvolutionBase
 																		
 									int xOut = x - this.m_shiftOuputMargin.getX();
 									int yOut = y - this.m_shiftOuputMargin.getY();
-									int zOut = z - this.m_shiftOuputMargin.getZ();
 									if (xOut >= 0 && xOut < outputImage.getWidth() &&
 										yOut >= 0 && yOut < outputImage.getHeight() &&
-										zOut >= 0 && zOut < outputImage.getDepth()){
+										outSlice != null){
 									
 										if ((absoluteValue|| squared) && outValue < zeroValueOut){
 											outValue = 2*zeroValueOut - outValue;
@@ -672,23 +702,25 @@ public abstract class ConvolutionDifferentialGeneric implements ConvolutionBase
 										if (addToOutput){
 											outValue /= this.getNormalizationDenominator();
 											outValue /= scaleDenominator;
-											outValue += outputImage.getVoxel(xOut, yOut, zOut);
+											outValue += outSlice.get(xOut, yOut);
 										}
 										
-										outputImage.setVoxel(xOut, yOut, zOut, outValue);
+										outSlice.set(xOut, yOut, outValue);
 									}
 
 									latestValuesX[z*inputImage.getHeight()+y] = savePixel;
 									
 									nextValuesX[z*inputImage.getHeight()+y] = 
 														x+2*skippingStepX < inputImage.getWidth() ?
-														inputImage.getVoxel(x+2*skippingStepX, y, z) : zeroValueIn;
+														inSlice.get(x+2*skippingStepX, y) : zeroValueIn;
 
 								}
 							}
 						}
 					}
 				}
+				ImageBufferPool.release(latestValuesX);
+				ImageBufferPool.release(nextValuesX);
 				ConvolutionBaseGeneric resultMask = getIdentityMask();
 				resultMask.setNormalizationDenominator(getNormalizationDenominator());
 				return resultMask;
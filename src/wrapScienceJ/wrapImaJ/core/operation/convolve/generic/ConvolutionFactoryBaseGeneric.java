@@ -8,6 +8,8 @@
 \******************************************************************************/ 
 package wrapScienceJ.wrapImaJ.core.operation.convolve.generic;
 
+import java.util.ArrayList;
+
 import wrapScienceJ.resource.BufferEnlargementPolicy;
 import wrapScienceJ.wrapImaJ.core.ImageCore;
 import wrapScienceJ.wrapImaJ.core.VoxelInt;
@@ -44,6 +46,20 @@ public class ConvolutionFactoryBaseGeneric implements ConvolutionFactoryBase {
 	protected VoxelInt m_shiftOuputMargin;
 	
 	
+	/**
+	 * Temporary images created by this instance (the enlarged copies of the input image),
+	 * to be released by {@link #releaseTemporaryImages()}.
+	 */
+	private ArrayList<ImageCore> m_temporaryImages;
+	
+	
+	/**
+	 * true once the enlarged input image has been released, so that the input image
+	 * of this instance cannot be used any more.
+	 */
+	private boolean m_inImageReleased;
+	
+	
 	/**
 	 * @param image Original reference to the ImageCore implementer 
 	 */
@@ -51,6 +67,8 @@ public class ConvolutionFactoryBaseGeneric implements ConvolutionFactoryBase {
 		this.m_shiftOuputMargin = new VoxelInt(0,0,0);
 		this.m_inImageSignPolicyEmbed = image.getImageSignPolicyEmbed();
 		this.m_outImageSignPolicyEmbed = this.m_inImageSignPolicyEmbed;
+		this.m_temporaryImages = new ArrayList<ImageCore>();
+		this.m_inImageReleased = false;
 	}
 	
 
@@ -59,8 +77,8 @@ public class ConvolutionFactoryBaseGeneric implements ConvolutionFactoryBase {
 	 */
 	@Override
 	public ConvolutionBaseGeneric getIdentityMask(){
-		return new ConvolutionBaseGeneric(this.m_inImageSignPolicyEmbed, this.m_outImageSignPolicyEmbed, 1,
-										  this.m_shiftOuputMargin) {
+		ConvolutionBaseGeneric identityMask = new ConvolutionBaseGeneric(getInImageSignPolicyEmbed(),
+												this.m_outImageSignPolicyEmbed, 1, this.m_shiftOuputMargin) {
 			
 			/**
 			 * @see wrapScienceJ.wrapImaJ.core.operation.convolve.generic.ConvolutionBaseGeneric#applyMask()
@@ -71,6 +89,8 @@ public class ConvolutionFactoryBaseGeneric implements ConvolutionFactoryBase {
 				return this;
 			}
 		};
+		attachTemporaryImages(identityMask);
+		return identityMask;
 	}
 	
 
@@ -94,15 +114,57 @@ public class ConvolutionFactoryBaseGeneric implements ConvolutionFactoryBase {
 												 		BufferEnlargementPolicy enlargementPolicy) {
 		
 		this.m_shiftOuputMargin.setCordinates(xMargin, yMargin, zMargin);
-		this.m_inImageSignPolicyEmbed = this.m_inImageSignPolicyEmbed
+		this.m_inImageSignPolicyEmbed = getInImageSignPolicyEmbed()
 											.getImageRaw()
 											.getImageDomainOperation()
 											.getEnlargedImage(xMargin, yMargin, zMargin, enlargementPolicy)
 											.getImageSignPolicyEmbed();
+		this.m_temporaryImages.add(this.m_inImageSignPolicyEmbed.getImageRaw());
 		return this;
 	}
 	
 	
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.operation.convolve.ConvolutionFactoryBase#releaseTemporaryImages()
+	 */
+	@Override
+	public void releaseTemporaryImages(){
+		if (this.m_temporaryImages.isEmpty()){
+			return;
+		}
+		for (ImageCore image : this.m_temporaryImages){
+			image.getPreferedFactory().releaseImageCore(image);
+		}
+		this.m_temporaryImages.clear();
+		// The input image is the last enlarged copy, whose voxel arrays may now be reused
+		this.m_inImageSignPolicyEmbed = null;
+		this.m_inImageReleased = true;
+	}
+	
+	
+	/**
+	 * @return true if the enlarged input image of this instance has been released
+	 * 		   (see {@link #releaseTemporaryImages()}), so that neither this instance nor the masks
+	 * 		   it built can be used any more.
+	 */
+	boolean isInImageReleased(){
+		return this.m_inImageReleased;
+	}
+	
+	
+	/**
+	 * Makes a mask built by this instance release the temporary images of this instance
+	 * once the convolved image has been retrieved
+	 * (see {@link ConvolutionBaseGeneric#getImageConvolved(wrapScienceJ.wrapImaJ.core.operation.convolve.ConvolutionNormalizationPolicy)}).
+	 * @param mask A mask applied on the input image of this instance.
+	 */
+	protected void attachTemporaryImages(ConvolutionBaseGeneric mask){
+		if (!this.m_temporaryImages.isEmpty()){
+			mask.setTemporaryImagesOwner(this);
+		}
+	}
+	
+	
 	/**
 	 * Allows to set the embedded image without any normalization.
 	 * 				The image allows linear combinations is embedded into
@@ -115,6 +177,7 @@ public class ConvolutionFactoryBaseGeneric implements ConvolutionFactoryBase {
 	 */	
 	protected void setInImageLinearCombination(ImageSignPolicyEmbedGeneric inImageSignPolicyEmbed){
 		this.m_inImageSignPolicyEmbed = inImageSignPolicyEmbed;
+		this.m_inImageReleased = false;
 	}
 	
 	
@@ -138,6 +201,10 @@ public class ConvolutionFactoryBaseGeneric implements ConvolutionFactoryBase {
 	 */
 	@Override
 	public ImageSignPolicyEmbedGeneric getInImageSignPolicyEmbed(){
+		if (this.m_inImageReleased){
+			throw new IllegalStateException("The enlarged input image of the convolution factory "
+											+ "has been released: the factory cannot be used any more.");
+		}
 		return this.m_inImageSignPolicyEmbed;
 	}
 	
@@ -152,17 +219,40 @@ public class ConvolutionFactoryBaseGeneric implements ConvolutionFactoryBase {
 		int xMargin = this.m_shiftOuputMargin.getX();
 		int yMargin = this.m_shiftOuputMargin.getY();
 		int zMargin = this.m_shiftOuputMargin.getZ();
+		ImageCore imageRaw = getInImageSignPolicyEmbed().getImageRaw();
 		if (xMargin == 0 && yMargin == 0 && zMargin == 0){
-			return this.m_inImageSignPolicyEmbed.getImageRaw();
+			return imageRaw;
+		}
+		return imageRaw.getImageDomainOperation()
+					   .crop(xMargin, yMargin, zMargin,
+							 imageRaw.getWidth() - xMargin,
+							 imageRaw.getHeight() - yMargin,
+							 imageRaw.getDepth()  - zMargin
+							);
+	}
+	
+	
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.operation.convolve.ConvolutionFactoryBase#getCroppedInImageView()
+	 */
+	@Override
+	public ImageCore getCroppedInImageView(){
+		
+		int xMargin = this.m_shiftOuputMargin.getX();
+		int yMargin = this.m_shiftOuputMargin.getY();
+		int zMargin = this.m_shiftOuputMargin.getZ();
+		ImageCore imageRaw = getInImageSignPolicyEmbed().getImageRaw();
+		// Views share the voxel data, but only support 8 or 16 bits per voxel
+		if ((xMargin == 0 && yMargin == 0 && zMargin == 0)
+				|| (imageRaw.getBitDepth() != 8 && imageRaw.getBitDepth() != 16)){
+			return getCroppedInImage();
 		}
-		return this.m_inImageSignPolicyEmbed
-				.getImageRaw()
-				.getImageDomainOperation()
-				.crop(xMargin, yMargin, zMargin,
-				  this.m_inImageSignPolicyEmbed.getImageRaw().getWidth() - xMargin,
-				  this.m_inImageSignPolicyEmbed.getImageRaw().getHeight() - yMargin,
-				  this.m_inImageSignPolicyEmbed.getImageRaw().getDepth()  - zMargin
-				);
+		return imageRaw.getImageDomainOperation()
+					   .getCropView(xMargin, yMargin, zMargin,
+							   		imageRaw.getWidth() - xMargin,
+							   		imageRaw.getHeight() - yMargin,
+							   		imageRaw.getDepth()  - zMargin
+							   	   );
 	}
 	
 	
@@ -0,0 +1,338 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File:  GaussianBlurRecursiveGeneric.java                                 * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+package wrapScienceJ.wrapImaJ.core.operation.convolve.generic;
+
+import java.util.Arrays;
+
+import wrapScienceJ.wrapImaJ.core.CoordinateAxis;
+import wrapScienceJ.wrapImaJ.core.ImageBufferPool;
+import wrapScienceJ.wrapImaJ.core.ImageCore;
+import wrapScienceJ.wrapImaJ.core.VoxelDouble;
+import wrapScienceJ.wrapImaJ.core.VoxelInt;
+import wrapScienceJ.wrapImaJ.core.operation.generic.ImageSignPolicyEmbedGeneric;
+
+
+/**
+ * Gaussian Blur approximated by the recursive filter of Young and van Vliet
+ * ("Recursive implementation of the Gaussian filter", Signal Processing, 1995).
+ *
+ * Along each axis, a causal and an anti-causal third order recursive filter are
+ * applied successively to each line. The number of operations per voxel does not depend
+ * on the standard deviation, which makes this filter much faster than the convolution
+ * for large standard deviations (e.g. for the estimation of a background).
+ * The voxels outside the image are assumed to have the value of the nearest voxel
+ * on the image's border: the causal filter starts in its steady state for the first voxel,
+ * and the anti-causal filter starts in the exact state for a line continued by its last
+ * voxel (as proposed by Triggs and Sdika, "Boundary conditions for Young-van Vliet recursive
+ * filtering", IEEE Transactions on Signal Processing, 2006). The result differs from the
+ * convolution by a few percent of the local contrast, mostly near sharp edges.
+ *
+ * The filter is only valid for standard deviations of at least 0.5 voxel.
+ * Along the axis with a smaller (positive) standard deviation, the image is
+ * blurred by convolution, as in {@link GaussianBlurSeparableGeneric}.
+ *
+ * @see wrapScienceJ.wrapImaJ.core.operation.convolve.GaussianBlurPolicy
+ */
+public class GaussianBlurRecursiveGeneric extends GaussianBlurSeparableGeneric {
+
+	/**
+	 * Minimal standard deviation for which the recursive filter's coefficients are defined
+	 */
+	private static final double MIN_SIGMA = 0.5;
+
+	/**
+	 * Coefficients {B, b1/b0, b2/b0, b3/b0} of the recursive filter along the X axis,
+	 * followed by the 3x3 matrix of the initial state of the anti-causal filter
+	 * (see {@link #getBoundaryMatrix(float[], double)}), row after row
+	 * (null if the image is blurred by convolution along the X axis)
+	 */
+	private float[] m_coefficientsX;
+
+	/**
+	 * Coefficients of the recursive filter along the Y axis
+	 * @see #m_coefficientsX
+	 */
+	private float[] m_coefficientsY;
+
+	/**
+	 * Coefficients of the recursive filter along the Z axis
+	 * @see #m_coefficientsX
+	 */
+	private float[] m_coefficientsZ;
+
+
+	/**
+	 * Applies a Gaussian Blur on the image, with a given standard deviation in
+	 * each coordinate.
+	 *
+	 * @param inImageSignPolicyEmbed An original image on which to apply the mask.
+	 * @param outImageSignPolicyEmbed An original image on which to apply the mask.
+	 * 				The image must allow values to be added AND subtracted without overflow.
+	 * 				Use {@link ImageSignPolicyEmbedGeneric#getImageEmbedding(boolean, int)} if necessary.
+	 * @param sigmaX standard deviation of the Gaussian on the x coordinate
+	 * @param sigmaY standard deviation of the Gaussian on the y coordinate
+	 * @param sigmaZ standard deviation of the Gaussian on the z coordinate
+	 * @param shiftOuputMargin Margins that were added through enlargement of input buffer.
+	 */
+	public GaussianBlurRecursiveGeneric(ImageSignPolicyEmbedGeneric inImageSignPolicyEmbed,
+										ImageSignPolicyEmbedGeneric outImageSignPolicyEmbed,
+										double sigmaX, double sigmaY, double sigmaZ,
+										VoxelInt shiftOuputMargin){
+		super(inImageSignPolicyEmbed, outImageSignPolicyEmbed, sigmaX, sigmaY, sigmaZ, shiftOuputMargin);
+	}
+
+
+	/**
+	 * Applies a Gaussian Blur on the image, with a given standard deviation in
+	 * each coordinate.
+	 * This method does the same as
+	 * {@link #GaussianBlurRecursiveGeneric(ImageSignPolicyEmbedGeneric, ImageSignPolicyEmbedGeneric, double, double, double, VoxelInt)}
+	 * except that the standard deviations are given in (approximately) multiples of the calibration
+	 * data (Voxels edges lengths in a given length unit) instead of number of voxels.
+	 *
+	 * @param inImageSignPolicyEmbed An original image on which to apply the mask.
+	 * @param outImageSignPolicyEmbed An original image on which to apply the mask.
+	 * 				The image must allow values to be added AND subtracted without overflow.
+	 * 				Use {@link ImageSignPolicyEmbedGeneric#getImageEmbedding(boolean, int)} if necessary.
+	 * @param realSigmaX standard deviation of the Gaussian on the x coordinate
+	 * @param realSigmaY standard deviation of the Gaussian on the y coordinate
+	 * @param realSigmaZ standard deviation of the Gaussian on the z coordinate
+	 * @param voxelEdgesLength The voxel's scale (edges' length) used as a factor to estimate
+	 * 						   actual skipping steps in each direction.
+	 * @param shiftOuputMargin Margins that were added through enlargement of input buffer.
+	 */
+	public GaussianBlurRecursiveGeneric(ImageSignPolicyEmbedGeneric inImageSignPolicyEmbed,
+										ImageSignPolicyEmbedGeneric outImageSignPolicyEmbed,
+										double realSigmaX, double realSigmaY, double realSigmaZ,
+										VoxelDouble voxelEdgesLength,
+										VoxelInt shiftOuputMargin){
+		super(inImageSignPolicyEmbed, outImageSignPolicyEmbed,
+			  realSigmaX, realSigmaY, realSigmaZ, voxelEdgesLength, shiftOuputMargin);
+	}
+
+
+	/**
+	 * Computes the coefficients of the recursive filter of Young and van Vliet.
+	 * @param sigma standard deviation of the Gaussian (in voxels), at least 0.5
+	 * @return The coefficients {B, b1/b0, b2/b0, b3/b0} of the recursion
+	 * 		   w[n] = B*in[n] + (b1*w[n-1] + b2*w[n-2] + b3*w[n-3])/b0
+	 */
+	public static float[] getRecursiveCoefficients(double sigma){
+		if (sigma < MIN_SIGMA){
+			throw new IllegalArgumentException("The recursive Gaussian filter requires a standard " +
+											   "deviation of at least " + MIN_SIGMA);
+		}
+		double q;
+		if (sigma >= 2.5){
+			q = 0.98711*sigma - 0.96330;
+		}else{
+			q = 3.97156 - 4.14554*Math.sqrt(1.0 - 0.26891*sigma);
+		}
+		double q2 = q*q;
+		double q3 = q2*q;
+		double b0 = 1.57825 + 2.44413*q + 1.4281*q2 + 0.422205*q3;
+		double b1 = 2.44413*q + 2.85619*q2 + 1.26661*q3;
+		double b2 = -(1.4281*q2 + 1.26661*q3);
+		double b3 = 0.422205*q3;
+		double normalization = 1.0 - (b1 + b2 + b3)/b0;
+		return new float[]{(float)normalization, (float)(b1/b0), (float)(b2/b0), (float)(b3/b0)};
+	}
+
+
+	/**
+	 * Computes the coefficients of the recursive filters, and the convolution kernels
+	 * for the axis along which the standard deviation is too small for the recursive filter.
+	 * @see wrapScienceJ.wrapImaJ.core.operation.convolve.generic.GaussianBlurSeparableGeneric#initFilters(wrapScienceJ.wrapImaJ.core.ImageCore)
+	 */
+	@Override
+	protected void initFilters(ImageCore image){
+		super.initFilters(image);
+		this.m_coefficientsX = this.m_sigmaX >= MIN_SIGMA ? getFilterCoefficients(this.m_sigmaX) : null;
+		this.m_coefficientsY = this.m_sigmaY >= MIN_SIGMA ? getFilterCoefficients(this.m_sigmaY) : null;
+		this.m_coefficientsZ = this.m_sigmaZ >= MIN_SIGMA ? getFilterCoefficients(this.m_sigmaZ) : null;
+	}
+
+
+	/**
+	 * Computes the matrix which gives the initial state of the anti-causal filter,
+	 * for a line continued by its last input value, from the last three outputs of the causal filter.
+	 * Denoting by u the last input value of a line of length n, w the output of the causal filter
+	 * and v the output of the anti-causal filter, v[n+j] - u is the sum over k of M[j][k]*(w[n-1-k] - u),
+	 * for j, k = 0, 1, 2. Since both filters are linear and stable, the columns of M are computed
+	 * by running the filters on the continuation of the line, from each unit causal state,
+	 * until their responses have vanished.
+	 * @param coefficients The coefficients {B, b1/b0, b2/b0, b3/b0} of the recursive filter
+	 * @param sigma standard deviation of the Gaussian (in voxels)
+	 * @return The matrix M, row after row.
+	 */
+	private static float[] getBoundaryMatrix(float[] coefficients, double sigma){
+		double normalization = coefficients[0];
+		double a1 = coefficients[1], a2 = coefficients[2], a3 = coefficients[3];
+		int length = (int)Math.ceil(20*sigma) + 50;
+		float[] matrix = new float[9];
+		double[] causal = new double[length+3];
+		for (int k=0 ; k<3 ; k++){
+			// causal[0], causal[1], causal[2] are the causal outputs w[n-3]-u, w[n-2]-u, w[n-1]-u
+			Arrays.fill(causal, 0.0);
+			causal[2-k] = 1.0;
+			for (int i=3 ; i<length+3 ; i++){
+				causal[i] = a1*causal[i-1] + a2*causal[i-2] + a3*causal[i-3];
+			}
+			double v1 = 0.0, v2 = 0.0, v3 = 0.0;
+			for (int i=length+2 ; i>=3 ; i--){
+				double v0 = normalization*causal[i] + a1*v1 + a2*v2 + a3*v3;
+				if (i < 6){
+					matrix[3*(i-3) + k] = (float)v0;
+				}
+				v3 = v2;
+				v2 = v1;
+				v1 = v0;
+			}
+		}
+		return matrix;
+	}
+
+
+	/**
+	 * @param sigma standard deviation of the Gaussian (in voxels), at least 0.5
+	 * @return The coefficients of the recursive filter followed by its boundary matrix
+	 * @see #m_coefficientsX
+	 */
+	private static float[] getFilterCoefficients(double sigma){
+		float[] coefficients = getRecursiveCoefficients(sigma);
+		float[] filterCoefficients = new float[4 + 9];
+		System.arraycopy(coefficients, 0, filterCoefficients, 0, 4);
+		System.arraycopy(getBoundaryMatrix(coefficients, sigma), 0, filterCoefficients, 4, 9);
+		return filterCoefficients;
+	}
+
+
+	/**
+	 * @param axis A coordinate axis
+	 * @return The coefficients of the recursive filter along the axis, or null
+	 * 		   if the image is blurred by convolution along the axis.
+	 */
+	private float[] getCoefficients(CoordinateAxis axis){
+		switch (axis){
+			case X:
+				return this.m_coefficientsX;
+			case Y:
+				return this.m_coefficientsY;
+			case Z:
+				return this.m_coefficientsZ;
+			default:
+				throw new IllegalArgumentException("Unknown Coordinate Axis");
+		}
+	}
+
+
+	/**
+	 * Applies the causal and anti-causal recursive filters along each line.
+	 * @see wrapScienceJ.wrapImaJ.core.operation.convolve.generic.GaussianBlurSeparableGeneric#filterLines(float[], float[], int, int, wrapScienceJ.wrapImaJ.core.CoordinateAxis)
+	 */
+	@Override
+	protected void filterLines(float[] plane, float[] result, int width, int nLines, CoordinateAxis axis){
+		float[] coefficients = getCoefficients(axis);
+		if (coefficients == null){
+			super.filterLines(plane, result, width, nLines, axis);
+			return;
+		}
+		float normalization = coefficients[0];
+		float a1 = coefficients[1], a2 = coefficients[2], a3 = coefficients[3];
+		for (int line=0 ; line<nLines ; line++){
+			int offset = line*width;
+			// Causal filter, initialized with the steady state for a constant line
+			float w1 = plane[offset], w2 = w1, w3 = w1;
+			for (int x=0 ; x<width ; x++){
+				float w0 = normalization*plane[offset+x] + a1*w1 + a2*w2 + a3*w3;
+				result[offset+x] = w0;
+				w3 = w2;
+				w2 = w1;
+				w1 = w0;
+			}
+			// Anti-causal filter, initialized with the state for the line continued by its last value
+			float edge = plane[offset+width-1];
+			float d1 = result[offset+width-1] - edge;
+			float d2 = (width >= 2 ? result[offset+width-2] : plane[offset]) - edge;
+			float d3 = (width >= 3 ? result[offset+width-3] : plane[offset]) - edge;
+			w1 = edge + coefficients[4]*d1 + coefficients[5]*d2 + coefficients[6]*d3;
+			w2 = edge + coefficients[7]*d1 + coefficients[8]*d2 + coefficients[9]*d3;
+			w3 = edge + coefficients[10]*d1 + coefficients[11]*d2 + coefficients[12]*d3;
+			for (int x=width-1 ; x>=0 ; x--){
+				float w0 = normalization*result[offset+x] + a1*w1 + a2*w2 + a3*w3;
+				result[offset+x] = w0;
+				w3 = w2;
+				w2 = w1;
+				w1 = w0;
+			}
+		}
+	}
+
+
+	/**
+	 * Applies the causal and anti-causal recursive filters across the lines,
+	 * the inner loops running over contiguous values.
+	 * @see wrapScienceJ.wrapImaJ.core.operation.convolve.generic.GaussianBlurSeparableGeneric#filterAcrossLines(float[], float[], int, int, wrapScienceJ.wrapImaJ.core.CoordinateAxis)
+	 */
+	@Override
+	protected void filterAcrossLines(float[] plane, float[] result, int width, int nLines, CoordinateAxis axis){
+		float[] coefficients = getCoefficients(axis);
+		if (coefficients == null){
+			super.filterAcrossLines(plane, result, width, nLines, axis);
+			return;
+		}
+		float normalization = coefficients[0];
+		float a1 = coefficients[1], a2 = coefficients[2], a3 = coefficients[3];
+		// Causal filter: lines before the first line are in the steady state of the first line
+		for (int line=0 ; line<nLines ; line++){
+			int offset = line*width;
+			float[] source1 = line >= 1 ? result : plane;
+			float[] source2 = line >= 2 ? result : plane;
+			float[] source3 = line >= 3 ? result : plane;
+			int offset1 = Math.max(line-1, 0)*width;
+			int offset2 = Math.max(line-2, 0)*width;
+			int offset3 = Math.max(line-3, 0)*width;
+			for (int x=0 ; x<width ; x++){
+				result[offset+x] = normalization*plane[offset+x]
+								   + a1*source1[offset1+x] + a2*source2[offset2+x] + a3*source3[offset3+x];
+			}
+		}
+		// Anti-causal filter: the three lines after the last line are initialized
+		// with the state for the plane continued by its last line
+		float[] boundaryLines = ImageBufferPool.acquireFloats(3*width);
+		int edgeOffset = (nLines-1)*width;
+		int offsetD2 = Math.max(nLines-2, 0)*width;
+		int offsetD3 = Math.max(nLines-3, 0)*width;
+		for (int x=0 ; x<width ; x++){
+			float edge = plane[edgeOffset+x];
+			float d1 = result[edgeOffset+x] - edge;
+			float d2 = (nLines >= 2 ? result[offsetD2+x] : plane[x]) - edge;
+			float d3 = (nLines >= 3 ? result[offsetD3+x] : plane[x]) - edge;
+			for (int j=0 ; j<3 ; j++){
+				boundaryLines[j*width+x] = edge + coefficients[4+3*j]*d1 + coefficients[5+3*j]*d2
+										   + coefficients[6+3*j]*d3;
+			}
+		}
+		for (int line=nLines-1 ; line>=0 ; line--){
+			int offset = line*width;
+			float[] source1 = line+1 < nLines ? result : boundaryLines;
+			float[] source2 = line+2 < nLines ? result : boundaryLines;
+			float[] source3 = line+3 < nLines ? result : boundaryLines;
+			int offset1 = line+1 < nLines ? (line+1)*width : (line+1-nLines)*width;
+			int offset2 = line+2 < nLines ? (line+2)*width : (line+2-nLines)*width;
+			int offset3 = line+3 < nLines ? (line+3)*width : (line+3-nLines)*width;
+			for (int x=0 ; x<width ; x++){
+				result[offset+x] = normalization*result[offset+x]
+								   + a1*source1[offset1+x] + a2*source2[offset2+x] + a3*source3[offset3+x];
+			}
+		}
+		ImageBufferPool.release(boundaryLines);
+	}
+
+}
@@ -0,0 +1,427 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File:  GaussianBlurSeparableGeneric.java                                 * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+package wrapScienceJ.wrapImaJ.core.operation.convolve.generic;
+
+import wrapScienceJ.config.GlobalOptions;
+import wrapScienceJ.utils.SliceScheduler;
+import wrapScienceJ.utils.SliceScheduler.SliceTask;
+import wrapScienceJ.wrapImaJ.core.CoordinateAxis;
+import wrapScienceJ.wrapImaJ.core.ImageBufferPool;
+import wrapScienceJ.wrapImaJ.core.ImageCore;
+import wrapScienceJ.wrapImaJ.core.SliceBuffer;
+import wrapScienceJ.wrapImaJ.core.VoxelDouble;
+import wrapScienceJ.wrapImaJ.core.VoxelInt;
+import wrapScienceJ.wrapImaJ.core.operation.generic.ImageSignPolicyEmbedGeneric;
+
+
+/**
+ * Gaussian Blur by separable convolution, implemented independently of any wrapped library.
+ *
+ * The Gaussian kernel is applied successively along the X, Y and Z axis, directly
+ * on the slice buffers of the input image, using float line buffers.
+ * Like ImageJ's Gaussian blur, the kernel is truncated where its values fall below
+ * a given relative accuracy (depending on the bit depth) and the voxels outside the
+ * image are assumed to have the value of the nearest voxel on the image's border.
+ *
+ * The passes are processed in parallel (over slices for X and Y, over rows for Z),
+ * with the temporary buffers of a task acquired from the {@link ImageBufferPool} once for all
+ * the lines it processes, and the filtered lines written directly into the result planes.
+ * Subclasses may replace the one dimensional filters, e.g. by recursive filters,
+ * through {@link #initFilters(ImageCore)}, {@link #filterLines(float[], float[], int, int, CoordinateAxis)}
+ * and {@link #filterAcrossLines(float[], float[], int, int, CoordinateAxis)}.
+ *
+ * @see wrapScienceJ.wrapImaJ.core.operation.convolve.generic.GaussianBlurGeneric
+ * @see wrapScienceJ.wrapImaJ.core.operation.convolve.generic.BlurFactoryGeneric
+ */
+public class GaussianBlurSeparableGeneric extends GaussianBlurGeneric {
+
+	/**
+	 * Half kernel along the X axis (null if the image is not blurred along X)
+	 */
+	private float[] m_kernelX;
+
+	/**
+	 * Half kernel along the Y axis (null if the image is not blurred along Y)
+	 */
+	private float[] m_kernelY;
+
+	/**
+	 * Half kernel along the Z axis (null if the image is not blurred along Z)
+	 */
+	private float[] m_kernelZ;
+
+	/**
+	 * Applies a Gaussian Blur on the image, with a given standard deviation in
+	 * each coordinate.
+	 *
+	 * @param inImageSignPolicyEmbed An original image on which to apply the mask.
+	 * @param outImageSignPolicyEmbed An original image on which to apply the mask.
+	 * 				The image must allow values to be added AND subtracted without overflow.
+	 * 				Use {@link ImageSignPolicyEmbedGeneric#getImageEmbedding(boolean, int)} if necessary.
+	 * @param sigmaX standard deviation of the Gaussian on the x coordinate
+	 * @param sigmaY standard deviation of the Gaussian on the y coordinate
+	 * @param sigmaZ standard deviation of the Gaussian on the z coordinate
+	 * @param shiftOuputMargin Margins that were added through enlargement of input buffer.
+	 */
+	public GaussianBlurSeparableGeneric(ImageSignPolicyEmbedGeneric inImageSignPolicyEmbed,
+										ImageSignPolicyEmbedGeneric outImageSignPolicyEmbed,
+										double sigmaX, double sigmaY, double sigmaZ,
+										VoxelInt shiftOuputMargin){
+		super(inImageSignPolicyEmbed, outImageSignPolicyEmbed, sigmaX, sigmaY, sigmaZ, shiftOuputMargin);
+	}
+
+
+	/**
+	 * Applies a Gaussian Blur on the image, with a given standard deviation in
+	 * each coordinate.
+	 * This method does the same as
+	 * {@link #GaussianBlurSeparableGeneric(ImageSignPolicyEmbedGeneric, ImageSignPolicyEmbedGeneric, double, double, double, VoxelInt)}
+	 * except that the standard deviations are given in (approximately) multiples of the calibration
+	 * data (Voxels edges lengths in a given length unit) instead of number of voxels.
+	 *
+	 * @param inImageSignPolicyEmbed An original image on which to apply the mask.
+	 * @param outImageSignPolicyEmbed An original image on which to apply the mask.
+	 * 				The image must allow values to be added AND subtracted without overflow.
+	 * 				Use {@link ImageSignPolicyEmbedGeneric#getImageEmbedding(boolean, int)} if necessary.
+	 * @param realSigmaX standard deviation of the Gaussian on the x coordinate
+	 * @param realSigmaY standard deviation of the Gaussian on the y coordinate
+	 * @param realSigmaZ standard deviation of the Gaussian on the z coordinate
+	 * @param voxelEdgesLength The voxel's scale (edges' length) used as a factor to estimate
+	 * 						   actual skipping steps in each direction.
+	 * @param shiftOuputMargin Margins that were added through enlargement of input buffer.
+	 */
+	public GaussianBlurSeparableGeneric(ImageSignPolicyEmbedGeneric inImageSignPolicyEmbed,
+										ImageSignPolicyEmbedGeneric outImageSignPolicyEmbed,
+										double realSigmaX, double realSigmaY, double realSigmaZ,
+										VoxelDouble voxelEdgesLength,
+										VoxelInt shiftOuputMargin){
+		super(inImageSignPolicyEmbed, outImageSignPolicyEmbed,
+			  realSigmaX, realSigmaY, realSigmaZ, voxelEdgesLength, shiftOuputMargin);
+	}
+
+
+	/**
+	 * Computes the coefficients of a normalized one dimensional Gaussian kernel, as ImageJ does.
+	 * Since the kernel is symmetric, only the coefficients for the distances
+	 * 0, 1, ..., radius are returned, the radius being the distance at which the
+	 * relative value of the Gaussian falls below the accuracy. As in ImageJ, the tail of
+	 * the kernel is replaced by a parabola, so that the kernel smoothly reaches zero.
+	 * @param sigma standard deviation of the Gaussian (in voxels)
+	 * @param accuracy Relative value of the Gaussian below which the kernel is truncated
+	 * @return The half kernel, the sum of which (counting twice all the coefficients
+	 * 		   except the first one) is 1.
+	 */
+	public static float[] getHalfKernel(double sigma, double accuracy){
+		int length = (int)Math.ceil(sigma*Math.sqrt(-2*Math.log(accuracy))) + 1;
+		float[] kernel = new float[length];
+		for (int i=0 ; i<length ; i++){
+			kernel[i] = (float)Math.exp(-0.5*i*i/(sigma*sigma));
+		}
+		if (length > 3){
+			// Edge correction: the tail follows the parabola of the steepest square root slope
+			double sqrtSlope = Double.MAX_VALUE;
+			int r = length;
+			while (r > length/2){
+				r--;
+				double slope = Math.sqrt(kernel[r])/(length-r);
+				if (slope < sqrtSlope){
+					sqrtSlope = slope;
+				}else{
+					break;
+				}
+			}
+			for (int i=r+2 ; i<length ; i++){
+				kernel[i] = (float)((length-i)*(length-i)*sqrtSlope*sqrtSlope);
+			}
+		}
+		double sum = kernel[0];
+		for (int i=1 ; i<length ; i++){
+			sum += 2*kernel[i];
+		}
+		for (int i=0 ; i<length ; i++){
+			kernel[i] = (float)(kernel[i]/sum);
+		}
+		return kernel;
+	}
+
+
+	/**
+	 * @param image The image to blur
+	 * @return The relative accuracy of the kernel, as chosen by ImageJ for the image's bit depth.
+	 */
+	protected static double getAccuracy(ImageCore image){
+		return (image.getBitDepth() == 8) ? 0.002 : 0.0002;
+	}
+
+
+	/**
+	 * Rounds a blurred value and clamps it to the gray levels range.
+	 * @param value the value to convert
+	 * @param whiteValue maximal gray level of the image
+	 * @return the gray level closest to value.
+	 */
+	private static int toGrayLevel(float value, int whiteValue){
+		int grayLevel = (int)(value + 0.5f);
+		if (grayLevel < 0){
+			return 0;
+		}
+		return grayLevel > whiteValue ? whiteValue : grayLevel;
+	}
+
+
+	/**
+	 * Convolves a line of values, padded on both sides by the values on the
+	 * line's ends, with a symmetric kernel.
+	 * @param paddedLine the values of the line, with kernel.length-1 values before and after.
+	 * @param length Number of values in the line (without padding)
+	 * @param kernel The half kernel
+	 * @param result The array where to store the length convolved values.
+	 * @param resultOffset The index in result of the first convolved value
+	 */
+	private static void convolvePaddedLine(float[] paddedLine, int length, float[] kernel,
+										   float[] result, int resultOffset){
+		int radius = kernel.length-1;
+		for (int i=0 ; i<length ; i++){
+			int center = i + radius;
+			float sum = kernel[0]*paddedLine[center];
+			for (int j=1 ; j<=radius ; j++){
+				sum += kernel[j]*(paddedLine[center-j] + paddedLine[center+j]);
+			}
+			result[resultOffset+i] = sum;
+		}
+	}
+
+
+	/**
+	 * Convolves one line of a plane with a symmetric kernel along the direction
+	 * orthogonal to the lines, the lines out of the plane being replaced by the
+	 * nearest line of the plane.
+	 * The inner loop runs over contiguous values, which is cache friendly.
+	 * @param plane The values of the plane, line after line.
+	 * @param width Number of values in each line
+	 * @param nLines Number of lines in the plane
+	 * @param line Index of the line to compute
+	 * @param kernel The half kernel
+	 * @param result The array where to store the convolved plane (the line is stored
+	 * 				 at the same offset as in the plane).
+	 */
+	private static void convolvePlaneLine(float[] plane, int width, int nLines, int line,
+										  float[] kernel, float[] result){
+		int offset = line*width;
+		for (int x=0 ; x<width ; x++){
+			result[offset+x] = kernel[0]*plane[offset+x];
+		}
+		for (int j=1 ; j<kernel.length ; j++){
+			int before = Math.max(line-j, 0)*width;
+			int after = Math.min(line+j, nLines-1)*width;
+			float k = kernel[j];
+			for (int x=0 ; x<width ; x++){
+				result[offset+x] += k*(plane[before+x] + plane[after+x]);
+			}
+		}
+	}
+
+
+	/**
+	 * Computes the filters along each axis, before blurring an image.
+	 * The default implementation computes the convolution kernels.
+	 * @param image The image to blur
+	 */
+	protected void initFilters(ImageCore image){
+		double accuracy = getAccuracy(image);
+		this.m_kernelX = this.m_sigmaX > 0.0 ? getHalfKernel(this.m_sigmaX, accuracy) : null;
+		this.m_kernelY = this.m_sigmaY > 0.0 ? getHalfKernel(this.m_sigmaY, accuracy) : null;
+		this.m_kernelZ = this.m_sigmaZ > 0.0 ? getHalfKernel(this.m_sigmaZ, accuracy) : null;
+	}
+
+
+	/**
+	 * @param axis A coordinate axis
+	 * @return The standard deviation of the Gaussian along the axis (zero for no blur along the axis)
+	 */
+	protected double getSigma(CoordinateAxis axis){
+		switch (axis){
+			case X:
+				return this.m_sigmaX;
+			case Y:
+				return this.m_sigmaY;
+			case Z:
+				return this.m_sigmaZ;
+			default:
+				throw new IllegalArgumentException("Unknown Coordinate Axis");
+		}
+	}
+
+
+	/**
+	 * @param axis A coordinate axis
+	 * @return The half kernel along the axis, or null if the image is not blurred along the axis.
+	 */
+	protected float[] getKernel(CoordinateAxis axis){
+		switch (axis){
+			case X:
+				return this.m_kernelX;
+			case Y:
+				return this.m_kernelY;
+			case Z:
+				return this.m_kernelZ;
+			default:
+				throw new IllegalArgumentException("Unknown Coordinate Axis");
+		}
+	}
+
+
+	/**
+	 * Filters each line of a plane along the line (which is the X direction of the image).
+	 * @param plane The values of the plane, line after line.
+	 * @param result The array where to store the filtered plane.
+	 * @param width Number of values in each line
+	 * @param nLines Number of lines in the plane
+	 * @param axis The axis of the image along which the lines lie
+	 */
+	protected void filterLines(float[] plane, float[] result, int width, int nLines, CoordinateAxis axis){
+		float[] kernel = getKernel(axis);
+		int radius = kernel.length-1;
+		float[] paddedLine = ImageBufferPool.acquireFloats(width + 2*radius);
+		for (int line=0 ; line<nLines ; line++){
+			System.arraycopy(plane, line*width, paddedLine, radius, width);
+			for (int i=0 ; i<radius ; i++){
+				paddedLine[i] = paddedLine[radius];
+				paddedLine[radius+width+i] = paddedLine[radius+width-1];
+			}
+			convolvePaddedLine(paddedLine, width, kernel, result, line*width);
+		}
+		ImageBufferPool.release(paddedLine);
+	}
+
+
+	/**
+	 * Filters a plane across its lines, i.e. along the direction orthogonal to the lines
+	 * (which is the Y or Z direction of the image).
+	 * @param plane The values of the plane, line after line.
+	 * @param result The array where to store the filtered plane.
+	 * @param width Number of values in each line
+	 * @param nLines Number of lines in the plane
+	 * @param axis The axis of the image across which the lines are filtered
+	 */
+	protected void filterAcrossLines(float[] plane, float[] result, int width, int nLines, CoordinateAxis axis){
+		float[] kernel = getKernel(axis);
+		for (int line=0 ; line<nLines ; line++){
+			convolvePlaneLine(plane, width, nLines, line, kernel, result);
+		}
+	}
+
+
+	/**
+	 * Blurs each slice in the X and Y directions. The result of the X pass is kept
+	 * in a float plane, so that the gray levels are rounded only once per slice.
+	 * @param slices The slices of the image to blur in place
+	 * @param whiteValue maximal gray level of the image
+	 */
+	private void blurXY(final SliceBuffer[] slices, final int whiteValue){
+		SliceScheduler.forEachSlice(slices.length, new SliceTask() {
+			@Override
+			public void processSlice(int z) {
+				SliceBuffer slice = slices[z];
+				int width = slice.getWidth();
+				int height = slice.getHeight();
+				float[] plane = ImageBufferPool.acquireFloats(slice.getSize());
+				float[] result = ImageBufferPool.acquireFloats(slice.getSize());
+				// The buffers are swapped between the passes: keep the references to release them
+				float[] planeBuffer = plane;
+				float[] resultBuffer = result;
+				for (int i=0 ; i<plane.length ; i++){
+					plane[i] = slice.get(i);
+				}
+				if (getSigma(CoordinateAxis.X) > 0.0){
+					filterLines(plane, result, width, height, CoordinateAxis.X);
+					float[] swap = plane;
+					plane = result;
+					result = swap;
+				}
+				if (getSigma(CoordinateAxis.Y) > 0.0){
+					filterAcrossLines(plane, result, width, height, CoordinateAxis.Y);
+					plane = result;
+				}
+				for (int y=0 ; y<height ; y++){
+					int offset = slice.getIndex(0, y);
+					for (int x=0 ; x<width ; x++){
+						slice.set(offset+x, toGrayLevel(plane[y*width+x], whiteValue));
+					}
+				}
+				ImageBufferPool.release(planeBuffer);
+				ImageBufferPool.release(resultBuffer);
+			}
+		});
+	}
+
+
+	/**
+	 * Blurs the image along the Z direction. The (x, z) planes are processed in parallel,
+	 * by blocks of consecutive rows so that the temporary planes are acquired once per block.
+	 * @param slices The slices of the image to blur in place
+	 * @param whiteValue maximal gray level of the image
+	 */
+	private void blurZ(final SliceBuffer[] slices, final int whiteValue){
+		final int depth = slices.length;
+		final int width = slices[0].getWidth();
+		final int height = slices[0].getHeight();
+		final int nBlocks = Math.min(height, 4*GlobalOptions.getParallelism());
+		SliceScheduler.forEachSlice(nBlocks, new SliceTask() {
+			@Override
+			public void processSlice(int block) {
+				float[] plane = ImageBufferPool.acquireFloats(depth*width);
+				float[] result = ImageBufferPool.acquireFloats(depth*width);
+				for (int y=block*height/nBlocks ; y<(block+1)*height/nBlocks ; y++){
+					for (int z=0 ; z<depth ; z++){
+						int offset = slices[z].getIndex(0, y);
+						for (int x=0 ; x<width ; x++){
+							plane[z*width+x] = slices[z].get(offset+x);
+						}
+					}
+					filterAcrossLines(plane, result, width, depth, CoordinateAxis.Z);
+					for (int z=0 ; z<depth ; z++){
+						int offset = slices[z].getIndex(0, y);
+						for (int x=0 ; x<width ; x++){
+							slices[z].set(offset+x, toGrayLevel(result[z*width+x], whiteValue));
+						}
+					}
+				}
+				ImageBufferPool.release(plane);
+				ImageBufferPool.release(result);
+			}
+		});
+	}
+
+
+	/**
+	 * Blurs the input image in place and then copies the result into the output image.
+	 * @see wrapScienceJ.wrapImaJ.core.operation.convolve.generic.ConvolutionBaseGeneric#applyMask()
+	 */
+	@Override
+	public ConvolutionBaseGeneric applyMask(){
+
+		ImageCore image = getInputImageRaw();
+		SliceBuffer[] slices = SliceBuffer.getSliceBuffers(image);
+		int whiteValue = image.getWhiteValue();
+
+		initFilters(image);
+		if (getSigma(CoordinateAxis.X) > 0.0 || getSigma(CoordinateAxis.Y) > 0.0){
+			blurXY(slices, whiteValue);
+		}
+		if (getSigma(CoordinateAxis.Z) > 0.0 && slices.length > 1){
+			blurZ(slices, whiteValue);
+		}
+
+		getOutImageSignPolicyEmbed().copyFrom(getInImageSignPolicyEmbed(), this.m_shiftOuputMargin, true);
+
+		return getIdentityMask();
+	}
+
+}
@@ -0,0 +1,275 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File:  ImageContrastGeneric.java                                         * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+package wrapScienceJ.wrapImaJ.core.operation.generic;
+
+import wrapScienceJ.utils.SliceScheduler;
+import wrapScienceJ.utils.SliceScheduler.SliceTask;
+import wrapScienceJ.wrapImaJ.core.ImageCore;
+import wrapScienceJ.wrapImaJ.core.SliceBuffer;
+import wrapScienceJ.wrapImaJ.core.histogram.HistogramBuilder;
+import wrapScienceJ.wrapImaJ.core.operation.ImageContrast;
+import wrapScienceJ.wrapImaJ.wrappers.imagej.core.operation.ImageContrastIJ;
+
+/**
+ * Contrast adjustments of any image, with the same conventions as {@link ImageContrastIJ}.
+ * The gray levels are read and written through the slice buffers of the image, the
+ * slices being processed in parallel, so that images which are not held in memory
+ * (e.g. mapped images) are processed slice by slice.
+ *
+ * The display range is held by this instance. As for ImageJ images, it is reset to the
+ * whole range of gray levels after each adjustment, whose result is written in the image.
+ *
+ * @author Rémy Malgouyres
+ */
+public class ImageContrastGeneric implements ImageContrast {
+
+	/**
+	 * Underlying image on which operations are performed
+	 */
+	protected ImageCore m_image;
+
+	/** Minimum of the display range */
+	protected double m_displayMin;
+
+	/** Maximum of the display range */
+	protected double m_displayMax;
+
+	/**
+	 * @param image The image to process
+	 */
+	public ImageContrastGeneric(ImageCore image){
+		this.m_image = image;
+		this.m_displayMin = 0;
+		this.m_displayMax = HistogramBuilder.getNumberOfGrayLevels(image.getBitDepth())-1;
+	}
+
+
+	/**
+	 * The contrast and brightness changes are composed, so that the gray levels are
+	 * modified in a single pass.
+	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageContrast#adjustContrastBrightness(double, double)
+	 */
+	@Override
+	public ImageCore adjustContrastBrightness(double contrastFactor, double brightnessFactor) {
+		adjustContrast(contrastFactor);
+		adjustBrightness(brightnessFactor);
+		updateDataColorRange();
+		return this.m_image;
+	}
+
+
+	/**
+	 * Adjusts the contrast, and consequently the display range of an image.
+	 * The narrower the display range, the higher the contrast.
+	 *
+	 * @param contrastFactor ranges between 0.0 and 1.0, Increases or decreases image contrast by varying the width of the display range.
+	 */
+	protected void adjustContrast(double contrastFactor) {
+		// Clamp the contrast :
+		double contrast = contrastFactor < 0.0d ? 0.0d :
+			(contrastFactor > 1.0d ? 1.0d : contrastFactor);
+
+		double slope;
+		double center = (this.m_displayMin + this.m_displayMax)/ 2.0;
+		double range = this.m_displayMax - this.m_displayMin;
+		double mid = 0.5;
+		if (contrast <= mid) {
+			slope = contrast / mid; // between 0 and 1
+		} else {
+			slope = mid / (1.0 - contrast); // greater than 1
+		}
+		// test just in case the floating points get wrong sign
+		if (slope > 0.0) {
+			this.m_displayMin = center - (0.5 * range) / slope;
+			this.m_displayMax = center + (0.5 * range) / slope;
+		}
+	}
+
+
+	/**
+	 * Adjusts the brightness, and consequently the display range of an image.
+	 * @param brightnessFactor  ranges between 0.0 and 1.0, Increases or decreases image brightness by moving the display range
+	 */
+	protected void adjustBrightness(double brightnessFactor) {
+		//Clamp the brightness :
+		double brightness = brightnessFactor < 0.0d ? 0.0d :
+			(brightnessFactor > 1.0d ? 1.0d : brightnessFactor);
+
+		double center = this.m_displayMin + (this.m_displayMax - this.m_displayMin) * (1.0 - brightness);
+		double width = this.m_displayMax - this.m_displayMin;
+		this.m_displayMin = center - width / 2.0;
+		this.m_displayMax = center + width / 2.0;
+	}
+
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageContrast#adjustValuesRange(double, double)
+	 */
+	@Override
+	public ImageCore adjustValuesRange(double min, double max) {
+		int maxValue = this.m_image.getWhiteValue();
+		this.m_displayMin = min*maxValue;
+		this.m_displayMax = max*maxValue;
+		updateDataColorRange();
+		return this.m_image;
+	}
+
+
+	/**
+	 * The minimum is read from the full resolution histogram, computed by reading all the slices.
+	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageContrast#getMinValue()
+	 */
+	@Override
+	public int getMinValue(){
+		return getMinValue(HistogramBuilder.buildHistogram(this.m_image));
+	}
+
+
+	/**
+	 * The maximum is read from the full resolution histogram, computed by reading all the slices.
+	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageContrast#getMaxValue()
+	 */
+	@Override
+	public int getMaxValue(){
+		return getMaxValue(HistogramBuilder.buildHistogram(this.m_image));
+	}
+
+
+	/**
+	 * @param histogram A full resolution histogram
+	 * @return The smallest gray level with a non zero count (0 for an empty histogram)
+	 */
+	static int getMinValue(long[] histogram){
+		int minRange = 0;
+		while (minRange < histogram.length-1 && histogram[minRange] == 0){
+			minRange++;
+		}
+		return minRange;
+	}
+
+
+	/**
+	 * @param histogram A full resolution histogram
+	 * @return The largest gray level with a non zero count (0 for an empty histogram)
+	 */
+	static int getMaxValue(long[] histogram){
+		int maxRange = histogram.length-1;
+		while (maxRange > 0 && histogram[maxRange] == 0){
+			maxRange--;
+		}
+		return maxRange;
+	}
+
+
+	/**
+	 * The image is read once to find both the minimum and maximum gray levels.
+	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageContrast#maximizeValuesRange()
+	 */
+	@Override
+	public ImageCore maximizeValuesRange(){
+		long[] histogram = HistogramBuilder.buildHistogram(this.m_image);
+		this.m_displayMin = getMinValue(histogram);
+		this.m_displayMax = getMaxValue(histogram);
+		updateDataColorRange();
+		return this.m_image;
+	}
+
+
+	/**
+	 * Maps linearly the display range to the whole range of gray levels in the image data,
+	 * and resets the display range to the whole range of gray levels.
+	 * @return The image underlying this instance
+	 */
+	protected ImageCore updateDataColorRange(){
+		int tableSize = HistogramBuilder.getNumberOfGrayLevels(this.m_image.getBitDepth());
+		applyLookupTable(ImageContrastIJ.getDisplayRangeTable(tableSize, (int)this.m_displayMin,
+															  (int)this.m_displayMax));
+		this.m_displayMin = 0;
+		this.m_displayMax = tableSize-1;
+		return this.m_image;
+	}
+
+
+	/**
+	 * Replaces each gray level g of the image by table[g], the slices being processed in parallel.
+	 * @param table The lookup table, with one value per gray level (256 or 65536 values).
+	 */
+	protected void applyLookupTable(final int[] table){
+		final SliceBuffer[] slices = SliceBuffer.getSliceBuffers(this.m_image);
+		SliceScheduler.forEachSlice(slices.length, new SliceTask() {
+			@Override
+			public void processSlice(int z) {
+				SliceBuffer slice = slices[z];
+				for (int i=0 ; i<slice.getSize() ; i++){
+					slice.set(i, table[slice.get(i)]);
+				}
+			}
+		});
+	}
+
+
+	/**
+	 * The lookup table is computed from the histogram with 256 bins, so the gray levels of
+	 * a GRAY16 image are equalized by groups of 256 consecutive gray levels, and the
+	 * equalized values are scaled to the whole GRAY16 range.
+	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageContrast#equalize(double, double, double)
+	 */
+	@Override
+	public ImageCore equalize(double powExponent, double powValue, double saturationReduction) {
+		long[] histogram = HistogramBuilder.buildHistogram(this.m_image, 256);
+		int[] equalizedHistogram = ImageContrastIJ.equalizeHistogram(histogram, powExponent, powValue,
+																	 saturationReduction);
+		if (this.m_image.getBitDepth() == 16){
+			int[] table = new int[65536];
+			for (int g=0 ; g<table.length ; g++){
+				table[g] = 257*equalizedHistogram[g/256];
+			}
+			applyLookupTable(table);
+		}else{
+			applyLookupTable(equalizedHistogram);
+		}
+		return this.m_image;
+	}
+
+
+	/**
+	 * The saturated voxels are split evenly between the darkest and the brightest voxels.
+	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageContrast#stretchHistogram(double)
+	 */
+	@Override
+	public ImageCore stretchHistogram(double saturatedProportion) {
+		double proportion = saturatedProportion < 0.0d ? 0.0d :
+			(saturatedProportion > 1.0d ? 1.0d : saturatedProportion);
+		long[] histogram = HistogramBuilder.buildHistogram(this.m_image);
+		long nVoxels = 0;
+		for (long count : histogram){
+			nVoxels += count;
+		}
+		long saturatedVoxels = (long)(0.5*proportion*nVoxels);
+
+		int minRange = 0;
+		long count = histogram[0];
+		while (minRange < histogram.length-1 && count <= saturatedVoxels){
+			minRange++;
+			count += histogram[minRange];
+		}
+		int maxRange = histogram.length-1;
+		count = histogram[maxRange];
+		while (maxRange > minRange && count <= saturatedVoxels){
+			maxRange--;
+			count += histogram[maxRange];
+		}
+		this.m_displayMin = minRange;
+		this.m_displayMax = maxRange;
+		updateDataColorRange();
+
+		return this.m_image;
+	}
+
+} // End of class
@@ -0,0 +1,345 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File:  ImageConvertGeneric.java                                          * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+package wrapScienceJ.wrapImaJ.core.operation.generic;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferUShort;
+
+import wrapScienceJ.utils.SliceScheduler;
+import wrapScienceJ.utils.SliceScheduler.SliceTask;
+import wrapScienceJ.wrapImaJ.core.CoordinateAxis;
+import wrapScienceJ.wrapImaJ.core.ImageCore;
+import wrapScienceJ.wrapImaJ.core.SliceBuffer;
+import wrapScienceJ.wrapImaJ.core.histogram.HistogramBuilder;
+import wrapScienceJ.wrapImaJ.core.operation.ImageConvert;
+import wrapScienceJ.wrapImaJ.wrappers.imagej.core.operation.ImageConvertIJ;
+
+/**
+ * Format conversions of any image, through the slice buffers of the image,
+ * with the same conventions as {@link ImageConvertIJ}.
+ *
+ * The image underlying this instance need not be able to change its size or its format
+ * (e.g. mapped images, whose domain and format are fixed by the file). The methods which
+ * add slices or convert the format thus return a new image, built with the prefered factory
+ * of the image, and the returned image must be used for the cascade.
+ * The slices are copied, instead of being referenced, when the image is not backed by arrays.
+ *
+ * @author Rémy Malgouyres
+ */
+public class ImageConvertGeneric implements ImageConvert {
+
+	/**
+	 * Underlying image on which operations are performed
+	 */
+	protected ImageCore m_image;
+
+	/**
+	 * @param image The image to process
+	 */
+	public ImageConvertGeneric(ImageCore image){
+		this.m_image = image;
+	}
+
+
+	/**
+	 * The slice is merged with the image by its domain operations, which may return a new image.
+	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageConvert#addSliceFromArray(short[], int)
+	 */
+	@Override
+	public ImageCore addSliceFromArray(short[] shortArray, int bitDepth) {
+		if (bitDepth != this.m_image.getBitDepth()){
+			throw new IllegalArgumentException("Adding a slice requires an image with the same bitdepth.");
+		}
+		ImageCore slice = ImageConvertIJ.createFromRegularArray(new short[][]{shortArray},
+																this.m_image.getWidth(), bitDepth);
+		return this.m_image.getImageDomainOperation().mergeSlices(slice);
+	}
+
+
+	/**
+	 * The slice is merged with the image by its domain operations, which may return a new image.
+	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageConvert#addSliceFromArray(byte[], int)
+	 */
+	@Override
+	public ImageCore addSliceFromArray(byte[] byteArray, int bitDepth) {
+		if (bitDepth != this.m_image.getBitDepth()){
+			throw new IllegalArgumentException("Adding a slice requires an image with the same bitdepth.");
+		}
+		ImageCore slice = ImageConvertIJ.createFromRegularArray(new byte[][]{byteArray},
+																this.m_image.getWidth(), bitDepth);
+		return this.m_image.getImageDomainOperation().mergeSlices(slice);
+	}
+
+
+	/**
+	 * The slice is merged with the image by its domain operations, which may return a new image.
+	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageConvert#addSLiceFromAwtImage(java.awt.image.BufferedImage)
+	 */
+	@Override
+	public ImageCore addSLiceFromAwtImage(BufferedImage bufferedImage) {
+		checkAwtImage(bufferedImage);
+		ImageCore slice = ImageConvertIJ.createFromAwtImages(new BufferedImage[]{bufferedImage});
+		return this.m_image.getImageDomainOperation().mergeSlices(slice);
+	}
+
+
+	/**
+	 * @param bufferedImage An AWT image
+	 * @throws IllegalArgumentException if the type or size of the AWT image
+	 * 		   do not agree with the bit depth or size of the slices of the image.
+	 */
+	private void checkAwtImage(BufferedImage bufferedImage) throws IllegalArgumentException {
+		if ((this.m_image.getBitDepth() == 8 && bufferedImage.getType() != BufferedImage.TYPE_BYTE_GRAY) ||
+			(this.m_image.getBitDepth() == 16 && bufferedImage.getType() != BufferedImage.TYPE_USHORT_GRAY) ||
+			bufferedImage.getWidth() != this.m_image.getWidth() ||
+			bufferedImage.getHeight() != this.m_image.getHeight()){
+
+			throw new IllegalArgumentException("Wrong type or size of AWT image.");
+		}
+	}
+
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageConvert#initializeFromAwtImages(java.awt.image.BufferedImage[])
+	 */
+	@Override
+	public ImageCore initializeFromAwtImages(BufferedImage[] bufferedImages) {
+		if (bufferedImages.length != this.m_image.getDepth()){
+			throw new IllegalArgumentException("The number of AWT images must be the depth of the image.");
+		}
+		for (int z=0 ; z<bufferedImages.length ; z++){
+			setSliceFromAwtImage(bufferedImages[z], z);
+		}
+		return this.m_image;
+	}
+
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageConvert#setSliceFromAwtImage(java.awt.image.BufferedImage, int)
+	 */
+	@Override
+	public ImageCore setSliceFromAwtImage(BufferedImage bufferedImage, int zCoord) {
+		checkAwtImage(bufferedImage);
+		Object pixels;
+		if (this.m_image.getBitDepth() == 16){
+			pixels = ((DataBufferUShort) bufferedImage.getRaster().getDataBuffer()).getData();
+		}else{
+			pixels = ((DataBufferByte) bufferedImage.getRaster().getDataBuffer()).getData();
+		}
+		SliceBuffer source = new SliceBuffer(pixels, this.m_image.getWidth(), this.m_image.getHeight());
+		source.copyTo(0, this.m_image.getSliceBuffer(zCoord), 0, source.getSize());
+		return this.m_image;
+	}
+
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageConvert#projectionTomography(wrapScienceJ.wrapImaJ.core.CoordinateAxis, boolean)
+	 */
+	@Override
+	public BufferedImage projectionTomography(CoordinateAxis axis, boolean maximizeContrast) {
+		return this.m_image.getImageDomainProjection()
+						   .projectionTomography(axis, maximizeContrast)
+						   .getImageConvert()
+						   .getSliceAsAwtImage(0);
+	}
+
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageConvert#projectionVolumeRendering(wrapScienceJ.wrapImaJ.core.CoordinateAxis, boolean)
+	 */
+	@Override
+	public BufferedImage projectionVolumeRendering(CoordinateAxis axis, boolean maximizeContrast) {
+		return this.m_image.getImageDomainProjection()
+						   .projectionVolumeRendering(axis, maximizeContrast)
+						   .getImageConvert()
+						   .getSliceAsAwtImage(0);
+	}
+
+
+	/**
+	 * The slice is extracted into an image in memory, which is converted.
+	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageConvert#getSliceAsAwtImage(int)
+	 */
+	@Override
+	public BufferedImage getSliceAsAwtImage(int zCoord) {
+		return this.m_image.getImageDomainOperation()
+						   .extractSlice(zCoord)
+						   .getImageConvert()
+						   .getSliceAsAwtImage(0);
+	}
+
+
+	/**
+	 * If the slice is not backed by an array (e.g. mapped images), the gray levels
+	 * are copied, and modifying the returned array does not modify the image.
+	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageConvert#getSliceAsRawArray(int)
+	 */
+	@Override
+	public Object getSliceAsRawArray(int zCoord) {
+		SliceBuffer slice = this.m_image.getSliceBuffer(zCoord);
+		if (this.m_image.getBitDepth() == 16){
+			short[] shorts = slice.getShorts();
+			return shorts != null ? shorts : slice.getShortsOrCopy();
+		}
+		byte[] bytes = slice.getBytes();
+		return bytes != null ? bytes : slice.getBytesOrCopy();
+	}
+
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageConvert#getRegularShortArray()
+	 */
+	@Override
+	public short[][] getRegularShortArray() {
+		short[][] shortArray = new short[this.m_image.getDepth()][];
+		for (int z=0 ; z<this.m_image.getDepth() ; z++){
+			Object pixels = getSliceAsRawArray(z);
+			if (pixels instanceof short[]){
+				shortArray[z] = (short[])pixels;
+			}else{
+				byte[] bytes = (byte[])pixels;
+				shortArray[z] = new short[bytes.length];
+				for (int i=0 ; i<bytes.length ; i++){
+					shortArray[z][i] = (short)(bytes[i] & 0xff);
+				}
+			}
+		}
+		return shortArray;
+	}
+
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageConvert#getRegularByteArray()
+	 */
+	@Override
+	public byte[][] getRegularByteArray() {
+		byte[][] byteArray = new byte[this.m_image.getDepth()][];
+		for (int z=0 ; z<this.m_image.getDepth() ; z++){
+			Object pixels = getSliceAsRawArray(z);
+			if (pixels instanceof byte[]){
+				byteArray[z] = (byte[])pixels;
+			}else{
+				short[] shorts = (short[])pixels;
+				byteArray[z] = new byte[shorts.length];
+				for (int i=0 ; i<shorts.length ; i++){
+					byteArray[z][i] = (byte)(shorts[i] & 0xffff);
+				}
+			}
+		}
+		return byteArray;
+	}
+
+
+	/**
+	 * The image is returned if it is already GRAY8. Otherwise, the converted
+	 * copy is returned (see {@link #getCopyAsGray8(boolean)}) and the image is unchanged.
+	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageConvert#convertToGray8(boolean)
+	 */
+	@Override
+	public ImageCore convertToGray8(boolean scaleMaxContrast) {
+		if (this.m_image.getBitDepth() == 8){
+			System.err.println("Warning: request to convert GRAY8 to GRAY8.");
+			return this.m_image;
+		}
+		return getCopyAsGray8(scaleMaxContrast);
+	}
+
+
+	/**
+	 * The image is returned if it is already GRAY8. Otherwise, the converted
+	 * copy is returned (see {@link #getCopyAsGray8Clamp()}) and the image is unchanged.
+	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageConvert#convertToGray8Clamp()
+	 */
+	@Override
+	public ImageCore convertToGray8Clamp() {
+		if (this.m_image.getBitDepth() == 8){
+			System.err.println("Warning: request to convert GRAY8 to GRAY8.");
+			return this.m_image;
+		}
+		return getCopyAsGray8Clamp();
+	}
+
+
+	/**
+	 * Without scaling, the gray levels of a GRAY16 image are divided by 256 and those of
+	 * a GRAY8 image are copied.
+	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageConvert#getCopyAsGray8(boolean)
+	 */
+	@Override
+	public ImageCore getCopyAsGray8(boolean scaleMaxContrast) {
+		int[] table = new int[this.m_image.getWhiteValue()+1];
+		if (scaleMaxContrast){
+			long[] histogram = HistogramBuilder.buildHistogram(this.m_image);
+			int minValue = ImageContrastGeneric.getMinValue(histogram);
+			int interval = Math.max(ImageContrastGeneric.getMaxValue(histogram) - minValue, 1);
+			for (int g=minValue ; g<table.length ; g++){
+				table[g] = Math.min((int)(((long)(g - minValue)*255)/interval), 255);
+			}
+		}else{
+			int shift = this.m_image.getBitDepth() - 8;
+			for (int g=0 ; g<table.length ; g++){
+				table[g] = g >> shift;
+			}
+		}
+		return getCopyAsGray8(table);
+	}
+
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageConvert#getCopyAsGray8Clamp()
+	 */
+	@Override
+	public ImageCore getCopyAsGray8Clamp() {
+		int[] table = new int[this.m_image.getWhiteValue()+1];
+		for (int g=0 ; g<table.length ; g++){
+			table[g] = Math.min(g, 255);
+		}
+		return getCopyAsGray8(table);
+	}
+
+
+	/**
+	 * Retrieves a slice of the image whose gray levels are only read.
+	 * @param zCoord the id (z-value) of the slice, between zero and (getDepth()-1).
+	 * @return The slice buffer of the image (subclasses may return a copy of the slice).
+	 */
+	protected SliceBuffer getSliceForReading(int zCoord){
+		return this.m_image.getSliceBuffer(zCoord);
+	}
+
+
+	/**
+	 * Creates a GRAY8 image with the prefered factory of the image, the gray level of each
+	 * voxel being obtained from the gray level g of the voxel in the image as table[g].
+	 * The slices are processed in parallel.
+	 * @param table The lookup table, with one GRAY8 value per gray level of the image.
+	 * @return The new image with Gray8 values format
+	 */
+	private ImageCore getCopyAsGray8(final int[] table){
+		ImageCore resultImage = this.m_image.getPreferedFactory()
+											.getEmptyImageCore(this.m_image.getWidth(),
+															   this.m_image.getHeight(),
+															   this.m_image.getDepth(), 8);
+		final SliceBuffer[] resultSlices = SliceBuffer.getSliceBuffers(resultImage);
+		SliceScheduler.forEachSlice(resultSlices.length, new SliceTask() {
+			@Override
+			public void processSlice(int z) {
+				SliceBuffer slice = getSliceForReading(z);
+				SliceBuffer resultSlice = resultSlices[z];
+				for (int i=0 ; i<slice.getSize() ; i++){
+					resultSlice.set(i, table[slice.get(i)]);
+				}
+			}
+		});
+		resultImage.mergeMetaData(this.m_image);
+		return resultImage;
+	}
+
+} // End of class
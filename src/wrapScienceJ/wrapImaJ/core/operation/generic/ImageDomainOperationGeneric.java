@@ -15,6 +15,7 @@ import wrapScienceJ.wrapImaJ.core.ImageCore;
 import wrapScienceJ.wrapImaJ.core.VoxelInt;
 import wrapScienceJ.wrapImaJ.core.operation.ImageDomainOperation;
 import wrapScienceJ.wrapImaJ.wrappers.imagej.core.ImageCoreIJ;
+import wrapScienceJ.wrapImaJ.wrappers.view.core.ImageCoreView;
 
 /**
  * @author remy
@@ -41,6 +42,22 @@ public abstract class ImageDomainOperationGeneric implements ImageDomainOperatio
 	@Override
 	public abstract ImageCoreIJ crop(int xmin, int ymin, int zmin, int xmax, int ymax, int zmax);
 	
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageDomainOperation#getCropView(int, int, int, int, int, int)
+	 */
+	@Override
+	public ImageCoreView getCropView(int xmin, int ymin, int zmin, int xmax, int ymax, int zmax){
+		return ImageCoreView.getCropView(this.m_image, xmin, ymin, zmin, xmax, ymax, zmax);
+	}
+	
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageDomainOperation#getSubsampledView(int, int, int)
+	 */
+	@Override
+	public ImageCoreView getSubsampledView(int stepX, int stepY, int stepZ){
+		return ImageCoreView.getSubsampledView(this.m_image, stepX, stepY, stepZ);
+	}
+	
 	/**
 	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageDomainOperation#extractSlice(int)
 	 */
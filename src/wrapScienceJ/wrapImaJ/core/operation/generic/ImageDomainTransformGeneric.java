@@ -8,13 +8,17 @@
 \******************************************************************************/ 
 package wrapScienceJ.wrapImaJ.core.operation.generic;
 
+import wrapScienceJ.utils.SliceScheduler;
+import wrapScienceJ.utils.SliceScheduler.SliceTask;
 import wrapScienceJ.wrapImaJ.core.CoordinateAxis;
 import wrapScienceJ.wrapImaJ.core.ImageCalibration;
 import wrapScienceJ.wrapImaJ.core.ImageCore;
+import wrapScienceJ.wrapImaJ.core.SliceBuffer;
 import wrapScienceJ.wrapImaJ.core.VoxelDouble;
 import wrapScienceJ.wrapImaJ.core.VoxelInt;
 import wrapScienceJ.wrapImaJ.core.operation.ImageDomainTransform;
 import wrapScienceJ.wrapImaJ.wrappers.imagej.core.ImageCoreIJ;
+import wrapScienceJ.wrapImaJ.wrappers.view.core.ImageCoreView;
 
 /**
  * @author remy
@@ -22,6 +26,12 @@ import wrapScienceJ.wrapImaJ.wrappers.imagej.core.ImageCoreIJ;
  */
 public abstract class ImageDomainTransformGeneric implements ImageDomainTransform {
 	
+	/**
+	 * Edge length (in voxels) of the square tiles used to transpose the images when
+	 * swapping axis (the voxels of a tile fit in the L1 cache, even for GRAY16 images)
+	 */
+	protected static final int TILE_SIZE = 64;
+	
 	/**
 	 * Underlying image on which operations are performed
 	 */
@@ -86,13 +96,7 @@ public abstract class ImageDomainTransformGeneric implements ImageDomainTransfor
 											new VoxelDouble(cal.getVoxelHeight(),
 															cal.getVoxelWidth(),
 															cal.getVoxelDepth()));
-			for (int z=0 ; z<depth ; z++){
-				for (int y=0 ; y<height ; y++){
-					for (int x=0 ; x<width ; x++){
-						newImage.setVoxel(x, y, z, this.m_image.getVoxel(y, x, z));
-					}
-				}
-			}
+			copySwappedXY(this.m_image, newImage);
 		}
 		
 		if (axis1 == CoordinateAxis.X && axis2 == CoordinateAxis.Z ||
@@ -102,13 +106,7 @@ public abstract class ImageDomainTransformGeneric implements ImageDomainTransfor
 											new VoxelDouble(cal.getVoxelDepth(),
 															cal.getVoxelHeight(),
 															cal.getVoxelWidth()));
-			for (int z=0 ; z<depth ; z++){
-				for (int y=0 ; y<height ; y++){
-					for (int x=0 ; x<width ; x++){
-						newImage.setVoxel(x, y, z, this.m_image.getVoxel(z, y, x));
-					}
-				}
-			}			
+			copySwappedXZ(this.m_image, newImage);
 		}
 		
 		if (axis1 == CoordinateAxis.Y && axis2 == CoordinateAxis.Z ||
@@ -118,19 +116,22 @@ public abstract class ImageDomainTransformGeneric implements ImageDomainTransfor
 											new VoxelDouble(cal.getVoxelWidth(),
 															cal.getVoxelDepth(),
 															cal.getVoxelHeight()));
-			for (int z=0 ; z<depth ; z++){
-				for (int y=0 ; y<height ; y++){
-					for (int x=0 ; x<width ; x++){
-						newImage.setVoxel(x, y, z, this.m_image.getVoxel(x, z, y));
-					}
-				}
-			}		
+			copySwappedYZ(this.m_image, newImage);
 		}
 		
 		return newImage;
 	}
 
 
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageDomainTransform#getAxisSwappedView(wrapScienceJ.wrapImaJ.core.CoordinateAxis, wrapScienceJ.wrapImaJ.core.CoordinateAxis)
+	 */
+	@Override
+	public ImageCoreView getAxisSwappedView(CoordinateAxis axis1, CoordinateAxis axis2) {
+		return ImageCoreView.getAxisSwappedView(this.m_image, axis1, axis2);
+	}
+
+
 	/**
 	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageDomainTransform#copyAxisSwapped(wrapScienceJ.wrapImaJ.core.ImageCore, wrapScienceJ.wrapImaJ.core.CoordinateAxis, wrapScienceJ.wrapImaJ.core.CoordinateAxis)
 	 */
@@ -162,13 +163,10 @@ public abstract class ImageDomainTransformGeneric implements ImageDomainTransfor
 		}
 		
 		if (axis1 == axis2){
+			int sliceSize = destinationImage.getWidth()*destinationImage.getHeight();
 			for (int z=0 ; z<destinationImage.getDepth() ; z++){
-				for (int y=0 ; y<destinationImage.getHeight() ; y++){
-					for (int x=0 ; x<destinationImage.getWidth() ; x++){
-						destinationImage.setVoxel(x, y, z, this.m_image.getVoxel(x, y, z));
-					}
-				}
-			}			
+				this.m_image.getSliceBuffer(z).copyTo(0, destinationImage.getSliceBuffer(z), 0, sliceSize);
+			}
 		}
 		
 		if (axis1 == CoordinateAxis.X && axis2 == CoordinateAxis.Z ||
@@ -196,43 +194,125 @@ public abstract class ImageDomainTransformGeneric implements ImageDomainTransfor
 		if (axis1 == CoordinateAxis.X && axis2 == CoordinateAxis.Y ||
 			axis1 == CoordinateAxis.Y && axis2 == CoordinateAxis.X){
 			
-			for (int z=0 ; z<destinationImage.getDepth() ; z++){
-				for (int y=0 ; y<destinationImage.getHeight() ; y++){
-					for (int x=0 ; x<destinationImage.getWidth() ; x++){
-						destinationImage.setVoxel(x, y, z, this.m_image.getVoxel(y, x, z));
-					}
-				}
-			}
+			copySwappedXY(this.m_image, destinationImage);
 		}
 		
 		if (axis1 == CoordinateAxis.X && axis2 == CoordinateAxis.Z ||
 			axis1 == CoordinateAxis.Z && axis2 == CoordinateAxis.X){
 				
-			for (int z=0 ; z<destinationImage.getDepth() ; z++){
-				for (int y=0 ; y<destinationImage.getHeight() ; y++){
-					for (int x=0 ; x<destinationImage.getWidth() ; x++){
-						destinationImage.setVoxel(x, y, z, this.m_image.getVoxel(z, y, x));
-					}
-				}
-			}			
+			copySwappedXZ(this.m_image, destinationImage);
 		}
 		
 		if (axis1 == CoordinateAxis.Y && axis2 == CoordinateAxis.Z ||
 				axis1 == CoordinateAxis.Z && axis2 == CoordinateAxis.Y){
 				
-			for (int z=0 ; z<destinationImage.getDepth() ; z++){
-				for (int y=0 ; y<destinationImage.getHeight() ; y++){
-					for (int x=0 ; x<destinationImage.getWidth() ; x++){
-						destinationImage.setVoxel(x, y, z, this.m_image.getVoxel(x, z, y));
-					}
-				}		
-			}
+			copySwappedYZ(this.m_image, destinationImage);
 		}
 		
 		return destinationImage;
 	}
 
 
+	/**
+	 * Copies the gray levels of an image into another image with the X and Y axis swapped.
+	 * The destination is assumed to have the swapped dimensions and the same bit depth.
+	 * Each slice is transposed by square tiles, so that both the rows read and the rows
+	 * written stay in the cache, and the slices are processed in parallel.
+	 * @param source The image to copy
+	 * @param destination The image in which dest(x, y, z) = source(y, x, z)
+	 */
+	protected static void copySwappedXY(ImageCore source, ImageCore destination){
+		final SliceBuffer[] srcSlices = SliceBuffer.getSliceBuffers(source);
+		final SliceBuffer[] destSlices = SliceBuffer.getSliceBuffers(destination);
+		final int width = destination.getWidth();
+		final int height = destination.getHeight();
+		SliceScheduler.forEachSlice(destSlices.length, new SliceTask() {
+			@Override
+			public void processSlice(int z) {
+				SliceBuffer srcSlice = srcSlices[z];
+				SliceBuffer destSlice = destSlices[z];
+				for (int yTile=0 ; yTile<height ; yTile+=TILE_SIZE){
+					int yMax = Math.min(yTile+TILE_SIZE, height);
+					for (int xTile=0 ; xTile<width ; xTile+=TILE_SIZE){
+						int xMax = Math.min(xTile+TILE_SIZE, width);
+						for (int x=xTile ; x<xMax ; x++){
+							// Reads a (contiguous) row of the source tile
+							int srcIndex = srcSlice.getIndex(0, x);
+							for (int y=yTile ; y<yMax ; y++){
+								destSlice.set(destSlice.getIndex(x, y), srcSlice.get(srcIndex+y));
+							}
+						}
+					}
+				}
+			}
+		});
+	}
+
+
+	/**
+	 * Copies the gray levels of an image into another image with the X and Z axis swapped.
+	 * The destination is assumed to have the swapped dimensions and the same bit depth.
+	 * For each row y, the (x, z) plane is transposed by square tiles: the voxels of a tile
+	 * are read in TILE_SIZE source slices and written in TILE_SIZE destination slices,
+	 * which all stay in the cache. The groups of destination slices are processed in parallel.
+	 * @param source The image to copy
+	 * @param destination The image in which dest(x, y, z) = source(z, y, x)
+	 */
+	protected static void copySwappedXZ(ImageCore source, ImageCore destination){
+		final SliceBuffer[] srcSlices = SliceBuffer.getSliceBuffers(source);
+		final SliceBuffer[] destSlices = SliceBuffer.getSliceBuffers(destination);
+		final int width = destination.getWidth();
+		final int height = destination.getHeight();
+		final int depth = destination.getDepth();
+		int nTiles = (depth + TILE_SIZE - 1)/TILE_SIZE;
+		SliceScheduler.forEachSlice(nTiles, new SliceTask() {
+			@Override
+			public void processSlice(int tile) {
+				int zTile = tile*TILE_SIZE;
+				int zMax = Math.min(zTile+TILE_SIZE, depth);
+				for (int y=0 ; y<height ; y++){
+					for (int xTile=0 ; xTile<width ; xTile+=TILE_SIZE){
+						int xMax = Math.min(xTile+TILE_SIZE, width);
+						for (int x=xTile ; x<xMax ; x++){
+							// Reads a (contiguous) part of a row in the source slice x
+							SliceBuffer srcSlice = srcSlices[x];
+							int srcIndex = srcSlice.getIndex(0, y);
+							for (int z=zTile ; z<zMax ; z++){
+								destSlices[z].set(destSlices[z].getIndex(x, y), srcSlice.get(srcIndex+z));
+							}
+						}
+					}
+				}
+			}
+		});
+	}
+
+
+	/**
+	 * Copies the gray levels of an image into another image with the Y and Z axis swapped.
+	 * The destination is assumed to have the swapped dimensions and the same bit depth.
+	 * The rows are copied as a whole, the destination slices being processed in parallel.
+	 * @param source The image to copy
+	 * @param destination The image in which dest(x, y, z) = source(x, z, y)
+	 */
+	protected static void copySwappedYZ(ImageCore source, ImageCore destination){
+		final SliceBuffer[] srcSlices = SliceBuffer.getSliceBuffers(source);
+		final SliceBuffer[] destSlices = SliceBuffer.getSliceBuffers(destination);
+		final int width = destination.getWidth();
+		final int height = destination.getHeight();
+		SliceScheduler.forEachSlice(destSlices.length, new SliceTask() {
+			@Override
+			public void processSlice(int z) {
+				SliceBuffer destSlice = destSlices[z];
+				for (int y=0 ; y<height ; y++){
+					// A row of the destination is a row of the source slice y
+					srcSlices[y].copyTo(srcSlices[y].getIndex(0, z), destSlice, destSlice.getIndex(0, y), width);
+				}
+			}
+		});
+	}
+
+
 	/**
 	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageDomainTransform#copyInto(wrapScienceJ.wrapImaJ.core.ImageCore, wrapScienceJ.wrapImaJ.core.VoxelInt, boolean)
 	 */
@@ -254,22 +334,23 @@ public abstract class ImageDomainTransformGeneric implements ImageDomainTransfor
 		if (this.m_image.getBitDepth() > destinationImage.getBitDepth()){
 			divScale = 256;
 		}
+		// Range of x such that x+shiftMargin.getX() lies within the destination image
+		int xMin = Math.max(0, -shiftMargin.getX());
+		int xMax = Math.min(this.m_image.getWidth(), destinationImage.getWidth()-shiftMargin.getX());
 		for (int z=0 ; z<this.m_image.getDepth() ; z++){
-			this.m_image.setCurrentZ(z);
 			if (z+shiftMargin.getZ()< 0 || z+shiftMargin.getZ() >= destinationImage.getDepth()){
 				continue;
 			}
-			destinationImage.setCurrentZ(z+shiftMargin.getZ());
+			SliceBuffer slice = this.m_image.getSliceBuffer(z);
+			SliceBuffer destSlice = destinationImage.getSliceBuffer(z+shiftMargin.getZ());
 			for (int y=0 ; y<this.m_image.getHeight() ; y++){
 				if (y+shiftMargin.getY()< 0 || y+shiftMargin.getY() >= destinationImage.getHeight()){
 					continue;
 				}
-				for (int x=0 ; x<this.m_image.getWidth() ; x++){
-					if (x+shiftMargin.getX()<0 || x+shiftMargin.getX() >= destinationImage.getWidth()){
-						continue;
-					}	
-					destinationImage.setPixel(x+shiftMargin.getX(), y+shiftMargin.getY(),
-											  (this.m_image.getVoxel(x, y, z)*multScale)/divScale);
+				int index = slice.getIndex(0, y);
+				int destIndex = destSlice.getIndex(shiftMargin.getX(), y+shiftMargin.getY());
+				for (int x=xMin ; x<xMax ; x++){
+					destSlice.set(destIndex+x, (slice.get(index+x)*multScale)/divScale);
 				}
 			}
 		}
@@ -302,25 +383,23 @@ public abstract class ImageDomainTransformGeneric implements ImageDomainTransfor
 		if (this.m_image.getBitDepth() > destinationImage.getBitDepth()){
 			divScale = 256;
 		}
+		// Range of x such that x+shiftMargin.getX() lies within the destination image
+		int xMin = Math.max(0, -shiftMargin.getX());
+		int xMax = Math.min(this.m_image.getWidth(), destinationImage.getWidth()-shiftMargin.getX());
 		for (int z=0 ; z<this.m_image.getDepth() ; z++){
-			this.m_image.setCurrentZ(z);
 			if (z+shiftMargin.getZ()< 0 || z+shiftMargin.getZ() >= destinationImage.getDepth()){
 				continue;
 			}
-			destinationImage.setCurrentZ(z+shiftMargin.getZ());
+			SliceBuffer slice = this.m_image.getSliceBuffer(z);
+			SliceBuffer destSlice = destinationImage.getSliceBuffer(z+shiftMargin.getZ());
 			for (int y=0 ; y<this.m_image.getHeight() ; y++){
 				if (y+shiftMargin.getY()< 0 || y+shiftMargin.getY() >= destinationImage.getHeight()){
 					continue;
 				}
-				for (int x=0 ; x<this.m_image.getWidth() ; x++){
-					if (x+shiftMargin.getX()<0 || x+shiftMargin.getX() >= destinationImage.getWidth()){
-						continue;
-					}	
-					this.m_image.setPixel(x, y, 
-										  (destinationImage.getPixel(x+shiftMargin.getX(),
-													   				 y+shiftMargin.getY())*multScale
-										  )/divScale
-							 		);
+				int index = slice.getIndex(0, y);
+				int destIndex = destSlice.getIndex(shiftMargin.getX(), y+shiftMargin.getY());
+				for (int x=xMin ; x<xMax ; x++){
+					slice.set(index+x, (destSlice.get(destIndex+x)*multScale)/divScale);
 				}
 			}
 		}
@@ -369,31 +448,30 @@ public abstract class ImageDomainTransformGeneric implements ImageDomainTransfor
 		
 		// Reversal is performed through swapping to avoid buffering
 		for (int z=0 ; z<this.m_image.getDepth() ; z++){
+			SliceBuffer slice = this.m_image.getSliceBuffer(z);
 			for (int y=0 ; y<this.m_image.getHeight() ; y++){
+				int index = slice.getIndex(0, y);
 				for (int x=0 ; x<this.m_image.getWidth()/2 ; x++){
 					int swapX = reverseX*x + ((1-reverseX)/2)*(this.m_image.getWidth()-1);
 					
-					int tmpVal = this.m_image.getVoxel(x, y, z);
-					this.m_image.setVoxel(x, y, z, this.m_image.getVoxel(
-													swapX, y, z));
-					this.m_image.setVoxel(swapX, y, z, tmpVal);
-					
+					int tmpVal = slice.get(index+x);
+					slice.set(index+x, slice.get(index+swapX));
+					slice.set(index+swapX, tmpVal);
 				}
 			}		
 		}
 
 		// Reversal is performed through swapping to avoid buffering
 		for (int z=0 ; z<this.m_image.getDepth() ; z++){
+			SliceBuffer slice = this.m_image.getSliceBuffer(z);
 			for (int y=0 ; y<this.m_image.getHeight()/2 ; y++){
 				int swapY = reverseY*y + ((1-reverseY)/2)*(this.m_image.getHeight()-1);
+				int index = slice.getIndex(0, y);
+				int swapIndex = slice.getIndex(0, swapY);
 				for (int x=0 ; x<this.m_image.getWidth() ; x++){
-					
-					int tmpVal = this.m_image.getVoxel(x, y, z);
-					this.m_image.setVoxel(x, y, z, 
-										  this.m_image.getVoxel(x, swapY, z)
-										 );
-					this.m_image.setVoxel(x, swapY, z, tmpVal);
-					
+					int tmpVal = slice.get(index+x);
+					slice.set(index+x, slice.get(swapIndex+x));
+					slice.set(swapIndex+x, tmpVal);
 				}
 			}		
 		}
@@ -401,16 +479,13 @@ public abstract class ImageDomainTransformGeneric implements ImageDomainTransfor
 		// Reversal is performed through swapping to avoid buffering
 		for (int z=0 ; z<this.m_image.getDepth()/2 ; z++){
 			int swapZ = reverseZ*z + ((1-reverseZ)/2)*(this.m_image.getDepth()-1);
-			for (int y=0 ; y<this.m_image.getHeight() ; y++){
-				for (int x=0 ; x<this.m_image.getWidth() ; x++){
-					
-					int tmpVal = this.m_image.getVoxel(x, y, z);
-					this.m_image.setVoxel(x, y, z, 
-										  this.m_image.getVoxel(x, y, swapZ));
-					this.m_image.setVoxel(x, y, swapZ, tmpVal);
-					
-				}
-			}		
+			SliceBuffer slice = this.m_image.getSliceBuffer(z);
+			SliceBuffer swapSlice = this.m_image.getSliceBuffer(swapZ);
+			for (int i=0 ; i<slice.getSize() ; i++){
+				int tmpVal = slice.get(i);
+				slice.set(i, swapSlice.get(i));
+				swapSlice.set(i, tmpVal);
+			}
 		}
 		return this.m_image;
 	}
@@ -9,7 +9,10 @@
 package wrapScienceJ.wrapImaJ.core.operation.generic;
 
 
+import wrapScienceJ.utils.SliceScheduler;
+import wrapScienceJ.utils.SliceScheduler.SliceTask;
 import wrapScienceJ.wrapImaJ.core.ImageCore;
+import wrapScienceJ.wrapImaJ.core.SliceBuffer;
 import wrapScienceJ.wrapImaJ.core.VoxelInt;
 import wrapScienceJ.wrapImaJ.core.operation.ImageSignPolicyEmbed;
 
@@ -149,13 +152,13 @@ public abstract class ImageSignPolicyEmbedGeneric implements ImageSignPolicyEmbe
 		imageNewBits.setTitle("Image embedded");
 		imageNewBits.getMetaData().merge(image.getMetaData());
 		
-		int zeroValue = getZero();
+		final int zeroValue = getZero();
 		
 		ImageSignPolicyEmbedGeneric result = imageNewBits.getImageSignPolicyEmbed(allowSignedValues);
 		
-		int zeroValueNewBits = result.getZero();
+		final int zeroValueNewBits = result.getZero();
 		
-		int inverseFactor = (image.getBitDepth() == bitDepth) ? (bitDepth == 16 ? 512 : 32) 
+		final int inverseFactor = (image.getBitDepth() == bitDepth) ? (bitDepth == 16 ? 512 : 32) 
 														   : ((image.getBitDepth() < bitDepth) ? 1 
 																   							: 8192
 														   );
@@ -163,16 +166,19 @@ public abstract class ImageSignPolicyEmbedGeneric implements ImageSignPolicyEmbe
 		System.err.println("getImageEmbedding, zeroValue : " + zeroValue + ", zeroValueNewBits : " + zeroValueNewBits);
 		System.err.println("getImageEmbedding, inverseFactor : " + inverseFactor);
 		
-		for (int z=0 ; z<image.getDepth() ; z++){
-			imageNewBits.setCurrentZ(z);
-			image.setCurrentZ(z);
-			for (int y=0 ; y<image.getHeight() ; y++){
-				for (int x=0 ; x<image.getWidth() ; x++){
-					int value = zeroValueNewBits + (image.getPixel(x, y) - zeroValue)/inverseFactor;
-					imageNewBits.setPixel(x, y, value);			
+		final SliceBuffer[] slices = SliceBuffer.getSliceBuffers(image);
+		final SliceBuffer[] slicesNewBits = SliceBuffer.getSliceBuffers(imageNewBits);
+		SliceScheduler.forEachSlice(slices.length, new SliceTask() {
+			@Override
+			public void processSlice(int z) {
+				SliceBuffer sliceNewBits = slicesNewBits[z];
+				SliceBuffer slice = slices[z];
+				for (int i=0 ; i<slice.getSize() ; i++){
+					int value = zeroValueNewBits + (slice.get(i) - zeroValue)/inverseFactor;
+					sliceNewBits.set(i, value);
 				}
 			}
-		}
+		});
 		return result;
 	}
 		
@@ -183,19 +189,19 @@ public abstract class ImageSignPolicyEmbedGeneric implements ImageSignPolicyEmbe
 	@Override
 	public ImageSignPolicyEmbedGeneric getImageSignedClamp() {
 		
-		int shiftToSigned = this.m_image.getBitDepth() == 8 ? -Byte.MIN_VALUE
-															  : -Short.MIN_VALUE;
-
-		for (int z=0 ; z<this.m_image.getDepth() ; z++){
-			this.m_image.setCurrentZ(z);
-			for (int y=0 ; y<this.m_image.getHeight() ; y++){
-				for (int x=0 ; x<this.m_image.getWidth() ; x++){
-					int value = shiftToSigned + this.m_image.getPixel(x, y);
+		final int shiftToSigned = this.m_image.getBitDepth() == 8 ? -Byte.MIN_VALUE
+																	: -Short.MIN_VALUE;
 
-					this.m_image.setPixel(x, y, value);					
+		final SliceBuffer[] slices = SliceBuffer.getSliceBuffers(this.m_image);
+		SliceScheduler.forEachSlice(slices.length, new SliceTask() {
+			@Override
+			public void processSlice(int z) {
+				SliceBuffer slice = slices[z];
+				for (int i=0 ; i<slice.getSize() ; i++){
+					slice.set(i, shiftToSigned + slice.get(i));
 				}
 			}
-		}
+		});
 		return this;
 	}
 		
@@ -206,20 +212,20 @@ public abstract class ImageSignPolicyEmbedGeneric implements ImageSignPolicyEmbe
 	@Override
 	public ImageSignPolicyEmbedGeneric getImagePositivePart() {
 
-		int zeroValue = getZero();
+		final int zeroValue = getZero();
 
-		for (int z=0 ; z<this.m_image.getDepth() ; z++){
-			this.m_image.setCurrentZ(z);
-			for (int y=0 ; y<this.m_image.getHeight() ; y++){
-				for (int x=0 ; x<this.m_image.getWidth() ; x++){
-					int value = this.m_image.getPixel(x, y);
-					if (value < zeroValue){
-						value = zeroValue;
+		final SliceBuffer[] slices = SliceBuffer.getSliceBuffers(this.m_image);
+		SliceScheduler.forEachSlice(slices.length, new SliceTask() {
+			@Override
+			public void processSlice(int z) {
+				SliceBuffer slice = slices[z];
+				for (int i=0 ; i<slice.getSize() ; i++){
+					if (slice.get(i) < zeroValue){
+						slice.set(i, zeroValue);
 					}
-					this.m_image.setPixel(x, y, value);					
 				}
 			}
-		}
+		});
 		return this;
 	}
 	
@@ -230,22 +236,24 @@ public abstract class ImageSignPolicyEmbedGeneric implements ImageSignPolicyEmbe
 	@Override
 	public ImageSignPolicyEmbedGeneric getImageNegativePart() {
 		
-		int zeroValue = getZero();
+		final int zeroValue = getZero();
 
-		for (int z=0 ; z<this.m_image.getDepth() ; z++){
-			this.m_image.setCurrentZ(z);
-			for (int y=0 ; y<this.m_image.getHeight() ; y++){
-				for (int x=0 ; x<this.m_image.getWidth() ; x++){
-					int value = this.m_image.getPixel(x, y);
+		final SliceBuffer[] slices = SliceBuffer.getSliceBuffers(this.m_image);
+		SliceScheduler.forEachSlice(slices.length, new SliceTask() {
+			@Override
+			public void processSlice(int z) {
+				SliceBuffer slice = slices[z];
+				for (int i=0 ; i<slice.getSize() ; i++){
+					int value = slice.get(i);
 					if (value < zeroValue){
 						value = 2*zeroValue - value;
 					}else{
 						value = 0;
 					}
-					this.m_image.setPixel(x, y, value);					
+					slice.set(i, value);
 				}
 			}
-		}
+		});
 		return this;
 	}
 	
@@ -256,20 +264,21 @@ public abstract class ImageSignPolicyEmbedGeneric implements ImageSignPolicyEmbe
 	@Override
 	public ImageSignPolicyEmbedGeneric getImageAbsoluteValue() {
 
-		int zeroValue = getZero();
+		final int zeroValue = getZero();
 		
-		for (int z=0 ; z<this.m_image.getDepth() ; z++){
-			this.m_image.setCurrentZ(z);
-			for (int y=0 ; y<this.m_image.getHeight() ; y++){
-				for (int x=0 ; x<this.m_image.getWidth() ; x++){
-					int value = this.m_image.getPixel(x, y);
+		final SliceBuffer[] slices = SliceBuffer.getSliceBuffers(this.m_image);
+		SliceScheduler.forEachSlice(slices.length, new SliceTask() {
+			@Override
+			public void processSlice(int z) {
+				SliceBuffer slice = slices[z];
+				for (int i=0 ; i<slice.getSize() ; i++){
+					int value = slice.get(i);
 					if (value < zeroValue){
-						value = 2*zeroValue - value;
+						slice.set(i, 2*zeroValue - value);
 					}
-					this.m_image.setPixel(x, y, value);
 				}
 			}
-		}
+		});
 		return this;
 	}
 
@@ -278,19 +287,18 @@ public abstract class ImageSignPolicyEmbedGeneric implements ImageSignPolicyEmbe
 	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageSignPolicyEmbed#setConstantValue(int)
 	 */
 	@Override
-	public ImageSignPolicyEmbedGeneric setConstantValue(int value){
+	public ImageSignPolicyEmbedGeneric setConstantValue(final int value){
 		if (value < 0 || value > this.m_image.getWhiteValue()){
 			throw new IllegalArgumentException("Gray level must be between 0 and "
 											   + this.m_image.getWhiteValue());
 		}
-		for (int z=0 ; z<this.m_image.getDepth() ; z++){
-			this.m_image.setCurrentZ(z);
-			for (int y=0 ; y<this.m_image.getHeight() ; y++){
-				for (int x=0 ; x<this.m_image.getWidth() ; x++){
-					this.m_image.setPixel(x, y, value);
-				}
+		final SliceBuffer[] slices = SliceBuffer.getSliceBuffers(this.m_image);
+		SliceScheduler.forEachSlice(slices.length, new SliceTask() {
+			@Override
+			public void processSlice(int z) {
+				slices[z].fill(value);
 			}
-		}
+		});
 		return this;
 	}
 	/**
@@ -356,22 +364,24 @@ public abstract class ImageSignPolicyEmbedGeneric implements ImageSignPolicyEmbe
 	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageSignPolicyEmbed#multiplyValues(double)
 	 */
 	@Override
-	public ImageSignPolicyEmbedGeneric multiplyValues(double factor){
+	public ImageSignPolicyEmbedGeneric multiplyValues(final double factor){
 	
-		int zeroValue = getZero();
+		final int zeroValue = getZero();
 		
 		System.err.println("multiplyValues, zeroValue : " + zeroValue);
 	
-		for (int z=0 ; z<this.m_image.getDepth() ; z++){
-			this.m_image.setCurrentZ(z);
-			for (int y=0 ; y<this.m_image.getHeight() ; y++){
-				for (int x=0 ; x<this.m_image.getWidth() ; x++){
-					int value = this.m_image.getPixel(x, y) - zeroValue;
+		final SliceBuffer[] slices = SliceBuffer.getSliceBuffers(this.m_image);
+		SliceScheduler.forEachSlice(slices.length, new SliceTask() {
+			@Override
+			public void processSlice(int z) {
+				SliceBuffer slice = slices[z];
+				for (int i=0 ; i<slice.getSize() ; i++){
+					int value = slice.get(i) - zeroValue;
 					value = (int)(value*factor);
-					this.m_image.setPixel(x, y, value + zeroValue);					
+					slice.set(i, value + zeroValue);
 				}
 			}
-		}
+		});
 		return this;
 	}	
 
@@ -381,20 +391,22 @@ public abstract class ImageSignPolicyEmbedGeneric implements ImageSignPolicyEmbe
 	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageSignPolicyEmbed#multiplyValues(int)
 	 */
 	@Override
-	public ImageSignPolicyEmbedGeneric multiplyValues(int factor){
+	public ImageSignPolicyEmbedGeneric multiplyValues(final int factor){
 	
-		int zeroValue = getZero();
+		final int zeroValue = getZero();
 			
-		for (int z=0 ; z<this.m_image.getDepth() ; z++){
-			this.m_image.setCurrentZ(z);
-			for (int y=0 ; y<this.m_image.getHeight() ; y++){
-				for (int x=0 ; x<this.m_image.getWidth() ; x++){
-					int value = this.m_image.getPixel(x, y) - zeroValue;
+		final SliceBuffer[] slices = SliceBuffer.getSliceBuffers(this.m_image);
+		SliceScheduler.forEachSlice(slices.length, new SliceTask() {
+			@Override
+			public void processSlice(int z) {
+				SliceBuffer slice = slices[z];
+				for (int i=0 ; i<slice.getSize() ; i++){
+					int value = slice.get(i) - zeroValue;
 					value = value*factor;
-					this.m_image.setPixel(x, y, value + zeroValue);					
+					slice.set(i, value + zeroValue);
 				}
 			}
-		}
+		});
 		return this;
 	}	
 
@@ -404,20 +416,22 @@ public abstract class ImageSignPolicyEmbedGeneric implements ImageSignPolicyEmbe
 	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageSignPolicyEmbed#divideValues(int)
 	 */
 	@Override
-	public ImageSignPolicyEmbedGeneric divideValues(int denominator) {
+	public ImageSignPolicyEmbedGeneric divideValues(final int denominator) {
 		
-		int zeroValue = getZero();
+		final int zeroValue = getZero();
 	
-		for (int z=0 ; z<this.m_image.getDepth() ; z++){
-			this.m_image.setCurrentZ(z);
-			for (int y=0 ; y<this.m_image.getHeight() ; y++){
-				for (int x=0 ; x<this.m_image.getWidth() ; x++){
-					int value = this.m_image.getPixel(x, y) - zeroValue;
+		final SliceBuffer[] slices = SliceBuffer.getSliceBuffers(this.m_image);
+		SliceScheduler.forEachSlice(slices.length, new SliceTask() {
+			@Override
+			public void processSlice(int z) {
+				SliceBuffer slice = slices[z];
+				for (int i=0 ; i<slice.getSize() ; i++){
+					int value = slice.get(i) - zeroValue;
 					value /= denominator;
-					this.m_image.setPixel(x, y, value + zeroValue);					
+					slice.set(i, value + zeroValue);
 				}
 			}
-		}
+		});
 		return this;
 	}	
 	
@@ -444,37 +458,47 @@ public abstract class ImageSignPolicyEmbedGeneric implements ImageSignPolicyEmbe
 			return destImageSignPolicyEmbed;
 		}
 	
-		int zeroValue = getZero();
-		int zeroValueDest = destImageSignPolicyEmbed.getZero();
+		final int zeroValue = getZero();
+		final int zeroValueDest = destImageSignPolicyEmbed.getZero();
 		
 		int bitDepth = getImageRaw().getBitDepth();
 		int destBitDepth = destImageSignPolicyEmbed.getImageRaw().getBitDepth();
 		
-		int inverseFactor = (!scaleForBitDepth || bitDepth == destBitDepth || bitDepth < destBitDepth) ? 1 : 256;
-
-		for (int z=0 ; z<this.m_image.getDepth() ; z++){
-			
-			this.m_image.setCurrentZ(z);
-			if (z+shiftMargin.getZ()< 0 || z+shiftMargin.getZ() >= destImage.getDepth()){
-				continue;
-			}
-			destImage.setCurrentZ(z+shiftMargin.getZ());
-			
-			for (int y=0 ; y<this.m_image.getHeight() ; y++){
-				if (y+shiftMargin.getY()< 0 || y+shiftMargin.getY() >= destImage.getHeight()){
-					continue;
+		final int inverseFactor = (!scaleForBitDepth || bitDepth == destBitDepth || bitDepth < destBitDepth) ? 1 : 256;
+
+		// Range of x such that x+shiftMargin.getX() lies within the destination image
+		final int xMin = Math.max(0, -shiftMargin.getX());
+		final int xMax = Math.min(this.m_image.getWidth(), destImage.getWidth()-shiftMargin.getX());
+		
+		final int shiftX = shiftMargin.getX();
+		final int shiftY = shiftMargin.getY();
+		final int shiftZ = shiftMargin.getZ();
+		final int destHeight = destImage.getHeight();
+		
+		// Source slices are mapped one to one to destination slices, which allows parallel processing
+		final SliceBuffer[] slices = SliceBuffer.getSliceBuffers(this.m_image);
+		final SliceBuffer[] destSlices = SliceBuffer.getSliceBuffers(destImage);
+		SliceScheduler.forEachSlice(slices.length, new SliceTask() {
+			@Override
+			public void processSlice(int z) {
+				if (z+shiftZ < 0 || z+shiftZ >= destSlices.length){
+					return;
 				}
-				for (int x=0 ; x<this.m_image.getWidth() ; x++){
-					if (x+shiftMargin.getX()<0 || x+shiftMargin.getX() >= destImage.getWidth()){
+				SliceBuffer slice = slices[z];
+				SliceBuffer destSlice = destSlices[z+shiftZ];
+				
+				for (int y=0 ; y<slice.getHeight() ; y++){
+					if (y+shiftY < 0 || y+shiftY >= destHeight){
 						continue;
 					}
-					
-					destImage.setPixel(x+shiftMargin.getX(), y+shiftMargin.getY(), 
-									   ((this.m_image.getPixel(x, y)-zeroValue)/inverseFactor)+zeroValueDest
-									  );
+					int index = slice.getIndex(0, y);
+					int destIndex = destSlice.getIndex(shiftX, y+shiftY);
+					for (int x=xMin ; x<xMax ; x++){
+						destSlice.set(destIndex+x, ((slice.get(index+x)-zeroValue)/inverseFactor)+zeroValueDest);
+					}
 				}
 			}
-		}
+		});
 		
 		destImage.mergeMetaData(this.m_image);
 		
@@ -496,40 +520,47 @@ public abstract class ImageSignPolicyEmbedGeneric implements ImageSignPolicyEmbe
 			return this;
 		}
 		
-		int zeroValue = getZero();
-		int zeroValueDest = destImageSignPolicyEmbed.getZero();
+		final int zeroValue = getZero();
+		final int zeroValueDest = destImageSignPolicyEmbed.getZero();
 		
 		int bitDepth = getImageRaw().getBitDepth();
 		int destBitDepth = destImageSignPolicyEmbed.getImageRaw().getBitDepth();
 		
-		int valuesFactor = (!scaleForBitDepth || bitDepth == destBitDepth || bitDepth < destBitDepth) ? 1 : 256;
-
-		for (int z=0 ; z<this.m_image.getDepth() ; z++){
-			
-			this.m_image.setCurrentZ(z);
-			if (z+shiftMargin.getZ()< 0 || z+shiftMargin.getZ() >= destImage.getDepth()){
-				continue;
-			}
-			destImage.setCurrentZ(z+shiftMargin.getZ());
-			
-			for (int y=0 ; y<this.m_image.getHeight() ; y++){
-				if (y+shiftMargin.getY()< 0 || y+shiftMargin.getY() >= destImage.getHeight()){
-					continue;
+		final int valuesFactor = (!scaleForBitDepth || bitDepth == destBitDepth || bitDepth < destBitDepth) ? 1 : 256;
+
+		// Range of x such that x+shiftMargin.getX() lies within the destination image
+		final int xMin = Math.max(0, -shiftMargin.getX());
+		final int xMax = Math.min(this.m_image.getWidth(), destImage.getWidth()-shiftMargin.getX());
+		
+		final int shiftX = shiftMargin.getX();
+		final int shiftY = shiftMargin.getY();
+		final int shiftZ = shiftMargin.getZ();
+		final int destHeight = destImage.getHeight();
+		
+		// Source slices are mapped one to one to destination slices, which allows parallel processing
+		final SliceBuffer[] slices = SliceBuffer.getSliceBuffers(this.m_image);
+		final SliceBuffer[] destSlices = SliceBuffer.getSliceBuffers(destImage);
+		SliceScheduler.forEachSlice(slices.length, new SliceTask() {
+			@Override
+			public void processSlice(int z) {
+				if (z+shiftZ < 0 || z+shiftZ >= destSlices.length){
+					return;
 				}
-				for (int x=0 ; x<this.m_image.getWidth() ; x++){
-					if (x+shiftMargin.getX()<0 || x+shiftMargin.getX() >= destImage.getWidth()){
+				SliceBuffer slice = slices[z];
+				SliceBuffer destSlice = destSlices[z+shiftZ];
+				
+				for (int y=0 ; y<slice.getHeight() ; y++){
+					if (y+shiftY < 0 || y+shiftY >= destHeight){
 						continue;
 					}
-					this.m_image.setPixel(x, y, 
-										  zeroValue + valuesFactor*
-															(destImage.getPixel(x+shiftMargin.getX(), y+shiftMargin.getY())
-															 -zeroValueDest
-															)
-										 );
-
+					int index = slice.getIndex(0, y);
+					int destIndex = destSlice.getIndex(shiftX, y+shiftY);
+					for (int x=xMin ; x<xMax ; x++){
+						slice.set(index+x, zeroValue + valuesFactor*(destSlice.get(destIndex+x)-zeroValueDest));
+					}
 				}
 			}
-		}
+		});
 		
 		this.m_image.mergeMetaData(destImage);
 		
@@ -542,26 +573,27 @@ public abstract class ImageSignPolicyEmbedGeneric implements ImageSignPolicyEmbe
 	@Override
 	public ImageSignPolicyEmbed addValues(ImageSignPolicyEmbed imageToAdd) {
 		
-		int zeroValueImageToAdd = imageToAdd.getZero();
+		final int zeroValueImageToAdd = imageToAdd.getZero();
 		
 		ImageCore imgAdd = imageToAdd.getImageRaw();
 		
-		for (int z=0 ; z<this.m_image.getDepth() ; z++){
-			this.m_image.setCurrentZ(z);
-			imgAdd.setCurrentZ(z);
-			for (int y=0 ; y<this.m_image.getHeight() ; y++){
-				for (int x=0 ; x<this.m_image.getWidth() ; x++){
-					
-					int value = this.m_image.getPixel(x, y);
-					value += (imageToAdd.getImageRaw().getPixel(x, y) - zeroValueImageToAdd);
+		final SliceBuffer[] slices = SliceBuffer.getSliceBuffers(this.m_image);
+		final SliceBuffer[] slicesAdd = SliceBuffer.getSliceBuffers(imgAdd);
+		SliceScheduler.forEachSlice(slices.length, new SliceTask() {
+			@Override
+			public void processSlice(int z) {
+				SliceBuffer slice = slices[z];
+				SliceBuffer sliceAdd = slicesAdd[z];
+				for (int i=0 ; i<slice.getSize() ; i++){
+					int value = slice.get(i);
+					value += (sliceAdd.get(i) - zeroValueImageToAdd);
 					if (value < 0){
 						value = 0;
 					}
-					this.m_image.setPixel(x, y, value);	
-					
+					slice.set(i, value);
 				}
 			}
-		}
+		});
 		return this;
 	}
 
@@ -572,26 +604,27 @@ public abstract class ImageSignPolicyEmbedGeneric implements ImageSignPolicyEmbe
 	@Override
 	public ImageSignPolicyEmbed subtractValues(ImageSignPolicyEmbed imageToSubtract) {
 		
-		int zeroValueImageToSubtract = imageToSubtract.getZero();
+		final int zeroValueImageToSubtract = imageToSubtract.getZero();
 		
 		ImageCore imgSubtract = imageToSubtract.getImageRaw();
 		
-		for (int z=0 ; z<this.m_image.getDepth() ; z++){
-			this.m_image.setCurrentZ(z);
-			imgSubtract.setCurrentZ(z);
-			for (int y=0 ; y<this.m_image.getHeight() ; y++){
-				for (int x=0 ; x<this.m_image.getWidth() ; x++){
-					
-					int value = this.m_image.getPixel(x, y);
-					value -= (imageToSubtract.getImageRaw().getPixel(x, y) - zeroValueImageToSubtract);
+		final SliceBuffer[] slices = SliceBuffer.getSliceBuffers(this.m_image);
+		final SliceBuffer[] slicesSubtract = SliceBuffer.getSliceBuffers(imgSubtract);
+		SliceScheduler.forEachSlice(slices.length, new SliceTask() {
+			@Override
+			public void processSlice(int z) {
+				SliceBuffer slice = slices[z];
+				SliceBuffer sliceSubtract = slicesSubtract[z];
+				for (int i=0 ; i<slice.getSize() ; i++){
+					int value = slice.get(i);
+					value -= (sliceSubtract.get(i) - zeroValueImageToSubtract);
 					if (value < 0){
 						value = 0;
 					}
-					this.m_image.setPixel(x, y, value);	
-					
+					slice.set(i, value);
 				}
 			}
-		}
+		});
 		return this;
 	}
 
@@ -602,23 +635,22 @@ public abstract class ImageSignPolicyEmbedGeneric implements ImageSignPolicyEmbe
 	@Override
 	public ImageSignPolicyEmbed getOpposite() {
 		
-		int zeroValueDouble = 2*getZero();
+		final int zeroValueDouble = 2*getZero();
 		
-		for (int z=0 ; z<this.m_image.getDepth() ; z++){
-			
-			this.m_image.setCurrentZ(z);
-			for (int y=0 ; y<this.m_image.getHeight() ; y++){
-				for (int x=0 ; x<this.m_image.getWidth() ; x++){
-					
-					int value = zeroValueDouble-this.m_image.getPixel(x, y);
+		final SliceBuffer[] slices = SliceBuffer.getSliceBuffers(this.m_image);
+		SliceScheduler.forEachSlice(slices.length, new SliceTask() {
+			@Override
+			public void processSlice(int z) {
+				SliceBuffer slice = slices[z];
+				for (int i=0 ; i<slice.getSize() ; i++){
+					int value = zeroValueDouble-slice.get(i);
 					if (value < 0){
 						value=0;
 					}
-					this.m_image.setPixel(x, y, value);	
-					
+					slice.set(i, value);
 				}
 			}
-		}
+		});
 		return this;
 	}
 
@@ -629,20 +661,18 @@ public abstract class ImageSignPolicyEmbedGeneric implements ImageSignPolicyEmbe
 	@Override
 	public ImageSignPolicyEmbed getReversedValues() {
 		
-		int maxValue = getZero() + getMaxValue();
+		final int maxValue = getZero() + getMaxValue();
 		
-		for (int z=0 ; z<this.m_image.getDepth() ; z++){
-			
-			this.m_image.setCurrentZ(z);
-			for (int y=0 ; y<this.m_image.getHeight() ; y++){
-				for (int x=0 ; x<this.m_image.getWidth() ; x++){
-					
-					int value = maxValue - this.m_image.getPixel(x, y);
-					this.m_image.setPixel(x, y, value);	
-					
+		final SliceBuffer[] slices = SliceBuffer.getSliceBuffers(this.m_image);
+		SliceScheduler.forEachSlice(slices.length, new SliceTask() {
+			@Override
+			public void processSlice(int z) {
+				SliceBuffer slice = slices[z];
+				for (int i=0 ; i<slice.getSize() ; i++){
+					slice.set(i, maxValue - slice.get(i));
 				}
 			}
-		}
+		});
 		return this;
 	}
 	
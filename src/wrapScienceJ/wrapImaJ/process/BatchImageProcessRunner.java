@@ -0,0 +1,418 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File: BatchImageProcessRunner.java                                       * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+
+
+package wrapScienceJ.wrapImaJ.process;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import wrapScienceJ.config.GlobalOptions;
+import wrapScienceJ.factory.image.ImageCoreFactory;
+import wrapScienceJ.factory.image.ImageCoreFactoryIJ;
+import wrapScienceJ.factory.render.RenderToolFactoryIJ;
+import wrapScienceJ.gui.GuiFramework;
+import wrapScienceJ.metaData.container.MetaDataRetriever.RetrievalPolicy;
+import wrapScienceJ.process.ProcessInputOutput.OutputDataKind;
+import wrapScienceJ.wrapImaJ.core.ImageCore;
+import wrapScienceJ.wrapImaJ.process.plugins.PluginFilterGeneric;
+import wrapScienceJ.wrapImaJ.process.predefined.sequence.ConnectedComponentsSegmentation;
+
+/**
+ * Runs a process, without user interaction, on all the images of a directory whose
+ * file names match a glob pattern (e.g. "*.tif"), and writes the outputs together with
+ * their metadata (see {@link ImageCore#writeToFileWithMetaData(String, String, String)}).
+ *
+ * The input and output are pipelined with the computations: a reader thread loads the images
+ * in advance (up to a given number of images beyond those being processed), the images are
+ * processed concurrently by a bounded pool of workers, and the outputs are written by
+ * background writer threads, so that the disk and the processors are used simultaneously,
+ * even with a single worker.
+ *
+ * Before loading an image, the reader reserves an estimate of the memory needed to process it
+ * (the size of the file times a memory factor), and waits as long as the reservations of the
+ * images being loaded, processed or written exceed the memory budget. An image whose estimate
+ * exceeds the whole budget is processed alone.
+ *
+ * Within each image, the operations use the shared slice scheduler (see
+ * {@link wrapScienceJ.utils.SliceScheduler}), so that the number of workers needs not exceed
+ * a few images, the parallelism within images being given by {@link GlobalOptions#getParallelism()}.
+ *
+ * The display of images by the render tools is disabled during the batch
+ * (see {@link GlobalOptions#setDisplayEnabled(boolean)}), and the processes must retrieve
+ * their metadata without any dialog box (e.g. {@link RetrievalPolicy#TryConfFileNoDialog}).
+ *
+ * @author Rémy Malgouyres
+ */
+public class BatchImageProcessRunner {
+
+	/**
+	 * Creates a new process for each image of the batch, since processes hold their input image.
+	 */
+	public interface ProcessFactory {
+		/**
+		 * May be called concurrently by distinct workers.
+		 * @param image The image to process
+		 * @return A new process with that image as input image.
+		 */
+		public PluginFilterGeneric createProcess(ImageCore image);
+	}
+
+	/** Default estimate of the memory needed by a process, as a multiple of the image file size:
+	 *  the image, a copy and the labels of the connected components as ints (the worst case) for a GRAY8 image.
+	 *  This doesn't account for a labeling kept to be filtered again (up to 4 more bytes per voxel, see
+	 *  {@link wrapScienceJ.wrapImaJ.process.predefined.atomic.ConnectedComponentsProcess#setRefilteringEnabled(boolean)}),
+	 *  which is disabled by default. */
+	public static final double DEFAULT_MEMORY_FACTOR = 6.0;
+
+	/** Unit of the memory reservations, in bytes */
+	private static final long MEMORY_UNIT = 1L << 20;
+
+	/** Factory for the processes */
+	private ProcessFactory m_processFactory;
+
+	/** Factory used to load the images */
+	private ImageCoreFactory m_imageFactory;
+
+	/** Maximal number of images processed concurrently */
+	private int m_nbWorkers;
+
+	/** Maximal number of images loaded in advance, beyond the images being processed */
+	private int m_readAhead;
+
+	/** Number of threads writing the outputs */
+	private int m_nbWriters;
+
+	/** Multiple of the file size reserved for processing an image */
+	private double m_memoryFactor;
+
+	/** Memory budget for the images being loaded, processed or written, in MEMORY_UNIT */
+	private int m_memoryBudget;
+
+	/** Extension (without dot) of the output files, which determines the file format */
+	private String m_outputExtension;
+
+
+	/**
+	 * One image is loaded in advance and the outputs are written by one thread.
+	 * The memory budget is three quarters of the maximum heap size, minus the memory which
+	 * may be kept by the buffer pool (see {@link GlobalOptions#getBufferPoolCapacity()}), the memory factor is
+	 * {@link #DEFAULT_MEMORY_FACTOR} and the outputs are written as TIFF files.
+	 * @param processFactory Creates a new process for each image.
+	 * @param imageFactory Factory used to load the images (e.g. ImageCoreFactoryIJ.getInstance())
+	 * @param nbWorkers Maximal number of images processed concurrently
+	 * @throws IllegalArgumentException if the number of workers is not positive.
+	 */
+	public BatchImageProcessRunner(ProcessFactory processFactory, ImageCoreFactory imageFactory,
+								   int nbWorkers){
+		this(processFactory, imageFactory, nbWorkers, 1, 1, DEFAULT_MEMORY_FACTOR,
+			 Math.max(MEMORY_UNIT, 3*(Runtime.getRuntime().maxMemory()/4) - GlobalOptions.getBufferPoolCapacity()),
+			 "tif");
+	}
+
+
+	/**
+	 * @param processFactory Creates a new process for each image.
+	 * @param imageFactory Factory used to load the images (e.g. ImageCoreFactoryIJ.getInstance())
+	 * @param nbWorkers Maximal number of images processed concurrently
+	 * @param readAhead Maximal number of images loaded in advance, beyond the images being
+	 * 					processed (0 for no read-ahead)
+	 * @param nbWriters Number of threads writing the outputs
+	 * @param memoryFactor Multiple of the file size reserved for processing an image
+	 * @param memoryBudget Memory budget for the images being loaded, processed or written, in bytes
+	 * @param outputExtension Extension (without dot) of the output files, which determines the file format
+	 * @throws IllegalArgumentException if the number of workers, the number of writers,
+	 * 		   the memory factor or the memory budget is not positive, or if the read-ahead is negative.
+	 */
+	public BatchImageProcessRunner(ProcessFactory processFactory, ImageCoreFactory imageFactory,
+								   int nbWorkers, int readAhead, int nbWriters,
+								   double memoryFactor, long memoryBudget, String outputExtension){
+		if (nbWorkers < 1 || nbWriters < 1){
+			throw new IllegalArgumentException("The numbers of workers and writers must be positive.");
+		}
+		if (readAhead < 0){
+			throw new IllegalArgumentException("The read-ahead must not be negative.");
+		}
+		if (!(memoryFactor > 0) || memoryBudget < MEMORY_UNIT){
+			throw new IllegalArgumentException("The memory factor and the memory budget must be positive.");
+		}
+		this.m_processFactory = processFactory;
+		this.m_imageFactory = imageFactory;
+		this.m_nbWorkers = nbWorkers;
+		this.m_readAhead = readAhead;
+		this.m_nbWriters = nbWriters;
+		this.m_memoryFactor = memoryFactor;
+		this.m_memoryBudget = (int)Math.min(Integer.MAX_VALUE, memoryBudget/MEMORY_UNIT);
+		this.m_outputExtension = outputExtension;
+	}
+
+
+	/**
+	 * @param inputDir A directory
+	 * @param glob A glob pattern for the file names (e.g. "*.tif")
+	 * @return The files of the directory whose names match the pattern, sorted by name.
+	 * @throws IOException if the directory cannot be listed.
+	 */
+	public static List<File> listFiles(File inputDir, String glob) throws IOException {
+		File[] files = inputDir.listFiles();
+		if (files == null){
+			throw new IOException("Cannot list the directory " + inputDir);
+		}
+		PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+		List<File> matchingFiles = new ArrayList<File>();
+		for (File file : files){
+			if (file.isFile() && matcher.matches(Paths.get(file.getName()))){
+				matchingFiles.add(file);
+			}
+		}
+		Collections.sort(matchingFiles);
+		return matchingFiles;
+	}
+
+
+	/**
+	 * Processes all the images of a directory whose file names match a glob pattern,
+	 * and returns when all images have been processed.
+	 * The failure of the process on an image (exception, or output which is not an image)
+	 * is reported on the standard error stream and doesn't stop the batch.
+	 * @param inputDir The directory containing the images
+	 * @param glob A glob pattern for the file names (e.g. "*.tif")
+	 * @param outputDir The directory in which the outputs are written, with the same base names
+	 * 					as the input files.
+	 * @return The input files for which the process failed (empty if all succeeded).
+	 * @throws IOException if the input directory cannot be listed.
+	 */
+	public List<File> run(File inputDir, String glob, final File outputDir) throws IOException {
+		return run(listFiles(inputDir, glob), outputDir);
+	}
+
+
+	/**
+	 * Processes a list of images, and returns when all images have been processed.
+	 * @param inputFiles The image files
+	 * @param outputDir The directory in which the outputs are written, with the same base names
+	 * 					as the input files.
+	 * @return The input files for which the process failed (empty if all succeeded).
+	 * @see #run(File, String, File)
+	 */
+	public List<File> run(List<File> inputFiles, final File outputDir) {
+		outputDir.mkdirs();
+		boolean displayEnabled = GlobalOptions.isDisplayEnabled();
+		GlobalOptions.setDisplayEnabled(false);
+		try {
+			return runWorkers(inputFiles, outputDir);
+		} finally {
+			GlobalOptions.setDisplayEnabled(displayEnabled);
+		}
+	}
+
+
+	/**
+	 * Processes a list of images with the reader, the pool of workers and the writers.
+	 * The reservation of an image (memory and slot) is acquired by the reader before loading it,
+	 * and released once its output has been written or its processing has failed, together
+	 * with the memory of the input and output images (see {@link ImageCore#close()}),
+	 * so that their slices are reused by the next images instead of waiting for the collector.
+	 * @param inputFiles The image files
+	 * @param outputDir The directory in which the outputs are written
+	 * @return The input files for which the process failed (empty if all succeeded).
+	 */
+	private List<File> runWorkers(final List<File> inputFiles, final File outputDir) {
+		// Fair, so that a large image is not delayed indefinitely by smaller ones
+		final Semaphore memory = new Semaphore(this.m_memoryBudget, true);
+		// Images being processed, plus those loaded in advance
+		final Semaphore slots = new Semaphore(this.m_nbWorkers + this.m_readAhead, true);
+		// Single reader, so that the images are loaded in the order of the workers' queue
+		ExecutorService reader = Executors.newSingleThreadExecutor();
+		ExecutorService workers = Executors.newFixedThreadPool(this.m_nbWorkers);
+		final ExecutorService writers = Executors.newFixedThreadPool(this.m_nbWriters);
+		List<Future<Future<Boolean>>> results = new ArrayList<Future<Future<Boolean>>>();
+		for (final File inputFile : inputFiles){
+			final int reservation = getMemoryReservation(inputFile);
+			final Future<ImageCore> loadedImage = reader.submit(new Callable<ImageCore>() {
+				@Override
+				public ImageCore call() throws Exception {
+					slots.acquire();
+					memory.acquire(reservation);
+					try {
+						return BatchImageProcessRunner.this.m_imageFactory.getImageCore(inputFile.getPath());
+					} catch (Exception e) {
+						memory.release(reservation);
+						slots.release();
+						throw e;
+					}
+				}
+			});
+			results.add(workers.submit(new Callable<Future<Boolean>>() {
+				@Override
+				public Future<Boolean> call() throws Exception {
+					// If the loading failed, the reservation has been released by the reader
+					final ImageCore image = loadedImage.get();
+					ImageCore output = null;
+					try {
+						output = processImage(inputFile, image);
+					} finally {
+						if (output == null){
+							image.close();
+							memory.release(reservation);
+							slots.release();
+						}
+					}
+					if (output == null){
+						return null;
+					}
+					final ImageCore outputImage = output;
+					return writers.submit(new Callable<Boolean>() {
+						@Override
+						public Boolean call() throws Exception {
+							try {
+								writeOutput(inputFile, outputImage, outputDir);
+								return Boolean.TRUE;
+							} finally {
+								// The output may be the input image, or a view on its slices
+								outputImage.close();
+								if (image != outputImage){
+									image.close();
+								}
+								memory.release(reservation);
+								slots.release();
+							}
+						}
+					});
+				}
+			}));
+		}
+		reader.shutdown();
+		workers.shutdown();
+
+		List<File> failures = new ArrayList<File>();
+		for (int i = 0 ; i < results.size() ; i++){
+			try {
+				Future<Boolean> written = results.get(i).get();
+				if (written == null){
+					failures.add(inputFiles.get(i));
+				}else{
+					written.get();
+				}
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				while (cause instanceof ExecutionException && cause.getCause() != null){
+					cause = cause.getCause();
+				}
+				System.err.println("Batch: processing of " + inputFiles.get(i) + " failed:");
+				cause.printStackTrace();
+				failures.add(inputFiles.get(i));
+			} catch (InterruptedException e) {
+				reader.shutdownNow();
+				workers.shutdownNow();
+				writers.shutdownNow();
+				Thread.currentThread().interrupt();
+				failures.addAll(inputFiles.subList(i, inputFiles.size()));
+				return failures;
+			}
+		}
+		writers.shutdown();
+		return failures;
+	}
+
+
+	/**
+	 * @param inputFile An image file
+	 * @return The memory reserved for processing the image, in MEMORY_UNIT,
+	 * 		   at most the memory budget.
+	 */
+	private int getMemoryReservation(File inputFile){
+		double estimate = Math.ceil(inputFile.length()*this.m_memoryFactor/MEMORY_UNIT);
+		return (int)Math.max(1, Math.min(this.m_memoryBudget, estimate));
+	}
+
+
+	/**
+	 * Runs a new process on an image.
+	 * @param inputFile The image file, for the messages and as option of the process
+	 * @param image The image loaded from the file
+	 * @return The output of the process, or null if the output is not an image.
+	 */
+	private ImageCore processImage(File inputFile, ImageCore image) {
+		PluginFilterGeneric process = this.m_processFactory.createProcess(image);
+		process.moveInputToCurrent(process.getOutputDataKind() == OutputDataKind.CreatedFromInputCopy);
+		process.runProcess(null, inputFile.getParent());
+		Object output = process.getOutputObject();
+		if (output == null){
+			output = process.getCurrentImage();
+		}
+		if (!(output instanceof ImageCore)){
+			System.err.println("Batch: the output for " + inputFile + " is not an image: " + output);
+			return null;
+		}
+		return (ImageCore)output;
+	}
+
+
+	/**
+	 * Writes the output of the process on an image with its metadata.
+	 * @param inputFile The image file, whose base name is used for the output
+	 * @param output The output of the process
+	 * @param outputDir The directory in which the output is written
+	 * @throws IOException in case of failure to write the output
+	 */
+	private void writeOutput(File inputFile, ImageCore output, File outputDir) throws IOException {
+		String name = inputFile.getName();
+		int dot = name.lastIndexOf('.');
+		String basename = dot > 0 ? name.substring(0, dot) : name;
+		// The metadata file names are appended to the directory without separator
+		output.writeToFileWithMetaData(outputDir.getPath() + File.separator, basename, this.m_outputExtension);
+		System.err.println("Batch: " + inputFile + " done.");
+	}
+
+
+	/**
+	 * Runs the connected components segmentation on the images of a directory.
+	 * @param args input directory, glob pattern (e.g. "*.tif"), output directory
+	 * 			   and optionally the number of workers (2 by default).
+	 */
+	public static void main(String[] args) {
+		if (args.length < 3){
+			System.err.println("Usage: BatchImageProcessRunner inputDir glob outputDir [nbWorkers]");
+			return;
+		}
+		final GuiFramework guiFramework = GlobalOptions.getDefaultGuiFramework();
+		BatchImageProcessRunner runner = new BatchImageProcessRunner(
+			new ProcessFactory() {
+				@Override
+				public PluginFilterGeneric createProcess(ImageCore image) {
+					return new ConnectedComponentsSegmentation(image, RetrievalPolicy.TryConfFileNoDialog,
+															RenderToolFactoryIJ.getInstance().getRenderTool(),
+															guiFramework);
+				}
+			},
+			ImageCoreFactoryIJ.getInstance(),
+			args.length > 3 ? Integer.parseInt(args[3]) : 2);
+		try {
+			List<File> failures = runner.run(new File(args[0]), args[1], new File(args[2]));
+			System.err.println("Batch complete, failures: " + Arrays.toString(failures.toArray()));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+} // End of class
@@ -25,6 +25,7 @@ import wrapScienceJ.metaData.sets.*;
 
 import wrapScienceJ.resource.generic.ModelCoreGeneric;
 import wrapScienceJ.utils.ResourcesMonitor;
+import wrapScienceJ.wrapImaJ.connectivity.FusedBlurThresholdLabeling;
 import wrapScienceJ.wrapImaJ.connectivity.ConnectedComponent;
 import wrapScienceJ.wrapImaJ.connectivity.LabelingPolicy;
 import wrapScienceJ.wrapImaJ.core.ImageCore;
@@ -192,16 +193,16 @@ public class Blur3DThresholdOtsuComponents3D extends GenericImageProcessConcrete
 		
 		image.getPreferedRenderTool().display(image);
 		
-		System.err.println("Blurring image...");
-		image.getImageBlur().getBinomialBlur(6, 6, 1);
-		System.err.println("Blurr done. Thresholding...");
-		image.getImageThresholding().thresholdImageAndBinarize(ThresholdingOption.Otsu, true);
-		System.err.println("Thresholding done. ");
 		ConnectedComponent cc;
 		try { 
 			this.m_processMetaData.debugAttrib();
 			//System.err.println("Labelling Components with parameters\n"+getConfig());
-			cc = ConnectedComponent.getLabeledComponents(image,
+			System.err.println("Blurring, thresholding and labeling image...");
+			// The image is blurred by a normalized 6x6x1 binomial mask (the former
+			// getBinomialBlur(6, 6, 1) call only built the mask without applying it),
+			// and the thresholding is fused with the labeling.
+			cc = new FusedBlurThresholdLabeling(image, 6, 6, 1).segment(
+											ThresholdingOption.Otsu,
 											LabelingPolicy.Full3D,
 											this.m_processMetaData.getForegroungColor(), 
 											this.m_processMetaData.removeBorderComponents(),
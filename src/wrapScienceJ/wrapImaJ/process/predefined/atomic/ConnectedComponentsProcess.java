@@ -22,11 +22,16 @@ import wrapScienceJ.gui.GuiFramework;
 import wrapScienceJ.metaData.container.MetaDataRetriever.RetrievalPolicy;
 
 import wrapScienceJ.metaData.sets.*;
+import wrapScienceJ.resource.ResourceCore;
 import wrapScienceJ.resource.generic.ModelCoreGeneric;
 import wrapScienceJ.utils.ResourcesMonitor;
+import wrapScienceJ.utils.SliceScheduler;
+import wrapScienceJ.utils.SliceScheduler.SliceTask;
 import wrapScienceJ.wrapImaJ.connectivity.ConnectedComponent;
 import wrapScienceJ.wrapImaJ.connectivity.LabelingPolicy;
+import wrapScienceJ.wrapImaJ.connectivity.filtering.predefined.ComponentRemovalNone;
 import wrapScienceJ.wrapImaJ.core.ImageCore;
+import wrapScienceJ.wrapImaJ.core.SliceBuffer;
 import wrapScienceJ.wrapImaJ.gui.render.RenderTool;
 import wrapScienceJ.wrapImaJ.process.GenericImageProcessConcrete;
 
@@ -169,6 +174,93 @@ public class ConnectedComponentsProcess extends GenericImageProcessConcrete {
 	/** The process concrete metadata as an instance of the ProcessMetaData class above */
 	private ProcessMetaData m_processMetaData;
 	
+	/**
+	 * If true, the labeling of a run is kept (which requires two arrays of labels,
+	 * i.e. 8 bytes per voxel between runs, or 4 bytes for the policies which store the labels as shorts), so that it is filtered again instead of labeling
+	 * the voxels again when the process is run again on an unmodified input with the same
+	 * foreground color (e.g. for a sweep over the lowest volume or the removal of the border components).
+	 */
+	private boolean m_refilteringEnabled = false;
+	
+	/**
+	 * Labeling of the previous run, which is filtered again when the process is run again
+	 * on the same unmodified input with the same foreground color
+	 * (null unless the refiltering is enabled).
+	 */
+	private ConnectedComponent m_connectedComponent;
+	
+	/** Input of the previous run */
+	private ResourceCore m_labeledInput;
+	
+	/** Fingerprint of the gray levels of the input at the end of the previous run,
+	 * which detects the modifications of the input between runs */
+	private long m_labeledInputFingerprint;
+	
+	/** Foreground color of the previous run */
+	private int m_labeledForegroundColor;
+	
+	/**
+	 * Enables or disables the refiltering of the labeling of the previous run, when the process
+	 * is run again on the same unmodified input with the same foreground color.
+	 * The refiltering is disabled by default, since the labeling kept between runs requires
+	 * 8 bytes per voxel (e.g. in batch runs, in which each process is run only once).
+	 * Disabling the refiltering releases the kept labeling.
+	 * @param refilteringEnabled true if the labeling should be kept to be filtered again.
+	 */
+	public void setRefilteringEnabled(boolean refilteringEnabled){
+		this.m_refilteringEnabled = refilteringEnabled;
+		if (!refilteringEnabled){
+			releaseLabeling();
+		}
+	}
+	
+	/**
+	 * @return true if the labeling of a run is kept to be filtered again by the next run
+	 * 		   (see {@link #setRefilteringEnabled(boolean)}).
+	 */
+	public boolean isRefilteringEnabled(){
+		return this.m_refilteringEnabled;
+	}
+	
+	/**
+	 * Releases the labeling kept from the previous run (if any), e.g. at the end of a parameter sweep.
+	 * The next run labels the voxels again.
+	 */
+	public void releaseLabeling(){
+		if (this.m_connectedComponent != null){
+			this.m_connectedComponent.releaseRawLabeling();
+			this.m_connectedComponent = null;
+		}
+		this.m_labeledInput = null;
+	}
+	
+	/**
+	 * Computes a fingerprint of the gray levels of an image, in a parallel pass over its slices,
+	 * in order to detect the modifications of the image (with a negligible probability of collision).
+	 * @param image The image
+	 * @return A hash of the gray levels of the image
+	 */
+	private static long getFingerprint(ImageCore image){
+		final SliceBuffer[] slices = SliceBuffer.getSliceBuffers(image);
+		final long[] sliceHashes = new long[slices.length];
+		SliceScheduler.forEachSlice(slices.length, new SliceTask() {
+			@Override
+			public void processSlice(int z) {
+				SliceBuffer slice = slices[z];
+				long hash = 1;
+				for (int index=0 ; index<slice.getSize() ; index++){
+					hash = 31*hash + slice.get(index);
+				}
+				sliceHashes[z] = hash;
+			}
+		});
+		long fingerprint = slices.length;
+		for (long sliceHash : sliceHashes){
+			fingerprint = 1000003*fingerprint + sliceHash;
+		}
+		return fingerprint;
+	}
+	
 	/**
 	 * @see GenericImageProcessConcrete#getDefautTitle()
 	 */
@@ -203,12 +295,38 @@ public class ConnectedComponentsProcess extends GenericImageProcessConcrete {
 		
 		try { 
 			//System.err.println("Labelling Components with parameters\n"+getConfig());
-			cc = ConnectedComponent.getLabeledComponents(image,
+			ResourceCore input = getInputResource();
+			if (this.m_refilteringEnabled && this.m_connectedComponent != null &&
+				this.m_labeledInput == input && input instanceof ImageCore &&
+				this.m_labeledForegroundColor == this.m_processMetaData.getForegroungColor() &&
+				this.m_labeledInputFingerprint == getFingerprint((ImageCore)input)){
+				// Only the filtering parameters may have changed: filter the kept labeling again
+				cc = this.m_connectedComponent;
+				cc.refilterComponents(image,
+									  this.m_processMetaData.removeBorderComponents(),
+									  this.m_processMetaData.getVolumeThreshold(), 
+									  this.m_processMetaData.setRandomColors());
+			}else{
+				// The kept labeling (if any) can't be reused
+				releaseLabeling();
+				cc = ConnectedComponent.getLabeledComponents(image,
 											LabelingPolicy.Full3D,
 											this.m_processMetaData.getForegroungColor(), 
 											this.m_processMetaData.removeBorderComponents(),
 											this.m_processMetaData.getVolumeThreshold(), 
-											this.m_processMetaData.setRandomColors());
+											new ComponentRemovalNone(), // Don't remove components
+											true, // keep predicate (Don't remove components)
+											this.m_processMetaData.setRandomColors(),
+											this.m_refilteringEnabled // keep the labeling to filter it again
+											);
+			}
+			if (this.m_refilteringEnabled && input instanceof ImageCore){
+				// The input may have been modified by the filtering (if the output is the input itself)
+				this.m_connectedComponent = cc;
+				this.m_labeledInput = input;
+				this.m_labeledInputFingerprint = getFingerprint((ImageCore)input);
+				this.m_labeledForegroundColor = this.m_processMetaData.getForegroungColor();
+			}
 			// print connected components informations :
 			System.err.println(cc);
 			System.err.println("Ressource performance:\n" 
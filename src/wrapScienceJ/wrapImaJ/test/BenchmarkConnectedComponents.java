@@ -0,0 +1,129 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File: BenchmarkConnectedComponents.java                                  * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+
+
+package wrapScienceJ.wrapImaJ.test;
+
+import java.util.Random;
+
+import wrapScienceJ.factory.image.ImageCoreFactoryIJ;
+import wrapScienceJ.utils.ResourcesMonitor;
+import wrapScienceJ.wrapImaJ.connectivity.ConnectedComponent;
+import wrapScienceJ.wrapImaJ.connectivity.LabelingPolicy;
+import wrapScienceJ.wrapImaJ.core.ImageCore;
+import wrapScienceJ.wrapImaJ.core.SliceBuffer;
+
+
+/**
+ * Measures the throughput (in voxels per second) of connected components labeling
+ * on synthetic binary images, which do not require any input file.
+ *
+ * The synthetic images are made of random overlapping balls, which mimics
+ * a segmentation of nuclei, with a large proportion of foreground voxels.
+ *
+ * @see wrapScienceJ.wrapImaJ.connectivity.ConnectedComponent
+ *
+ * @author Remy Malgouyres
+ */
+public class BenchmarkConnectedComponents {
+
+	/**
+	 * Creates a binary GRAY8 image made of random balls (white on a black background).
+	 * @param width Width of the image
+	 * @param height Height of the image
+	 * @param depth Depth (number of slices) of the image
+	 * @param nBalls Number of balls drawn in the image
+	 * @param maxRadius Maximal radius of the balls (in voxels)
+	 * @param seed Seed of the random generator, for reproducibility
+	 * @return The synthetic binary image
+	 */
+	public static ImageCore getSyntheticBinaryImage(int width, int height, int depth,
+													int nBalls, int maxRadius, long seed){
+		ImageCore image = ImageCoreFactoryIJ.getInstance().getEmptyImageCore(width, height, depth, 8);
+		SliceBuffer[] slices = SliceBuffer.getSliceBuffers(image);
+		Random random = new Random(seed);
+		for (int n=0 ; n<nBalls ; n++){
+			int xCenter = random.nextInt(width);
+			int yCenter = random.nextInt(height);
+			int zCenter = random.nextInt(depth);
+			int radius = 1 + random.nextInt(maxRadius);
+			for (int z=Math.max(0, zCenter-radius) ; z<=Math.min(depth-1, zCenter+radius) ; z++){
+				for (int y=Math.max(0, yCenter-radius) ; y<=Math.min(height-1, yCenter+radius) ; y++){
+					for (int x=Math.max(0, xCenter-radius) ; x<=Math.min(width-1, xCenter+radius) ; x++){
+						int dx = x-xCenter, dy = y-yCenter, dz = z-zCenter;
+						if (dx*dx + dy*dy + dz*dz <= radius*radius){
+							slices[z].set(x, y, 255);
+						}
+					}
+				}
+			}
+		}
+		image.setTitle("Synthetic Binary Image");
+		return image;
+	}
+
+
+	/**
+	 * Labels the connected components of copies of a binary image several times
+	 * and prints the number of voxels processed per second.
+	 * @param binaryImage The binary GRAY8 image with foreground 255
+	 * @param labelingPolicy Can be 3D components labeling, or slice by slice against a given axis.
+	 * @param nRuns Number of timed runs (an untimed warm up run is performed first)
+	 * @return The best throughput among the runs, in voxels per second
+	 */
+	public static double benchmarkLabeling(ImageCore binaryImage, LabelingPolicy labelingPolicy, int nRuns){
+		long nVoxels = (long)binaryImage.getWidth()*binaryImage.getHeight()*binaryImage.getDepth();
+		double bestThroughput = 0.0;
+		for (int run=0 ; run<=nRuns ; run++){
+			ImageCore copy = binaryImage.duplicate();
+			long start = System.nanoTime();
+			ConnectedComponent connectedComp = copy.getImageConnectedComponents()
+												   .getLabeledComponents(
+														   labelingPolicy,
+														   255, // Foreground
+														   false, // Don't remove components on the border
+														   0.0, // No threshold on components volume
+														   false // Don't set random colors
+														   );
+			double seconds = (System.nanoTime()-start)*1e-9;
+			double throughput = nVoxels/seconds;
+			if (run > 0){ // run 0 is a warm up
+				System.out.println(labelingPolicy + ", run " + run + ": "
+									+ connectedComp.getNumberOfComponents() + " components, "
+									+ String.format("%.3f", Double.valueOf(seconds)) + " s, "
+									+ String.format("%.3e", Double.valueOf(throughput)) + " voxels/s");
+				bestThroughput = Math.max(bestThroughput, throughput);
+			}
+		}
+		return bestThroughput;
+	}
+
+
+	/**
+	 * Main function to run the benchmarks in this class.
+	 *
+	 * @param args
+	 */
+	public static void main(String[] args) {
+
+		ImageCore binaryImage = getSyntheticBinaryImage(512, 512, 64, 2000, 12, 42L);
+
+		for (LabelingPolicy labelingPolicy : new LabelingPolicy[]{LabelingPolicy.Full3D_noSecureSize,
+																   LabelingPolicy.Full3D_Parallel}){
+			double throughput = benchmarkLabeling(binaryImage, labelingPolicy, 5);
+			System.out.println(labelingPolicy + ", best throughput: "
+								+ String.format("%.3e", Double.valueOf(throughput)) + " voxels/s");
+		}
+
+		System.out.println(ResourcesMonitor.getRessourceInfo());
+
+		System.out.println("The program ended normally.");
+	}
+
+} // End of class
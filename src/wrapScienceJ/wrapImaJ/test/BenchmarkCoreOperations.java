@@ -0,0 +1,348 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File: BenchmarkCoreOperations.java                                       * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+
+
+package wrapScienceJ.wrapImaJ.test;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import wrapScienceJ.factory.image.ImageCoreFactoryIJ;
+import wrapScienceJ.utils.ResourcesMonitor;
+import wrapScienceJ.wrapImaJ.connectivity.LabelingPolicy;
+import wrapScienceJ.wrapImaJ.core.CoordinateAxis;
+import wrapScienceJ.wrapImaJ.core.ImageCore;
+import wrapScienceJ.wrapImaJ.core.ImageCoreGray8;
+import wrapScienceJ.wrapImaJ.core.SliceBuffer;
+import wrapScienceJ.wrapImaJ.core.VoxelInt;
+import wrapScienceJ.wrapImaJ.core.operation.ThresholdingOption;
+import wrapScienceJ.wrapImaJ.core.operation.convolve.GaussianBlurPolicy;
+import wrapScienceJ.wrapImaJ.wrappers.imagej.core.operation.GaussianBlurIJ;
+
+
+/**
+ * Measures the running time of the core image operations on synthetic GRAY8 and GRAY16
+ * stacks of several sizes, which do not require any input file, so that the effect of
+ * performance work can be measured and regressions detected.
+ *
+ * Each operation is run a few times untimed (warm up of the just in time compiler),
+ * then several timed runs are performed, each on a fresh copy of the input image when
+ * the operation modifies the image (the copy is not timed). The median and best running
+ * times are reported, together with the throughput in voxels per second.
+ *
+ * Usage: BenchmarkCoreOperations [operationNameFilter [nRuns [maxWidth]]]
+ *
+ * @see BenchmarkConnectedComponents
+ *
+ * @author Remy Malgouyres
+ */
+public class BenchmarkCoreOperations {
+
+	/**
+	 * An operation to benchmark on an input image
+	 */
+	public static abstract class Operation {
+
+		/**
+		 * Name of the operation, used in the reports and to select the operations to run
+		 */
+		private final String m_name;
+
+		/**
+		 * True if the operation modifies its input, which then needs to be copied before each run
+		 */
+		private final boolean m_modifiesImage;
+
+		/**
+		 * True if the operation requires a binary GRAY8 image (white foreground on a black background)
+		 */
+		private final boolean m_binaryInput;
+
+		/**
+		 * @param name Name of the operation
+		 * @param modifiesImage True if the operation modifies its input image
+		 * @param binaryInput True if the operation requires a binary GRAY8 image
+		 */
+		public Operation(String name, boolean modifiesImage, boolean binaryInput){
+			this.m_name = name;
+			this.m_modifiesImage = modifiesImage;
+			this.m_binaryInput = binaryInput;
+		}
+
+		/**
+		 * @return The name of the operation
+		 */
+		public String getName(){
+			return this.m_name;
+		}
+
+		/**
+		 * @return True if the operation modifies its input image
+		 */
+		public boolean modifiesImage(){
+			return this.m_modifiesImage;
+		}
+
+		/**
+		 * @return True if the operation requires a binary GRAY8 image
+		 */
+		public boolean requiresBinaryInput(){
+			return this.m_binaryInput;
+		}
+
+		/**
+		 * Performs the operation (this is the timed part of a run).
+		 * @param image The input image of the operation
+		 * @return A value depending on the result, which prevents the computation
+		 * 		   from being optimized away.
+		 */
+		public abstract long run(ImageCore image);
+	}
+
+
+	/**
+	 * Accumulates the values returned by the operations, so that the just in time
+	 * compiler cannot eliminate the computations.
+	 */
+	private static long m_sink = 0;
+
+
+	/**
+	 * Creates a gray level image made of random balls (bright on a dark background)
+	 * with additive uniform noise.
+	 * @param width Width of the image
+	 * @param height Height of the image
+	 * @param depth Depth (number of slices) of the image
+	 * @param bitDepth Number of bits per voxel (8 or 16)
+	 * @param seed Seed of the random generator, for reproducibility
+	 * @return The synthetic gray level image
+	 */
+	public static ImageCore getSyntheticGrayImage(int width, int height, int depth, int bitDepth, long seed){
+		ImageCore binaryImage = BenchmarkConnectedComponents.getSyntheticBinaryImage(
+													width, height, depth,
+													Math.max(1, width*height*depth/4000), 12, seed);
+		ImageCore image = ImageCoreFactoryIJ.getInstance().getEmptyImageCore(width, height, depth, bitDepth);
+		SliceBuffer[] binarySlices = SliceBuffer.getSliceBuffers(binaryImage);
+		SliceBuffer[] slices = SliceBuffer.getSliceBuffers(image);
+		int halfWhite = image.getWhiteValue()/2;
+		Random random = new Random(seed);
+		for (int z=0 ; z<depth ; z++){
+			for (int i=0 ; i<slices[z].getSize() ; i++){
+				int foreground = binarySlices[z].get(i) == 0 ? 0 : halfWhite;
+				slices[z].set(i, foreground + random.nextInt(halfWhite));
+			}
+		}
+		image.setTitle("Synthetic Gray Image");
+		return image;
+	}
+
+
+	/**
+	 * @return The list of the benchmarked operations
+	 */
+	public static List<Operation> getOperations(){
+		List<Operation> operations = new ArrayList<Operation>();
+		operations.add(new Operation("VoxelAccess_getVoxel", false, false) {
+			@Override
+			public long run(ImageCore image) {
+				long sum = 0;
+				for (int z=0 ; z<image.getDepth() ; z++){
+					for (int y=0 ; y<image.getHeight() ; y++){
+						for (int x=0 ; x<image.getWidth() ; x++){
+							sum += image.getVoxel(x, y, z);
+						}
+					}
+				}
+				return sum;
+			}
+		});
+		operations.add(new Operation("VoxelAccess_SliceBuffer", false, false) {
+			@Override
+			public long run(ImageCore image) {
+				long sum = 0;
+				for (SliceBuffer slice : SliceBuffer.getSliceBuffers(image)){
+					for (int i=0 ; i<slice.getSize() ; i++){
+						sum += slice.get(i);
+					}
+				}
+				return sum;
+			}
+		});
+		operations.add(new Operation("BinomialBlur_6_6_1", true, false) {
+			@Override
+			public long run(ImageCore image) {
+				image.getImageBlur().getBinomialBlur(6, 6, 1).applyMask();
+				return image.getVoxel(0, 0, 0);
+			}
+		});
+		operations.add(new Operation("GaussianBlurIJ_2_2_1", true, false) {
+			@Override
+			public long run(ImageCore image) {
+				new GaussianBlurIJ(image.getImageSignPolicyEmbed(), image.getImageSignPolicyEmbed(),
+								   2.0, 2.0, 1.0, new VoxelInt(0, 0, 0)).applyMask();
+				return image.getVoxel(0, 0, 0);
+			}
+		});
+		operations.add(new Operation("GaussianBlurSeparable_2_2_1", true, false) {
+			@Override
+			public long run(ImageCore image) {
+				image.getImageBlur().getGaussianBlur(2.0, 2.0, 1.0, GaussianBlurPolicy.SeparableConvolution)
+									.applyMask();
+				return image.getVoxel(0, 0, 0);
+			}
+		});
+		operations.add(new Operation("GaussianBlurRecursive_2_2_1", true, false) {
+			@Override
+			public long run(ImageCore image) {
+				image.getImageBlur().getGaussianBlur(2.0, 2.0, 1.0, GaussianBlurPolicy.RecursiveFilter)
+									.applyMask();
+				return image.getVoxel(0, 0, 0);
+			}
+		});
+		operations.add(new Operation("GradientNorm_1_1_1", true, false) {
+			@Override
+			public long run(ImageCore image) {
+				return image.getImageDifferential().getGradientNorm(1, 1, 1, 16, 100).getVoxel(0, 0, 0);
+			}
+		});
+		operations.add(new Operation("ConnectedComponents_Full3D_Parallel", true, true) {
+			@Override
+			public long run(ImageCore image) {
+				return image.getImageConnectedComponents()
+							.getLabeledComponents(LabelingPolicy.Full3D_Parallel,
+												  255, // Foreground
+												  false, // Don't remove components on the border
+												  0.0, // No threshold on components volume
+												  false // Don't set random colors
+												 )
+							.getNumberOfComponents();
+			}
+		});
+		operations.add(new Operation("BuildHistogram", false, false) {
+			@Override
+			public long run(ImageCore image) {
+				return ((ImageCoreGray8)image.getImageThresholding()).buildHistogram()[0];
+			}
+		});
+		operations.add(new Operation("ThresholdOtsuAndBinarize", true, false) {
+			@Override
+			public long run(ImageCore image) {
+				return image.getImageThresholding()
+							.thresholdImageAndBinarize(ThresholdingOption.Otsu, false)
+							.getVoxel(0, 0, 0);
+			}
+		});
+		operations.add(new Operation("AxisSwap_X_Z", false, false) {
+			@Override
+			public long run(ImageCore image) {
+				return image.getImageDomainTransform()
+							.getAxisSwapped(CoordinateAxis.X, CoordinateAxis.Z)
+							.getVoxel(0, 0, 0);
+			}
+		});
+		return operations;
+	}
+
+
+	/**
+	 * Runs an operation several times on (copies of) an image and prints the running times.
+	 * The diagnostic messages printed on the error stream by the operations are discarded
+	 * while timing.
+	 * @param operation The operation to benchmark
+	 * @param input The input image of the operation
+	 * @param nWarmUpRuns Number of untimed runs
+	 * @param nRuns Number of timed runs
+	 * @return The median running time in seconds
+	 */
+	public static double benchmark(Operation operation, ImageCore input, int nWarmUpRuns, int nRuns){
+		long nVoxels = (long)input.getWidth()*input.getHeight()*input.getDepth();
+		double[] seconds = new double[nRuns];
+		PrintStream err = System.err;
+		System.setErr(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+				// Discard the diagnostic messages
+			}
+		}));
+		try {
+			for (int run=0 ; run<nWarmUpRuns+nRuns ; run++){
+				ImageCore image = operation.modifiesImage() ? input.duplicate() : input;
+				long start = System.nanoTime();
+				m_sink += operation.run(image);
+				if (run >= nWarmUpRuns){
+					seconds[run-nWarmUpRuns] = (System.nanoTime()-start)*1e-9;
+				}
+			}
+		} finally {
+			System.setErr(err);
+		}
+		Arrays.sort(seconds);
+		double median = seconds[nRuns/2];
+		System.out.println(String.format("%-36s %4dx%4dx%3d %2d bits: median %9.3f ms, best %9.3f ms, %.3e voxels/s",
+										 operation.getName(),
+										 Integer.valueOf(input.getWidth()), Integer.valueOf(input.getHeight()),
+										 Integer.valueOf(input.getDepth()), Integer.valueOf(input.getBitDepth()),
+										 Double.valueOf(1e3*median), Double.valueOf(1e3*seconds[0]),
+										 Double.valueOf(nVoxels/median)));
+		return median;
+	}
+
+
+	/**
+	 * Main function to run the benchmarks in this class.
+	 *
+	 * @param args Optional arguments: a substring of the names of the operations to run,
+	 * 			   the number of timed runs (default 5), and the maximal width of the images (default 512).
+	 */
+	public static void main(String[] args) {
+
+		String filter = args.length > 0 ? args[0] : "";
+		int nRuns = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		int maxWidth = args.length > 2 ? Integer.parseInt(args[2]) : 512;
+
+		int[][] sizes = {{128, 128, 32}, {256, 256, 64}, {512, 512, 64}};
+
+		List<Operation> operations = getOperations();
+
+		for (int[] size : sizes){
+			if (size[0] > maxWidth){
+				continue;
+			}
+			ImageCore binaryImage = BenchmarkConnectedComponents.getSyntheticBinaryImage(
+													size[0], size[1], size[2],
+													size[0]*size[1]*size[2]/4000, 12, 42L);
+			for (int bitDepth : new int[]{8, 16}){
+				ImageCore grayImage = getSyntheticGrayImage(size[0], size[1], size[2], bitDepth, 42L);
+				for (Operation operation : operations){
+					if (!operation.getName().contains(filter)){
+						continue;
+					}
+					if (operation.requiresBinaryInput()){
+						if (bitDepth == 8){
+							benchmark(operation, binaryImage, 2, nRuns);
+						}
+					}else{
+						benchmark(operation, grayImage, 2, nRuns);
+					}
+				}
+			}
+		}
+
+		System.out.println("(checksum " + m_sink + ")");
+
+		System.out.println(ResourcesMonitor.getRessourceInfo());
+
+		System.out.println("The program ended normally.");
+	}
+
+} // End of class
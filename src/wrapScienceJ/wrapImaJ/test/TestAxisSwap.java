@@ -0,0 +1,130 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File: TestAxisSwap.java                                                  * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+
+
+package wrapScienceJ.wrapImaJ.test;
+
+import wrapScienceJ.config.GlobalOptions;
+import wrapScienceJ.wrapImaJ.core.CoordinateAxis;
+import wrapScienceJ.wrapImaJ.core.ImageCore;
+import wrapScienceJ.wrapImaJ.core.operation.generic.ImageDomainTransformGeneric;
+
+
+/**
+ * Checks the axis swaps of images ({@link ImageDomainTransformGeneric#getAxisSwapped(CoordinateAxis, CoordinateAxis)}
+ * and {@link ImageDomainTransformGeneric#copyAxisSwapped(ImageCore, CoordinateAxis, CoordinateAxis)}),
+ * which transpose the slices by tiles in parallel, against a naive copy of the voxels one by one,
+ * for sizes which are not multiples of the tile size and several degrees of parallelism.
+ * The swap of an image swapped back must be the image itself.
+ *
+ * @author Rémy Malgouyres
+ */
+public class TestAxisSwap {
+
+	/** Pairs of swapped axis */
+	private static final CoordinateAxis[][] SWAPS = {{CoordinateAxis.X, CoordinateAxis.Y},
+													 {CoordinateAxis.Y, CoordinateAxis.X},
+													 {CoordinateAxis.X, CoordinateAxis.Z},
+													 {CoordinateAxis.Z, CoordinateAxis.X},
+													 {CoordinateAxis.Y, CoordinateAxis.Z},
+													 {CoordinateAxis.Z, CoordinateAxis.Y}};
+
+
+	/**
+	 * @param swapped An image
+	 * @param image Another image
+	 * @param swap The swapped axis
+	 * @return true if the gray level of each voxel of swapped is the gray level of the voxel
+	 * 		   of image whose coordinates along the swapped axis are exchanged
+	 */
+	static boolean isSwapOf(ImageCore swapped, ImageCore image, CoordinateAxis[] swap){
+		int a1 = swap[0].getValue()-1;
+		int a2 = swap[1].getValue()-1;
+		int[] size = {image.getWidth(), image.getHeight(), image.getDepth()};
+		int[] swappedSize = size.clone();
+		swappedSize[a1] = size[a2];
+		swappedSize[a2] = size[a1];
+		if (swapped.getWidth() != swappedSize[0] || swapped.getHeight() != swappedSize[1]
+			|| swapped.getDepth() != swappedSize[2]){
+			return false;
+		}
+		int[] coords = new int[3];
+		int[] imageCoords = new int[3];
+		for (coords[2]=0 ; coords[2]<swappedSize[2] ; coords[2]++){
+			for (coords[1]=0 ; coords[1]<swappedSize[1] ; coords[1]++){
+				for (coords[0]=0 ; coords[0]<swappedSize[0] ; coords[0]++){
+					imageCoords[0] = coords[0];
+					imageCoords[1] = coords[1];
+					imageCoords[2] = coords[2];
+					imageCoords[a1] = coords[a2];
+					imageCoords[a2] = coords[a1];
+					if (swapped.getVoxel(coords[0], coords[1], coords[2])
+						!= image.getVoxel(imageCoords[0], imageCoords[1], imageCoords[2])){
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+
+	/**
+	 * Checks the swaps of all the pairs of axis.
+	 * @param bitDepth Number of bits per voxel (8 or 16)
+	 * @param width Width of the image
+	 * @param height Height of the image
+	 * @param depth Depth of the image
+	 */
+	static void testSwaps(int bitDepth, int width, int height, int depth){
+		String name = "GRAY" + bitDepth + ", " + width + "x" + height + "x" + depth;
+		ImageCore image = BenchmarkCoreOperations.getSyntheticGrayImage(width, height, depth, bitDepth, 7L);
+		ImageCore original = image.duplicate();
+		int parallelism = GlobalOptions.getParallelism();
+		for (CoordinateAxis[] swap : SWAPS){
+			String swapName = name + ", swap " + swap[0] + " " + swap[1];
+			boolean swapOk = true, copyOk = true, roundTripOk = true;
+			for (int p : new int[]{1, 3}){
+				GlobalOptions.setParallelism(p);
+				ImageCore swapped = image.getImageDomainTransform().getAxisSwapped(swap[0], swap[1]);
+				swapOk &= isSwapOf(swapped, image, swap);
+
+				ImageCore destination = image.getPreferedFactory().getEmptyImageCore(swapped.getWidth(),
+																	swapped.getHeight(), swapped.getDepth(), bitDepth);
+				image.getImageDomainTransform().copyAxisSwapped(destination, swap[0], swap[1]);
+				copyOk &= TestChecks.haveSameVoxels(destination, swapped);
+
+				ImageCore back = image.getPreferedFactory().getEmptyImageCore(width, height, depth, bitDepth);
+				swapped.getImageDomainTransform().copyAxisSwapped(back, swap[1], swap[0]);
+				roundTripOk &= TestChecks.haveSameVoxels(back, image);
+			}
+			GlobalOptions.setParallelism(parallelism);
+			TestChecks.check(swapName + ": swapped image", swapOk);
+			TestChecks.check(swapName + ": copy into an image", copyOk);
+			TestChecks.check(swapName + ": swapped back", roundTripOk);
+		}
+		TestChecks.check(name + ": image unchanged", TestChecks.haveSameVoxels(image, original));
+	}
+
+
+	/**
+	 * Main function of the checks.
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		testSwaps(8, 150, 70, 67);
+		testSwaps(16, 150, 70, 67);
+		testSwaps(8, 64, 128, 3);
+		testSwaps(16, 1, 65, 130);
+
+		TestChecks.printSummary();
+		System.err.println("The program ended normally.");
+	}
+
+} // End of class
@@ -0,0 +1,275 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File: TestBatchImageProcessRunner.java                                   * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+
+
+package wrapScienceJ.wrapImaJ.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import wrapScienceJ.config.GlobalOptions;
+import wrapScienceJ.factory.image.ImageCoreFactoryIJ;
+import wrapScienceJ.metaData.container.MetaDataRetriever.RetrievalPolicy;
+import wrapScienceJ.process.ProcessInputOutput.OutputDataKind;
+import wrapScienceJ.wrapImaJ.core.ImageCore;
+import wrapScienceJ.wrapImaJ.process.BatchImageProcessRunner;
+import wrapScienceJ.wrapImaJ.process.BatchImageProcessRunner.ProcessFactory;
+import wrapScienceJ.wrapImaJ.process.plugins.PluginFilterGeneric;
+import wrapScienceJ.wrapImaJ.process.predefined.atomic.ThresholdingProcess;
+
+
+/**
+ * Checks the headless batch runner ({@link BatchImageProcessRunner}) on a temporary directory
+ * of synthetic images: selection of the files, validation of the parameters, outputs written
+ * with the base names of the inputs and equal to the output of the process run in memory,
+ * report of the files which cannot be processed, and restoration of the display option.
+ * The outputs must not depend on the numbers of workers, images loaded in advance and writers,
+ * nor on the memory budget, even smaller than the memory reserved for a single image.
+ * The process is the thresholding, whose parameters are read from the default configuration file.
+ *
+ * @author Rémy Malgouyres
+ */
+public class TestBatchImageProcessRunner {
+
+	/** Names of the image files of the input directory, not sorted */
+	private static final String[] IMAGE_NAMES = {"img2.tif", "img0.tif", "img1.tif", "img3.tif"};
+
+	/** Name of a file of the input directory which matches the pattern but is not an image */
+	private static final String BROKEN_NAME = "img1_broken.tif";
+
+
+	/**
+	 * Creates the processes of the batch (thresholding and binarization, Otsu method by default)
+	 */
+	static final ProcessFactory THRESHOLDING_FACTORY = new ProcessFactory() {
+		@Override
+		public PluginFilterGeneric createProcess(ImageCore image) {
+			return new ThresholdingProcess(image, "Thresholding", RetrievalPolicy.TryConfFileNoDialog,
+										   "wrapProcess" + File.separator + "predefined" + File.separator,
+										   OutputDataKind.CreatedFromInputCopy);
+		}
+	};
+
+
+	/**
+	 * Runs a process in memory as the batch runner does for each image.
+	 * @param image An image, which is not modified
+	 * @return The output image of the process
+	 */
+	static ImageCore getProcessedInMemory(ImageCore image){
+		PluginFilterGeneric process = THRESHOLDING_FACTORY.createProcess(image.duplicate());
+		process.moveInputToCurrent(process.getOutputDataKind() == OutputDataKind.CreatedFromInputCopy);
+		process.runProcess(null, null);
+		Object output = process.getOutputObject();
+		return (ImageCore)(output == null ? process.getCurrentImage() : output);
+	}
+
+
+	/**
+	 * Creates the input directory: synthetic images of several sizes and bit depths,
+	 * a file which is not an image, and files which don't match the pattern "img*.tif".
+	 * @return The input directory
+	 * @throws IOException in case of failure to write the files
+	 */
+	static File createInputDirectory() throws IOException {
+		File dir = Files.createTempDirectory("TestBatchImageProcessRunner").toFile();
+		for (int i=0 ; i<IMAGE_NAMES.length ; i++){
+			ImageCore image = BenchmarkCoreOperations.getSyntheticGrayImage(40+10*i, 30+5*i, 6+i,
+																		   i == 3 ? 16 : 8, 100L+i);
+			image.writeToFile(new File(dir, IMAGE_NAMES[i]).getPath());
+		}
+		FileOutputStream broken = new FileOutputStream(new File(dir, BROKEN_NAME));
+		try {
+			broken.write("This is not an image".getBytes("UTF-8"));
+		} finally {
+			broken.close();
+		}
+		BenchmarkCoreOperations.getSyntheticGrayImage(20, 20, 2, 8, 1L)
+							   .writeToFile(new File(dir, "other.tif").getPath());
+		new File(dir, "img4.tif.bak").createNewFile();
+		new File(dir, "img5.tif").mkdir();
+		return dir;
+	}
+
+
+	/**
+	 * Deletes a directory and its content.
+	 * @param dir A directory
+	 */
+	static void deleteDirectory(File dir){
+		File[] files = dir.listFiles();
+		if (files != null){
+			for (File file : files){
+				if (file.isDirectory()){
+					deleteDirectory(file);
+				}else{
+					file.delete();
+				}
+			}
+		}
+		dir.delete();
+	}
+
+
+	/**
+	 * @param inputDir The input directory
+	 * @param outputDir The output directory of a batch on the images of the input directory
+	 * @return true if the output directory contains, for each image, a TIFF file with the
+	 * 		   same name whose gray levels are those of the output of the process run in memory.
+	 * @throws IOException in case of failure to read the images
+	 */
+	static boolean hasExpectedOutputs(File inputDir, File outputDir) throws IOException {
+		for (String name : IMAGE_NAMES){
+			File outputFile = new File(outputDir, name);
+			if (!outputFile.isFile()){
+				return false;
+			}
+			ImageCore expected = getProcessedInMemory(ImageCoreFactoryIJ.getInstance()
+													.getImageCore(new File(inputDir, name).getPath()));
+			ImageCore output = ImageCoreFactoryIJ.getInstance().getImageCore(outputFile.getPath());
+			if (!TestChecks.haveSameVoxels(output, expected)){
+				return false;
+			}
+		}
+		return true;
+	}
+
+
+	/**
+	 * Checks the selection of the input files by a glob pattern.
+	 * @param inputDir The input directory
+	 */
+	static void testListFiles(File inputDir){
+		try {
+			List<File> files = BatchImageProcessRunner.listFiles(inputDir, "img*.tif");
+			List<File> expected = new ArrayList<File>();
+			for (String name : new String[]{"img0.tif", "img1.tif", BROKEN_NAME, "img2.tif", "img3.tif"}){
+				expected.add(new File(inputDir, name));
+			}
+			TestChecks.check("list of the files matching a pattern, sorted by name", files.equals(expected));
+			TestChecks.check("no file matching a pattern",
+							 BatchImageProcessRunner.listFiles(inputDir, "*.png").isEmpty());
+		} catch (IOException e) {
+			e.printStackTrace();
+			TestChecks.check("list of the files matching a pattern", false);
+		}
+		boolean refused = false;
+		try {
+			BatchImageProcessRunner.listFiles(new File(inputDir, "missing"), "*.tif");
+		} catch (IOException e) {
+			refused = true;
+		}
+		TestChecks.check("exception for a missing directory", refused);
+	}
+
+
+	/**
+	 * Checks that invalid parameters of the runner are refused.
+	 */
+	static void testArguments(){
+		long[][] invalid = {{0, 1, 1, 6, 1 << 20}, {1, -1, 1, 6, 1 << 20}, {1, 1, 0, 6, 1 << 20},
+							{1, 1, 1, 0, 1 << 20}, {1, 1, 1, 6, 1000}};
+		int nRefused = 0;
+		for (long[] parameters : invalid){
+			try {
+				new BatchImageProcessRunner(THRESHOLDING_FACTORY, ImageCoreFactoryIJ.getInstance(),
+											(int)parameters[0], (int)parameters[1], (int)parameters[2],
+											parameters[3], parameters[4], "tif");
+			} catch (IllegalArgumentException e) {
+				nRefused++;
+			}
+		}
+		TestChecks.check("invalid parameters refused", nRefused == invalid.length);
+		boolean refused = false;
+		try {
+			new BatchImageProcessRunner(THRESHOLDING_FACTORY, ImageCoreFactoryIJ.getInstance(), 0);
+		} catch (IllegalArgumentException e) {
+			refused = true;
+		}
+		TestChecks.check("no worker refused", refused);
+	}
+
+
+	/**
+	 * Runs the batch on the images of the input directory with the default parameters.
+	 * @param inputDir The input directory
+	 * @throws IOException in case of failure to create the output directory or read the images
+	 */
+	static void testRun(File inputDir) throws IOException {
+		File outputDir = Files.createTempDirectory("TestBatchImageProcessRunner").toFile();
+		boolean displayEnabled = GlobalOptions.isDisplayEnabled();
+		List<File> failures = new BatchImageProcessRunner(THRESHOLDING_FACTORY, ImageCoreFactoryIJ.getInstance(), 2)
+								  .run(inputDir, "img*.tif", outputDir);
+		TestChecks.check("display option restored", GlobalOptions.isDisplayEnabled() == displayEnabled);
+		TestChecks.check("failure reported for the file which is not an image",
+						 failures.equals(Arrays.asList(new File(inputDir, BROKEN_NAME))));
+		TestChecks.check("outputs equal to the process run in memory", hasExpectedOutputs(inputDir, outputDir));
+		TestChecks.check("no output for the file which is not an image", !new File(outputDir, BROKEN_NAME).exists());
+		TestChecks.check("no output for the files which don't match the pattern",
+						 !new File(outputDir, "other.tif").exists());
+		deleteDirectory(outputDir);
+	}
+
+
+	/**
+	 * Runs the batch with several numbers of workers, images loaded in advance and writers,
+	 * and with a memory budget smaller than the reservation of a single image, on a list of files
+	 * which contains a file which is not an image and a missing file, whose loading fails.
+	 * The failures must not block the other images, whose outputs must be the same in all cases.
+	 * @param inputDir The input directory
+	 * @throws IOException in case of failure to list the files, create the output directories or read the images
+	 */
+	static void testPipelining(File inputDir) throws IOException {
+		List<File> inputFiles = BatchImageProcessRunner.listFiles(inputDir, "img*.tif");
+		File missing = new File(inputDir, "img1_missing.tif");
+		inputFiles.add(3, missing);
+		List<File> expectedFailures = Arrays.asList(new File(inputDir, BROKEN_NAME), missing);
+		// Workers, read-ahead, writers, memory factor and memory budget (in MB)
+		long[][] configurations = {{1, 0, 1, 6, 1024}, {3, 2, 2, 6, 1024}, {2, 4, 3, 1000, 1}, {4, 0, 1, 6, 1}};
+		for (long[] parameters : configurations){
+			String name = "workers " + parameters[0] + ", read-ahead " + parameters[1] + ", writers "
+						  + parameters[2] + ", budget " + parameters[4] + " MB";
+			File outputDir = Files.createTempDirectory("TestBatchImageProcessRunner").toFile();
+			List<File> failures = new BatchImageProcessRunner(THRESHOLDING_FACTORY, ImageCoreFactoryIJ.getInstance(),
+									(int)parameters[0], (int)parameters[1], (int)parameters[2],
+									parameters[3], parameters[4] << 20, "tif").run(inputFiles, outputDir);
+			TestChecks.check(name + ": failed loadings reported", failures.equals(expectedFailures));
+			TestChecks.check(name + ": outputs", hasExpectedOutputs(inputDir, outputDir));
+			deleteDirectory(outputDir);
+		}
+	}
+
+
+	/**
+	 * Main function of the checks.
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		try {
+			File inputDir = createInputDirectory();
+			testListFiles(inputDir);
+			testArguments();
+			testRun(inputDir);
+			testPipelining(inputDir);
+			deleteDirectory(inputDir);
+		} catch (IOException e) {
+			e.printStackTrace();
+			TestChecks.check("temporary files", false);
+		}
+
+		TestChecks.printSummary();
+		System.err.println("The program ended normally.");
+	}
+
+} // End of class
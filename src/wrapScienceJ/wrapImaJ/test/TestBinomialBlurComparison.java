@@ -0,0 +1,193 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File: TestBinomialBlurComparison.java                                    * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+
+
+package wrapScienceJ.wrapImaJ.test;
+
+import wrapScienceJ.config.GlobalOptions;
+import wrapScienceJ.factory.image.ImageCoreFactoryIJ;
+import wrapScienceJ.wrapImaJ.core.CoordinateAxis;
+import wrapScienceJ.wrapImaJ.core.ImageCore;
+import wrapScienceJ.wrapImaJ.core.VoxelInt;
+import wrapScienceJ.wrapImaJ.core.operation.convolve.ConvolutionBase;
+import wrapScienceJ.wrapImaJ.core.operation.convolve.generic.BinomialBlurGeneric;
+
+
+/**
+ * Checks the binomial blur along each axis ({@link BinomialBlurGeneric}), whose passes are applied
+ * to each line in a single sweep, against a naive computation which applies the (nPoints-1) sums
+ * of two voxels one pass after the other on the whole image, as the original implementation did.
+ * The (not normalized) sums are written into a GRAY16 output image, possibly smaller than the input
+ * image (margins), and must be exactly the same, for several bit depths of the input, numbers
+ * of points, skipping steps and degrees of parallelism.
+ *
+ * @author Rémy Malgouyres
+ */
+public class TestBinomialBlurComparison {
+
+	/** Numbers of points and skipping steps of the compared masks */
+	private static final int[][] MASKS = {{2, 1}, {3, 1}, {6, 1}, {7, 1}, {4, 2}, {5, 3}};
+
+	/** Margins of the input image along X, Y and Z (the output image is the input image without the margins) */
+	private static final int[][] MARGINS = {{0, 0, 0}, {3, 2, 1}};
+
+
+	/**
+	 * Applies the passes of the binomial mask to a line, each pass reading the result of the previous one.
+	 * Odd passes go backward. Along each chain of values distant from the skipping step, a value
+	 * is summed with its predecessor in the scanning direction, except for the first two values of
+	 * the chain: the first one has no predecessor, and the second one is left unchanged.
+	 * The values in the margins are never modified.
+	 * @param line The values of the line, replaced by the result
+	 * @param nPoints Cardinality of the support of the mask
+	 * @param step The skipping step
+	 * @param margin Number of values in the margin at each end of the line
+	 */
+	static void applyPassesNaive(long[] line, int nPoints, int step, int margin){
+		int length = line.length;
+		for (int i=1 ; i<nPoints ; i++){
+			boolean backward = (i & 0x00000001) == 1;
+			long[] previous = line.clone();
+			for (int x=margin ; x<length-margin ; x++){
+				// Index of x along the scanning direction
+				int scanIndex = backward ? length-1-x : x;
+				if (scanIndex >= 2*step){
+					line[x] = previous[x] + previous[backward ? x+step : x-step];
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * @param image The input image
+	 * @param axis The axis along which the mask is applied
+	 * @param nPoints Cardinality of the support of the mask
+	 * @param step The skipping step
+	 * @param margin The margins of the input image along X, Y and Z
+	 * @return The sums computed by the naive passes for the voxels of the output image, indexed by [z][y][x]
+	 */
+	static long[][][] getBlurNaive(ImageCore image, CoordinateAxis axis, int nPoints, int step, int[] margin){
+		int[] size = {image.getWidth(), image.getHeight(), image.getDepth()};
+		int a = axis.getValue()-1;
+		long[][][] result = new long[size[2]-2*margin[2]][size[1]-2*margin[1]][size[0]-2*margin[0]];
+		long[] line = new long[size[a]];
+		int[] coords = new int[3];
+		for (coords[2]=margin[2] ; coords[2]<size[2]-margin[2] ; coords[2]++){
+			for (coords[1]=margin[1] ; coords[1]<size[1]-margin[1] ; coords[1]++){
+				for (coords[0]=margin[0] ; coords[0]<size[0]-margin[0] ; coords[0]++){
+					int[] lineCoords = coords.clone();
+					for (int t=0 ; t<size[a] ; t++){
+						lineCoords[a] = t;
+						line[t] = image.getVoxel(lineCoords[0], lineCoords[1], lineCoords[2]);
+					}
+					applyPassesNaive(line, nPoints, step, margin[a]);
+					result[coords[2]-margin[2]][coords[1]-margin[1]][coords[0]-margin[0]] = line[coords[a]];
+				}
+			}
+		}
+		return result;
+	}
+
+
+	/**
+	 * @param image The input image
+	 * @param axis The axis along which the mask is applied
+	 * @param nPoints Cardinality of the support of the mask
+	 * @param step The skipping step
+	 * @param margin The margins of the input image along X, Y and Z
+	 * @return The GRAY16 output image of the mask, with the sums for the voxels of the image without the margins
+	 */
+	static ImageCore getBlur(ImageCore image, CoordinateAxis axis, int nPoints, int step, int[] margin){
+		ImageCore output = ImageCoreFactoryIJ.getInstance().getEmptyImageCore(image.getWidth()-2*margin[0],
+																			  image.getHeight()-2*margin[1],
+																			  image.getDepth()-2*margin[2], 16);
+		ConvolutionBase mask = new BinomialBlurGeneric(image.getImageSignPolicyEmbed(), output.getImageSignPolicyEmbed(),
+													   axis, nPoints, step,
+													   new VoxelInt(margin[0], margin[1], margin[2])).applyMask();
+		if (mask.getNormalizationDenominator() != (1 << (nPoints-1))){
+			throw new IllegalStateException("Wrong normalization denominator " + mask.getNormalizationDenominator());
+		}
+		return output;
+	}
+
+
+	/**
+	 * @param image An image
+	 * @param expected The expected gray levels, indexed by [z][y][x]
+	 * @return true if the image has the expected gray levels
+	 */
+	static boolean hasVoxels(ImageCore image, long[][][] expected){
+		for (int z=0 ; z<image.getDepth() ; z++){
+			for (int y=0 ; y<image.getHeight() ; y++){
+				for (int x=0 ; x<image.getWidth() ; x++){
+					if (image.getVoxel(x, y, z) != expected[z][y][x]){
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+
+	/**
+	 * Compares the binomial blur along each axis with the naive passes, for all the masks and margins.
+	 * The gray levels of the input image are those of a GRAY8 image (even for a GRAY16 input image),
+	 * so that the sums fit in the GRAY16 output image.
+	 * @param bitDepth Number of bits per voxel of the input image (8 or 16)
+	 */
+	static void testAxis(int bitDepth){
+		ImageCore gray8 = BenchmarkCoreOperations.getSyntheticGrayImage(41, 33, 17, 8, 9L);
+		ImageCore image = ImageCoreFactoryIJ.getInstance().getEmptyImageCore(41, 33, 17, bitDepth);
+		for (int z=0 ; z<image.getDepth() ; z++){
+			for (int y=0 ; y<image.getHeight() ; y++){
+				for (int x=0 ; x<image.getWidth() ; x++){
+					image.setVoxel(x, y, z, gray8.getVoxel(x, y, z));
+				}
+			}
+		}
+		int parallelism = GlobalOptions.getParallelism();
+		for (CoordinateAxis axis : new CoordinateAxis[]{CoordinateAxis.X, CoordinateAxis.Y, CoordinateAxis.Z}){
+			int nCases = 0, nDifferences = 0;
+			for (int[] mask : MASKS){
+				for (int[] margin : MARGINS){
+					long[][][] expected = getBlurNaive(image, axis, mask[0], mask[1], margin);
+					for (int p : new int[]{1, 3}){
+						GlobalOptions.setParallelism(p);
+						nCases++;
+						if (!hasVoxels(getBlur(image, axis, mask[0], mask[1], margin), expected)){
+							nDifferences++;
+							System.out.println("Difference: axis " + axis + ", points " + mask[0] + ", step "
+											   + mask[1] + ", margin " + margin[0] + ", parallelism " + p);
+						}
+					}
+				}
+			}
+			GlobalOptions.setParallelism(parallelism);
+			TestChecks.check("GRAY" + bitDepth + ", axis " + axis + ": " + nCases + " blurs equal to the naive passes",
+							 nDifferences == 0);
+		}
+		TestChecks.check("GRAY" + bitDepth + ": input image unchanged", TestChecks.haveSameVoxels(image, gray8));
+	}
+
+
+	/**
+	 * Main function of the checks.
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		testAxis(8);
+		testAxis(16);
+
+		TestChecks.printSummary();
+		System.err.println("The program ended normally.");
+	}
+
+} // End of class
@@ -0,0 +1,98 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File: TestChecks.java                                                    * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+
+
+package wrapScienceJ.wrapImaJ.test;
+
+import wrapScienceJ.wrapImaJ.core.ImageCore;
+
+
+/**
+ * Reporting of the checks of the test programs which compare the results of the operations
+ * with a naive computation: each check prints its result, and the failures are counted
+ * to print a summary at the end of the program. Also provides the naive computations
+ * shared by several test programs.
+ *
+ * @author Rémy Malgouyres
+ */
+public class TestChecks {
+
+	/** Number of failed checks */
+	private static int m_nFailures = 0;
+
+
+	/**
+	 * Prints the result of a check and counts the failures.
+	 * @param name Description of the check
+	 * @param ok true if the check succeeded
+	 */
+	public static void check(String name, boolean ok){
+		System.out.println(name + (ok ? ": OK" : ": FAILED"));
+		if (!ok){
+			m_nFailures++;
+		}
+	}
+
+
+	/**
+	 * @return The number of failed checks so far
+	 */
+	public static int getNumberOfFailures(){
+		return m_nFailures;
+	}
+
+
+	/**
+	 * @param image1 An image
+	 * @param image2 Another image
+	 * @return true if the images have the same dimensions and the same gray levels
+	 */
+	public static boolean haveSameVoxels(ImageCore image1, ImageCore image2){
+		if (image1.getWidth() != image2.getWidth() || image1.getHeight() != image2.getHeight()
+			|| image1.getDepth() != image2.getDepth()){
+			return false;
+		}
+		for (int z=0 ; z<image1.getDepth() ; z++){
+			for (int y=0 ; y<image1.getHeight() ; y++){
+				for (int x=0 ; x<image1.getWidth() ; x++){
+					if (image1.getVoxel(x, y, z) != image2.getVoxel(x, y, z)){
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+
+	/**
+	 * @param image An image
+	 * @return The number of voxels of each gray level, computed by a naive scan
+	 */
+	public static long[] getHistogramNaive(ImageCore image){
+		long[] histogram = new long[image.getWhiteValue()+1];
+		for (int z=0 ; z<image.getDepth() ; z++){
+			for (int y=0 ; y<image.getHeight() ; y++){
+				for (int x=0 ; x<image.getWidth() ; x++){
+					histogram[image.getVoxel(x, y, z)]++;
+				}
+			}
+		}
+		return histogram;
+	}
+
+
+	/**
+	 * Prints the number of failed checks, if any.
+	 */
+	public static void printSummary(){
+		System.out.println(m_nFailures == 0 ? "All the checks passed." : m_nFailures + " check(s) FAILED.");
+	}
+
+} // End of class
@@ -0,0 +1,180 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File: TestComponentMeasurements.java                                     * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+
+
+package wrapScienceJ.wrapImaJ.test;
+
+import java.util.Arrays;
+
+import wrapScienceJ.config.GlobalOptions;
+import wrapScienceJ.factory.image.ImageCoreFactoryIJ;
+import wrapScienceJ.wrapImaJ.connectivity.ComponentInfo;
+import wrapScienceJ.wrapImaJ.connectivity.ComponentMeasurements;
+import wrapScienceJ.wrapImaJ.connectivity.ConnectedComponent;
+import wrapScienceJ.wrapImaJ.connectivity.LabelingPolicy;
+import wrapScienceJ.wrapImaJ.core.ImageCore;
+import wrapScienceJ.wrapImaJ.core.VoxelDouble;
+
+
+/**
+ * Checks the statistics of the connected components ({@link ComponentMeasurements}) against
+ * a naive scan of the labels: number of voxels, total intensity, centroid and second moments,
+ * for several degrees of parallelism and with more than 65535 components.
+ *
+ * @author Rémy Malgouyres
+ */
+public class TestComponentMeasurements {
+
+	/** Tolerance for the comparison of the statistics computed in floating point */
+	private static final double EPSILON = 1e-6;
+
+
+	/**
+	 * Compares the measurements of the components of a labeling with the statistics computed
+	 * by a naive scan of the labels of the voxels (with unit voxels).
+	 * @param name Description of the labeling
+	 * @param cc The labeling
+	 * @param intensity The measured image
+	 * @param measurements The measurements of the labeling
+	 */
+	static void checkMeasurements(String name, ConnectedComponent cc, ImageCore intensity,
+								  ComponentMeasurements measurements){
+		int maxLabel = measurements.getMaxLabel();
+		long[] counts = new long[maxLabel+1];
+		long[] intensities = new long[maxLabel+1];
+		double[][] sums = new double[maxLabel+1][3];
+		double[][][] products = new double[maxLabel+1][3][3];
+		boolean labelsOk = true;
+		for (int z=0 ; z<intensity.getDepth() ; z++){
+			for (int y=0 ; y<intensity.getHeight() ; y++){
+				for (int x=0 ; x<intensity.getWidth() ; x++){
+					int label = cc.getLabel(x, y, z);
+					if (label > maxLabel){
+						labelsOk = false;
+						continue;
+					}
+					double[] coordinates = {x, y, z};
+					counts[label]++;
+					intensities[label] += intensity.getVoxel(x, y, z);
+					for (int i=0 ; i<3 ; i++){
+						sums[label][i] += coordinates[i];
+						for (int j=0 ; j<3 ; j++){
+							products[label][i][j] += coordinates[i]*coordinates[j];
+						}
+					}
+				}
+			}
+		}
+		TestChecks.check(name + ": all the labels measured", labelsOk);
+
+		boolean countsOk = true, centroidsOk = true, momentsOk = true;
+		for (int label=0 ; label<=maxLabel ; label++){
+			countsOk &= measurements.getNumberOfVoxels(label) == counts[label]
+						&& measurements.getTotalIntensity(label) == intensities[label];
+			VoxelDouble centroid = measurements.getCentroid(label);
+			if (counts[label] == 0){
+				centroidsOk &= centroid == null;
+				continue;
+			}
+			double[] mean = new double[3];
+			for (int i=0 ; i<3 ; i++){
+				mean[i] = sums[label][i]/counts[label];
+			}
+			centroidsOk &= Math.abs(centroid.getX() - mean[0]) < EPSILON
+						   && Math.abs(centroid.getY() - mean[1]) < EPSILON
+						   && Math.abs(centroid.getZ() - mean[2]) < EPSILON;
+			double[][] moments = measurements.getSecondMoments(label);
+			for (int i=0 ; i<3 ; i++){
+				for (int j=0 ; j<3 ; j++){
+					double expected = products[label][i][j]/counts[label] - mean[i]*mean[j];
+					momentsOk &= Math.abs(moments[i][j] - expected) < EPSILON*Math.max(1.0, Math.abs(expected));
+				}
+			}
+		}
+		TestChecks.check(name + ": numbers of voxels and intensities", countsOk);
+		TestChecks.check(name + ": centroids", centroidsOk);
+		TestChecks.check(name + ": second moments", momentsOk);
+	}
+
+
+	/**
+	 * Checks the measurements of the components of a synthetic image, and their independence
+	 * on the parallelism.
+	 * @param labelingPolicy The labeling policy
+	 */
+	static void testMeasurements(LabelingPolicy labelingPolicy){
+		ImageCore binary = BenchmarkConnectedComponents.getSyntheticBinaryImage(120, 90, 40, 500, 6, 7L);
+		ImageCore intensity = BenchmarkCoreOperations.getSyntheticGrayImage(120, 90, 40, 16, 9L);
+		ConnectedComponent cc = ConnectedComponent.getLabeledComponents(binary, labelingPolicy, 255,
+																		false, 0.0, false);
+		ComponentMeasurements measurements = cc.getComponentMeasurements(intensity);
+		checkMeasurements(labelingPolicy.toString(), cc, intensity, measurements);
+
+		if (labelingPolicy.is3D()){
+			boolean componentsOk = true;
+			for (int i=0 ; i<cc.getNumberOfComponents() ; i++){
+				ComponentInfo ci = cc.getComponentInfo(i);
+				componentsOk &= ci == null || ci.getnumberOfPoints() == measurements.getNumberOfVoxels(ci.getLabel());
+			}
+			TestChecks.check(labelingPolicy + ": numbers of voxels of the components", componentsOk);
+		}
+
+		int parallelism = GlobalOptions.getParallelism();
+		boolean sameResult = true;
+		for (int p : new int[]{1, 3, 7}){
+			GlobalOptions.setParallelism(p);
+			ComponentMeasurements other = cc.getComponentMeasurements(intensity);
+			for (int label=0 ; label<=measurements.getMaxLabel() ; label++){
+				sameResult &= other.getNumberOfVoxels(label) == measurements.getNumberOfVoxels(label)
+							  && other.getTotalIntensity(label) == measurements.getTotalIntensity(label)
+							  && Arrays.deepEquals(other.getSecondMoments(label), measurements.getSecondMoments(label));
+			}
+		}
+		GlobalOptions.setParallelism(parallelism);
+		TestChecks.check(labelingPolicy + ": same measurements for all parallelisms", sameResult);
+	}
+
+
+	/**
+	 * Checks the measurements of more than 65535 components (isolated voxels),
+	 * which cannot be converted to a GRAY16 labels image.
+	 */
+	static void testManyComponents(){
+		ImageCore binary = ImageCoreFactoryIJ.getInstance().getEmptyImageCore(160, 160, 30, 8);
+		for (int z=0 ; z<binary.getDepth() ; z+=2){
+			for (int y=0 ; y<binary.getHeight() ; y+=2){
+				for (int x=0 ; x<binary.getWidth() ; x+=2){
+					binary.setVoxel(x, y, z, 255);
+				}
+			}
+		}
+		ImageCore intensity = BenchmarkCoreOperations.getSyntheticGrayImage(160, 160, 30, 8, 4L);
+		ConnectedComponent cc = ConnectedComponent.getLabeledComponents(binary, LabelingPolicy.Full3D_Parallel,
+																		255, false, 0.0, false);
+		ComponentMeasurements measurements = cc.getComponentMeasurements(intensity);
+		TestChecks.check("Isolated voxels: number of labels", measurements.getMaxLabel() == 80*80*15);
+		checkMeasurements("Isolated voxels", cc, intensity, measurements);
+	}
+
+
+	/**
+	 * Main function of the checks.
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		testMeasurements(LabelingPolicy.Full3D_Parallel);
+		testMeasurements(LabelingPolicy.Full3D);
+		testMeasurements(LabelingPolicy.Z_2D);
+		testManyComponents();
+
+		TestChecks.printSummary();
+		System.err.println("The program ended normally.");
+	}
+
+} // End of class
@@ -0,0 +1,193 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File: TestComponentRefiltering.java                                      * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+
+
+package wrapScienceJ.wrapImaJ.test;
+
+import wrapScienceJ.factory.image.ImageCoreFactoryIJ;
+import wrapScienceJ.wrapImaJ.connectivity.ComponentInfo;
+import wrapScienceJ.wrapImaJ.connectivity.ConnectedComponent;
+import wrapScienceJ.wrapImaJ.connectivity.LabelingPolicy;
+import wrapScienceJ.wrapImaJ.connectivity.filtering.ComponentRemovalPredicate;
+import wrapScienceJ.wrapImaJ.connectivity.filtering.predefined.ComponentRemovalBoundary;
+import wrapScienceJ.wrapImaJ.connectivity.filtering.predefined.ComponentRemovalLinear;
+import wrapScienceJ.wrapImaJ.connectivity.filtering.predefined.ComponentRemovalNone;
+import wrapScienceJ.wrapImaJ.core.ImageCore;
+
+
+/**
+ * Checks the filtering of a kept labeling with other criteria
+ * ({@link ConnectedComponent#refilterComponents(ImageCore, boolean, double, ComponentRemovalPredicate, boolean, boolean)})
+ * against a new labeling of the image with the same criteria: the labels, the components informations
+ * and the filtered image must be the same, for several labeling policies, volume thresholds,
+ * removal predicates and border settings.
+ *
+ * @author Rémy Malgouyres
+ */
+public class TestComponentRefiltering {
+
+	/**
+	 * @return A new instance of the synthetic binary image (with size 90x70x30)
+	 */
+	static ImageCore getBinaryImage(){
+		return BenchmarkConnectedComponents.getSyntheticBinaryImage(90, 70, 30, 400, 5, 42L);
+	}
+
+
+	/**
+	 * Compares two labelings of images with the same size, as well as the images.
+	 * @param cc1 A labeling
+	 * @param image1 The image set according to the components of cc1
+	 * @param cc2 Another labeling
+	 * @param image2 The image set according to the components of cc2
+	 * @return true if the labels, the components informations and the images are the same
+	 */
+	static boolean haveSameComponents(ConnectedComponent cc1, ImageCore image1,
+									  ConnectedComponent cc2, ImageCore image2){
+		if (cc1.getNumberOfComponents() != cc2.getNumberOfComponents()){
+			return false;
+		}
+		for (int i=0 ; i<cc1.getNumberOfComponents() ; i++){
+			ComponentInfo ci1 = cc1.getComponentInfo(i);
+			ComponentInfo ci2 = cc2.getComponentInfo(i);
+			if (ci1 == null || ci2 == null){
+				if (ci1 != ci2){
+					return false;
+				}
+				continue;
+			}
+			if (ci1.getLabel() != ci2.getLabel() || ci1.getnumberOfPoints() != ci2.getnumberOfPoints()
+				|| ci1.isOnTheeBorder() != ci2.isOnTheeBorder()
+				|| !ci1.getRepresentant().toString().equals(ci2.getRepresentant().toString())
+				|| !ci1.getBoundingBox().toString().equals(ci2.getBoundingBox().toString())){
+				return false;
+			}
+		}
+		for (int z=0 ; z<image1.getDepth() ; z++){
+			for (int y=0 ; y<image1.getHeight() ; y++){
+				for (int x=0 ; x<image1.getWidth() ; x++){
+					if (cc1.getLabel(x, y, z) != cc2.getLabel(x, y, z)
+						|| image1.getVoxel(x, y, z) != image2.getVoxel(x, y, z)){
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+
+	/**
+	 * Filters a kept labeling again with several criteria, and compares the result with a new
+	 * labeling of the image with the same criteria. The image given to the refiltering alternates
+	 * between the labeled image itself and a new copy of the image before the filtering.
+	 * @param labelingPolicy The labeling policy
+	 */
+	static void testRefiltering(LabelingPolicy labelingPolicy){
+		ComponentRemovalPredicate[] predicates = {new ComponentRemovalNone(),
+												  new ComponentRemovalBoundary(),
+												  new ComponentRemovalLinear(0.05, -0.03, 8.0, 9.0)};
+		double[] volumes = {0.0, 5.0, 20.0, 200.0};
+
+		ImageCore labeledImage = getBinaryImage();
+		ConnectedComponent cc = ConnectedComponent.getLabeledComponents(labeledImage, labelingPolicy, 255,
+																		true, 50.0, new ComponentRemovalNone(),
+																		true, false, true);
+		TestChecks.check(labelingPolicy + ": labeling kept", cc.hasRawLabeling());
+		int nCases = 0, nDifferences = 0;
+		boolean useCopy = false;
+		for (double volume : volumes){
+			for (ComponentRemovalPredicate predicate : predicates){
+				for (boolean keepPredicate : new boolean[]{true, false}){
+					for (boolean removeBorder : new boolean[]{true, false}){
+						ImageCore image = getBinaryImage();
+						ConnectedComponent fresh = ConnectedComponent.getLabeledComponents(image, labelingPolicy,
+														255, removeBorder, volume, predicate, keepPredicate, false);
+						ImageCore target = useCopy ? getBinaryImage() : labeledImage;
+						cc.refilterComponents(target, removeBorder, volume, predicate, keepPredicate, false);
+						nCases++;
+						if (!haveSameComponents(fresh, image, cc, target)){
+							nDifferences++;
+							System.out.println("Difference: volume " + volume + ", predicate "
+											   + predicate.getClass().getSimpleName() + ", keep "
+											   + keepPredicate + ", border " + removeBorder);
+						}
+						useCopy = !useCopy;
+					}
+				}
+			}
+		}
+		TestChecks.check(labelingPolicy + ": " + nCases + " refilterings equal to new labelings", nDifferences == 0);
+	}
+
+
+	/**
+	 * Checks the release of the kept labeling and the errors of the refiltering.
+	 */
+	static void testRelease(){
+		ImageCore image = getBinaryImage();
+		ConnectedComponent notKept = ConnectedComponent.getLabeledComponents(image, LabelingPolicy.Full3D,
+																			 255, false, 0.0, false);
+		TestChecks.check("Labeling not kept by default", !notKept.hasRawLabeling());
+
+		ConnectedComponent cc = ConnectedComponent.getLabeledComponents(image, LabelingPolicy.Full3D, 255, false,
+															0.0, new ComponentRemovalNone(), true, false, true);
+		boolean refused = false;
+		try {
+			cc.refilterComponents(ImageCoreFactoryIJ.getInstance().getEmptyImageCore(90, 70, 31, 8), false, 0.0, false);
+		}catch (IllegalArgumentException e){
+			refused = true;
+		}
+		TestChecks.check("Refiltering of an image with another size refused", refused);
+
+		cc.releaseRawLabeling();
+		TestChecks.check("Labeling released", !cc.hasRawLabeling());
+		refused = false;
+		try {
+			cc.refilterComponents(image, false, 0.0, false);
+		}catch (IllegalStateException e){
+			refused = true;
+		}
+		TestChecks.check("Refiltering after the release refused", refused);
+	}
+
+
+	/**
+	 * Checks the filtering of the components of a view, whose voxels are written through the view,
+	 * against the filtering of an image in memory.
+	 */
+	static void testView(){
+		ImageCore parent = getBinaryImage();
+		ImageCore view = parent.getImageDomainOperation().getCropView(0, 0, 0, 90, 70, 30);
+		ConnectedComponent ccView = ConnectedComponent.getLabeledComponents(view, LabelingPolicy.Full3D, 255,
+																			true, 20.0, false);
+		ImageCore image = getBinaryImage();
+		ConnectedComponent cc = ConnectedComponent.getLabeledComponents(image, LabelingPolicy.Full3D, 255,
+																		true, 20.0, false);
+		TestChecks.check("Filtering of a view", haveSameComponents(ccView, view, cc, image));
+		TestChecks.check("Parent of the filtered view unchanged", TestChecks.haveSameVoxels(parent, getBinaryImage()));
+	}
+
+
+	/**
+	 * Main function of the checks.
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		testRefiltering(LabelingPolicy.Full3D);
+		testRefiltering(LabelingPolicy.Full3D_Parallel);
+		testRefiltering(LabelingPolicy.Z_2D);
+		testRelease();
+		testView();
+
+		TestChecks.printSummary();
+		System.err.println("The program ended normally.");
+	}
+
+} // End of class
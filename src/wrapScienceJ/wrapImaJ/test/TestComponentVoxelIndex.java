@@ -0,0 +1,163 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File: TestComponentVoxelIndex.java                                       * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+
+
+package wrapScienceJ.wrapImaJ.test;
+
+import java.util.ArrayList;
+
+import wrapScienceJ.config.GlobalOptions;
+import wrapScienceJ.factory.image.ImageCoreFactoryIJ;
+import wrapScienceJ.wrapImaJ.connectivity.ComponentInfo;
+import wrapScienceJ.wrapImaJ.connectivity.ComponentVoxelIndex;
+import wrapScienceJ.wrapImaJ.connectivity.ComponentVoxelIndex.VoxelVisitor;
+import wrapScienceJ.wrapImaJ.connectivity.ConnectedComponent;
+import wrapScienceJ.wrapImaJ.connectivity.LabelingPolicy;
+import wrapScienceJ.wrapImaJ.connectivity.filtering.predefined.ComponentRemovalNone;
+import wrapScienceJ.wrapImaJ.core.ImageCore;
+
+
+/**
+ * Checks the index of the voxels of the connected components ({@link ComponentVoxelIndex})
+ * against the lists of voxels of each label computed by a naive scan of the labels,
+ * for several labeling policies and degrees of parallelism, after a refiltering
+ * and with more than 65535 components.
+ *
+ * @author Rémy Malgouyres
+ */
+public class TestComponentVoxelIndex {
+
+	/**
+	 * Compares the index of the voxels of a labeling with the lists of the linear indices
+	 * of the voxels of each label, in increasing order, computed by a naive scan of the labels.
+	 * @param name Description of the labeling
+	 * @param cc The labeling
+	 * @param labelingPolicy The labeling policy of cc
+	 * @param width Width of the labeled image
+	 * @param height Height of the labeled image
+	 * @param depth Depth of the labeled image
+	 */
+	static void checkIndex(String name, final ConnectedComponent cc, LabelingPolicy labelingPolicy,
+						   int width, int height, int depth){
+		ComponentVoxelIndex index = cc.getComponentVoxelIndex();
+		int maxLabel = index.getMaxLabel();
+		ArrayList<ArrayList<Integer>> voxels = new ArrayList<ArrayList<Integer>>();
+		for (int label=0 ; label<=maxLabel ; label++){
+			voxels.add(new ArrayList<Integer>());
+		}
+		boolean labelsOk = true;
+		for (int z=0 ; z<depth ; z++){
+			for (int y=0 ; y<height ; y++){
+				for (int x=0 ; x<width ; x++){
+					int label = cc.getLabel(x, y, z);
+					if (label > maxLabel){
+						labelsOk = false;
+					}else if (label > 0){
+						voxels.get(label).add((z*height + y)*width + x);
+					}
+				}
+			}
+		}
+		TestChecks.check(name + ": all the labels indexed", labelsOk);
+
+		boolean listsOk = true, visitsOk = true, componentsOk = true;
+		for (int label=1 ; label<=maxLabel ; label++){
+			ArrayList<Integer> expected = voxels.get(label);
+			listsOk &= index.getNumberOfVoxels(label) == expected.size()
+					   && index.getEnd(label) - index.getStart(label) == expected.size();
+			for (int position=index.getStart(label) ; listsOk && position<index.getEnd(label) ; position++){
+				int voxelIndex = index.getVoxelIndex(position);
+				listsOk = voxelIndex == expected.get(position - index.getStart(label))
+						  && (index.getZ(voxelIndex)*height + index.getY(voxelIndex))*width
+						  		+ index.getX(voxelIndex) == voxelIndex;
+			}
+
+			final int visitedLabel = label;
+			final int[] nVisited = {0};
+			final boolean[] visitOk = {true};
+			index.forEachVoxel(label, new VoxelVisitor() {
+				@Override
+				public void visit(int x, int y, int z) {
+					nVisited[0]++;
+					visitOk[0] &= cc.getLabel(x, y, z) == visitedLabel;
+				}
+			});
+			visitsOk &= visitOk[0] && nVisited[0] == expected.size();
+
+			ComponentInfo ci = labelingPolicy.is3D() ? cc.getComponentInfoFromLabel(label) : null;
+			if (ci != null){
+				componentsOk &= ci.getnumberOfPoints() == expected.size()
+								&& ci.getBoundingBox().toString().equals(index.getBoundingBox(label).toString());
+			}
+		}
+		TestChecks.check(name + ": lists of voxels", listsOk);
+		TestChecks.check(name + ": visits of the voxels", visitsOk);
+		TestChecks.check(name + ": numbers of voxels and bounding boxes of the components", componentsOk);
+	}
+
+
+	/**
+	 * Checks the index of the voxels of a labeling of a synthetic image, for several degrees
+	 * of parallelism, before and after a refiltering of the labeling.
+	 * @param labelingPolicy The labeling policy
+	 */
+	static void testIndex(LabelingPolicy labelingPolicy){
+		int parallelism = GlobalOptions.getParallelism();
+		for (int p : new int[]{1, 3, 8}){
+			GlobalOptions.setParallelism(p);
+			String name = labelingPolicy + ", parallelism " + p;
+			ImageCore image = BenchmarkConnectedComponents.getSyntheticBinaryImage(90, 70, 30, 400, 5, 42L);
+			ConnectedComponent cc = ConnectedComponent.getLabeledComponents(image, labelingPolicy, 255, false, 0.0,
+															new ComponentRemovalNone(), true, false, true);
+			checkIndex(name, cc, labelingPolicy, 90, 70, 30);
+
+			ComponentVoxelIndex index = cc.getComponentVoxelIndex();
+			cc.refilterComponents(image, true, 100.0, false);
+			TestChecks.check(name + ": index rebuilt after the refiltering", cc.getComponentVoxelIndex() != index);
+			checkIndex(name + ", refiltered", cc, labelingPolicy, 90, 70, 30);
+		}
+		GlobalOptions.setParallelism(parallelism);
+	}
+
+
+	/**
+	 * Checks the index of more than 65535 components (isolated voxels),
+	 * which cannot be converted to a GRAY16 labels image.
+	 */
+	static void testManyComponents(){
+		ImageCore image = ImageCoreFactoryIJ.getInstance().getEmptyImageCore(160, 160, 30, 8);
+		for (int z=0 ; z<image.getDepth() ; z+=2){
+			for (int y=0 ; y<image.getHeight() ; y+=2){
+				for (int x=0 ; x<image.getWidth() ; x+=2){
+					image.setVoxel(x, y, z, 255);
+				}
+			}
+		}
+		ConnectedComponent cc = ConnectedComponent.getLabeledComponents(image, LabelingPolicy.Full3D_Parallel,
+																		255, false, 0.0, false);
+		TestChecks.check("Isolated voxels: number of labels", cc.getComponentVoxelIndex().getMaxLabel() == 80*80*15);
+		checkIndex("Isolated voxels", cc, LabelingPolicy.Full3D_Parallel, 160, 160, 30);
+	}
+
+
+	/**
+	 * Main function of the checks.
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		testIndex(LabelingPolicy.Full3D_Parallel);
+		testIndex(LabelingPolicy.Full3D);
+		testIndex(LabelingPolicy.Z_2D);
+		testManyComponents();
+
+		TestChecks.printSummary();
+		System.err.println("The program ended normally.");
+	}
+
+} // End of class
@@ -0,0 +1,128 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File: TestConvolutionRelease.java                                        * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+
+
+package wrapScienceJ.wrapImaJ.test;
+
+import wrapScienceJ.resource.BufferEnlargementPolicy;
+import wrapScienceJ.wrapImaJ.core.ImageCore;
+import wrapScienceJ.wrapImaJ.core.operation.convolve.BlurFactory;
+import wrapScienceJ.wrapImaJ.core.operation.convolve.ConvolutionBase;
+import wrapScienceJ.wrapImaJ.core.operation.convolve.ConvolutionNormalizationPolicy;
+
+
+/**
+ * Checks the release of the temporary images of the convolution factories
+ * ({@link wrapScienceJ.wrapImaJ.core.operation.convolve.ConvolutionFactoryBase#releaseTemporaryImages()}):
+ * once a mask built on an enlarged input image has been applied, the factory and its other masks
+ * must refuse to be used again instead of reading the recycled voxel arrays, whereas a factory
+ * without temporary image can be used several times.
+ *
+ * @author Rémy Malgouyres
+ */
+public class TestConvolutionRelease {
+
+	/** Normalization of the convolved images */
+	private static final ConvolutionNormalizationPolicy NORMALIZATION
+											= ConvolutionNormalizationPolicy.Gray8_QuantitativeNormalization_Clamp;
+
+
+	/**
+	 * @param image An image
+	 * @return A new factory of blurs of a copy of the image (which receives the output),
+	 * 		   with an enlarged input image
+	 */
+	static BlurFactory getEnlargedBlur(ImageCore image){
+		return image.duplicate().getImageBlur().enlargeInImage(4, 4, 2, BufferEnlargementPolicy.Mirror);
+	}
+
+
+	/**
+	 * @param mask A mask whose input image has been released
+	 * @return true if the application of the mask throws an {@link IllegalStateException}
+	 */
+	static boolean isRefused(ConvolutionBase mask){
+		try {
+			mask.getImageConvolved(NORMALIZATION);
+		}catch (IllegalStateException e){
+			return true;
+		}
+		return false;
+	}
+
+
+	/**
+	 * Checks the use of a factory with an enlarged input image twice.
+	 * @param bitDepth Number of bits per voxel (8 or 16)
+	 */
+	static void testFactoryUsedTwice(int bitDepth){
+		String name = "GRAY" + bitDepth;
+		ImageCore image = BenchmarkCoreOperations.getSyntheticGrayImage(50, 40, 12, bitDepth, 5L);
+		ImageCore expected = getEnlargedBlur(image).getBinomialBlur(3, 3, 3).getImageConvolved(NORMALIZATION);
+
+		BlurFactory blur = getEnlargedBlur(image);
+		ConvolutionBase mask = blur.getBinomialBlur(3, 3, 3);
+		ConvolutionBase otherMask = blur.getGaussianBlur(1.5, 1.5, 1.0);
+		ImageCore result = mask.getImageConvolved(NORMALIZATION);
+		TestChecks.check(name + ": first convolution", TestChecks.haveSameVoxels(result, expected));
+
+		// The enlarged input image now belongs to the pool: new allocations may reuse its voxel arrays
+		image.getPreferedFactory().getEmptyImageCore(58, 48, 16, bitDepth);
+
+		TestChecks.check(name + ": mask applied again refused", isRefused(mask));
+		TestChecks.check(name + ": other mask of the factory refused", isRefused(otherMask));
+		boolean refused = false;
+		try {
+			blur.getBinomialBlur(3, 3, 3);
+		}catch (IllegalStateException e){
+			refused = true;
+		}
+		TestChecks.check(name + ": new mask of the factory refused", refused);
+		refused = false;
+		try {
+			blur.getCroppedInImage();
+		}catch (IllegalStateException e){
+			refused = true;
+		}
+		TestChecks.check(name + ": input image of the factory refused", refused);
+
+		TestChecks.check(name + ": new factory", TestChecks.haveSameVoxels(getEnlargedBlur(image).getBinomialBlur(3, 3, 3)
+																	.getImageConvolved(NORMALIZATION), expected));
+	}
+
+
+	/**
+	 * Checks the use of a factory without temporary image twice.
+	 */
+	static void testFactoryWithoutTemporaryImage(){
+		ImageCore image = BenchmarkCoreOperations.getSyntheticGrayImage(50, 40, 12, 8, 6L);
+		BlurFactory blur = image.getImageBlur().embedOutput(false, 16);
+		ConvolutionBase mask = blur.getBinomialBlur(3, 3, 3);
+		ImageCore first = mask.getImageConvolved(NORMALIZATION);
+		ImageCore second = blur.getBinomialBlur(3, 3, 3).getImageConvolved(NORMALIZATION);
+		TestChecks.check("Without enlargement: factory used twice", TestChecks.haveSameVoxels(first, second));
+		TestChecks.check("Without enlargement: mask applied twice",
+			  TestChecks.haveSameVoxels(first, mask.getImageConvolved(NORMALIZATION)));
+	}
+
+
+	/**
+	 * Main function of the checks.
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		testFactoryUsedTwice(8);
+		testFactoryUsedTwice(16);
+		testFactoryWithoutTemporaryImage();
+
+		TestChecks.printSummary();
+		System.err.println("The program ended normally.");
+	}
+
+} // End of class
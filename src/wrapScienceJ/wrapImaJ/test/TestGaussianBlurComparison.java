@@ -0,0 +1,160 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File: TestGaussianBlurComparison.java                                    * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+
+
+package wrapScienceJ.wrapImaJ.test;
+
+import wrapScienceJ.wrapImaJ.core.ImageCore;
+import wrapScienceJ.wrapImaJ.core.VoxelInt;
+import wrapScienceJ.wrapImaJ.core.operation.convolve.GaussianBlurPolicy;
+import wrapScienceJ.wrapImaJ.wrappers.imagej.core.operation.GaussianBlurIJ;
+
+
+/**
+ * Checks the generic Gaussian blurs against ImageJ's Gaussian blur ({@link GaussianBlurIJ}):
+ * the separable convolution must not differ from ImageJ's result by more than one gray level,
+ * and the recursive filter by more than 5% of the range of the gray levels, for several bit depths
+ * and standard deviations. The preprocessing of the adaptive thresholding, which blurs its weights
+ * with the recursive filter, is compared with the same preprocessing using ImageJ's blur.
+ *
+ * @author Rémy Malgouyres
+ */
+public class TestGaussianBlurComparison {
+
+	/** Standard deviations (along X, Y and Z) of the compared blurs */
+	private static final double[][] SIGMAS = {{2.0, 2.0, 1.0}, {0.8, 1.5, 3.0}, {4.0, 4.0, 2.0}, {7.0, 7.0, 3.0}};
+
+
+	/**
+	 * @param image1 An image
+	 * @param image2 An image with the same size
+	 * @return The largest difference between the gray levels of the images
+	 */
+	static int getMaxDifference(ImageCore image1, ImageCore image2){
+		int maxDifference = 0;
+		for (int z=0 ; z<image1.getDepth() ; z++){
+			for (int y=0 ; y<image1.getHeight() ; y++){
+				for (int x=0 ; x<image1.getWidth() ; x++){
+					maxDifference = Math.max(maxDifference,
+											 Math.abs(image1.getVoxel(x, y, z) - image2.getVoxel(x, y, z)));
+				}
+			}
+		}
+		return maxDifference;
+	}
+
+
+	/**
+	 * @param image The image to blur (not modified)
+	 * @param sigma The standard deviations along X, Y and Z
+	 * @return A copy of the image blurred by ImageJ's Gaussian blur
+	 */
+	static ImageCore getBlurIJ(ImageCore image, double[] sigma){
+		ImageCore copy = image.duplicate();
+		new GaussianBlurIJ(copy.getImageSignPolicyEmbed(), copy.getImageSignPolicyEmbed(),
+						   sigma[0], sigma[1], sigma[2], new VoxelInt(0, 0, 0)).applyMask();
+		return copy;
+	}
+
+
+	/**
+	 * @param image The image to blur (not modified)
+	 * @param sigma The standard deviations along X, Y and Z
+	 * @param blurPolicy The algorithm of the generic Gaussian blur
+	 * @return A copy of the image blurred by the generic Gaussian blur
+	 */
+	static ImageCore getBlurGeneric(ImageCore image, double[] sigma, GaussianBlurPolicy blurPolicy){
+		ImageCore copy = image.duplicate();
+		copy.getImageBlur().getGaussianBlur(sigma[0], sigma[1], sigma[2], blurPolicy).applyMask();
+		return copy;
+	}
+
+
+	/**
+	 * Compares the separable convolution with ImageJ's Gaussian blur.
+	 * @param bitDepth Number of bits per voxel (8 or 16)
+	 */
+	static void testSeparable(int bitDepth){
+		ImageCore image = BenchmarkCoreOperations.getSyntheticGrayImage(64, 48, 20, bitDepth, 21L);
+		for (double[] sigma : SIGMAS){
+			String name = "GRAY" + bitDepth + ", sigma " + sigma[0] + " " + sigma[1] + " " + sigma[2];
+			int difference = getMaxDifference(getBlurIJ(image, sigma),
+											  getBlurGeneric(image, sigma, GaussianBlurPolicy.SeparableConvolution));
+			TestChecks.check(name + ": separable convolution within one gray level of ImageJ (" + difference + ")",
+							 difference <= 1);
+		}
+	}
+
+
+	/**
+	 * Compares the recursive filter with ImageJ's Gaussian blur. The recursive filter
+	 * approximates the Gaussian, and the images are made of voxels with random gray levels,
+	 * which is the worst case: the allowed deviation is 5% of the range of the gray levels.
+	 * @param bitDepth Number of bits per voxel (8 or 16)
+	 */
+	static void testRecursive(int bitDepth){
+		ImageCore image = BenchmarkCoreOperations.getSyntheticGrayImage(64, 48, 20, bitDepth, 21L);
+		for (double[] sigma : SIGMAS){
+			String name = "GRAY" + bitDepth + ", sigma " + sigma[0] + " " + sigma[1] + " " + sigma[2];
+			int difference = getMaxDifference(getBlurIJ(image, sigma),
+											  getBlurGeneric(image, sigma, GaussianBlurPolicy.RecursiveFilter));
+			TestChecks.check(name + ": recursive filter within 5% of ImageJ (" + difference + ")",
+							 difference <= 0.05*image.getWhiteValue());
+		}
+	}
+
+
+	/**
+	 * Compares the preprocessing of the adaptive thresholding, which blurs the weights with the
+	 * recursive filter, with the same preprocessing using ImageJ's Gaussian blur. The weights
+	 * being within 5% of the range of the gray levels, the preprocessed gray levels may differ
+	 * by 5% of the range times the impact of the weights (plus one for the rounding).
+	 */
+	static void testAdaptiveThresholdPreprocess(){
+		ImageCore image = BenchmarkCoreOperations.getSyntheticGrayImage(64, 48, 20, 8, 23L);
+		double[] sigma = {10.0, 10.0, 3.0};
+		double impact = 0.5;
+
+		ImageCore weights = image.duplicate();
+		weights.getImageContrast().equalize(1.0, 1.0, 1.0);
+		weights = getBlurIJ(weights, sigma);
+		ImageCore expected = weights.duplicate();
+		for (int z=0 ; z<image.getDepth() ; z++){
+			for (int y=0 ; y<image.getHeight() ; y++){
+				for (int x=0 ; x<image.getWidth() ; x++){
+					int value = (int)(image.getVoxel(x, y, z)*(255 - impact*weights.getVoxel(x, y, z))/255.0);
+					expected.setVoxel(x, y, z, Math.max(0, Math.min(255, value)));
+				}
+			}
+		}
+
+		ImageCore preprocessed = image.getImageThresholding().adaptiveThresholdPreprocess(sigma[0], sigma[1], sigma[2],
+																						 1.0, 1.0, impact);
+		int difference = getMaxDifference(expected, preprocessed);
+		TestChecks.check("Adaptive thresholding preprocessing within the deviation of the recursive filter ("
+						 + difference + ")", difference <= 1 + 0.05*255*impact);
+	}
+
+
+	/**
+	 * Main function of the checks.
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		testSeparable(8);
+		testSeparable(16);
+		testRecursive(8);
+		testRecursive(16);
+		testAdaptiveThresholdPreprocess();
+
+		TestChecks.printSummary();
+		System.err.println("The program ended normally.");
+	}
+
+} // End of class
@@ -0,0 +1,157 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File: TestHistogramCache.java                                            * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+
+
+package wrapScienceJ.wrapImaJ.test;
+
+import java.util.Arrays;
+
+import ij.ImagePlus;
+import wrapScienceJ.wrapImaJ.core.SliceBuffer;
+import wrapScienceJ.wrapImaJ.core.histogram.HistogramCache;
+import wrapScienceJ.wrapImaJ.core.operation.ThresholdingOption;
+import wrapScienceJ.wrapImaJ.wrappers.imagej.core.ImageCoreIJ;
+import wrapScienceJ.wrapImaJ.wrappers.imagej.core.ImageThresholdingIJ;
+
+
+/**
+ * Checks the histogram cache of the images in memory ({@link ImageCoreIJ#getFullResolutionHistogram()})
+ * against the histogram computed by a naive scan of the voxels, after modifications of the image
+ * through setVoxel, slice buffers, ImageJ, and the operations which update the cached histogram
+ * instead of invalidating it (thresholding, contrast).
+ *
+ * @author Rémy Malgouyres
+ */
+public class TestHistogramCache {
+
+	/**
+	 * @param image An image in memory
+	 * @return true if the histogram of the image (from the cache or computed) is the naive histogram
+	 */
+	static boolean isHistogramValid(ImageCoreIJ image){
+		return Arrays.equals(image.getFullResolutionHistogram(), TestChecks.getHistogramNaive(image));
+	}
+
+
+	/**
+	 * @param image An image in memory
+	 * @return true if the histogram is in the cache and equals the naive histogram
+	 */
+	static boolean isCachedHistogramValid(ImageCoreIJ image){
+		long[] cached = image.getHistogramCache().getHistogram();
+		return cached != null && Arrays.equals(cached, TestChecks.getHistogramNaive(image));
+	}
+
+
+	/**
+	 * Checks the invalidation of the cache by the modifications of the image.
+	 * @param bitDepth Number of bits per voxel (8 or 16)
+	 */
+	static void testInvalidation(int bitDepth){
+		String name = "GRAY" + bitDepth;
+		ImageCoreIJ image = (ImageCoreIJ)BenchmarkCoreOperations.getSyntheticGrayImage(60, 45, 9, bitDepth, 11L);
+		long[] histogram = image.getFullResolutionHistogram();
+		TestChecks.check(name + ": histogram", Arrays.equals(histogram, TestChecks.getHistogramNaive(image)));
+		TestChecks.check(name + ": histogram reused", image.getFullResolutionHistogram() == histogram);
+		TestChecks.check(name + ": histogram shared with the thresholding",
+			  image.getImageThresholding().getFullResolutionHistogram() == histogram);
+
+		image.setVoxel(1, 2, 3, image.getWhiteValue());
+		TestChecks.check(name + ": invalidated by setVoxel", image.getHistogramCache().getHistogram() == null
+												  && isHistogramValid(image));
+
+		SliceBuffer slice = image.getSliceBuffer(4);
+		slice.fill(7);
+		TestChecks.check(name + ": invalidated by a slice buffer", image.getHistogramCache().getHistogram() == null
+														&& isHistogramValid(image));
+
+		// Modifications made by ImageJ are not recorded by the cache of an existing wrapper,
+		// except the replacement of the pixel arrays of the slices
+		ImagePlus imp = image.getImp();
+		imp.getStack().getProcessor(2).invert();
+		TestChecks.check(name + ": new wrapper after an ImageJ modification", isHistogramValid(new ImageCoreIJ(imp)));
+		image.getFullResolutionHistogram();
+		Object pixels = bitDepth == 8 ? (Object)new byte[60*45] : (Object)new short[60*45];
+		imp.getStack().setPixels(pixels, 6);
+		TestChecks.check(name + ": invalidated by a new pixel array", isHistogramValid(image));
+
+		ImageCoreIJ copy = image.duplicate();
+		copy.getFullResolutionHistogram();
+		copy.setVoxel(0, 0, 0, 3);
+		TestChecks.check(name + ": separate cache of a copy", isHistogramValid(image) && isHistogramValid(copy));
+	}
+
+
+	/**
+	 * Checks that a histogram computed while the image is modified is not stored,
+	 * whether a histogram was cached before the modification or not.
+	 * @param bitDepth Number of bits per voxel (8 or 16)
+	 */
+	static void testConcurrentModification(int bitDepth){
+		String name = "GRAY" + bitDepth;
+		ImageCoreIJ image = (ImageCoreIJ)BenchmarkCoreOperations.getSyntheticGrayImage(60, 45, 9, bitDepth, 17L);
+		HistogramCache cache = image.getHistogramCache();
+		long version = cache.getVersion();
+		long[] histogram = TestChecks.getHistogramNaive(image);
+		image.setVoxel(5, 6, 7, image.getVoxel(5, 6, 7) + 1);
+		cache.setHistogram(histogram, version);
+		TestChecks.check(name + ": histogram discarded after a setVoxel without cached histogram",
+						 cache.getHistogram() == null && !cache.isValid() && isHistogramValid(image));
+
+		version = cache.getVersion();
+		histogram = TestChecks.getHistogramNaive(image);
+		image.getSliceBuffer(2).set(3, 4, 9);
+		cache.setHistogram(histogram, version);
+		TestChecks.check(name + ": histogram discarded after a slice buffer write with cached histogram",
+						 cache.getHistogram() == null && isHistogramValid(image));
+	}
+
+
+	/**
+	 * Checks the histograms computed by the operations from the cached histogram.
+	 * @param bitDepth Number of bits per voxel (8 or 16)
+	 */
+	static void testIncrementalUpdate(int bitDepth){
+		String name = "GRAY" + bitDepth;
+		ImageCoreIJ image = (ImageCoreIJ)BenchmarkCoreOperations.getSyntheticGrayImage(60, 45, 9, bitDepth, 13L);
+		ImageThresholdingIJ thresholding = image.getImageThresholding();
+		image.getFullResolutionHistogram();
+
+		int threshold = thresholding.getBinarizationThreshold(ThresholdingOption.Otsu);
+		thresholding.applyImageThresholdKeepGray(threshold, false);
+		TestChecks.check(name + ": threshold keeping gray levels", isCachedHistogramValid(image));
+
+		thresholding.applyThresholdMinAndMax(0.6, 0.9);
+		TestChecks.check(name + ": threshold with min and max", isCachedHistogramValid(image));
+
+		image.getImageContrast().stretchHistogram(0.02);
+		TestChecks.check(name + ": histogram stretching", isCachedHistogramValid(image));
+
+		thresholding.applyImageThresholdAndBinarize(100, false);
+		TestChecks.check(name + ": binarization", isCachedHistogramValid(image));
+	}
+
+
+	/**
+	 * Main function of the checks.
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		testInvalidation(8);
+		testInvalidation(16);
+		testConcurrentModification(8);
+		testConcurrentModification(16);
+		testIncrementalUpdate(8);
+		testIncrementalUpdate(16);
+
+		TestChecks.printSummary();
+		System.err.println("The program ended normally.");
+	}
+
+} // End of class
@@ -0,0 +1,318 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File: TestImageCoreMapped.java                                           * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+
+
+package wrapScienceJ.wrapImaJ.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import wrapScienceJ.factory.image.ImageCoreFactoryMapped;
+import wrapScienceJ.metaData.container.MetaDataRetriever.RetrievalPolicy;
+import wrapScienceJ.wrapImaJ.connectivity.ConnectedComponent;
+import wrapScienceJ.wrapImaJ.connectivity.LabelingPolicy;
+import wrapScienceJ.wrapImaJ.core.CoordinateAxis;
+import wrapScienceJ.wrapImaJ.core.ImageCore;
+import wrapScienceJ.wrapImaJ.core.operation.ThresholdingOption;
+import wrapScienceJ.wrapImaJ.wrappers.mapped.core.ImageCoreMapped;
+
+
+/**
+ * Checks the images mapped from files ({@link ImageCoreMapped}) against the same images
+ * loaded in memory: voxel values, histogram, thresholds, thresholding and labeling,
+ * as well as writable mappings, raw files and temporary images, and the operations which
+ * add slices, transform the domain, adjust the contrast or convert the format.
+ * The images are synthetic and written to temporary files.
+ *
+ * @author Rémy Malgouyres
+ */
+public class TestImageCoreMapped {
+
+	/**
+	 * @param image1 An image
+	 * @param image2 Another image with the same dimensions
+	 * @return true if the images have the same zero voxels (e.g. two binarizations)
+	 */
+	static boolean haveSameZeros(ImageCore image1, ImageCore image2){
+		for (int z=0 ; z<image1.getDepth() ; z++){
+			for (int y=0 ; y<image1.getHeight() ; y++){
+				for (int x=0 ; x<image1.getWidth() ; x++){
+					if ((image1.getVoxel(x, y, z) == 0) != (image2.getVoxel(x, y, z) == 0)){
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+
+	/**
+	 * @param prefix Prefix of the file name
+	 * @param suffix Suffix of the file name (e.g. ".tif")
+	 * @return The path of a new temporary file, which is deleted when the virtual machine terminates.
+	 * @throws IOException in case of failure to create the file
+	 */
+	static String getTemporaryPath(String prefix, String suffix) throws IOException {
+		File file = File.createTempFile(prefix, suffix);
+		file.deleteOnExit();
+		return file.getAbsolutePath();
+	}
+
+
+	/**
+	 * Maps a TIFF file written from an image in memory, and compares the mapped image with the original one.
+	 * @param bitDepth Number of bits per voxel (8 or 16)
+	 * @throws IOException in case of failure to write or map the file
+	 */
+	static void testMappedTiff(int bitDepth) throws IOException {
+		String name = "GRAY" + bitDepth + " TIFF";
+		ImageCore image = BenchmarkCoreOperations.getSyntheticGrayImage(70, 50, 12, bitDepth, 5L);
+		String path = getTemporaryPath("TestImageCoreMapped", ".tif");
+		image.writeToFile(path);
+
+		ImageCoreMapped mapped = ImageCoreFactoryMapped.getInstance().getImageCore(path, false, false,
+																	RetrievalPolicy.UseKnownValues);
+		TestChecks.check(name + ": bit depth", mapped.getBitDepth() == bitDepth);
+		TestChecks.check(name + ": voxels", TestChecks.haveSameVoxels(image, mapped));
+		TestChecks.check(name + ": histogram", Arrays.equals(TestChecks.getHistogramNaive(image),
+													mapped.getImageThresholding().buildFullResolutionHistogram()));
+		int otsu = image.getImageThresholding().getBinarizationThreshold(ThresholdingOption.Otsu);
+		TestChecks.check(name + ": Otsu threshold",
+			  mapped.getImageThresholding().getBinarizationThreshold(ThresholdingOption.Otsu) == otsu);
+
+		// The thresholding of a read only mapping must not modify the file
+		boolean refused = false;
+		try {
+			mapped.getImageThresholding().thresholdImageAndBinarize(ThresholdingOption.Otsu, false);
+		}catch (IllegalStateException e){
+			refused = true;
+		}
+		TestChecks.check(name + ": no thresholding of a read only mapping", refused && TestChecks.haveSameVoxels(image, mapped));
+
+		// Thresholding and labeling of a (writable) temporary copy
+		ImageCore binary = image.duplicate().getImageThresholding()
+								.thresholdImageAndBinarize(ThresholdingOption.Otsu, false);
+		ImageCore binaryMapped = mapped.duplicate().getImageThresholding()
+								.thresholdImageAndBinarize(ThresholdingOption.Otsu, false);
+		TestChecks.check(name + ": binarization of a copy", haveSameZeros(binary, binaryMapped));
+		if (bitDepth == 8){
+			ConnectedComponent cc = ConnectedComponent.getLabeledComponents(binary,
+												LabelingPolicy.Full3D_Parallel, 255, false, 0.0, false);
+			ConnectedComponent ccMapped = ConnectedComponent.getLabeledComponents(binaryMapped,
+												LabelingPolicy.Full3D_Parallel, 255, false, 0.0, false);
+			boolean labelsOk = cc.getNumberOfComponents() == ccMapped.getNumberOfComponents();
+			for (int z=0 ; labelsOk && z<image.getDepth() ; z++){
+				for (int y=0 ; y<image.getHeight() ; y++){
+					for (int x=0 ; x<image.getWidth() ; x++){
+						labelsOk &= cc.getLabel(x, y, z) == ccMapped.getLabel(x, y, z);
+					}
+				}
+			}
+			TestChecks.check(name + ": labeling of a copy", labelsOk);
+		}
+		TestChecks.check(name + ": file unchanged by the copies", TestChecks.haveSameVoxels(image, mapped));
+		mapped.deleteMemory();
+
+		// Modifications through a writable mapping are written to the file
+		ImageCoreMapped writable = ImageCoreFactoryMapped.getInstance().getImageCore(path, true,
+																	RetrievalPolicy.UseKnownValues);
+		writable.setVoxel(3, 4, 5, 17);
+		image.setVoxel(3, 4, 5, 17);
+		writable.deleteMemory();
+		ImageCoreMapped reopened = ImageCoreFactoryMapped.getInstance().getImageCore(path, false, false,
+																	RetrievalPolicy.UseKnownValues);
+		TestChecks.check(name + ": modification through a writable mapping", TestChecks.haveSameVoxels(image, reopened));
+		reopened.deleteMemory();
+	}
+
+
+	/**
+	 * Maps a raw file with a header and 16 bits big endian values.
+	 * @throws IOException in case of failure to write or map the file
+	 */
+	static void testMappedRaw() throws IOException {
+		int width = 13, height = 7, depth = 3, headerSize = 100;
+		String path = getTemporaryPath("TestImageCoreMapped", ".raw");
+		byte[] bytes = new byte[headerSize + 2*width*height*depth];
+		for (int i=0 ; i<width*height*depth ; i++){
+			int value = (i*997) % 65536;
+			bytes[headerSize + 2*i] = (byte)(value >> 8);
+			bytes[headerSize + 2*i + 1] = (byte)value;
+		}
+		FileOutputStream output = new FileOutputStream(path);
+		try {
+			output.write(bytes);
+		}finally {
+			output.close();
+		}
+		ImageCoreMapped mapped = ImageCoreFactoryMapped.getInstance().getImageCoreRaw(path, width, height, depth,
+																	16, headerSize, ByteOrder.BIG_ENDIAN, false);
+		boolean ok = mapped.getBitDepth() == 16;
+		for (int z=0 ; z<depth ; z++){
+			for (int y=0 ; y<height ; y++){
+				for (int x=0 ; x<width ; x++){
+					ok &= mapped.getVoxel(x, y, z) == (((z*height + y)*width + x)*997) % 65536;
+				}
+			}
+		}
+		TestChecks.check("Raw GRAY16 big endian file: voxels", ok);
+		mapped.deleteMemory();
+	}
+
+
+	/**
+	 * Checks a black image mapped from a temporary file.
+	 */
+	static void testEmptyImage(){
+		ImageCoreMapped empty = ImageCoreFactoryMapped.getInstance().getEmptyImageCore(20, 10, 4, 16);
+		TestChecks.check("Empty image: black", TestChecks.getHistogramNaive(empty)[0] == 20*10*4);
+		empty.setVoxel(19, 9, 3, 65535);
+		empty.getSliceBuffer(0).set(0, 0, 1000);
+		TestChecks.check("Empty image: writable", empty.getVoxel(19, 9, 3) == 65535 && empty.getVoxel(0, 0, 0) == 1000);
+		empty.deleteMemory();
+	}
+
+
+	/**
+	 * @param image An image
+	 * @return A copy of the image in a temporary mapped file
+	 */
+	static ImageCoreMapped getMappedCopy(ImageCore image){
+		ImageCoreMapped mapped = ImageCoreFactoryMapped.getInstance().getEmptyImageCore(image.getWidth(),
+												image.getHeight(), image.getDepth(), image.getBitDepth());
+		for (int z=0 ; z<image.getDepth() ; z++){
+			image.getSliceBuffer(z).copyTo(0, mapped.getSliceBuffer(z), 0, image.getWidth()*image.getHeight());
+		}
+		return mapped;
+	}
+
+
+	/**
+	 * @param image1 An image
+	 * @param image2 Another image with the same dimensions
+	 * @return The maximal absolute difference between the gray levels of the images
+	 */
+	static int getMaxDifference(ImageCore image1, ImageCore image2){
+		int maxDifference = 0;
+		for (int z=0 ; z<image1.getDepth() ; z++){
+			for (int y=0 ; y<image1.getHeight() ; y++){
+				for (int x=0 ; x<image1.getWidth() ; x++){
+					maxDifference = Math.max(maxDifference,
+											 Math.abs(image1.getVoxel(x, y, z) - image2.getVoxel(x, y, z)));
+				}
+			}
+		}
+		return maxDifference;
+	}
+
+
+	/**
+	 * Checks the operations which are performed through the slice buffers of the mapped file, or
+	 * which return a new temporary mapped image, against the same operations on an image in memory.
+	 * @param bitDepth Number of bits per voxel (8 or 16)
+	 */
+	static void testOperations(int bitDepth){
+		String name = "GRAY" + bitDepth + " operations";
+		ImageCore image = BenchmarkCoreOperations.getSyntheticGrayImage(40, 30, 8, bitDepth, 21L);
+		ImageCore slab = BenchmarkCoreOperations.getSyntheticGrayImage(40, 30, 3, bitDepth, 22L);
+		ImageCoreMapped mapped = getMappedCopy(image);
+
+		ImageCore inserted = mapped.getImageDomainOperation().insertSlices(getMappedCopy(slab), 5);
+		TestChecks.check(name + ": inserted slices", inserted instanceof ImageCoreMapped && TestChecks.haveSameVoxels(
+						 inserted, image.duplicate().getImageDomainOperation().insertSlices(slab.duplicate(), 5)));
+		ImageCore merged = mapped.getImageDomainOperation().mergeSlices(slab);
+		TestChecks.check(name + ": merged slices", TestChecks.haveSameVoxels(merged,
+						 image.duplicate().getImageDomainOperation().mergeSlices(slab.duplicate())));
+		ImageCore added = mapped.getImageConvert().addSliceFromArray(
+								   slab.getImageConvert().getRegularShortArray()[1], bitDepth);
+		TestChecks.check(name + ": added slice", TestChecks.haveSameVoxels(added, image.duplicate().getImageConvert()
+								   .addSliceFromArray(slab.getImageConvert().getRegularShortArray()[1], bitDepth)));
+		TestChecks.check(name + ": mapped image unchanged by the added slices", mapped.getDepth() == 8
+						 && TestChecks.haveSameVoxels(mapped, image));
+
+		CoordinateAxis[][] swaps = {{CoordinateAxis.X, CoordinateAxis.Y},
+									{CoordinateAxis.X, CoordinateAxis.Z},
+									{CoordinateAxis.Z, CoordinateAxis.Y}};
+		boolean swapsOk = true;
+		for (CoordinateAxis[] swap : swaps){
+			swapsOk &= TestChecks.haveSameVoxels(mapped.getImageDomainTransform().getAxisSwapped(swap[0], swap[1]),
+								image.getImageDomainTransform().getAxisSwapped(swap[0], swap[1]));
+		}
+		TestChecks.check(name + ": swapped axis", swapsOk);
+		CoordinateAxis[] reversal = {CoordinateAxis.X, CoordinateAxis.Z};
+		TestChecks.check(name + ": reversed axis", TestChecks.haveSameVoxels(
+						 getMappedCopy(image).getImageDomainTransform().getAxisReversed(reversal),
+						 image.duplicate().getImageDomainTransform().getAxisReversed(reversal)));
+
+		TestChecks.check(name + ": histogram stretching", TestChecks.haveSameVoxels(
+						 getMappedCopy(image).getImageContrast().stretchHistogram(0.05),
+						 image.duplicate().getImageContrast().stretchHistogram(0.05)));
+		TestChecks.check(name + ": maximal values range", TestChecks.haveSameVoxels(
+						 getMappedCopy(image).getImageContrast().maximizeValuesRange(),
+						 image.duplicate().getImageContrast().maximizeValuesRange()));
+		TestChecks.check(name + ": minimum and maximum", mapped.getImageContrast().getMinValue()
+						 == image.getImageContrast().getMinValue()
+						 && mapped.getImageContrast().getMaxValue() == image.getImageContrast().getMaxValue());
+
+		TestChecks.check(name + ": clamped GRAY8 copy", TestChecks.haveSameVoxels(
+						 mapped.getImageConvert().getCopyAsGray8Clamp(), image.getImageConvert().getCopyAsGray8Clamp()));
+		TestChecks.check(name + ": regular arrays", Arrays.deepEquals(mapped.getImageConvert().getRegularShortArray(),
+						 image.duplicate().getImageConvert().getRegularShortArray()));
+		TestChecks.check(name + ": AWT slice", Arrays.equals(
+						 mapped.getImageConvert().getSliceAsAwtImage(3).getRaster().getPixels(0, 0, 40, 30, (int[])null),
+						 image.getImageConvert().getSliceAsAwtImage(3).getRaster().getPixels(0, 0, 40, 30, (int[])null)));
+
+		if (bitDepth == 16){
+			ImageCore gray8 = mapped.getImageConvert().convertToGray8(false);
+			TestChecks.check(name + ": conversion to GRAY8", gray8.getBitDepth() == 8 && mapped.getBitDepth() == 16
+							 && TestChecks.haveSameVoxels(gray8, image.duplicate().getImageConvert().convertToGray8(false)));
+			ImageCore binary = getMappedCopy(image).getImageThresholding()
+												   .thresholdImageAndBinarize(ThresholdingOption.Otsu, true);
+			ImageCore binaryInMemory = image.duplicate().getImageThresholding()
+												   .thresholdImageAndBinarize(ThresholdingOption.Otsu, true);
+			TestChecks.check(name + ": binarization converted to GRAY8", binary.getBitDepth() == 8
+							 && haveSameZeros(binary, binaryInMemory));
+		}else{
+			TestChecks.check(name + ": equalization", TestChecks.haveSameVoxels(
+							 getMappedCopy(image).getImageContrast().equalize(0.5, 1.0, 0.0),
+							 image.duplicate().getImageContrast().equalize(0.5, 1.0, 0.0)));
+			ImageCore weights = mapped.getImageThresholding().adaptiveThresholdPreprocess(3, 3, 2, 0.5, 1.0, 0.5);
+			ImageCore weightsInMemory = image.getImageThresholding().adaptiveThresholdPreprocess(3, 3, 2, 0.5, 1.0, 0.5);
+			TestChecks.check(name + ": adaptive thresholding weights", weights instanceof ImageCoreMapped
+							 && getMaxDifference(weights, weightsInMemory) <= 1);
+		}
+	}
+
+
+	/**
+	 * Main function of the checks.
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		try {
+			testMappedTiff(8);
+			testMappedTiff(16);
+			testMappedRaw();
+		} catch (IOException e) {
+			e.printStackTrace();
+			TestChecks.check("Mapping of the temporary files", false);
+		}
+		testEmptyImage();
+		testOperations(8);
+		testOperations(16);
+
+		TestChecks.printSummary();
+		System.err.println("The program ended normally.");
+	}
+
+} // End of class
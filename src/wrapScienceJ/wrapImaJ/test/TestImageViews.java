@@ -0,0 +1,216 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File: TestImageViews.java                                                * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+
+
+package wrapScienceJ.wrapImaJ.test;
+
+import wrapScienceJ.resource.BufferEnlargementPolicy;
+import wrapScienceJ.wrapImaJ.core.CoordinateAxis;
+import wrapScienceJ.wrapImaJ.core.ImageCore;
+import wrapScienceJ.wrapImaJ.core.SliceBuffer;
+import wrapScienceJ.wrapImaJ.core.operation.ThresholdingOption;
+import wrapScienceJ.wrapImaJ.core.operation.convolve.BlurFactory;
+import wrapScienceJ.wrapImaJ.wrappers.view.core.ImageCoreView;
+
+
+/**
+ * Checks the views on images ({@link ImageCoreView}): cropped, axis swapped and subsampled views
+ * and their compositions are compared with a naive computation of the coordinates of the viewed voxels,
+ * and the copy on write of the views is checked not to modify the parent image.
+ * The operations of the views are compared with the same operations on their in memory copies.
+ *
+ * @author Rémy Malgouyres
+ */
+public class TestImageViews {
+
+	/**
+	 * Compares the gray levels of a view with those of the parent image, the voxel (c0, c1, c2)
+	 * of the view being the voxel of the parent whose coordinate along the axis axis[i]
+	 * is offset[i] + step[i]*ci, for i = 0, 1, 2.
+	 * @param view The view
+	 * @param parent The image whose voxel data is viewed
+	 * @param axis Axis of the parent (0 for X, 1 for Y, 2 for Z) corresponding to each axis of the view
+	 * @param offset Coordinate in the parent of the first voxel of the view along each axis of the view
+	 * @param step Step in the parent between two voxels of the view along each axis of the view
+	 * @param size Expected size of the view
+	 * @return true if the view has the expected size and gray levels
+	 */
+	static boolean isViewOf(ImageCore view, ImageCore parent, int[] axis, int[] offset, int[] step, int[] size){
+		if (view.getWidth() != size[0] || view.getHeight() != size[1] || view.getDepth() != size[2]){
+			return false;
+		}
+		int[] viewCoords = new int[3];
+		int[] parentCoords = new int[3];
+		for (viewCoords[2]=0 ; viewCoords[2]<size[2] ; viewCoords[2]++){
+			for (viewCoords[1]=0 ; viewCoords[1]<size[1] ; viewCoords[1]++){
+				for (viewCoords[0]=0 ; viewCoords[0]<size[0] ; viewCoords[0]++){
+					for (int i=0 ; i<3 ; i++){
+						parentCoords[axis[i]] = offset[i] + step[i]*viewCoords[i];
+					}
+					if (view.getVoxel(viewCoords[0], viewCoords[1], viewCoords[2])
+						!= parent.getVoxel(parentCoords[0], parentCoords[1], parentCoords[2])){
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+
+	/**
+	 * Checks the cropped, axis swapped and subsampled views of an image, and their compositions.
+	 * @param bitDepth Number of bits per voxel (8 or 16)
+	 */
+	static void testViews(int bitDepth){
+		String name = "GRAY" + bitDepth;
+		ImageCore image = BenchmarkCoreOperations.getSyntheticGrayImage(37, 29, 11, bitDepth, 3L);
+		ImageCore original = image.duplicate();
+
+		// The box is clamped to the image domain
+		ImageCore crop = image.getImageDomainOperation().getCropView(3, -2, 1, 30, 40, 9);
+		TestChecks.check(name + ": crop view", isViewOf(crop, image, new int[]{0, 1, 2}, new int[]{3, 0, 1},
+											 new int[]{1, 1, 1}, new int[]{27, 29, 8}));
+		TestChecks.check(name + ": crop view and crop", TestChecks.haveSameVoxels(crop, image.getImageDomainOperation()
+																		.crop(3, -2, 1, 30, 40, 9)));
+
+		CoordinateAxis[][] swaps = {{CoordinateAxis.X, CoordinateAxis.Y},
+									{CoordinateAxis.X, CoordinateAxis.Z},
+									{CoordinateAxis.Z, CoordinateAxis.Y}};
+		for (CoordinateAxis[] swap : swaps){
+			String swapName = name + ", swap " + swap[0] + " " + swap[1];
+			int[] axis = {0, 1, 2};
+			axis[swap[0].getValue()-1] = swap[1].getValue()-1;
+			axis[swap[1].getValue()-1] = swap[0].getValue()-1;
+			int[] imageSize = {image.getWidth(), image.getHeight(), image.getDepth()};
+			int[] size = {imageSize[axis[0]], imageSize[axis[1]], imageSize[axis[2]]};
+
+			ImageCore swapped = image.getImageDomainTransform().getAxisSwappedView(swap[0], swap[1]);
+			TestChecks.check(swapName + ": view", isViewOf(swapped, image, axis, new int[]{0, 0, 0}, new int[]{1, 1, 1}, size));
+			TestChecks.check(swapName + ": view and copy", TestChecks.haveSameVoxels(swapped,
+										image.getImageDomainTransform().getAxisSwapped(swap[0], swap[1])));
+
+			// Crop of the swapped view, then subsampling: a single view on the image
+			ImageCore composed = swapped.getImageDomainOperation().getCropView(2, 3, 1, 9, 20, 8)
+										.getImageDomainOperation().getSubsampledView(2, 3, 2);
+			int[] composedSize = {(Math.min(9, size[0])-2+1)/2, (Math.min(20, size[1])-3+2)/3,
+								  (Math.min(8, size[2])-1+1)/2};
+			TestChecks.check(swapName + ": subsampled crop view", isViewOf(composed, image, axis, new int[]{2, 3, 1},
+																new int[]{2, 3, 2}, composedSize));
+			TestChecks.check(swapName + ": parent of the composed view", ((ImageCoreView)composed).getParent() == image);
+			TestChecks.check(swapName + ": materialized view", TestChecks.haveSameVoxels(composed, ((ImageCoreView)composed).materialize()));
+		}
+
+		ImageCore subsampled = image.getImageDomainOperation().getSubsampledView(3, 2, 4);
+		TestChecks.check(name + ": subsampled view", isViewOf(subsampled, image, new int[]{0, 1, 2}, new int[]{0, 0, 0},
+												   new int[]{3, 2, 4}, new int[]{13, 15, 3}));
+		TestChecks.check(name + ": subsampled view calibration",
+			  subsampled.getImageCalibration().getVoxelLength().getX()
+			  		== 3*image.getImageCalibration().getVoxelLength().getX()
+			  && subsampled.getImageCalibration().getVoxelLength().getZ()
+			  		== 4*image.getImageCalibration().getVoxelLength().getZ());
+
+		// Copy on write: the parent image is never modified through a view
+		ImageCoreView view = (ImageCoreView)image.getImageDomainTransform()
+												 .getAxisSwappedView(CoordinateAxis.X, CoordinateAxis.Z);
+		TestChecks.check(name + ": no private slice before modification", !view.hasPrivateSlices());
+		view.setVoxel(1, 2, 3, 77);
+		SliceBuffer slice = view.getSliceBuffer(5);
+		slice.set(0, 0, 78);
+		TestChecks.check(name + ": modified view", view.getVoxel(1, 2, 3) == 77 && view.getVoxel(0, 0, 5) == 78
+										&& view.hasPrivateSlices());
+		TestChecks.check(name + ": parent unchanged by the view", TestChecks.haveSameVoxels(image, original));
+		ImageCore destination = image.getPreferedFactory().getEmptyImageCore(view.getWidth(), view.getHeight(),
+																			 view.getDepth(), bitDepth);
+		view.getImageDomainTransform().copyTo(destination);
+		TestChecks.check(name + ": copy of the modified view", TestChecks.haveSameVoxels(destination, view));
+
+		// The unmodified slices of a view reflect the modifications of the parent
+		ImageCore cropView = image.getImageDomainOperation().getCropView(1, 1, 1, 5, 5, 5);
+		image.setVoxel(2, 2, 2, 99);
+		TestChecks.check(name + ": view reflects the parent", cropView.getVoxel(1, 1, 1) == 99);
+	}
+
+
+	/**
+	 * Checks the contrast, conversion, thresholding and slices insertion operations of a view
+	 * against the same operations on its in memory copy, and that the parent image is unchanged.
+	 * @param bitDepth Number of bits per voxel (8 or 16)
+	 */
+	static void testOperations(int bitDepth){
+		String name = "GRAY" + bitDepth + " operations";
+		ImageCore image = BenchmarkCoreOperations.getSyntheticGrayImage(37, 29, 11, bitDepth, 5L);
+		ImageCore original = image.duplicate();
+		ImageCoreView view = (ImageCoreView)image.getImageDomainTransform()
+												 .getAxisSwappedView(CoordinateAxis.X, CoordinateAxis.Z);
+		ImageCore slab = BenchmarkCoreOperations.getSyntheticGrayImage(11, 29, 3, bitDepth, 6L);
+
+		ImageCore inserted = view.getImageDomainOperation().insertSlices(slab, 4);
+		TestChecks.check(name + ": inserted slices", TestChecks.haveSameVoxels(inserted,
+						 view.materialize().getImageDomainOperation().insertSlices(slab.duplicate(), 4)));
+		ImageCore merged = view.getImageDomainOperation().mergeSlices(view.getImageDomainOperation()
+																		  .getCropView(0, 0, 2, 11, 29, 5));
+		TestChecks.check(name + ": merged slices of a view", TestChecks.haveSameVoxels(merged,
+						 view.materialize().getImageDomainOperation().mergeSlices(view.materialize()
+								 .getImageDomainOperation().crop(0, 0, 2, 11, 29, 5))));
+		ImageCore added = view.getImageConvert().addSliceFromArray(
+								   slab.getImageConvert().getRegularShortArray()[1], bitDepth);
+		TestChecks.check(name + ": added slice", TestChecks.haveSameVoxels(added, view.materialize().getImageConvert()
+								   .addSliceFromArray(slab.getImageConvert().getRegularShortArray()[1], bitDepth)));
+		TestChecks.check(name + ": view unchanged by the added slices", view.getDepth() == 37
+						 && !view.hasPrivateSlices());
+
+		TestChecks.check(name + ": clamped GRAY8 copy", TestChecks.haveSameVoxels(
+						 view.getImageConvert().getCopyAsGray8Clamp(),
+						 view.materialize().getImageConvert().getCopyAsGray8Clamp()));
+
+		ImageCore binary = view.getImageThresholding().thresholdImageAndBinarize(ThresholdingOption.Otsu, false);
+		TestChecks.check(name + ": binarization", TestChecks.haveSameVoxels(binary, view.materialize()
+						 .getImageThresholding().thresholdImageAndBinarize(ThresholdingOption.Otsu, false)));
+		TestChecks.check(name + ": view unchanged by the thresholding", !view.hasPrivateSlices());
+
+		ImageCore expected = view.materialize().getImageContrast().stretchHistogram(0.05);
+		TestChecks.check(name + ": histogram stretching", TestChecks.haveSameVoxels(
+						 view.getImageContrast().stretchHistogram(0.05), expected));
+		TestChecks.check(name + ": parent unchanged by the operations", TestChecks.haveSameVoxels(image, original));
+	}
+
+
+	/**
+	 * Checks that the cropped input of a convolution is a copy, which can be modified without modifying
+	 * the convolution's buffer, whereas the view on the cropped input shares the buffer.
+	 */
+	static void testCroppedInImage(){
+		ImageCore image = BenchmarkConnectedComponents.getSyntheticBinaryImage(40, 30, 10, 5, 6, 1L);
+		BlurFactory blur = image.getImageBlur().enlargeInImage(3, 3, 2, BufferEnlargementPolicy.Mirror);
+		ImageCore copy = blur.getCroppedInImage();
+		ImageCore view = blur.getCroppedInImageView();
+		TestChecks.check("Cropped input image: copy", !(copy instanceof ImageCoreView) && TestChecks.haveSameVoxels(copy, image));
+		TestChecks.check("Cropped input image: view", view instanceof ImageCoreView && TestChecks.haveSameVoxels(view, image));
+		copy.setVoxel(0, 0, 0, 255 - copy.getVoxel(0, 0, 0));
+		TestChecks.check("Cropped input image: view unchanged by the copy", view.getVoxel(0, 0, 0) == image.getVoxel(0, 0, 0));
+	}
+
+
+	/**
+	 * Main function of the checks.
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		testViews(8);
+		testViews(16);
+		testOperations(8);
+		testOperations(16);
+		testCroppedInImage();
+
+		TestChecks.printSummary();
+		System.err.println("The program ended normally.");
+	}
+
+} // End of class
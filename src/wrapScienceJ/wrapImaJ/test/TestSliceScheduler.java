@@ -0,0 +1,92 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File: TestSliceScheduler.java                                            * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+
+
+package wrapScienceJ.wrapImaJ.test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import wrapScienceJ.config.GlobalOptions;
+import wrapScienceJ.utils.SliceScheduler;
+import wrapScienceJ.utils.SliceScheduler.SliceTask;
+
+
+/**
+ * Checks that the invocations of the {@link SliceScheduler} in progress are not disturbed
+ * by changes of the global parallelism in other threads, which replace the shared pool.
+ *
+ * @author Rémy Malgouyres
+ */
+public class TestSliceScheduler {
+
+	/**
+	 * Runs loops over slices in several threads while the parallelism is changed,
+	 * and checks that each loop processes all its slices without error.
+	 */
+	static void testParallelismChange(){
+		int parallelism = GlobalOptions.getParallelism();
+		final int nLoops = 20000;
+		final int depth = 4;
+		final AtomicInteger nErrors = new AtomicInteger();
+		final AtomicInteger nIncomplete = new AtomicInteger();
+		Thread[] threads = new Thread[4];
+		for (int t=0 ; t<threads.length ; t++){
+			threads[t] = new Thread(){
+				@Override
+				public void run(){
+					for (int loop=0 ; loop<nLoops ; loop++){
+						final AtomicInteger nSlices = new AtomicInteger();
+						try {
+							SliceScheduler.forEachSlice(depth, new SliceTask() {
+								@Override
+								public void processSlice(int z) {
+									nSlices.incrementAndGet();
+								}
+							});
+						}catch (RuntimeException e){
+							nErrors.incrementAndGet();
+							continue;
+						}
+						if (nSlices.get() != depth){
+							nIncomplete.incrementAndGet();
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (int change=0 ; threads[0].isAlive() ; change++){
+			GlobalOptions.setParallelism(2 + change%3);
+			Thread.yield();
+		}
+		for (Thread thread : threads){
+			try {
+				thread.join();
+			}catch (InterruptedException e){
+				nErrors.incrementAndGet();
+			}
+		}
+		GlobalOptions.setParallelism(parallelism);
+		TestChecks.check("No error while the parallelism changes", nErrors.get() == 0);
+		TestChecks.check("All the slices processed while the parallelism changes", nIncomplete.get() == 0);
+	}
+
+
+	/**
+	 * Main function of the checks.
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		testParallelismChange();
+
+		TestChecks.printSummary();
+		System.err.println("The program ended normally.");
+	}
+
+} // End of class
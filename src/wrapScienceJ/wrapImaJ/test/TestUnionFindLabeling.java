@@ -0,0 +1,217 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File: TestUnionFindLabeling.java                                         * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+
+
+package wrapScienceJ.wrapImaJ.test;
+
+import java.util.ArrayList;
+
+import wrapScienceJ.config.GlobalOptions;
+import wrapScienceJ.factory.image.ImageCoreFactoryIJ;
+import wrapScienceJ.wrapImaJ.connectivity.ComponentInfo;
+import wrapScienceJ.wrapImaJ.connectivity.ConnectedComponent;
+import wrapScienceJ.wrapImaJ.connectivity.LabelingPolicy;
+import wrapScienceJ.wrapImaJ.core.BoxROI;
+import wrapScienceJ.wrapImaJ.core.CoordinateAxis;
+import wrapScienceJ.wrapImaJ.core.ImageCore;
+
+
+/**
+ * Checks the parallel union-find labeling ({@link LabelingPolicy#Full3D_Parallel})
+ * against a naive breadth first search labeling with 26-adjacency, on synthetic binary
+ * images which do not require any input file, for several degrees of parallelism.
+ *
+ * @see wrapScienceJ.wrapImaJ.connectivity.ConnectedComponent3DUnionFind
+ *
+ * @author Rémy Malgouyres
+ */
+public class TestUnionFindLabeling {
+
+	/**
+	 * Labels the 26-connected components of the white voxels of a binary image by a breadth
+	 * first search, the components being numbered from 1 in the order of their first voxel
+	 * (in the order of the linear indices z*width*height + y*width + x).
+	 * @param image A binary GRAY8 image
+	 * @param foregroundColor Gray level of the voxels to label
+	 * @return The labels of the voxels, by slice (0 for the background)
+	 */
+	static int[][] getLabelsBFS(ImageCore image, int foregroundColor){
+		int width = image.getWidth(), height = image.getHeight(), depth = image.getDepth();
+		int[][] labels = new int[depth][width*height];
+		int[] queue = new int[width*height*depth];
+		int nLabels = 0;
+		for (int z=0 ; z<depth ; z++){
+			for (int y=0 ; y<height ; y++){
+				for (int x=0 ; x<width ; x++){
+					if (image.getVoxel(x, y, z) != foregroundColor || labels[z][y*width+x] != 0){
+						continue;
+					}
+					nLabels++;
+					int head = 0, tail = 0;
+					labels[z][y*width+x] = nLabels;
+					queue[tail++] = (z*height + y)*width + x;
+					while (head < tail){
+						int voxel = queue[head++];
+						int vx = voxel % width, vy = (voxel / width) % height, vz = voxel / (width*height);
+						for (int dz=-1 ; dz<=1 ; dz++){
+							for (int dy=-1 ; dy<=1 ; dy++){
+								for (int dx=-1 ; dx<=1 ; dx++){
+									int nx = vx+dx, ny = vy+dy, nz = vz+dz;
+									if (nx < 0 || ny < 0 || nz < 0 || nx >= width || ny >= height || nz >= depth){
+										continue;
+									}
+									if (image.getVoxel(nx, ny, nz) == foregroundColor && labels[nz][ny*width+nx] == 0){
+										labels[nz][ny*width+nx] = nLabels;
+										queue[tail++] = (nz*height + ny)*width + nx;
+									}
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+		return labels;
+	}
+
+
+	/**
+	 * Compares the union-find labeling of an image with the breadth first search labeling:
+	 * the labels of all the voxels, and the number of voxels and bounding box of each component.
+	 * @param name Description of the image
+	 * @param image A binary GRAY8 image (white on a black background)
+	 */
+	static void testLabelingAgainstBFS(String name, ImageCore image){
+		int width = image.getWidth(), height = image.getHeight(), depth = image.getDepth();
+		int[][] reference = getLabelsBFS(image, 255);
+		int nReference = 0;
+		for (int[] slice : reference){
+			for (int label : slice){
+				nReference = Math.max(nReference, label);
+			}
+		}
+		// Number of voxels and bounding box of each component of the reference labeling
+		long[] sizes = new long[nReference+1];
+		ArrayList<BoxROI> boxes = new ArrayList<BoxROI>();
+		for (int label=0 ; label<=nReference ; label++){
+			boxes.add(new BoxROI());
+		}
+		for (int z=0 ; z<depth ; z++){
+			for (int y=0 ; y<height ; y++){
+				for (int x=0 ; x<width ; x++){
+					int label = reference[z][y*width+x];
+					sizes[label]++;
+					boxes.get(label).updateBox(x, y, z);
+				}
+			}
+		}
+
+		for (int parallelism : new int[]{1, 2, 3, 7}){
+			GlobalOptions.setParallelism(parallelism);
+			ConnectedComponent cc = ConnectedComponent.getLabeledComponents(image.duplicate(),
+															LabelingPolicy.Full3D_Parallel, 255,
+															false, 0.0, false);
+			boolean labelsOk = true;
+			for (int z=0 ; z<depth ; z++){
+				for (int y=0 ; y<height ; y++){
+					for (int x=0 ; x<width ; x++){
+						labelsOk &= cc.getLabel(x, y, z) == reference[z][y*width+x];
+					}
+				}
+			}
+			boolean componentsOk = cc.getNumberOfComponents() == nReference;
+			for (int i=0 ; componentsOk && i<cc.getNumberOfComponents() ; i++){
+				ComponentInfo ci = cc.getComponentInfo(i);
+				int label = ci.getLabel();
+				componentsOk = ci.getnumberOfPoints() == sizes[label];
+				for (CoordinateAxis axis : new CoordinateAxis[]{CoordinateAxis.X, CoordinateAxis.Y, CoordinateAxis.Z}){
+					componentsOk &= ci.getBoundingBox().getMin(axis) == boxes.get(label).getMin(axis)
+									&& ci.getBoundingBox().getMax(axis) == boxes.get(label).getMax(axis);
+				}
+			}
+			TestChecks.check(name + ", parallelism " + parallelism + ", " + nReference + " components: labels", labelsOk);
+			TestChecks.check(name + ", parallelism " + parallelism + ": components", componentsOk);
+		}
+
+		// The breadth first search labelings give the same labels, stored as ints or as shorts
+		ConnectedComponent noSecureSize = ConnectedComponent.getLabeledComponents(image.duplicate(),
+															LabelingPolicy.Full3D_noSecureSize, 255, false, 0.0, false);
+		int lowThresholdNbPoints = width*height*depth/(2*Short.MAX_VALUE-2);
+		ConnectedComponent full3D = ConnectedComponent.getLabeledComponents(image.duplicate(),
+															LabelingPolicy.Full3D, 255, false, 0.0, false);
+		ConnectedComponent filtered = ConnectedComponent.getLabeledComponents(image.duplicate(),
+															LabelingPolicy.Full3D_Parallel, 255, false,
+															lowThresholdNbPoints*image.getImageCalibration().getVolume(),
+															false);
+		boolean noSecureSizeOk = true, full3DOk = true;
+		for (int z=0 ; z<depth ; z++){
+			for (int y=0 ; y<height ; y++){
+				for (int x=0 ; x<width ; x++){
+					noSecureSizeOk &= noSecureSize.getLabel(x, y, z) == reference[z][y*width+x];
+					full3DOk &= full3D.getLabel(x, y, z) == filtered.getLabel(x, y, z);
+				}
+			}
+		}
+		TestChecks.check(name + ": labels of Full3D_noSecureSize (ints)", noSecureSizeOk);
+		TestChecks.check(name + ": labels of Full3D (shorts)", full3DOk
+								&& full3D.getNumberOfComponents() == filtered.getNumberOfComponents());
+	}
+
+
+	/**
+	 * Checks that more than 65535 components can be labeled by the labelings whose labels are ints,
+	 * and that their conversion to a GRAY16 image is refused.
+	 */
+	static void testManyComponents(){
+		// Isolated voxels, one voxel out of two along each axis
+		ImageCore image = ImageCoreFactoryIJ.getInstance().getEmptyImageCore(160, 160, 30, 8);
+		for (int z=0 ; z<image.getDepth() ; z+=2){
+			for (int y=0 ; y<image.getHeight() ; y+=2){
+				for (int x=0 ; x<image.getWidth() ; x+=2){
+					image.setVoxel(x, y, z, 255);
+				}
+			}
+		}
+		ConnectedComponent cc = ConnectedComponent.getLabeledComponents(image, LabelingPolicy.Full3D_Parallel,
+																		255, false, 0.0, false);
+		TestChecks.check("Isolated voxels: number of components", cc.getNumberOfComponents() == 80*80*15);
+		TestChecks.check("Isolated voxels: label of the last voxel", cc.getLabel(158, 158, 28) == 80*80*15);
+		boolean refused = false;
+		try {
+			cc.getLabelsAsImage();
+		}catch (IllegalStateException e){
+			refused = true;
+		}
+		TestChecks.check("Isolated voxels: no GRAY16 labels image", refused);
+
+		ConnectedComponent noSecureSize = ConnectedComponent.getLabeledComponents(image, LabelingPolicy.Full3D_noSecureSize,
+																				  255, false, 0.0, false);
+		TestChecks.check("Isolated voxels: label of the last voxel without secure size",
+						 noSecureSize.getLabel(158, 158, 28) == 80*80*15);
+	}
+
+
+	/**
+	 * Main function of the checks.
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		int parallelism = GlobalOptions.getParallelism();
+
+		testLabelingAgainstBFS("Large balls", BenchmarkConnectedComponents.getSyntheticBinaryImage(120, 90, 40, 60, 8, 7L));
+		testLabelingAgainstBFS("Small balls", BenchmarkConnectedComponents.getSyntheticBinaryImage(64, 64, 32, 400, 2, 1L));
+		testLabelingAgainstBFS("Single slice", BenchmarkConnectedComponents.getSyntheticBinaryImage(50, 50, 1, 40, 4, 3L));
+		GlobalOptions.setParallelism(parallelism);
+		testManyComponents();
+
+		TestChecks.printSummary();
+		System.err.println("The program ended normally.");
+	}
+
+} // End of class
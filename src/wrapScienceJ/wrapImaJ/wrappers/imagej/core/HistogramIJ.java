@@ -42,6 +42,14 @@ public class HistogramIJ extends HistogramBaseGeneric implements HistogramThresh
 		super(image);
 	}
 	
+	/**
+	 * Constructor of a histogram with given values
+	 * @param values the values of the histogram (the array is copied)
+	 */
+	public HistogramIJ(long[] values) {
+		super(values);
+	}
+	
 	/**
 	 * Constructor which creates a copy of another instance
 	 * @param otherHistogram the original instance.
@@ -78,6 +86,23 @@ public class HistogramIJ extends HistogramBaseGeneric implements HistogramThresh
 	}
 
 
+	/**
+	 * Computes the grey level threshold value for binarizing a region of an image
+	 * (e.g. a connected component), using the histogram of the region.
+	 * @param method the thresholding method
+	 * @param histogram the histogram of the region (with 256 bins, or full resolution)
+	 * @return the threshold for the region (in the GRAY8 range), or -1 if the histogram is empty.
+	 */
+	public static int getRegionBinarizationThreshold(ThresholdingOption method, long[] histogram) {
+		for (long count : histogram){
+			if (count > 0){
+				return getBinarizationThreshold(method, histogram);
+			}
+		}
+		return -1;
+	}
+
+
 	/**
 	 * Computes the grey level threshold value for binarizing an image, using its histogram.
 	 * Different method can be used to compute the threshold.
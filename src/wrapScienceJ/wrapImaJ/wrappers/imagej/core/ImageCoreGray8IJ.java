@@ -9,8 +9,8 @@
 
 package wrapScienceJ.wrapImaJ.wrappers.imagej.core;
 
-import ij.ImagePlus;
 import wrapScienceJ.wrapImaJ.core.ImageCoreGray8;
+import wrapScienceJ.wrapImaJ.core.histogram.HistogramBuilder;
 
 /**
  * Implements specific operations for 8 bits per pixels gray levels images.
@@ -26,36 +26,28 @@ public class ImageCoreGray8IJ extends ImageCoreIJ implements ImageCoreGray8 {
      */
     public ImageCoreGray8IJ(ImageCoreIJ image) {
     	super(image.getImp());
+    	this.m_histogramCache = image.getHistogramCache();
     }
     
-    /**
-	 * Constructs and retrieves the histogram of an image
-	 * @return The histogram of the 3D image as an array of 256 values
-	 * 
-	 * TODO make this method handle 16 bits per pixels images.
+	/**
+	 * The histogram is computed in parallel, in a single pass over the slices,
+	 * unless it is up to date in the histogram cache of the image.
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCoreGray8#buildHistogram()
 	 */
 	@Override
 	public long[] buildHistogram() {
+		return HistogramBuilder.reduce(buildFullResolutionHistogram(), 256);
+	}
+	
 
-		long[] histogram = new long[256];
-		for (int i=0 ; i< 256 ; i++){
-			histogram[i] = 0;
-		}
-		
-		int grayScaleFactor = (this.getImp().getType() == ImagePlus.GRAY16) ? 256 : 1;
-		for (int z=0 ; z<getDepth() ; z++){
-			setCurrentZ(z);
-			for (int x=0 ; x<getWidth() ; x++){
-				for (int y=0 ; y<getHeight() ; y++){
-					histogram[getPixel(x, y)/grayScaleFactor]++;
-					
-				}
-			}
-		}
-		
-		System.err.println("grayScaleFactor = " + grayScaleFactor);
-		
-		return histogram;
+	/**
+	 * The histogram is retrieved from the histogram cache of the image
+	 * (see {@link ImageCoreIJ#getFullResolutionHistogram()}) and copied.
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCoreGray8#buildFullResolutionHistogram()
+	 */
+	@Override
+	public long[] buildFullResolutionHistogram() {
+		return getFullResolutionHistogram().clone();
 	}
 	
 
@@ -64,25 +56,8 @@ public class ImageCoreGray8IJ extends ImageCoreIJ implements ImageCoreGray8 {
 	 */
 	@Override
 	public long[] buildHistogramExcludeBackground(int backgroungGrayLevel) {
-
-		long[] histogram = new long[256];
-		for (int i=0 ; i< 256 ; i++){
-			histogram[i] = 0;
-		}
-		
-		int grayScaleFactor = (this.getImp().getType() == ImagePlus.GRAY16) ? 256 : 1;
-		for (int z=0 ; z<getDepth() ; z++){
-			setCurrentZ(z);
-			for (int x=0 ; x<getWidth() ; x++){
-				for (int y=0 ; y<getHeight() ; y++){
-					histogram[getPixel(x, y)/grayScaleFactor]++;
-					
-				}
-			}
-		}
+		long[] histogram = buildHistogram();
 		histogram[backgroungGrayLevel] = 0;
-		System.err.println("grayScaleFactor = " + grayScaleFactor);
-		
 		return histogram;
 	}
 	
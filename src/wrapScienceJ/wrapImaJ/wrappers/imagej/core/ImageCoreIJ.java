@@ -18,7 +18,11 @@ import wrapScienceJ.resource.BufferEnlargementPolicy;
 import wrapScienceJ.resource.ResourceCore;
 import wrapScienceJ.resource.generic.ModelCoreImageGeneric;
 import wrapScienceJ.resource.generic.ResourceCoreGeneric;
+import wrapScienceJ.utils.SliceScheduler;
+import wrapScienceJ.utils.SliceScheduler.SliceTask;
 import wrapScienceJ.wrapImaJ.core.*;
+import wrapScienceJ.wrapImaJ.core.histogram.HistogramBuilder;
+import wrapScienceJ.wrapImaJ.core.histogram.HistogramCache;
 import wrapScienceJ.wrapImaJ.core.operation.ImageContrast;
 import wrapScienceJ.wrapImaJ.core.operation.convolve.generic.ImageDifferentialOperatorGeneric;
 import wrapScienceJ.wrapImaJ.core.operation.generic.ImageConnectedComponentsGeneric;
@@ -33,6 +37,7 @@ import wrapScienceJ.wrapImaJ.wrappers.imagej.core.operation.ImageDomainOperation
 import wrapScienceJ.wrapImaJ.wrappers.imagej.core.operation.ImageDomainTransformIJ;
 import wrapScienceJ.wrapImaJ.wrappers.imagej.gui.GuiFrameworkIJ;
 import wrapScienceJ.wrapImaJ.wrappers.imagej.gui.render.RenderToolIJ;
+import wrapScienceJ.wrapImaJ.wrappers.imagej.io.StackReaderIJ;
 
 import ij.IJ;
 import ij.ImagePlus;
@@ -75,6 +80,15 @@ public class ImageCoreIJ extends ResourceCoreGeneric implements ImageCore {
 	
 	private ImageThresholdingIJ m_imageThresholding = null;
 	
+	/**
+	 * Histogram cache of this instance (created at first use). The cache is only shared
+	 * with the copies of this instance (e.g. the operation wrappers), and not with the other
+	 * instances wrapping the same ImagePlus, which don't record the modifications made through it.
+	 * The histogram is stored with the pixel arrays of the slices from which it was computed,
+	 * in order to detect the slices replaced through the ImagePlus.
+	 */
+	protected volatile HistogramCache m_histogramCache = null;
+	
 	
 	/**
 	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getPreferedFactory()
@@ -84,6 +98,16 @@ public class ImageCoreIJ extends ResourceCoreGeneric implements ImageCore {
 		return ImageCoreFactoryIJ.getInstance();
 	}
 	
+	/**
+	 * The memory is released by the prefered factory.
+	 * @see wrapScienceJ.resource.ResourceCore#close()
+	 * @see wrapScienceJ.factory.image.ImageCoreFactory#releaseImageCore(ImageCore)
+	 */
+	@Override
+	public void close(){
+		getPreferedFactory().releaseImageCore(this);
+	}
+	
 	/**
 	 * Constructs an instance by loading the image from a source file with default calibration value.
 	 * The voxel's edges lengths are all set to 1.0.
@@ -129,15 +153,17 @@ public class ImageCoreIJ extends ResourceCoreGeneric implements ImageCore {
 	}
 	
 	/**
-	 * Constructs a full copy of this instance.
+	 * Constructs a full copy of this instance, which wraps the same ImagePlus
+	 * and shares the histogram cache of image.
 	 * @param image the image to copy.
 	 * @throws IOException  IOException in case of failure to load the image from file
 	 */
 	public ImageCoreIJ(ImageCoreIJ image) {
 		this.m_imp = image.getImp();
 		this.m_path = image.getPath();
+		this.m_histogramCache = image.getHistogramCache();
 
-		this.m_currentZ = 1;
+		this.m_currentZ = this.m_imp.getCurrentSlice()-1;
 		this.m_modelCoreImage = new ModelCoreImageGeneric(this, image);
     	this.m_imp.killRoi();
 	}
@@ -155,7 +181,7 @@ public class ImageCoreIJ extends ResourceCoreGeneric implements ImageCore {
 		this.m_path = OpenDialog.getLastDirectory()+File.separator
 						+ OpenDialog.getLastName();		
 
-		this.m_currentZ = 1;
+		this.m_currentZ = this.m_imp.getCurrentSlice()-1;
 		this.m_modelCoreImage = new ModelCoreImageGeneric(this, RetrievalPolicy.TryConfFileThenDialog);
 	}
 	
@@ -174,11 +200,40 @@ public class ImageCoreIJ extends ResourceCoreGeneric implements ImageCore {
 	 */
 	public static ImageCoreIJ getEmptyImageCore(int width, int height, int depth, int bitDepth){
 		
-		ImagePlus imp = IJ.createImage("Black Image", width, height, depth, bitDepth);
-		ImageCoreIJ blackImage = new ImageCoreIJ(imp);
+		if (bitDepth != 8 && bitDepth != 16){
+			ImagePlus imp = IJ.createImage("Black Image", width, height, depth, bitDepth);
+			return new ImageCoreIJ(imp);
+		}
+		// The slices are taken from the buffer pool, which recycles the slices of released images
+		ImageStack stack = new ImageStack(width, height);
+		for (int z=0 ; z<depth ; z++){
+			if (bitDepth == 8){
+				stack.addSlice(null, ImageBufferPool.acquireBytes(width*height));
+			}else{
+				stack.addSlice(null, ImageBufferPool.acquireShorts(width*height));
+			}
+		}
+		ImageCoreIJ blackImage = new ImageCoreIJ(new ImagePlus("Black Image", stack));
 		return blackImage;
 	}
 	
+	/**
+	 * Gives the slices of this image back to the buffer pool and releases the memory
+	 * of the image, which becomes unusable.
+	 * No other reference to the slices (e.g. through {@link #getImp()}) must be used afterwards.
+	 * @see wrapScienceJ.factory.image.ImageCoreFactory#releaseImageCore(ImageCore)
+	 */
+	public void releaseSlicesToPool(){
+		ImageStack stack = this.m_imp.getStack();
+		int bitDepth = getBitDepth();
+		if (bitDepth == 8 || bitDepth == 16){
+			for (int z=1 ; z<=stack.getSize() ; z++){
+				ImageBufferPool.release(stack.getPixels(z));
+			}
+		}
+		deleteMemory();
+	}
+	
 
     /**
      * @see wrapScienceJ.resource.generic.ResourceCoreGeneric#duplicate()
@@ -380,6 +435,7 @@ public class ImageCoreIJ extends ResourceCoreGeneric implements ImageCore {
 	 */
 	@Override
 	public void setPixel(int x, int y, int value) {
+		invalidateHistogram();
 		this.m_imp.getProcessor().set(x, y, value);
 	}
 
@@ -403,6 +459,7 @@ public class ImageCoreIJ extends ResourceCoreGeneric implements ImageCore {
 		if (z != this.m_currentZ){
 			setCurrentZ(z);
 		}
+		invalidateHistogram();
 		this.m_imp.getImageStack().setVoxel(x, y, z, floatValue);
 	}	
 
@@ -439,6 +496,7 @@ public class ImageCoreIJ extends ResourceCoreGeneric implements ImageCore {
 		if (voxel.getZ() != this.m_currentZ){
 			setCurrentZ(voxel.getZ());
 		}				
+		invalidateHistogram();
 		this.m_imp.getProcessor().set(voxel.getX(), voxel.getY(), value);		
 	}
 
@@ -455,6 +513,148 @@ public class ImageCoreIJ extends ResourceCoreGeneric implements ImageCore {
 	}
 
 
+	/**
+	 * The slice buffer invalidates the cached histogram when the gray levels are
+	 * modified through it, even after the histogram has been computed again.
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getSliceBuffer(int)
+	 */
+	@Override
+	public SliceBuffer getSliceBuffer(int zCoord) {
+		return new SliceBuffer(this.m_imp.getStack().getPixels(zCoord+1), getWidth(), getHeight(),
+							   getHistogramCache());
+	}
+
+
+	/**
+	 * Retrieves the histogram cache of this instance.
+	 * The cache must be invalidated (see {@link #deleteHistogram()}) when the gray levels
+	 * are modified in place through the ImagePlus.
+	 * @return The histogram cache of the image.
+	 */
+	public HistogramCache getHistogramCache(){
+		HistogramCache cache = this.m_histogramCache;
+		if (cache != null){
+			return cache;
+		}
+		synchronized (this){
+			if (this.m_histogramCache == null){
+				this.m_histogramCache = new HistogramCache();
+			}
+			return this.m_histogramCache;
+		}
+	}
+
+
+	/**
+	 * Invalidates the cached histogram, if any, after a modification of the gray levels.
+	 */
+	private void invalidateHistogram(){
+		getHistogramCache().invalidate();
+	}
+
+
+	/**
+	 * @return The pixel arrays of the slices of the ImagePlus
+	 */
+	private Object[] getPixelArrays(){
+		ImageStack stack = this.m_imp.getStack();
+		Object[] pixels = new Object[stack.getSize()];
+		for (int z=0 ; z<pixels.length ; z++){
+			pixels[z] = stack.getPixels(z+1);
+		}
+		return pixels;
+	}
+
+
+	/**
+	 * Retrieves the cached histogram, after checking that the slices of the ImagePlus
+	 * have not been replaced since it was computed.
+	 * @param cache The histogram cache of the image
+	 * @return The cached histogram, or null if there is none or if it is out of date.
+	 */
+	private long[] getValidatedHistogram(HistogramCache cache){
+		long[] histogram = cache.getHistogram();
+		if (histogram == null){
+			return null;
+		}
+		Object source = cache.getSource();
+		Object[] pixels = getPixelArrays();
+		boolean samePixels = source instanceof Object[] && ((Object[])source).length == pixels.length;
+		for (int z=0 ; samePixels && z<pixels.length ; z++){
+			samePixels = ((Object[])source)[z] == pixels[z];
+		}
+		if (!samePixels){
+			cache.invalidate();
+			return null;
+		}
+		return histogram;
+	}
+
+
+	/**
+	 * Retrieves the full resolution histogram of the image (one bin per gray level)
+	 * from the histogram cache. The histogram is only computed if the image has been
+	 * modified since the last computation.
+	 * @see wrapScienceJ.wrapImaJ.core.histogram.HistogramBuilder
+	 * @return The histogram as an array of 256 values for 8 bits per voxel images, or 65536
+	 * 		   values for 16 bits per voxel images. The array is shared and must not be modified.
+	 */
+	public long[] getFullResolutionHistogram(){
+		HistogramCache cache = getHistogramCache();
+		long[] histogram = getValidatedHistogram(cache);
+		if (histogram == null || histogram.length != HistogramBuilder.getNumberOfGrayLevels(getBitDepth())){
+			long version = cache.getVersion();
+			Object[] pixels = getPixelArrays();
+			SliceBuffer[] slices = new SliceBuffer[pixels.length];
+			for (int z=0 ; z<slices.length ; z++){
+				slices[z] = new SliceBuffer(pixels[z], getWidth(), getHeight());
+			}
+			histogram = HistogramBuilder.buildHistogram(slices, getBitDepth());
+			cache.setHistogram(histogram, version, pixels);
+		}
+		return histogram;
+	}
+
+
+	/**
+	 * Replaces each gray level g of the image by table[g], the slices being processed in parallel.
+	 * If the histogram of the image is in the cache, the histogram of the result is computed
+	 * from it and stored in the cache, so that the image need not be scanned again.
+	 * @param table The lookup table, with one value per gray level (256 or 65536 values).
+	 * @throws IllegalArgumentException if the table is too short for the bit depth of the image.
+	 */
+	public void applyLookupTable(final int[] table){
+		if (table.length < HistogramBuilder.getNumberOfGrayLevels(getBitDepth())){
+			throw new IllegalArgumentException("The lookup table must have one value per gray level.");
+		}
+		HistogramCache cache = getHistogramCache();
+		long[] histogram = getValidatedHistogram(cache);
+		final ImageStack stack = this.m_imp.getStack();
+		final int size = getWidth()*getHeight();
+		SliceScheduler.forEachSlice(getDepth(), new SliceTask() {
+			@Override
+			public void processSlice(int z) {
+				Object pixels = stack.getPixels(z+1);
+				if (pixels instanceof byte[]){
+					byte[] bytes = (byte[])pixels;
+					for (int i=0 ; i<size ; i++){
+						bytes[i] = (byte)table[bytes[i] & 0xff];
+					}
+				}else{
+					short[] shorts = (short[])pixels;
+					for (int i=0 ; i<size ; i++){
+						shorts[i] = (short)table[shorts[i] & 0xffff];
+					}
+				}
+			}
+		});
+		cache.invalidate();
+		if (histogram != null){
+			cache.setHistogram(HistogramBuilder.applyLookupTable(histogram, table), cache.getVersion());
+		}
+	}
+
+
 	/**
 	 * Sets the path to the image source file.
 	 * @param path
@@ -486,57 +686,31 @@ public class ImageCoreIJ extends ResourceCoreGeneric implements ImageCore {
 	protected void loadImage(String path) throws IOException {
 		
 		this.m_imageThresholding = null;
-		try {
-			int count = 1;	
-			ImagePlus currentSlice = IJ.openImage(path, count);
-			
-
-			this.m_imp = IJ.createImage(path, 
-					currentSlice.getWidth(),
-					currentSlice.getHeight(),
-					0,
-					currentSlice.getBitDepth());
-			
-			this.m_imp.setCalibration(currentSlice.getCalibration());
-			ImageStack stack = this.m_imp.getStack();
-
-			while (currentSlice != null){
-				if (count == 1){
-					stack.setProcessor(currentSlice.getProcessor().duplicate(), count);
-					stack.setSliceLabel("Slice"+1, 1);
-				}else{
-					stack.addSlice("Slice"+count, currentSlice.getProcessor().duplicate());
-				}
-
-				this.m_imp.setZ(count);
-				
-				currentSlice.flush();
-				count++;
-				try{
-					currentSlice = IJ.openImage(path, count);
-				}catch (Exception e){
-					this.m_imp.setStack(stack);
-					break;
-				}
-				if (count%10 == 0){
-					System.gc();
-				}
-			}
-			
-			if (this.m_imp == null) {
-				throw new IOException("Load image: could not load image from file.");
-			}
+		this.m_histogramCache = null;
+		StackReaderIJ reader = new StackReaderIJ(path);
+		
+		this.m_imp = IJ.createImage(path, 
+				reader.getWidth(),
+				reader.getHeight(),
+				0,
+				reader.getBitDepth());
+		
+		this.m_imp.setCalibration(reader.getCalibration());
+		ImageStack stack = this.m_imp.getStack();
 
-		} catch (Exception e) {
-			throw new IOException("Load image: could not load image from file. "
-					+ e.getMessage() + "(path: " + path +")");
+		for (int z=0 ; z<reader.getDepth() ; z++){
+			addSlice(stack, z, reader.readSlice(z));
 		}
+		this.m_imp.setStack(stack);
 		
 		setPath(path);
 	}
 
 	/**
 	 * Initializes this instance by loading an image from a file.
+	 * The image file is decoded only once (twice for 16 bits images if maximizeValuesRange
+	 * is true, in order to compute the range of the gray levels) and each slice is converted
+	 * to 8 bits as soon as it has been read.
 	 *
 	 * @param path path on disk to an image
 	 * @param maximizeValuesRange If true, then the gray levels will be scaled so as to occupy
@@ -545,142 +719,100 @@ public class ImageCoreIJ extends ResourceCoreGeneric implements ImageCore {
 	 */
 	protected void loadImage_8bits(String path, boolean maximizeValuesRange) throws IOException {
 		this.m_imageThresholding = null;
-		int minValue = Integer.MAX_VALUE;
-		int maxValue = 0;
-		int bitDepthInput = 8;
+		this.m_histogramCache = null;
+		StackReaderIJ reader = new StackReaderIJ(path);
+		boolean isGray16 = reader.getType() == ImagePlus.GRAY16;
 		
-		try {
-			int count=1;
-			boolean stopLoop = false;
-			while (!stopLoop){
-				try{
-					ImagePlus slice = IJ.openImage(path, count);
-					count++;
-					bitDepthInput = slice.getBitDepth();
-					slice.setZ(1);
-					ImageProcessor processor = slice.getProcessor();
-					for (int y=0 ; y<slice.getHeight() ; y++){
-						for (int x=0 ; x<slice.getWidth() ; x++){
-							int value = processor.getPixel(x, y);
-							if (value < minValue){
-								minValue = value;
-							}
-							if (value > maxValue){
-								maxValue = value;
-							}
-						}
-					}
-				}catch (Exception e){
-					stopLoop = true;
-					break;
-				}
-			}
-			
-			System.err.println("ImageCoreIJ maximizeValuesRange, minRange: " 
-								+ minValue + ", maxRange: " + maxValue);
-
-
-		} catch (Exception e) {
-			throw new IOException("Load image: could not load image from file. "
-					+ e.getMessage());
-		}
-		
-		int tableSize = 65536 ; 
-		int inverseFactor = (bitDepthInput == 16) ? 256 : 1;
-		System.err.println("inverseFactor = " + inverseFactor);
-		int[] table = new int[tableSize];
-
-		for (int i=0; i<tableSize; i++) {
-			if (i <= minValue){
-				table[i] = 0;
-			}else{
-				if (i >= maxValue){
-					table[i] = tableSize-1;
-				}else{
-					table[i] = (int)(((double)(i-minValue)/(maxValue-minValue))*tableSize)/inverseFactor;
-				}
-			}
-		}		
-			
-	//	try {
-			
-			int count = 1;				
-			ImagePlus currentSlice = IJ.openImage(path, count);
-			
-
-			this.m_imp = IJ.createImage(path, 
-					currentSlice.getWidth(),
-					currentSlice.getHeight(),
-					0,
-					8);
-			
-			this.m_imp.setCalibration(currentSlice.getCalibration());
-			ImageStack stack = this.m_imp.getStack();
-
-			while (currentSlice != null){
-				this.m_imp.getProcessor().setMinAndMax(minValue, maxValue);
-				ByteProcessor bp = new ByteProcessor(currentSlice.getWidth(),
-						 										 currentSlice.getHeight());
-				ImageProcessor currentSliceProcessor;
-				if (maximizeValuesRange){
-					currentSliceProcessor = currentSlice.getProcessor();
-					if (currentSlice.getType() == ImagePlus.GRAY16){
-						for (int j=0 ; j < currentSlice.getHeight() ; j++){
-							for (int i=0 ; i < currentSlice.getWidth() ; i++){
-								currentSliceProcessor.set(i, j, table[currentSliceProcessor.get(i, j)]);
-							}
+		int[] table = null;
+		if (isGray16){
+			table = new int[65536];
+			if (maximizeValuesRange){
+				int minValue = Integer.MAX_VALUE;
+				int maxValue = 0;
+				for (int z=0 ; z<reader.getDepth() ; z++){
+					short[] pixels = (short[])reader.readSlice(z).getPixels();
+					for (int i=0 ; i<pixels.length ; i++){
+						int value = pixels[i] & 0xffff;
+						if (value < minValue){
+							minValue = value;
 						}
-					}
-				}else{
-					currentSliceProcessor = currentSlice.getProcessor();
-					if (currentSlice.getType() == ImagePlus.GRAY16){
-						for (int j=0 ; j < currentSlice.getHeight() ; j++){
-							for (int i=0 ; i < currentSlice.getWidth() ; i++){
-								currentSliceProcessor.set(i, j, currentSliceProcessor.get(i, j)/256);
-							}
+						if (value > maxValue){
+							maxValue = value;
 						}
 					}
 				}
-				   
-				for (int j=0 ; j < currentSlice.getHeight() ; j++){
-					for (int i=0 ; i < currentSlice.getWidth() ; i++){
-						if (currentSlice.getType() == ImagePlus.GRAY16){
-							bp.set(i, j, currentSliceProcessor.get(i, j));	
+				System.err.println("ImageCoreIJ maximizeValuesRange, minRange: " 
+									+ minValue + ", maxRange: " + maxValue);
+				for (int i=0; i<table.length; i++) {
+					if (i <= minValue){
+						table[i] = 0;
+					}else{
+						if (i >= maxValue){
+							table[i] = 255;
 						}else{
-							bp.set(i, j, currentSliceProcessor.get(i, j));	
+							table[i] = (int)(((double)(i-minValue)/(maxValue-minValue))*table.length)/256;
 						}
 					}
 				}
-				if (count == 1){
-					stack.setProcessor(bp, count);
-					stack.setSliceLabel("Slice"+1, 1);
-				}else{
-						stack.addSlice("Slice"+count, bp);	
+			}else{
+				for (int i=0; i<table.length; i++) {
+					table[i] = i/256;
 				}
-				
-				currentSlice.flush();
-				count++;
-				try{
-					currentSlice = IJ.openImage(path, count);
-				}catch (Exception e){
-					this.m_imp.setStack(stack);
-					break;
+			}
+		}
+		
+		this.m_imp = IJ.createImage(path, 
+				reader.getWidth(),
+				reader.getHeight(),
+				0,
+				8);
+		
+		this.m_imp.setCalibration(reader.getCalibration());
+		ImageStack stack = this.m_imp.getStack();
+
+		for (int z=0 ; z<reader.getDepth() ; z++){
+			ImageProcessor currentSliceProcessor = reader.readSlice(z);
+			ByteProcessor bp;
+			if (isGray16){
+				short[] pixels = (short[])currentSliceProcessor.getPixels();
+				byte[] bytes = new byte[pixels.length];
+				for (int i=0 ; i<pixels.length ; i++){
+					bytes[i] = (byte)table[pixels[i] & 0xffff];
 				}
-				if (count%10 == 0){
-					System.gc();
+				bp = new ByteProcessor(reader.getWidth(), reader.getHeight(), bytes);
+			}else if (currentSliceProcessor instanceof ByteProcessor){
+				bp = new ByteProcessor(reader.getWidth(), reader.getHeight(),
+									   (byte[])currentSliceProcessor.getPixels());
+			}else{
+				bp = new ByteProcessor(reader.getWidth(), reader.getHeight());
+				for (int j=0 ; j < reader.getHeight() ; j++){
+					for (int i=0 ; i < reader.getWidth() ; i++){
+						bp.set(i, j, currentSliceProcessor.get(i, j));	
+					}
 				}
 			}
-			
-			if (this.m_imp == null) {
-				throw new IOException("Load image: could not load image from file.");
-			}
+			addSlice(stack, z, bp);
+		}
+		this.m_imp.setStack(stack);
 
-		/*} catch (Exception e) {
-			throw new IOException("Load image: could not load image from file. "
-					+ e.getMessage());
-		}*/
 		setPath(path);
 	}
+
+	/**
+	 * Sets the first slice of a stack which has been created with a single
+	 * empty slice, or appends a slice at the end of the stack.
+	 * @param stack The stack, with exactly z slices if z &gt; 0
+	 * @param zCoord The z coordinate of the slice to add.
+	 * @param processor The gray levels of the slice.
+	 */
+	private static void addSlice(ImageStack stack, int zCoord, ImageProcessor processor){
+		if (zCoord == 0){
+			stack.setProcessor(processor, 1);
+			stack.setSliceLabel("Slice"+1, 1);
+		}else{
+			stack.addSlice("Slice"+(zCoord+1), processor);
+		}
+	}
 	
 
 	/**
@@ -712,12 +844,13 @@ public class ImageCoreIJ extends ResourceCoreGeneric implements ImageCore {
 
 	/**
 	 * Allows to delete the Image Histogram in case it needs to be rebuilt after
-	 * changes in colors.
+	 * changes in colors. This is done automatically by the methods of ImageCore
+	 * (setVoxel, slice buffers...) and when the slices of the ImagePlus are replaced,
+	 * and is only needed after modifying the gray levels in place through the ImagePlus
+	 * or its processors.
 	 */
 	public void deleteHistogram(){
-		// This is meant to update the data in derived classes (e.g. histogram data) 
-		// when colors have changed.
-		this.m_imageThresholding = null;
+		getHistogramCache().invalidate();
 	}
 
 
@@ -12,10 +12,14 @@ package wrapScienceJ.wrapImaJ.wrappers.imagej.core;
 
 
 import ij.ImagePlus;
+import wrapScienceJ.utils.SliceScheduler;
+import wrapScienceJ.utils.SliceScheduler.SliceTask;
 import wrapScienceJ.wrapImaJ.core.*;
 import wrapScienceJ.wrapImaJ.core.histogram.Histogram;
+import wrapScienceJ.wrapImaJ.core.histogram.HistogramBuilder;
 import wrapScienceJ.wrapImaJ.core.operation.ImageThresholding;
 import wrapScienceJ.wrapImaJ.core.operation.ThresholdingOption;
+import wrapScienceJ.wrapImaJ.core.operation.convolve.GaussianBlurPolicy;
 
 /**
  * This class proposes some functionalities such as histogram construction and management
@@ -39,6 +43,11 @@ public class ImageThresholdingIJ extends ImageCoreGray8IJ implements ImageThresh
      */
     protected HistogramIJ m_histogram = null;
 
+    /**
+     * Full resolution histogram (shared with the histogram cache) from which m_histogram was built.
+     */
+    private long[] m_fullResolutionHistogram = null;
+
     /**
      * Constructs an ImageProcessing instance as a copy of an ImageWrapper
      * @param image
@@ -48,7 +57,6 @@ public class ImageThresholdingIJ extends ImageCoreGray8IJ implements ImageThresh
     	super(image);     
     	System.err.println("getMin() : "+image.getImp().getProcessor().getMin()
     						+ ", getMax() : "+image.getImp().getProcessor().getMax());
-    	extractHistogramFromImage();
     }
     
 
@@ -64,29 +72,37 @@ public class ImageThresholdingIJ extends ImageCoreGray8IJ implements ImageThresh
     
 
     /**
-     * Returns the underlying image of this instance. If the histogram has not been built, then it is built by this function. 
+     * Returns the underlying image of this instance. If the histogram has not been built,
+     * or if the image has been modified since, then it is built by this function.
+     * The histogram is retrieved from the histogram cache of the image
+     * (see {@link ImageCoreIJ#getFullResolutionHistogram()}), so that the image is only
+     * scanned if its gray levels have been modified.
      * @return the histogram of the underlying image of this instance
      */
     @Override
     public  HistogramIJ getHistogram() {
+    	long[] fullResolutionHistogram = getFullResolutionHistogram();
+    	if (this.m_histogram == null || fullResolutionHistogram != this.m_fullResolutionHistogram){
+    		extractHistogramFromImage(fullResolutionHistogram);
+    	}
         return this.m_histogram;
     }
     
     
     /**
      * Constructs the histogram from the underlying image of this instance and initializes the m_histogram instance.
+     * @param fullResolutionHistogram The full resolution histogram of the image
      */
-    private void extractHistogramFromImage() {
-    	//getImageConvert().convertToGray8();
-        long[] hist = buildHistogram();
+    private void extractHistogramFromImage(long[] fullResolutionHistogram) {
+        long[] hist = HistogramBuilder.reduce(fullResolutionHistogram, 256);
         HistogramIJ newHist = new HistogramIJ(hist.length);
 
         for (int i=0 ; i<hist.length ; i++){
         	newHist.setValue(i, hist[i]);
         }
 
-       //System.err.println(newHist);
         this.m_histogram = newHist;
+        this.m_fullResolutionHistogram = fullResolutionHistogram;
     }
     
 
@@ -111,16 +127,12 @@ public class ImageThresholdingIJ extends ImageCoreGray8IJ implements ImageThresh
     	}
 
     	System.err.println("threshold = " + threshold + ", actualThreshold = " + actualThreshold);
-        for (int z = 0; z < getDepth(); z++) {
-        	setCurrentZ(z);
-            for (int x = 0; x < getWidth(); x++) {
-                for (int y = 0; y < getHeight(); y++) {
-                    if (getPixel(x, y) < actualThreshold) {
-                    	setPixel(x, y, 0);
-                    }
-                }
-            }
-        }
+    	// The histogram of the result is deduced from the histogram of the image
+    	int[] table = new int[HistogramBuilder.getNumberOfGrayLevels(getBitDepth())];
+    	for (int g=Math.max(actualThreshold, 0) ; g<table.length ; g++){
+    		table[g] = g;
+    	}
+    	applyLookupTable(table);
         
         if (convertToGray8){
         	getImageConvert().convertToGray8(true);
@@ -150,18 +162,12 @@ public class ImageThresholdingIJ extends ImageCoreGray8IJ implements ImageThresh
     	}
 
     	System.err.println("threshold = " + threshold + ", actualThreshold = " + actualThreshold);
-        for (int z = 0; z < getDepth(); z++) {
-        	setCurrentZ(z);
-            for (int x = 0; x < getWidth(); x++) {
-                for (int y = 0; y < getHeight(); y++) {
-                    if (getPixel(x, y) >= actualThreshold) {
-                    	setPixel(x, y, white);
-                    } else {
-                    	setPixel(x, y, 0);
-                    }
-                }
-            }
-        }
+    	// The histogram of the result is deduced from the histogram of the image
+    	int[] table = new int[HistogramBuilder.getNumberOfGrayLevels(getBitDepth())];
+    	for (int g=Math.max(actualThreshold, 0) ; g<table.length ; g++){
+    		table[g] = white;
+    	}
+    	applyLookupTable(table);
         
         if (convertToGray8){
         	getImageConvert().convertToGray8(true);
@@ -178,25 +184,22 @@ public class ImageThresholdingIJ extends ImageCoreGray8IJ implements ImageThresh
 		int actualMin = (int)(min*maxValue+0.5);
 		int actualMax = (int)(max*maxValue+0.5);
 		
-        for (int z = 0; z < getDepth(); z++) {
-        	setCurrentZ(z);
-            for (int x = 0; x < getWidth(); x++) {
-                for (int y = 0; y < getHeight(); y++) {
-                    if (getPixel(x, y) < actualMin || getPixel(x, y) > actualMax) {
-                    	setPixel(x, y, 0);
-                    }
-                }
-            }
-        }
+		// The histogram of the result is deduced from the histogram of the image
+		int[] table = new int[HistogramBuilder.getNumberOfGrayLevels(getBitDepth())];
+		for (int g=Math.max(actualMin, 0) ; g<=Math.min(actualMax, table.length-1) ; g++){
+			table[g] = g;
+		}
+		applyLookupTable(table);
         return this;
     }
 
 
     /**
-     * Performs thresholding on this image using a given threshold value,
+     * Performs thresholding on an image using a given threshold value,
      * i.e. Any voxel with a value greater than or equal to the threshold have their value set to 0.
+     * The result is written in the weight image.
      *
-     * @param threshold the value for the threshold.
+     * @param image The image to threshold
      * @param weightImage an image representing the local brightness/darkness of the
      * 					  original image.
      * @param impact A coefficient between zero and one. The lower, the less adaptive.
@@ -204,23 +207,28 @@ public class ImageThresholdingIJ extends ImageCoreGray8IJ implements ImageThresh
      * 				 {@link #thresholdImage(ThresholdingOption)}.
      * 
      */
-    protected void applyAdaptiveThresholdPreprocess(ImageCore weightImage, double impact) {
-        for (int z = 0 ; z < getDepth(); z++) {
-        	weightImage.setCurrentZ(z);
-            for (int x = 0; x < getWidth(); x++) {
-                for (int y = 0; y < getHeight(); y++) {
-                	int voxelValue = (int)(getPixel(x, y)
-                			*(255-impact*weightImage.getPixel(x, y))/255.0);
-                	if (voxelValue < 0){
-                		voxelValue = 0;
-                	}
-                	if (voxelValue >255){
-                		voxelValue = 255;
-                	}                	
-                	weightImage.setPixel(x, y, voxelValue);
-                }
-            }
-        }
+    public static void applyAdaptiveThresholdPreprocess(ImageCore image, ImageCore weightImage,
+    													final double impact) {
+        final SliceBuffer[] slices = SliceBuffer.getSliceBuffers(image);
+        final SliceBuffer[] weightSlices = SliceBuffer.getSliceBuffers(weightImage);
+        SliceScheduler.forEachSlice(slices.length, new SliceTask() {
+        	@Override
+        	public void processSlice(int z) {
+        		SliceBuffer slice = slices[z];
+        		SliceBuffer weightSlice = weightSlices[z];
+        		for (int i = 0; i < slice.getSize(); i++) {
+        			int voxelValue = (int)(slice.get(i)
+        					*(255-impact*weightSlice.get(i))/255.0);
+        			if (voxelValue < 0){
+        				voxelValue = 0;
+        			}
+        			if (voxelValue >255){
+        				voxelValue = 255;
+        			}
+        			weightSlice.set(i, voxelValue);
+        		}
+        	}
+        });
     }
 
 
@@ -236,6 +244,68 @@ public class ImageThresholdingIJ extends ImageCoreGray8IJ implements ImageThresh
     }
 
 
+    /**
+     * The histogram of the region is computed by reading the voxels of the region only.
+     * @see wrapScienceJ.wrapImaJ.core.operation.ImageThresholding#getBinarizationThreshold(wrapScienceJ.wrapImaJ.core.operation.ThresholdingOption, wrapScienceJ.wrapImaJ.core.BoxROI)
+     */
+    @Override
+    public int getBinarizationThreshold(ThresholdingOption method, BoxROI roi){
+    	return HistogramIJ.getRegionBinarizationThreshold(method, HistogramBuilder.buildHistogram(this, roi));
+    }
+
+
+    /**
+     * The histogram of the region is computed by reading the voxels of the box only.
+     * @see wrapScienceJ.wrapImaJ.core.operation.ImageThresholding#getBinarizationThreshold(wrapScienceJ.wrapImaJ.core.operation.ThresholdingOption, wrapScienceJ.wrapImaJ.core.ImageCore, int, wrapScienceJ.wrapImaJ.core.BoxROI)
+     */
+    @Override
+    public int getBinarizationThreshold(ThresholdingOption method, ImageCore labels, int label, BoxROI roi){
+    	return HistogramIJ.getRegionBinarizationThreshold(method, 
+    													  HistogramBuilder.buildHistogram(this, labels, label, roi));
+    }
+
+
+    /**
+     * The histograms of all the regions are computed in a single pass over the image.
+     * @see wrapScienceJ.wrapImaJ.core.operation.ImageThresholding#getBinarizationThresholds(wrapScienceJ.wrapImaJ.core.operation.ThresholdingOption, wrapScienceJ.wrapImaJ.core.ImageCore, int, wrapScienceJ.wrapImaJ.core.BoxROI)
+     */
+    @Override
+    public int[] getBinarizationThresholds(ThresholdingOption method, ImageCore labels, int maxLabel, BoxROI roi){
+    	long[][] histograms = HistogramBuilder.buildHistograms(this, labels, maxLabel, roi, 256);
+    	int[] thresholds = new int[histograms.length];
+    	for (int label=0 ; label<histograms.length ; label++){
+    		thresholds[label] = HistogramIJ.getRegionBinarizationThreshold(method, histograms[label]);
+    	}
+    	return thresholds;
+    }
+
+
+    /**
+     * The histogram of the region is computed by reading the voxels of the box only.
+     * @see wrapScienceJ.wrapImaJ.core.operation.ImageThresholding#getBinarizationThreshold(wrapScienceJ.wrapImaJ.core.operation.ThresholdingOption, wrapScienceJ.wrapImaJ.core.LabelSlices, int, wrapScienceJ.wrapImaJ.core.BoxROI)
+     */
+    @Override
+    public int getBinarizationThreshold(ThresholdingOption method, LabelSlices labels, int label, BoxROI roi){
+    	return HistogramIJ.getRegionBinarizationThreshold(method, 
+    													  HistogramBuilder.buildHistogram(this, labels, label, roi));
+    }
+
+
+    /**
+     * The histograms of all the regions are computed in a single pass over the image.
+     * @see wrapScienceJ.wrapImaJ.core.operation.ImageThresholding#getBinarizationThresholds(wrapScienceJ.wrapImaJ.core.operation.ThresholdingOption, wrapScienceJ.wrapImaJ.core.LabelSlices, int, wrapScienceJ.wrapImaJ.core.BoxROI)
+     */
+    @Override
+    public int[] getBinarizationThresholds(ThresholdingOption method, LabelSlices labels, int maxLabel, BoxROI roi){
+    	long[][] histograms = HistogramBuilder.buildHistograms(this, labels, maxLabel, roi, 256);
+    	int[] thresholds = new int[histograms.length];
+    	for (int label=0 ; label<histograms.length ; label++){
+    		thresholds[label] = HistogramIJ.getRegionBinarizationThreshold(method, histograms[label]);
+    	}
+    	return thresholds;
+    }
+
+
     /**
      * @see wrapScienceJ.wrapImaJ.core.operation.ImageThresholding#thresholdImageKeepGray(wrapScienceJ.wrapImaJ.core.operation.ThresholdingOption, boolean)
      */
@@ -264,10 +334,13 @@ public class ImageThresholdingIJ extends ImageCoreGray8IJ implements ImageThresh
     	ImageCore imageCopy = duplicate();
     	imageCopy.setTitle("Weight for adaptive thresholding");
 		imageCopy.getImageContrast().equalize(powExponent, exponentValues, 1.0);
-		imageCopy.getImageBlur().getGaussianBlur(sigmaX, sigmaY, sigmaZ);
+		// The cost of the recursive filter does not depend on the (typically large) standard deviations
+		imageCopy.getImageBlur()
+				 .getGaussianBlur(sigmaX, sigmaY, sigmaZ, GaussianBlurPolicy.RecursiveFilter)
+				 .applyMask();
     	imageCopy.getPreferedRenderTool().display(imageCopy);
 
-    	applyAdaptiveThresholdPreprocess(imageCopy, impact);
+    	applyAdaptiveThresholdPreprocess(this, imageCopy, impact);
     	
     	return imageCopy;
     }
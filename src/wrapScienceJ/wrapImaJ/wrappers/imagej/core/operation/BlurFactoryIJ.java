@@ -8,14 +8,14 @@
 \******************************************************************************/ 
 package wrapScienceJ.wrapImaJ.wrappers.imagej.core.operation;
 
-import wrapScienceJ.wrapImaJ.core.VoxelDouble;
 import wrapScienceJ.wrapImaJ.core.operation.convolve.generic.BlurFactoryGeneric;
-import wrapScienceJ.wrapImaJ.core.operation.convolve.generic.GaussianBlurGeneric;
 import wrapScienceJ.wrapImaJ.wrappers.imagej.core.ImageCoreIJ;
 
 /**
  * @author remy
  *
+ * The Gaussian blur is the generic separable convolution of {@link BlurFactoryGeneric},
+ * which is faster than ImageJ's slice by slice implementation wrapped in {@link GaussianBlurIJ}.
  */
 public class BlurFactoryIJ extends BlurFactoryGeneric {
 
@@ -27,30 +27,4 @@ public class BlurFactoryIJ extends BlurFactoryGeneric {
 	}
 
 
-	/**
-	 * @see wrapScienceJ.wrapImaJ.core.operation.convolve.generic.BlurFactoryGeneric#getGaussianBlur(double, double, double)
-	 */
-	@Override
-	public GaussianBlurGeneric getGaussianBlur(double sigmaX, double sigmaY, double sigmaZ) {
-
-		return new GaussianBlurIJ(getInImageSignPolicyEmbed(), getOutImageSignPolicyEmbed(),
-									sigmaX, sigmaY, sigmaZ,
-									  this.m_shiftOuputMargin);
-	}
-
-	/**
-	 * @see wrapScienceJ.wrapImaJ.core.operation.convolve.generic.BlurFactoryGeneric#getGaussianBlurCalibrated(double, double, double, wrapScienceJ.wrapImaJ.core.VoxelDouble)
-	 */
-	@Override
-	public GaussianBlurGeneric getGaussianBlurCalibrated(double sigmaX, double sigmaY, double sigmaZ,
-										VoxelDouble voxelEdgesLength) {
-
-		return new GaussianBlurIJ(getInImageSignPolicyEmbed(), getOutImageSignPolicyEmbed(),
-								  sigmaX, sigmaY, sigmaZ,
-								  voxelEdgesLength,
-								  this.m_shiftOuputMargin
-								 );
-	}
-
-
 }
@@ -97,15 +97,13 @@ public class GaussianBlurIJ extends GaussianBlurGeneric {
 				double accuracy = (imp.getBitDepth() == 8 || 
 								   imp.getBitDepth() == 24) ? 0.002 : 0.0002;
 				gb.blurGaussian(ip, this.m_sigmaX, this.m_sigmaY, accuracy);
-				if (i%10==9){
-					System.gc();
-				}
 			}
 		}
 		if (this.m_sigmaZ > 0.0) {
 			blurZ(stack, this.m_sigmaZ);
 		}
 		imp.setStack(stack);
+		((ImageCoreIJ)getInputImageRaw()).deleteHistogram();
 		
 		getOutImageSignPolicyEmbed().copyFrom(getInImageSignPolicyEmbed(), this.m_shiftOuputMargin, true);
 		
@@ -10,9 +10,7 @@
 package wrapScienceJ.wrapImaJ.wrappers.imagej.core.operation;
 
 import ij.ImagePlus;
-import ij.process.ImageStatistics;
-import ij.process.StackStatistics;
-import wrapScienceJ.wrapImaJ.core.VoxelShort;
+import wrapScienceJ.wrapImaJ.core.histogram.HistogramBuilder;
 import wrapScienceJ.wrapImaJ.core.operation.ImageContrast;
 import wrapScienceJ.wrapImaJ.wrappers.imagej.core.ImageCoreIJ;
 
@@ -117,43 +115,30 @@ public class ImageContrastIJ implements ImageContrast {
 
 
 	/**
+	 * The minimum is read from the histogram cache of the image (see {@link ImageCoreIJ#getFullResolutionHistogram()}).
 	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageContrast#getMinValue()
 	 */
 	@Override
 	public int getMinValue(){
-		int maxValue = this.m_image.getWhiteValue();
-		int minRange = maxValue;
-		for (int z=0 ; z<this.m_image.getDepth() ; z++){
-			this.m_image.setCurrentZ(z);
-			for (int x=0 ; x<this.m_image.getWidth() ; x++){
-				for (int y=0 ; y<this.m_image.getHeight() ; y++){
-					int pixelValue = this.m_image.getPixel(x, y);
-					if (pixelValue < minRange){
-						minRange = pixelValue;
-					}
-				}
-			}
+		long[] histogram = this.m_image.getFullResolutionHistogram();
+		int minRange = 0;
+		while (minRange < histogram.length-1 && histogram[minRange] == 0){
+			minRange++;
 		}
 		return minRange;
 	}
 
 
 	/**
+	 * The maximum is read from the histogram cache of the image (see {@link ImageCoreIJ#getFullResolutionHistogram()}).
 	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageContrast#getMaxValue()
 	 */
 	@Override
 	public int getMaxValue(){
-		int maxRange = 0;
-		for (int z=0 ; z<this.m_image.getDepth() ; z++){
-			this.m_image.setCurrentZ(z);
-			for (int x=0 ; x<this.m_image.getWidth() ; x++){
-				for (int y=0 ; y<this.m_image.getHeight() ; y++){
-					int pixelValue = this.m_image.getPixel(x, y);
-					if (pixelValue > maxRange){
-						maxRange = pixelValue;
-					}
-				}
-			}
+		long[] histogram = this.m_image.getFullResolutionHistogram();
+		int maxRange = histogram.length-1;
+		while (maxRange > 0 && histogram[maxRange] == 0){
+			maxRange--;
 		}
 		return maxRange;
 	}
@@ -164,23 +149,8 @@ public class ImageContrastIJ implements ImageContrast {
 	@Override
 	public ImageCoreIJ maximizeValuesRange(){
 		
-		int maxValue = this.m_image.getWhiteValue();
-		int minRange = maxValue;
-		int maxRange = 0;
-		for (int z=0 ; z<this.m_image.getDepth() ; z++){
-			this.m_image.setCurrentZ(z);
-			for (int x=0 ; x<this.m_image.getWidth() ; x++){
-				for (int y=0 ; y<this.m_image.getHeight() ; y++){
-					int pixelValue = this.m_image.getPixel(x, y);
-					if (pixelValue < minRange){
-						minRange = pixelValue;
-					}
-					if (pixelValue > maxRange){
-						maxRange = pixelValue;
-					}
-				}
-			}
-		}
+		int minRange = getMinValue();
+		int maxRange = getMaxValue();
 		System.err.println("ImageContrast.maximizeValuesRange, minRange: " + minRange + ", maxRange: " + maxRange);
 		this.m_imp.getProcessor().setMinAndMax(minRange, maxRange);
 		updateDataColorRange();
@@ -198,10 +168,26 @@ public class ImageContrastIJ implements ImageContrast {
 	 */
 	protected ImageCoreIJ updateDataColorRange(){
 		int tableSize = (this.m_image.getBitDepth() == 16) ? 65536 : 256;
-		int[] table = new int[tableSize];
 		int min = (int)this.m_imp.getDisplayRangeMin();
 		int max = (int)this.m_imp.getDisplayRangeMax();
-
+		
+		// The histogram cache is updated from the lookup table
+		this.m_image.applyLookupTable(getDisplayRangeTable(tableSize, min, max));
+		this.m_imp.getProcessor().setMinAndMax(0, tableSize-1);
+		
+		return this.m_image;
+	}
+	
+	/**
+	 * Computes the lookup table which maps linearly the display range to the whole range of gray levels.
+	 * The gray levels below the display range are set to black and those above to white.
+	 * @param tableSize The number of gray levels (256 or 65536)
+	 * @param min The minimum of the display range
+	 * @param max The maximum of the display range
+	 * @return The lookup table, with one value per gray level
+	 */
+	public static int[] getDisplayRangeTable(int tableSize, int min, int max){
+		int[] table = new int[tableSize];
 		for (int i=0; i<tableSize; i++) {
 			if (i <= min){
 				table[i] = 0;
@@ -213,19 +199,7 @@ public class ImageContrastIJ implements ImageContrast {
 				}
 			}
 		}
-		
-		for (int z=0 ; z<this.m_image.getDepth() ; z++){
-			this.m_image.setCurrentZ(z);
-			for (int y=0 ; y<this.m_image.getHeight() ; y++){
-				for (int x=0 ; x<this.m_image.getWidth() ; x++){
-					this.m_image.setPixel(x, y, table[this.m_image.getPixel(x, y)]);
-				}
-			}
-		}
-		this.m_imp.getProcessor().setMinAndMax(0, tableSize-1);
-		this.m_image.deleteHistogram();
-		
-		return this.m_image;
+		return table;
 	}
 	
 	/**
@@ -260,13 +234,14 @@ public class ImageContrastIJ implements ImageContrast {
 	}
 	
 	/**
-	 * 
+	 * Computes the lookup table of the equalization of a histogram with 256 bins.
 	 * @param histogram The histogram on which equalization is performed
 	 * @param powExponent Exponent on the histogram value in the histogram integration
+	 * @param powValue Exponent on the output value
 	 * @param saturationReduction between -1 (Saturate more) and +1 (saturate less)
-	 * @return The equalized histogram
+	 * @return The equalized histogram, as a lookup table from the 256 bins to GRAY8 values
 	 */
-	private static int[] equalizeHistogram(long[] histogram, double powExponent,
+	public static int[] equalizeHistogram(long[] histogram, double powExponent,
 															 double powValue,
 															 double saturationReduction){
 		double[] equalizedHistogram = new double[256];
@@ -306,36 +281,47 @@ public class ImageContrastIJ implements ImageContrast {
 	@Override
 	public ImageCoreIJ equalize(double powExponent, double powValue, double saturationReduction) {
 		
-		ImageStatistics stats = new StackStatistics(this.m_imp);
-		long[] histogram = stats.getHistogram();
+		long[] histogram = HistogramBuilder.reduce(this.m_image.getFullResolutionHistogram(), 256);
 		int[] equalizedHistogram = equalizeHistogram(histogram, powExponent, powValue, saturationReduction);
 
-		// pre-allocated voxel (to aImageCoreIJ saturating the garbage collector)
-		VoxelShort voxel = new VoxelShort();
-		for (short z=1 ; z<= this.m_image.getDepth() ; z++){
-			// set the slice
-			this.m_image.setCurrentZ(z);
-			for (short y=0 ; y<this.m_image.getHeight() ; y++){
-				for (short x=0 ; x<this.m_image.getWidth() ; x++){
-					voxel.setCoordinates(x, y, z);
-					int equalizedValue = equalizedHistogram[this.m_image.getPixel(x, y)];
-					
-					this.m_image.setPixel(x, y, equalizedValue);
-				}
-					
-			}
-		}
-		// reinitialize the slice to update the last slice
-		this.m_image.setCurrentZ(1);
+		this.m_image.applyLookupTable(equalizedHistogram);
+		// reinitialize the slice to update the current processor
+		this.m_image.setCurrentZ(0);
 		return this.m_image;
 	}
 
 	/**
+	 * The saturated voxels are split evenly between the darkest and the brightest voxels,
+	 * and the gray levels are read from the histogram cache of the image.
 	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageContrast#stretchHistogram(double)
 	 */
 	@Override
 	public ImageCoreIJ stretchHistogram(double saturatedProportion) {
-		throw new IllegalStateException("Sorry, not imlemented..");
+		double proportion = saturatedProportion < 0.0d ? 0.0d : 
+			(saturatedProportion > 1.0d ? 1.0d : saturatedProportion);
+		long[] histogram = this.m_image.getFullResolutionHistogram();
+		long nVoxels = 0;
+		for (long count : histogram){
+			nVoxels += count;
+		}
+		long saturatedVoxels = (long)(0.5*proportion*nVoxels);
+		
+		int minRange = 0;
+		long count = histogram[0];
+		while (minRange < histogram.length-1 && count <= saturatedVoxels){
+			minRange++;
+			count += histogram[minRange];
+		}
+		int maxRange = histogram.length-1;
+		count = histogram[maxRange];
+		while (maxRange > minRange && count <= saturatedVoxels){
+			maxRange--;
+			count += histogram[maxRange];
+		}
+		this.m_imp.getProcessor().setMinAndMax(minRange, maxRange);
+		updateDataColorRange();
+		
+		return this.m_image;
 	}
 
 }
@@ -102,6 +102,7 @@ public class ImageConvertIJ implements ImageConvert {
 			stack.addSlice("Slice"+(currentDepth+1), ip);
 		}
 		this.m_imp.setStack(stack);
+		this.m_image.deleteHistogram();
 		
 		return this.m_image;
 	}
@@ -139,6 +140,7 @@ public class ImageConvertIJ implements ImageConvert {
 								);
 			}
 		}
+		this.m_image.deleteHistogram();
 		return this.m_image;
 	}
 
@@ -237,6 +239,7 @@ public class ImageConvertIJ implements ImageConvert {
 										0, this.m_imp.getProcessor().getPixels(), 0,
 										bufferedImage.getWidth()*bufferedImage.getHeight());
 		}
+		this.m_image.deleteHistogram();
 		
 		return this.m_image;
 	}
@@ -387,6 +390,7 @@ public class ImageConvertIJ implements ImageConvert {
 			stack.addSlice("Slice"+(currentDepth+1), ip);
 		}
 		this.m_imp.setStack(stack);
+		this.m_image.deleteHistogram();
 	}
 	
 	
@@ -429,9 +433,6 @@ public class ImageConvertIJ implements ImageConvert {
 		for (int z=0 ; z < voxelValues.length ; z++){
 			newImage.addShortArray(voxelValues[z], bitDepth, init);
 			init = false;
-			if (z%10 == 0){
-				System.gc();
-			}
 		}
 
 		return newImage.m_image;
@@ -497,6 +498,7 @@ public class ImageConvertIJ implements ImageConvert {
 			stack.addSlice("Slice"+(currentDepth+1), ip);
 		}
 		this.m_imp.setStack(stack);
+		this.m_image.deleteHistogram();
 		
 	}
 
@@ -539,9 +541,6 @@ public class ImageConvertIJ implements ImageConvert {
 		for (int z=0 ; z < voxelValues.length ; z++){
 			newImage.addByteArray(voxelValues[z], bitDepth, init);
 			init = false;
-			if (z%10 == 0){
-				System.gc();
-			}
 		}
 
 		return newImage.m_image;
@@ -597,12 +596,10 @@ public class ImageConvertIJ implements ImageConvert {
 			}
 			
 			init = false;
-			if (z%10 == 0){
-				System.gc();
-			}
 		}
 
 		this.m_imp.setStack(null, newStack);
+		this.m_image.deleteHistogram();
 		
 		return this.m_image;
 	}
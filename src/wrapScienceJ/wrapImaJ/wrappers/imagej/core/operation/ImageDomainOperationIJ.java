@@ -141,6 +141,7 @@ public class ImageDomainOperationIJ extends ImageDomainOperationGeneric {
 			stack.addSlice(((ImageCoreIJ)image).getImp().getProcessor());
 		}
 		this.m_imp.setStack(stack);
+		((ImageCoreIJ)this.m_image).deleteHistogram();
 		
 		// Add back the previously saved slices of the original images
 		for (int z=0 ; z<initialDepth-zCoordMin ; z++){
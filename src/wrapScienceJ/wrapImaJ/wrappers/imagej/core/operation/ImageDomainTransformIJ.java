@@ -58,6 +58,7 @@ public class ImageDomainTransformIJ extends ImageDomainTransformGeneric {
 							 sliceSize
 							 );
 		}
+		((ImageCoreIJ) destinationImage).deleteHistogram();
 		destinationImage.mergeMetaData(this.m_image);
 		
 		return destinationImage;
@@ -9,6 +9,7 @@
 
 package wrapScienceJ.wrapImaJ.wrappers.imagej.gui.render;
 
+import wrapScienceJ.config.GlobalOptions;
 import wrapScienceJ.wrapImaJ.core.ImageCore;
 import wrapScienceJ.wrapImaJ.gui.render.RenderTool;
 import wrapScienceJ.wrapImaJ.wrappers.imagej.core.ImageCoreIJ;
@@ -39,11 +40,13 @@ public class RenderToolIJ implements RenderTool {
 	}
 	
 	/**
-	 * Opens a Graphical Human Interface window and displays the surface.
+	 * Opens a Graphical Human Interface window and displays the surface,
+	 * unless the display is disabled.
+	 * @see GlobalOptions#isDisplayEnabled()
 	 */
 	@Override
 	public void display(ImageCore image) {
-		if (image instanceof ImageCoreIJ){
+		if (image instanceof ImageCoreIJ && GlobalOptions.isDisplayEnabled()){
 			((ImageCoreIJ)image).getImp().show();
 			((ImageCoreIJ)image).getImp().updateAndRepaintWindow();
 		}
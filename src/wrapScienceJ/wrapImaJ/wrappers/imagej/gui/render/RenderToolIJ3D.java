@@ -15,6 +15,7 @@ import javax.vecmath.Vector3d;
 
 import ij3d.Content;
 import ij3d.Image3DUniverse;
+import wrapScienceJ.config.GlobalOptions;
 import wrapScienceJ.wrapImaJ.core.ImageCore;
 import wrapScienceJ.wrapImaJ.gui.render.RenderTool;
 import wrapScienceJ.wrapImaJ.wrappers.imagej.core.ImageCoreIJ;
@@ -53,11 +54,13 @@ public class RenderToolIJ3D implements RenderTool{
 	}
 	
 	/**
-	 * Opens a Graphical Human Interface window and displays the surface.
+	 * Opens a Graphical Human Interface window and displays the surface,
+	 * unless the display is disabled.
+	 * @see GlobalOptions#isDisplayEnabled()
 	 */
 	@Override
 	public void display(ImageCore image) {
-		if (image instanceof ImageCoreIJ){
+		if (image instanceof ImageCoreIJ && GlobalOptions.isDisplayEnabled()){
 			Image3DUniverse univ = new Image3DUniverse();
 			univ.setAutoAdjustView(true);
 			univ.addVoltex(((ImageCoreIJ)image).getImp(), null, "WrapImaJ", 50, new boolean[] {true, true, true}, 2);
@@ -0,0 +1,193 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File: StackReaderIJ.java                                                 * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+
+package wrapScienceJ.wrapImaJ.wrappers.imagej.io;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.io.FileInfo;
+import ij.io.FileOpener;
+import ij.io.TiffDecoder;
+import ij.measure.Calibration;
+import ij.process.ImageProcessor;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Allows to read the slices of an image file one at a time, in order,
+ * so that a stack can be converted slice by slice without holding the
+ * whole source stack in memory.
+ *
+ * For TIFF files, the image file directories are decoded only once
+ * and each slice is then read directly from its offset in the file,
+ * as opposed to IJ.openImage(path, n) which decodes the whole TIFF
+ * header again for each slice n. The slices are decoded exactly as by
+ * IJ.openImage(path, n).
+ * Other file formats are opened at once with IJ.openImage(path),
+ * and the slices are then retrieved from the opened stack.
+ *
+ * @author Rémy Malgouyres
+ */
+public class StackReaderIJ {
+
+	/**
+	 * File information for each slice of a TIFF file (null for other formats)
+	 */
+	private FileInfo[] m_slicesInfo;
+
+	/**
+	 * Whole image for file formats other than TIFF (null for TIFF files)
+	 */
+	private ImagePlus m_image;
+
+	/**
+	 * First slice of the image, used to retrieve the dimensions, type and calibration.
+	 */
+	private ImagePlus m_firstSlice;
+
+	/**
+	 * Opens an image file for reading its slices.
+	 * @param path path on disk to an image
+	 * @throws IOException in case of failure to read the image from file
+	 */
+	public StackReaderIJ(String path) throws IOException {
+		this.m_slicesInfo = getTiffSlicesInfo(path);
+		if (this.m_slicesInfo != null){
+			this.m_firstSlice = new FileOpener(this.m_slicesInfo[0]).open(false);
+		}else{
+			this.m_image = IJ.openImage(path);
+			this.m_firstSlice = this.m_image;
+		}
+		if (this.m_firstSlice == null){
+			throw new IOException("Load image: could not load image from file. (path: " + path +")");
+		}
+	}
+
+	/**
+	 * Decodes the image file directories of a TIFF file and computes
+	 * the file information of each slice.
+	 * @param path path on disk to an image
+	 * @return The file information of each slice, or null if the file
+	 * 		   is not a TIFF file with 8 or 16 bits gray levels.
+	 */
+	public static FileInfo[] getTiffSlicesInfo(String path){
+		String lowerCasePath = path.toLowerCase();
+		if (!lowerCasePath.endsWith(".tif") && !lowerCasePath.endsWith(".tiff")){
+			return null;
+		}
+		File file = new File(path);
+		String directory = file.getParent() == null ? "" : file.getParent() + File.separator;
+		FileInfo[] info;
+		try{
+			info = new TiffDecoder(directory, file.getName()).getTiffInfo();
+		}catch (IOException e){
+			return null;
+		}
+		if (info == null || info.length == 0){
+			return null;
+		}
+		for (FileInfo fi : info){
+			if (fi.fileType != FileInfo.GRAY8 && fi.fileType != FileInfo.COLOR8 &&
+				fi.fileType != FileInfo.GRAY16_UNSIGNED && fi.fileType != FileInfo.GRAY16_SIGNED){
+				return null;
+			}
+		}
+		if (info.length == 1 && info[0].nImages > 1){
+			// Contiguous stack (e.g. saved by ImageJ): one file info for all the slices
+			FileInfo stackInfo = info[0];
+			long sliceSize = (long)stackInfo.width*stackInfo.height*stackInfo.getBytesPerPixel();
+			FileInfo[] slicesInfo = new FileInfo[stackInfo.nImages];
+			for (int n=0 ; n<slicesInfo.length ; n++){
+				FileInfo sliceInfo = (FileInfo)stackInfo.clone();
+				sliceInfo.longOffset = stackInfo.getOffset() + n*(sliceSize + stackInfo.gapBetweenImages);
+				sliceInfo.offset = 0;
+				sliceInfo.nImages = 1;
+				if (sliceInfo.description != null){
+					// Otherwise, FileOpener reads the number of images from the description
+					// and opens the whole stack from the slice's offset.
+					sliceInfo.description = sliceInfo.description.replaceAll("(?m)^images=.*\\n?", "");
+				}
+				slicesInfo[n] = sliceInfo;
+			}
+			return slicesInfo;
+		}
+		return info;
+	}
+
+	/**
+	 * @return The number of slices in the image file
+	 */
+	public int getDepth(){
+		if (this.m_slicesInfo != null){
+			return this.m_slicesInfo.length;
+		}
+		return this.m_image.getStackSize();
+	}
+
+	/**
+	 * @return The width of the slices
+	 */
+	public int getWidth(){
+		return this.m_firstSlice.getWidth();
+	}
+
+	/**
+	 * @return The height of the slices
+	 */
+	public int getHeight(){
+		return this.m_firstSlice.getHeight();
+	}
+
+	/**
+	 * @return The ImageJ type of the image (e.g. ImagePlus.GRAY16)
+	 */
+	public int getType(){
+		return this.m_firstSlice.getType();
+	}
+
+	/**
+	 * @return The number of bits per voxel of the image
+	 */
+	public int getBitDepth(){
+		return this.m_firstSlice.getBitDepth();
+	}
+
+	/**
+	 * @return The calibration of the image, as retrieved from the first slice.
+	 */
+	public Calibration getCalibration(){
+		return this.m_firstSlice.getCalibration();
+	}
+
+	/**
+	 * Reads a slice from the file.
+	 * Reading the slices in increasing order is the most efficient for TIFF files.
+	 * @param zCoord The z coordinate of the slice, between 0 and getDepth()-1
+	 * @return The gray levels of the slice, which can be modified by the caller.
+	 * @throws IOException in case of failure to read the slice from file
+	 */
+	public ImageProcessor readSlice(int zCoord) throws IOException {
+		if (zCoord < 0 || zCoord >= getDepth()){
+			throw new IllegalArgumentException("Slice index out of range.");
+		}
+		if (this.m_slicesInfo == null){
+			return this.m_image.getStack().getProcessor(zCoord+1);
+		}
+		if (zCoord == 0){
+			return this.m_firstSlice.getProcessor();
+		}
+		ImagePlus slice = new FileOpener(this.m_slicesInfo[zCoord]).open(false);
+		if (slice == null){
+			throw new IOException("Load image: could not read slice " + (zCoord+1) + " from file.");
+		}
+		return slice.getProcessor();
+	}
+
+} // End of class
@@ -0,0 +1,913 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File: ImageCoreMapped.java                                               * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+
+package wrapScienceJ.wrapImaJ.wrappers.mapped.core;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import wrapScienceJ.factory.image.ImageCoreFactoryMapped;
+import wrapScienceJ.io.stream.FileHelper;
+import wrapScienceJ.metaData.container.MetaDataRetriever;
+import wrapScienceJ.metaData.container.MetaDataRetriever.RetrievalPolicy;
+import wrapScienceJ.resource.BufferEnlargementPolicy;
+import wrapScienceJ.resource.ResourceCore;
+import wrapScienceJ.resource.generic.ModelCoreImageGeneric;
+import wrapScienceJ.resource.generic.ResourceCoreGeneric;
+import wrapScienceJ.wrapImaJ.core.CoordinateAxis;
+import wrapScienceJ.wrapImaJ.core.ImageCalibration;
+import wrapScienceJ.wrapImaJ.core.ImageCalibrationGeneric;
+import wrapScienceJ.wrapImaJ.core.ImageCore;
+import wrapScienceJ.wrapImaJ.core.SliceBuffer;
+import wrapScienceJ.wrapImaJ.core.VoxelDouble;
+import wrapScienceJ.wrapImaJ.core.VoxelShort;
+import wrapScienceJ.wrapImaJ.core.operation.convolve.generic.BlurFactoryGeneric;
+import wrapScienceJ.wrapImaJ.core.operation.convolve.generic.ImageDifferentialOperatorGeneric;
+import wrapScienceJ.wrapImaJ.core.operation.generic.ImageConnectedComponentsGeneric;
+import wrapScienceJ.wrapImaJ.core.operation.generic.ImageContrastGeneric;
+import wrapScienceJ.wrapImaJ.core.operation.generic.ImageConvertGeneric;
+import wrapScienceJ.wrapImaJ.core.operation.generic.ImageDomainProjectionGeneric;
+import wrapScienceJ.wrapImaJ.core.operation.generic.ImageDrawAwt;
+import wrapScienceJ.wrapImaJ.core.operation.generic.ImageSignPolicyEmbedGeneric;
+import wrapScienceJ.wrapImaJ.gui.render.RenderTool;
+import wrapScienceJ.wrapImaJ.wrappers.imagej.gui.GuiFrameworkIJ;
+import wrapScienceJ.wrapImaJ.wrappers.imagej.gui.render.RenderToolIJ;
+import wrapScienceJ.wrapImaJ.wrappers.imagej.io.StackReaderIJ;
+import wrapScienceJ.wrapImaJ.wrappers.mapped.core.operation.ImageDomainOperationMapped;
+import wrapScienceJ.wrapImaJ.wrappers.mapped.core.operation.ImageDomainTransformMapped;
+
+import ij.ImageJ;
+import ij.ImagePlus;
+import ij.VirtualStack;
+import ij.io.FileInfo;
+import ij.io.FileOpener;
+import ij.io.TiffEncoder;
+import ij.measure.Calibration;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+
+/**
+ * Implementation of ImageCore for uncompressed GRAY8 or GRAY16 voxel data stored in a file
+ * (raw data or uncompressed TIFF), which is mapped in memory with FileChannel.map
+ * instead of being loaded in the heap.
+ *
+ * The slices are mapped on demand, the first time they are accessed, and the operating
+ * system pages the voxel data in and out as needed. This allows to process images which
+ * are far larger than the maximal heap size (-Xmx), as long as the algorithms process
+ * the slices one by one (e.g. histogram, thresholding, projections) or only retrieve
+ * a part of the image in memory (e.g. cropping, slices extraction).
+ *
+ * Operations which change the size or the format of the image (e.g. inserting or
+ * merging slices, conversion to GRAY8) cannot modify the mapped file, and return a
+ * new temporary mapped image instead. The other operations (e.g. contrast, isometric
+ * transforms) are performed through the slice buffers of the mapped file.
+ * Operations which need the whole image in the heap can be performed after cropping
+ * a region of interest, which produces an in memory image.
+ *
+ * The image is mapped read only unless specified otherwise, in which case
+ * the modifications of the gray levels are written to the file.
+ *
+ * @see wrapScienceJ.factory.image.ImageCoreFactoryMapped
+ *
+ * @author Rémy Malgouyres
+ */
+public class ImageCoreMapped extends ResourceCoreGeneric implements ImageCore {
+
+	/** Path on disk to the file containing the voxel data */
+	protected String m_path;
+
+	/** Title of the image */
+	protected String m_title;
+
+	/** Width (first coordinate's dimension) of the image */
+	protected int m_width;
+
+	/** Height (second coordinate's dimension) of the image */
+	protected int m_height;
+
+	/** Number of bits per voxel (8 or 16) */
+	protected int m_bitDepth;
+
+	/** Byte order of the 16 bits values in the file */
+	protected ByteOrder m_byteOrder;
+
+	/** Position in the file of the first byte of each slice */
+	protected long[] m_slicesOffset;
+
+	/** File channel from which the slices are mapped (null after {@link #deleteMemory()}) */
+	protected FileChannel m_channel;
+
+	/** Read only or read/write mapping of the file */
+	protected FileChannel.MapMode m_mapMode;
+
+	/**
+	 * Mapped slices, indexed by the z coordinate (null for slices which have not been accessed yet).
+	 * The array is shared with the images which share the same file mapping.
+	 */
+	protected MappedByteBuffer[] m_slices;
+
+	/** Calibration Data of the image */
+	protected ImageCalibration m_calibration;
+
+	/** Denotes the last slice accessed */
+	protected int m_currentZ;
+
+	/** Buffer of the current slice, for use with {@link #getPixel(int, int)} and {@link #setPixel(int, int, int)} */
+	protected ByteBuffer m_currentSlice;
+
+
+	/**
+	 * Maps an uncompressed TIFF file with 8 or 16 bits gray levels, such as the
+	 * files written by ImageJ or {@link #writeToFile(String)}.
+	 * The calibration is read from the file, as by ImageJ.
+	 * @param path path to the TIFF file on disk.
+	 * @param writable If true, the file is mapped for writing and modifications
+	 * 				   of the image are written to the file.
+	 * @param retrievalPolicy The policy to retrieve predefined metadata for the resource of type ImageCore.
+	 * @throws IOException in case of failure to read the file or if the file cannot be mapped
+	 * 		   (compressed, signed, color or floating point data).
+	 */
+	public ImageCoreMapped(String path, boolean writable, RetrievalPolicy retrievalPolicy) throws IOException {
+		FileInfo[] slicesInfo = StackReaderIJ.getTiffSlicesInfo(path);
+		if (slicesInfo == null){
+			throw new IOException("Map image: not a TIFF file with 8 or 16 bits gray levels. (path: " + path +")");
+		}
+		FileInfo firstInfo = slicesInfo[0];
+		long[] slicesOffset = new long[slicesInfo.length];
+		for (int z=0 ; z<slicesInfo.length ; z++){
+			FileInfo info = slicesInfo[z];
+			if (info.compression != FileInfo.COMPRESSION_NONE
+				|| (info.fileType != FileInfo.GRAY8 && info.fileType != FileInfo.COLOR8
+					&& info.fileType != FileInfo.GRAY16_UNSIGNED)
+				|| info.whiteIsZero
+				|| info.width != firstInfo.width || info.height != firstInfo.height
+				|| info.getBytesPerPixel() != firstInfo.getBytesPerPixel()){
+				throw new IOException("Map image: only uncompressed TIFF files with unsigned gray levels"
+									  + " and same size slices can be mapped. (path: " + path +")");
+			}
+			slicesOffset[z] = info.getOffset();
+		}
+		ImagePlus firstSlice = new FileOpener(firstInfo).open(false);
+		if (firstSlice == null){
+			throw new IOException("Map image: could not read image from file. (path: " + path +")");
+		}
+		Calibration cal = firstSlice.getCalibration();
+		this.m_calibration = new ImageCalibrationGeneric(new VoxelDouble(cal.pixelWidth, cal.pixelHeight,
+																		 cal.pixelDepth),
+														 cal.getUnit());
+		mapFile(path, firstInfo.width, firstInfo.height, 8*firstInfo.getBytesPerPixel(),
+				firstInfo.intelByteOrder ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN,
+				slicesOffset, writable);
+		this.m_modelCoreImage = new ModelCoreImageGeneric(this, retrievalPolicy);
+	}
+
+
+	/**
+	 * Maps a raw file containing the voxel data, slice after slice,
+	 * each slice being stored row by row, without any gap.
+	 * The voxels edges lengths are all set to 1.0.
+	 * @param path path to the raw file on disk.
+	 * @param width Width of the image in the first voxel coordinate
+	 * @param height Height of the image in the second voxel coordinate
+	 * @param depth Depth  of the image in the third voxel coordinate
+	 * @param bitDepth Number of bits per voxel (8 or 16)
+	 * @param offset Position in the file of the first byte of the first slice (size of the header)
+	 * @param byteOrder Byte order of the 16 bits values in the file
+	 * @param writable If true, the file is mapped for writing and modifications
+	 * 				   of the image are written to the file.
+	 * @param retrievalPolicy The policy to retrieve predefined metadata for the resource of type ImageCore.
+	 * @throws IOException in case of failure to read the file or if the file is too small.
+	 */
+	public ImageCoreMapped(String path, int width, int height, int depth, int bitDepth,
+						   long offset, ByteOrder byteOrder, boolean writable,
+						   RetrievalPolicy retrievalPolicy) throws IOException {
+		long[] slicesOffset = new long[depth];
+		long sliceByteSize = (long)width*height*(bitDepth/8);
+		for (int z=0 ; z<depth ; z++){
+			slicesOffset[z] = offset + z*sliceByteSize;
+		}
+		this.m_calibration = new ImageCalibrationGeneric(new VoxelDouble(1.0, 1.0, 1.0), "pixel");
+		mapFile(path, width, height, bitDepth, byteOrder, slicesOffset, writable);
+		this.m_modelCoreImage = new ModelCoreImageGeneric(this, retrievalPolicy);
+	}
+
+
+	/**
+	 * Constructs an instance which shares the file mapping, and thus the
+	 * gray levels, of another instance. Modifications of the gray levels
+	 * of one instance are seen in the other instance.
+	 * @param image the image the data of which is to be shared.
+	 */
+	protected ImageCoreMapped(ImageCoreMapped image) {
+		this.m_path = image.m_path;
+		this.m_title = image.m_title;
+		this.m_width = image.m_width;
+		this.m_height = image.m_height;
+		this.m_bitDepth = image.m_bitDepth;
+		this.m_byteOrder = image.m_byteOrder;
+		this.m_slicesOffset = image.m_slicesOffset;
+		this.m_channel = image.m_channel;
+		this.m_mapMode = image.m_mapMode;
+		this.m_slices = image.m_slices;
+		this.m_calibration = image.m_calibration;
+		this.m_currentZ = image.m_currentZ;
+		this.m_currentSlice = image.m_currentSlice;
+		this.m_modelCoreImage = new ModelCoreImageGeneric(this, image);
+	}
+
+
+	/**
+	 * Allocates and returns a black image with given dimensions and type (GRAY8 or GRAY16),
+	 * backed by a temporary raw file which is deleted when the virtual machine terminates.
+	 * The image has a default title and no metadata such as calibration data.
+	 *
+	 * @param width Width of the image in the first voxel coordinate
+	 * @param height Height of the image in the second voxel coordinate
+	 * @param depth Depth  of the image in the third voxel coordinate
+	 * @param bitDepth Number of bits per voxel (8 or 16)
+	 * @return A writable mapped image with all gray levels set to zero.
+	 * @throws IllegalStateException in case of failure to create the temporary file.
+	 */
+	public static ImageCoreMapped createTemporary(int width, int height, int depth, int bitDepth)
+																	throws IllegalStateException {
+		return createTemporary(width, height, depth, bitDepth, ByteOrder.nativeOrder());
+	}
+
+
+	/**
+	 * Allocates and returns a black image backed by a temporary raw file.
+	 * @see #createTemporary(int, int, int, int)
+	 * @param width Width of the image in the first voxel coordinate
+	 * @param height Height of the image in the second voxel coordinate
+	 * @param depth Depth  of the image in the third voxel coordinate
+	 * @param bitDepth Number of bits per voxel (8 or 16)
+	 * @param byteOrder Byte order of the 16 bits values in the temporary file
+	 * @return A writable mapped image with all gray levels set to zero.
+	 * @throws IllegalStateException in case of failure to create the temporary file.
+	 */
+	private static ImageCoreMapped createTemporary(int width, int height, int depth, int bitDepth,
+												   ByteOrder byteOrder) throws IllegalStateException {
+		if (bitDepth != 8 && bitDepth != 16){
+			throw new IllegalArgumentException("Only 8 or 16 bits per voxel images can be mapped.");
+		}
+		try {
+			File file = File.createTempFile("wrapScienceJ_", ".raw");
+			file.deleteOnExit();
+			RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+			try{
+				randomAccessFile.setLength((long)width*height*depth*(bitDepth/8));
+			}finally{
+				randomAccessFile.close();
+			}
+			ImageCoreMapped image = new ImageCoreMapped(file.getPath(), width, height, depth, bitDepth,
+														0L, byteOrder, true,
+														RetrievalPolicy.UseKnownValues);
+			image.setTitle("Black Image");
+			return image;
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not create a temporary mapped image: " + e.getMessage());
+		}
+	}
+
+
+	/**
+	 * Opens the file and initializes the geometry of the image.
+	 * @param path path to the file on disk.
+	 * @param width Width of the image in the first voxel coordinate
+	 * @param height Height of the image in the second voxel coordinate
+	 * @param bitDepth Number of bits per voxel (8 or 16)
+	 * @param byteOrder Byte order of the 16 bits values in the file
+	 * @param slicesOffset Position in the file of the first byte of each slice
+	 * @param writable If true, the file is mapped for writing.
+	 * @throws IOException in case of failure to open the file or if the file is too small.
+	 */
+	private void mapFile(String path, int width, int height, int bitDepth, ByteOrder byteOrder,
+						 long[] slicesOffset, boolean writable) throws IOException {
+		if (bitDepth != 8 && bitDepth != 16){
+			throw new IllegalArgumentException("Only 8 or 16 bits per voxel images can be mapped.");
+		}
+		if (width <= 0 || height <= 0 || slicesOffset.length == 0 || (long)width*height > Integer.MAX_VALUE/2){
+			throw new IllegalArgumentException("Invalid image dimensions for mapping.");
+		}
+		this.m_path = path;
+		this.m_title = new File(path).getName();
+		this.m_width = width;
+		this.m_height = height;
+		this.m_bitDepth = bitDepth;
+		this.m_byteOrder = byteOrder;
+		this.m_slicesOffset = slicesOffset;
+		this.m_mapMode = writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+		this.m_slices = new MappedByteBuffer[slicesOffset.length];
+
+		RandomAccessFile file = new RandomAccessFile(path, writable ? "rw" : "r");
+		long requiredLength = 0;
+		for (long sliceOffset : slicesOffset){
+			requiredLength = Math.max(requiredLength, sliceOffset + getSliceByteSize());
+		}
+		if (file.length() < requiredLength){
+			file.close();
+			throw new IOException("Map image: the file is too small for the image dimensions. (path: "
+								  + path +")");
+		}
+		this.m_channel = file.getChannel();
+		setCurrentZ(0);
+	}
+
+
+	/**
+	 * @return The number of bytes of the voxel data of one slice.
+	 */
+	private int getSliceByteSize(){
+		return this.m_width*this.m_height*(this.m_bitDepth/8);
+	}
+
+
+	/**
+	 * Retrieves the mapped voxel data of a slice, mapping the slice if it has not been accessed yet.
+	 * @param zCoord the id (z-value) of the slice, between zero and (getDepth()-1).
+	 * @return The buffer containing the gray levels of the slice, with the byte order of the file.
+	 * @throws IllegalStateException if the slice cannot be mapped (e.g. after {@link #deleteMemory()})
+	 */
+	protected ByteBuffer getMappedSlice(int zCoord) throws IllegalStateException {
+		MappedByteBuffer slice = this.m_slices[zCoord];
+		if (slice != null){
+			return slice;
+		}
+		synchronized (this.m_slices){
+			if (this.m_slices[zCoord] == null){
+				if (this.m_channel == null || !this.m_channel.isOpen()){
+					throw new IllegalStateException("The memory of the mapped image has been released.");
+				}
+				try{
+					MappedByteBuffer mapped = this.m_channel.map(this.m_mapMode, this.m_slicesOffset[zCoord],
+																 getSliceByteSize());
+					mapped.order(this.m_byteOrder);
+					this.m_slices[zCoord] = mapped;
+				}catch (IOException e){
+					throw new IllegalStateException("Could not map slice " + zCoord + " of image "
+													+ this.m_path + ": " + e.getMessage());
+				}
+			}
+			return this.m_slices[zCoord];
+		}
+	}
+
+
+	/**
+	 * @return true if the file is mapped for writing, so that the gray levels can be modified.
+	 */
+	public boolean isWritable(){
+		return this.m_mapMode == FileChannel.MapMode.READ_WRITE;
+	}
+
+
+	/**
+	 * Writes the modifications of the gray levels of the slices which have been accessed
+	 * to the storage device. Nothing is done if the image is mapped read only.
+	 */
+	public void force(){
+		if (!isWritable()){
+			return;
+		}
+		for (MappedByteBuffer slice : this.m_slices){
+			if (slice != null){
+				slice.force();
+			}
+		}
+	}
+
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getPreferedFactory()
+	 */
+	@Override
+	public ImageCoreFactoryMapped getPreferedFactory(){
+		return ImageCoreFactoryMapped.getInstance();
+	}
+	
+	/**
+	 * The memory is released by the prefered factory.
+	 * @see wrapScienceJ.resource.ResourceCore#close()
+	 * @see wrapScienceJ.factory.image.ImageCoreFactory#releaseImageCore(ImageCore)
+	 */
+	@Override
+	public void close(){
+		getPreferedFactory().releaseImageCore(this);
+	}
+
+
+	/**
+	 * Writes the modifications to the file (if mapped for writing) and closes the file.
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#deleteMemory()
+	 */
+	@Override
+	public void deleteMemory() {
+		synchronized (this.m_slices){
+			force();
+			for (int z=0 ; z<this.m_slices.length ; z++){
+				this.m_slices[z] = null;
+			}
+			this.m_currentSlice = null;
+			if (this.m_channel != null){
+				try {
+					this.m_channel.close();
+				} catch (IOException e) {
+					System.err.println("Could not close mapped image file " + this.m_path + ": " + e.getMessage());
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * @see wrapScienceJ.resource.generic.ResourceCoreGeneric#getPath()
+	 */
+	@Override
+	public String getPath() {
+		return this.m_path;
+	}
+
+	/**
+	 * @see wrapScienceJ.resource.generic.ResourceCoreGeneric#getTitle()
+	 */
+	@Override
+	public String getTitle() {
+		return this.m_title;
+	}
+
+	/**
+	 * @see wrapScienceJ.resource.generic.ResourceCoreGeneric#setTitle(java.lang.String)
+	 */
+	@Override
+	public ImageCore setTitle(String title) {
+		this.m_title = title;
+		return this;
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getWidth()
+	 */
+	@Override
+	public int getWidth() {
+		return this.m_width;
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getHeight()
+	 */
+	@Override
+	public int getHeight() {
+		return this.m_height;
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getDepth()
+	 */
+	@Override
+	public int getDepth() {
+		return this.m_slicesOffset.length;
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getSize(wrapScienceJ.wrapImaJ.core.CoordinateAxis)
+	 */
+	@Override
+	public int getSize(CoordinateAxis axis) {
+		switch(axis){
+		case X: return this.getWidth();
+		case Y: return this.getHeight();
+		case Z: return this.getDepth();
+		default:
+			throw new IllegalArgumentException("Unknown coordinate axis");
+		}
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getBitDepth()
+	 */
+	@Override
+	public int getBitDepth() {
+		return this.m_bitDepth;
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getWhiteValue()
+	 */
+	@Override
+	public int getWhiteValue(){
+		return this.m_bitDepth == 8 ? 255 : 65535;
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#setCurrentZ(int)
+	 */
+	@Override
+	public void setCurrentZ(int zCoord) {
+		this.m_currentZ = zCoord;
+		this.m_currentSlice = getMappedSlice(zCoord);
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getCurrentZ()
+	 */
+	@Override
+	public int getCurrentZ() {
+		return this.m_currentZ;
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getPixel(int, int)
+	 */
+	@Override
+	public int getPixel(int x, int y) {
+		int index = y*this.m_width + x;
+		if (this.m_bitDepth == 8){
+			return this.m_currentSlice.get(index) & 0xff;
+		}
+		return this.m_currentSlice.getShort(2*index) & 0xffff;
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#setPixel(int, int, int)
+	 */
+	@Override
+	public void setPixel(int x, int y, int value) {
+		int index = y*this.m_width + x;
+		if (this.m_bitDepth == 8){
+			this.m_currentSlice.put(index, (byte)value);
+		}else{
+			this.m_currentSlice.putShort(2*index, (short)value);
+		}
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#setVoxel(int, int, int, int)
+	 */
+	@Override
+	public void setVoxel(int x, int y, int z, int value) {
+		if (z != this.m_currentZ){
+			setCurrentZ(z);
+		}
+		this.setPixel(x, y, value);
+	}
+
+	/**
+	 * The value is rounded and clamped to the range of the gray levels.
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#setVoxelFloat(int, int, int, float)
+	 */
+	@Override
+	public void setVoxelFloat(int x, int y, int z, float floatValue) {
+		float value = Math.max(0.0f, Math.min(getWhiteValue(), floatValue));
+		setVoxel(x, y, z, (int)(value+0.5f));
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getVoxel(int, int, int)
+	 */
+	@Override
+	public int getVoxel(int x, int y, int z) {
+		if (z != this.m_currentZ){
+			setCurrentZ(z);
+		}
+		return this.getPixel(x, y);
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getVoxelFloat(int, int, int)
+	 */
+	@Override
+	public float getVoxelFloat(int x, int y, int z) {
+		return getVoxel(x, y, z);
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#setVoxel(wrapScienceJ.wrapImaJ.core.VoxelShort, int)
+	 */
+	@Override
+	public void setVoxel(VoxelShort voxel, int value) {
+		setVoxel(voxel.getX(), voxel.getY(), voxel.getZ(), value);
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getVoxel(wrapScienceJ.wrapImaJ.core.VoxelShort)
+	 */
+	@Override
+	public int getVoxel(VoxelShort voxel) {
+		return getVoxel(voxel.getX(), voxel.getY(), voxel.getZ());
+	}
+
+	/**
+	 * The slice buffer is a view on the mapped file, which doesn't hold the gray levels in the heap.
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getSliceBuffer(int)
+	 */
+	@Override
+	public SliceBuffer getSliceBuffer(int zCoord) {
+		return new SliceBuffer(getMappedSlice(zCoord), this.m_bitDepth, this.m_width, this.m_height);
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getImageCalibration()
+	 */
+	@Override
+	public ImageCalibration getImageCalibration(){
+		return this.m_calibration;
+	}
+
+	/**
+	 * Images which are not held in memory cannot be displayed. Crop the image to display a part of it.
+	 * @see wrapScienceJ.resource.generic.ResourceCoreGeneric#getPreferedRenderTool()
+	 */
+	@Override
+	public RenderTool getPreferedRenderTool() {
+		return RenderToolIJ.getInstance();
+	}
+
+	/**
+	 * @see wrapScienceJ.resource.generic.ResourceCoreGeneric#getFileHelper()
+	 */
+	@Override
+	public FileHelper getFileHelper() {
+		return GuiFrameworkIJ.getInstance().getFileHelper();
+	}
+
+	/**
+	 * The conversions to GRAY8 and the additions of slices return a new temporary mapped image,
+	 * and the raw arrays of the slices are copies of the mapped voxel data.
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getImageConvert()
+	 */
+	@Override
+	public ImageConvertGeneric getImageConvert(){
+		return new ImageConvertGeneric(this);
+	}
+
+	/**
+	 * Cropping and slices extraction produce in memory images.
+	 * Operations which add slices to this image return a new temporary mapped image.
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getImageDomainOperation()
+	 */
+	@Override
+	public ImageDomainOperationMapped getImageDomainOperation() {
+		return new ImageDomainOperationMapped(this);
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getImageDomainProjection()
+	 */
+	@Override
+	public ImageDomainProjectionGeneric getImageDomainProjection() {
+		return new ImageDomainProjectionGeneric(this);
+	}
+
+	/**
+	 * The transformed images are allocated in memory, and the axis reversal
+	 * is performed in place, so the image must be writable.
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getImageDomainTransform()
+	 */
+	@Override
+	public ImageDomainTransformMapped getImageDomainTransform() {
+		return new ImageDomainTransformMapped(this);
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getImageSignPolicyEmbed(boolean)
+	 */
+	@Override
+	public ImageSignPolicyEmbedGeneric getImageSignPolicyEmbed(boolean allowSignedValues){
+		return ImageSignPolicyEmbedGeneric.linearCombinationFactory(this, allowSignedValues);
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getImageSignPolicyEmbed()
+	 */
+	@Override
+	public ImageSignPolicyEmbedGeneric getImageSignPolicyEmbed(){
+		return ImageSignPolicyEmbedGeneric.linearCombinationFactory(this, false);
+	}
+
+	/**
+	 * The contrast adjustments modify the gray levels of the mapped file, slice by slice,
+	 * so the image must be writable.
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getImageContrast()
+	 */
+	@Override
+	public ImageContrastGeneric getImageContrast() {
+		return new ImageContrastGeneric(this);
+	}
+
+	/**
+	 * The blur is performed in place, so the image must be writable.
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getImageBlur()
+	 */
+	@Override
+	public BlurFactoryGeneric getImageBlur() {
+		return new BlurFactoryGeneric(this);
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getImageConnectedComponents()
+	 */
+	@Override
+	public ImageConnectedComponentsGeneric getImageConnectedComponents() {
+		return new ImageConnectedComponentsGeneric(this);
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getImageDifferential(boolean, int, int, int, wrapScienceJ.resource.BufferEnlargementPolicy, int)
+	 */
+	@Override
+	public ImageDifferentialOperatorGeneric getImageDifferential(boolean autoAllowSignedValues,
+													int inputImageMarginX, int inputImageMarginY, int inputImageMarginZ,
+													BufferEnlargementPolicy enlargementPolicy,
+													int embedBitDepth) {
+		return new ImageDifferentialOperatorGeneric(this, autoAllowSignedValues,
+													inputImageMarginX, inputImageMarginY, inputImageMarginZ,
+													enlargementPolicy,
+													embedBitDepth
+												   );
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getImageDifferential()
+	 */
+	@Override
+	public ImageDifferentialOperatorGeneric getImageDifferential() {
+		return new ImageDifferentialOperatorGeneric(this, true, 0, 0, 0, BufferEnlargementPolicy.Mirror, getBitDepth());
+	}
+
+	/**
+	 * The histogram is computed by reading the slices once, in parallel.
+	 * The thresholding methods modify the gray levels of the mapped file,
+	 * which must therefore be writable.
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getImageThresholding()
+	 */
+	@Override
+	public ImageThresholdingMapped getImageThresholding(){
+		return new ImageThresholdingMapped(this);
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getImageDraw()
+	 */
+	@Override
+	public ImageDrawAwt getImageDraw() {
+		return new ImageDrawAwt(this);
+	}
+
+	/**
+	 * Copies the voxel data of this image into a temporary mapped file.
+	 * @see wrapScienceJ.resource.generic.ResourceCoreGeneric#duplicate()
+	 */
+	@Override
+	public ImageCoreMapped duplicate(){
+		ImageCoreMapped copy = createTemporary(getWidth(), getHeight(), getDepth(), getBitDepth(),
+											   this.m_byteOrder);
+		for (int z=0 ; z<getDepth() ; z++){
+			ByteBuffer source = getMappedSlice(z).duplicate();
+			ByteBuffer destination = copy.getMappedSlice(z).duplicate();
+			source.position(0);
+			destination.position(0);
+			destination.put(source);
+		}
+		copy.m_title = getTitle();
+		copy.m_path = getPath();
+		copy.m_calibration = new ImageCalibrationGeneric(this.m_calibration.getVoxelLength(),
+														 this.m_calibration.getUnitLength());
+		copy.mergeMetaData(this);
+		return copy;
+	}
+
+	/**
+	 * Writes the image as an uncompressed TIFF file, one slice at a time, so that
+	 * the whole image is never loaded in memory.
+	 * @see wrapScienceJ.resource.generic.ResourceCoreGeneric#writeToFile(java.lang.String)
+	 */
+	@Override
+	public ImageCoreMapped writeToFile(String destinationFilePath) throws IOException {
+		if (!destinationFilePath.toLowerCase().endsWith(".tif")){
+			throw new IOException(
+					"Sorry, only .tif file format is supported for saving an image.");
+		}
+		File file = new File(destinationFilePath);
+		FileInfo fileInfo = new FileInfo();
+		fileInfo.fileFormat = FileInfo.TIFF;
+		fileInfo.fileType = (this.m_bitDepth == 8) ? FileInfo.GRAY8 : FileInfo.GRAY16_UNSIGNED;
+		fileInfo.fileName = file.getName();
+		fileInfo.width = getWidth();
+		fileInfo.height = getHeight();
+		fileInfo.nImages = getDepth();
+		fileInfo.pixelWidth = this.m_calibration.getVoxelWidth();
+		fileInfo.pixelHeight = this.m_calibration.getVoxelHeight();
+		fileInfo.pixelDepth = this.m_calibration.getVoxelDepth();
+		fileInfo.unit = this.m_calibration.getUnitLength();
+		fileInfo.description = "ImageJ=" + ImageJ.VERSION + "\n"
+								+ "images=" + getDepth() + "\n"
+								+ "slices=" + getDepth() + "\n"
+								+ "unit=" + fileInfo.unit + "\n"
+								+ "spacing=" + fileInfo.pixelDepth + "\n";
+		if (getDepth() == 1){
+			fileInfo.pixels = getSlicePixels(0);
+		}else{
+			final ImageCoreMapped image = this;
+			// Slices are read from the mapped file one at a time while writing
+			fileInfo.virtualStack = new VirtualStack(getWidth(), getHeight(), null, null){
+				@Override
+				public ImageProcessor getProcessor(int n){
+					Object pixels = image.getSlicePixels(n-1);
+					if (pixels instanceof byte[]){
+						return new ByteProcessor(image.getWidth(), image.getHeight(), (byte[])pixels, null);
+					}
+					return new ShortProcessor(image.getWidth(), image.getHeight(), (short[])pixels, null);
+				}
+				@Override
+				public int getSize(){
+					return image.getDepth();
+				}
+			};
+		}
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try{
+			new TiffEncoder(fileInfo).write(out);
+		}finally{
+			out.close();
+		}
+		return this;
+	}
+
+
+	/**
+	 * Copies the gray levels of a slice into a newly allocated array.
+	 * @param zCoord the id (z-value) of the slice, between zero and (getDepth()-1).
+	 * @return A byte[] for GRAY8 images or a short[] for GRAY16 images,
+	 * 		   with the gray levels of the slice stored row by row.
+	 */
+	public Object getSlicePixels(int zCoord){
+		ByteBuffer slice = getMappedSlice(zCoord).duplicate().order(this.m_byteOrder);
+		slice.position(0);
+		if (this.m_bitDepth == 8){
+			byte[] bytes = new byte[getWidth()*getHeight()];
+			slice.get(bytes);
+			return bytes;
+		}
+		short[] shorts = new short[getWidth()*getHeight()];
+		slice.asShortBuffer().get(shorts);
+		return shorts;
+	}
+
+
+	////////////////////////////////////////////////////////////////////////
+	// Overrides from ResourceCore
+	////////////////////////////////////////////////////////////////////////
+
+
+	/**
+	 * @see wrapScienceJ.resource.ResourceCore#addMetaData(wrapScienceJ.metaData.container.MetaDataRetriever)
+	 */
+	@Override
+	public ImageCoreMapped addMetaData(MetaDataRetriever config){
+		super.addMetaData(config);
+		return this;
+	}
+
+	/**
+	 * @see wrapScienceJ.resource.ResourceCore#retrieveMetaData()
+	 */
+	@Override
+	public ImageCoreMapped retrieveMetaData() throws IOException {
+		super.retrieveMetaData();
+		return this;
+	}
+
+	/**
+	 * @see wrapScienceJ.resource.ResourceCore#mergeMetaData(wrapScienceJ.resource.ResourceCore)
+	 */
+	@Override
+	public ImageCoreMapped mergeMetaData(ResourceCore resource){
+		super.mergeMetaData(resource);
+		return this;
+	}
+
+	/**
+	 * @see wrapScienceJ.resource.ResourceCore#writeToFileWithMetaData(java.lang.String, java.lang.String, java.lang.String)
+	 */
+	@Override
+	public ImageCoreMapped writeToFileWithMetaData(String directory, String basename, String extension) throws IOException {
+		super.writeToFileWithMetaData(directory, basename, extension);
+		return this;
+	}
+
+} // End of class
@@ -0,0 +1,317 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File: ImageThresholdingMapped.java                                       * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+
+package wrapScienceJ.wrapImaJ.wrappers.mapped.core;
+
+import wrapScienceJ.utils.SliceScheduler;
+import wrapScienceJ.utils.SliceScheduler.SliceTask;
+import wrapScienceJ.wrapImaJ.core.BoxROI;
+import wrapScienceJ.wrapImaJ.core.ImageCore;
+import wrapScienceJ.wrapImaJ.core.ImageCoreGray8;
+import wrapScienceJ.wrapImaJ.core.LabelSlices;
+import wrapScienceJ.wrapImaJ.core.SliceBuffer;
+import wrapScienceJ.wrapImaJ.core.histogram.HistogramBuilder;
+import wrapScienceJ.wrapImaJ.core.operation.ImageThresholding;
+import wrapScienceJ.wrapImaJ.core.operation.ThresholdingOption;
+import wrapScienceJ.wrapImaJ.core.operation.convolve.GaussianBlurPolicy;
+import wrapScienceJ.wrapImaJ.wrappers.imagej.core.HistogramIJ;
+import wrapScienceJ.wrapImaJ.wrappers.imagej.core.ImageThresholdingIJ;
+
+/**
+ * Histogram construction and thresholding of mapped images, with the same
+ * conventions as {@link wrapScienceJ.wrapImaJ.wrappers.imagej.core.ImageThresholdingIJ}:
+ * the histogram has 256 bins (the gray levels of GRAY16 images are divided by 256) and
+ * the thresholds are expressed in the GRAY8 range.
+ *
+ * The gray levels are processed slice by slice, directly in the mapped file,
+ * so that the whole image is never loaded in memory.
+ * The thresholding methods modify the image, which must be writable. The format of
+ * the mapped file cannot change, so the thresholded GRAY16 images which are to be
+ * converted to GRAY8 are copied into a new temporary mapped image, which is returned.
+ *
+ * @author Rémy Malgouyres
+ */
+public class ImageThresholdingMapped extends ImageCoreMapped implements ImageThresholding, ImageCoreGray8 {
+
+	/**
+	 * Histogram instance representing the image's histogram.
+	 */
+	protected HistogramIJ m_histogram = null;
+
+	/**
+	 * Constructs an instance sharing the gray levels of a mapped image.
+	 * @param image The image to process.
+	 */
+	public ImageThresholdingMapped(ImageCoreMapped image) {
+		super(image);
+	}
+
+
+	/**
+	 * The histogram is built at the first invocation by reading all the slices.
+	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageThresholding#getHistogram()
+	 */
+	@Override
+	public HistogramIJ getHistogram() {
+		if (this.m_histogram == null){
+			this.m_histogram = new HistogramIJ(this);
+		}
+		return this.m_histogram;
+	}
+
+
+	/**
+	 * Constructs the histogram of the image, the slices being processed in parallel.
+	 * @return The histogram of the 3D image as an array of 256 values
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCoreGray8#buildHistogram()
+	 */
+	@Override
+	public long[] buildHistogram() {
+		return HistogramBuilder.buildHistogram(this, 256);
+	}
+
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCoreGray8#buildFullResolutionHistogram()
+	 */
+	@Override
+	public long[] buildFullResolutionHistogram() {
+		return HistogramBuilder.buildHistogram(this);
+	}
+
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCoreGray8#buildHistogramExcludeBackground(int)
+	 */
+	@Override
+	public long[] buildHistogramExcludeBackground(int backgroungGrayLevel) {
+		long[] histogram = buildHistogram();
+		histogram[backgroungGrayLevel] = 0;
+		return histogram;
+	}
+
+
+	/**
+	 * Retrieves the threshold in the gray levels range of this image.
+	 * @param threshold A threshold in the GRAY8 range
+	 * @return threshold, multiplied by 256 for GRAY16 images.
+	 */
+	private int getActualThreshold(int threshold){
+		return (getBitDepth() == 16) ? 256*threshold : threshold;
+	}
+
+
+	/**
+	 * Checks the preconditions for the thresholding methods which modify the image.
+	 * @throws IllegalStateException if the image is mapped read only.
+	 */
+	private void checkThresholdingSupported() throws IllegalStateException {
+		if (!isWritable()){
+			throw new IllegalStateException("Thresholding a mapped image requires the image to be writable.");
+		}
+	}
+
+
+	/**
+	 * Terminates a thresholding method, the histogram being invalidated.
+	 * @param convertToGray8 If true, a GRAY16 image is converted to GRAY8 with maximal contrast.
+	 * @return This image, or the new temporary mapped GRAY8 image if it has been converted.
+	 */
+	private ImageCore getThresholdingResult(boolean convertToGray8){
+		this.m_histogram = null;
+		if (convertToGray8 && getBitDepth() != 8){
+			return getImageConvert().convertToGray8(true);
+		}
+		return this;
+	}
+
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageThresholding#applyImageThresholdKeepGray(int, boolean)
+	 */
+	@Override
+	public ImageCore applyImageThresholdKeepGray(int threshold, boolean convertToGray8) {
+		checkThresholdingSupported();
+		final int actualThreshold = getActualThreshold(threshold);
+		final SliceBuffer[] slices = SliceBuffer.getSliceBuffers(this);
+		SliceScheduler.forEachSlice(slices.length, new SliceTask() {
+			@Override
+			public void processSlice(int z) {
+				SliceBuffer slice = slices[z];
+				for (int i = 0; i < slice.getSize(); i++) {
+					if (slice.get(i) < actualThreshold) {
+						slice.set(i, 0);
+					}
+				}
+			}
+		});
+		return getThresholdingResult(convertToGray8);
+	}
+
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageThresholding#applyImageThresholdAndBinarize(int, boolean)
+	 */
+	@Override
+	public ImageCore applyImageThresholdAndBinarize(int threshold, boolean convertToGray8) {
+		checkThresholdingSupported();
+		final int actualThreshold = getActualThreshold(threshold);
+		final int white = getWhiteValue();
+		final SliceBuffer[] slices = SliceBuffer.getSliceBuffers(this);
+		SliceScheduler.forEachSlice(slices.length, new SliceTask() {
+			@Override
+			public void processSlice(int z) {
+				SliceBuffer slice = slices[z];
+				for (int i = 0; i < slice.getSize(); i++) {
+					slice.set(i, slice.get(i) >= actualThreshold ? white : 0);
+				}
+			}
+		});
+		return getThresholdingResult(convertToGray8);
+	}
+
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageThresholding#applyThresholdMinAndMax(double, double)
+	 */
+	@Override
+	public ImageThresholdingMapped applyThresholdMinAndMax(double min, double max){
+		checkThresholdingSupported();
+		int maxValue = getWhiteValue();
+		final int actualMin = (int)(min*maxValue+0.5);
+		final int actualMax = (int)(max*maxValue+0.5);
+		final SliceBuffer[] slices = SliceBuffer.getSliceBuffers(this);
+		SliceScheduler.forEachSlice(slices.length, new SliceTask() {
+			@Override
+			public void processSlice(int z) {
+				SliceBuffer slice = slices[z];
+				for (int i = 0; i < slice.getSize(); i++) {
+					int value = slice.get(i);
+					if (value < actualMin || value > actualMax) {
+						slice.set(i, 0);
+					}
+				}
+			}
+		});
+		this.m_histogram = null;
+		return this;
+	}
+
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageThresholding#getBinarizationThreshold(wrapScienceJ.wrapImaJ.core.operation.ThresholdingOption)
+	 */
+	@Override
+	public int getBinarizationThreshold(ThresholdingOption method){
+		return getHistogram().getBinarizationThreshold(method);
+	}
+
+
+	/**
+	 * The histogram of the region is computed by reading the voxels of the region only.
+	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageThresholding#getBinarizationThreshold(wrapScienceJ.wrapImaJ.core.operation.ThresholdingOption, wrapScienceJ.wrapImaJ.core.BoxROI)
+	 */
+	@Override
+	public int getBinarizationThreshold(ThresholdingOption method, BoxROI roi){
+		return HistogramIJ.getRegionBinarizationThreshold(method, HistogramBuilder.buildHistogram(this, roi));
+	}
+
+
+	/**
+	 * The histogram of the region is computed by reading the voxels of the box only.
+	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageThresholding#getBinarizationThreshold(wrapScienceJ.wrapImaJ.core.operation.ThresholdingOption, wrapScienceJ.wrapImaJ.core.ImageCore, int, wrapScienceJ.wrapImaJ.core.BoxROI)
+	 */
+	@Override
+	public int getBinarizationThreshold(ThresholdingOption method, ImageCore labels, int label, BoxROI roi){
+		return HistogramIJ.getRegionBinarizationThreshold(method, 
+														  HistogramBuilder.buildHistogram(this, labels, label, roi));
+	}
+
+
+	/**
+	 * The histograms of all the regions are computed in a single pass over the image.
+	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageThresholding#getBinarizationThresholds(wrapScienceJ.wrapImaJ.core.operation.ThresholdingOption, wrapScienceJ.wrapImaJ.core.ImageCore, int, wrapScienceJ.wrapImaJ.core.BoxROI)
+	 */
+	@Override
+	public int[] getBinarizationThresholds(ThresholdingOption method, ImageCore labels, int maxLabel, BoxROI roi){
+		long[][] histograms = HistogramBuilder.buildHistograms(this, labels, maxLabel, roi, 256);
+		int[] thresholds = new int[histograms.length];
+		for (int label=0 ; label<histograms.length ; label++){
+			thresholds[label] = HistogramIJ.getRegionBinarizationThreshold(method, histograms[label]);
+		}
+		return thresholds;
+	}
+
+
+	/**
+	 * The histogram of the region is computed by reading the voxels of the box only.
+	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageThresholding#getBinarizationThreshold(wrapScienceJ.wrapImaJ.core.operation.ThresholdingOption, wrapScienceJ.wrapImaJ.core.LabelSlices, int, wrapScienceJ.wrapImaJ.core.BoxROI)
+	 */
+	@Override
+	public int getBinarizationThreshold(ThresholdingOption method, LabelSlices labels, int label, BoxROI roi){
+		return HistogramIJ.getRegionBinarizationThreshold(method, 
+														  HistogramBuilder.buildHistogram(this, labels, label, roi));
+	}
+
+
+	/**
+	 * The histograms of all the regions are computed in a single pass over the image.
+	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageThresholding#getBinarizationThresholds(wrapScienceJ.wrapImaJ.core.operation.ThresholdingOption, wrapScienceJ.wrapImaJ.core.LabelSlices, int, wrapScienceJ.wrapImaJ.core.BoxROI)
+	 */
+	@Override
+	public int[] getBinarizationThresholds(ThresholdingOption method, LabelSlices labels, int maxLabel, BoxROI roi){
+		long[][] histograms = HistogramBuilder.buildHistograms(this, labels, maxLabel, roi, 256);
+		int[] thresholds = new int[histograms.length];
+		for (int label=0 ; label<histograms.length ; label++){
+			thresholds[label] = HistogramIJ.getRegionBinarizationThreshold(method, histograms[label]);
+		}
+		return thresholds;
+	}
+
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageThresholding#thresholdImageKeepGray(wrapScienceJ.wrapImaJ.core.operation.ThresholdingOption, boolean)
+	 */
+	@Override
+	public ImageCore thresholdImageKeepGray(ThresholdingOption method, boolean convertToGray8) {
+		return applyImageThresholdKeepGray(getBinarizationThreshold(method), convertToGray8);
+	}
+
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageThresholding#thresholdImageAndBinarize(wrapScienceJ.wrapImaJ.core.operation.ThresholdingOption, boolean)
+	 */
+	@Override
+	public ImageCore thresholdImageAndBinarize(ThresholdingOption method, boolean convertToGray8) {
+		return applyImageThresholdAndBinarize(getBinarizationThreshold(method), convertToGray8);
+	}
+
+
+	/**
+	 * The weights are computed in a temporary mapped copy of the image, which is equalized
+	 * and blurred slice by slice, so that the image is never loaded in memory.
+	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageThresholding#adaptiveThresholdPreprocess(double, double, double, double, double, double)
+	 */
+	@Override
+	public ImageCore adaptiveThresholdPreprocess(double sigmaX, double sigmaY, double sigmaZ,
+												 double powExponent, double exponentValues, double impact) {
+		ImageCore imageCopy = duplicate();
+		imageCopy.setTitle("Weight for adaptive thresholding");
+		imageCopy.getImageContrast().equalize(powExponent, exponentValues, 1.0);
+		// The cost of the recursive filter does not depend on the (typically large) standard deviations
+		imageCopy.getImageBlur()
+				 .getGaussianBlur(sigmaX, sigmaY, sigmaZ, GaussianBlurPolicy.RecursiveFilter)
+				 .applyMask();
+
+		ImageThresholdingIJ.applyAdaptiveThresholdPreprocess(this, imageCopy, impact);
+
+		return imageCopy;
+	}
+
+} // End of class
@@ -0,0 +1,134 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File:  ImageDomainOperationMapped.java                                   * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+package wrapScienceJ.wrapImaJ.wrappers.mapped.core.operation;
+
+import wrapScienceJ.factory.image.ImageCoreFactoryIJ;
+import wrapScienceJ.utils.SliceScheduler;
+import wrapScienceJ.utils.SliceScheduler.SliceTask;
+import wrapScienceJ.wrapImaJ.core.ImageCore;
+import wrapScienceJ.wrapImaJ.core.SliceBuffer;
+import wrapScienceJ.wrapImaJ.core.operation.generic.ImageDomainOperationGeneric;
+import wrapScienceJ.wrapImaJ.wrappers.imagej.core.ImageCoreIJ;
+import wrapScienceJ.wrapImaJ.wrappers.mapped.core.ImageCoreMapped;
+
+/**
+ * Domain operations on mapped images.
+ *
+ * The domain of a mapped image is determined by the size of its file, so
+ * the operations which add slices to the image return a new temporary mapped image.
+ * Cropped images and extracted slices are copied into (usually much smaller)
+ * images in memory, which can then be processed with all the ImageJ operations.
+ *
+ * @author Rémy Malgouyres
+ */
+public class ImageDomainOperationMapped extends ImageDomainOperationGeneric {
+
+	/**
+	 * @param image The image to process
+	 */
+	public ImageDomainOperationMapped(ImageCoreMapped image){
+		super(image);
+	}
+
+
+	/**
+	 * Copies the voxels of a box of the image into an image in memory.
+	 * Only the slices of the box are read from the file.
+	 * @see wrapScienceJ.wrapImaJ.core.operation.generic.ImageDomainOperationGeneric#crop(int, int, int, int, int, int)
+	 */
+	@Override
+	public ImageCoreIJ crop(int xmin, int ymin, int zmin, int xmax, int ymax, int zmax){
+
+		int xMin = xmin >= 0 ? xmin : 0;
+		int yMin = ymin >= 0 ? ymin : 0;
+		int zMin = zmin >= 0 ? zmin : 0;
+
+		int xMax = xmax < this.m_image.getWidth() ? xmax : this.m_image.getWidth();
+		int yMax = ymax < this.m_image.getHeight() ? ymax : this.m_image.getHeight();
+		int zMax = zmax < this.m_image.getDepth() ? zmax : this.m_image.getDepth();
+
+		if (xMax <= xMin || yMax <= yMin || zMax <= zMin){
+			throw new IllegalArgumentException("Cannot crop an empty box.");
+		}
+
+		ImageCoreIJ imageCrop = ImageCoreFactoryIJ.getInstance()
+												  .getEmptyImageCore(xMax-xMin, yMax-yMin, zMax-zMin,
+														  			 this.m_image.getBitDepth());
+		for (int z=zMin ; z<zMax ; z++){
+			SliceBuffer source = this.m_image.getSliceBuffer(z);
+			SliceBuffer dest = imageCrop.getSliceBuffer(z-zMin);
+			for (int y=yMin ; y<yMax ; y++){
+				source.copyTo(source.getIndex(xMin, y), dest, dest.getIndex(0, y-yMin), xMax-xMin);
+			}
+		}
+		imageCrop.mergeMetaData(this.m_image);
+		return imageCrop;
+	}
+
+
+	/**
+	 * The gray levels of the slice are copied, so that modifying the extracted
+	 * slice does not modify the mapped image.
+	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageDomainOperation#extractSlice(int)
+	 */
+	@Override
+	public ImageCoreIJ extractSlice(int zCoord) {
+		return crop(0, 0, zCoord, this.m_image.getWidth(), this.m_image.getHeight(), zCoord+1);
+	}
+
+
+	/**
+	 * The domain of a mapped image is fixed by the size of its file, so the slices of both
+	 * images are copied into a new temporary mapped image, which is returned.
+	 * This image is unchanged, and the voxel data is never loaded as a whole in the heap.
+	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageDomainOperation#insertSlices(wrapScienceJ.wrapImaJ.core.ImageCore, int)
+	 */
+	@Override
+	public ImageCoreMapped insertSlices(final ImageCore image, final int zCoordMin) {
+		if (this.m_image.getBitDepth() != image.getBitDepth() ||
+			this.m_image.getWidth() != image.getWidth() ||
+			this.m_image.getHeight() != image.getHeight() ||
+			zCoordMin < 0 || zCoordMin > this.m_image.getDepth()){
+			throw new IllegalArgumentException("Wrong type or size of image to merge.");
+		}
+		final ImageCore source = this.m_image;
+		final ImageCoreMapped result = ImageCoreMapped.createTemporary(source.getWidth(), source.getHeight(),
+																	   source.getDepth() + image.getDepth(),
+																	   source.getBitDepth());
+		final int sliceSize = source.getWidth()*source.getHeight();
+		SliceScheduler.forEachSlice(result.getDepth(), new SliceTask() {
+			@Override
+			public void processSlice(int z) {
+				SliceBuffer slice;
+				if (z < zCoordMin){
+					slice = source.getSliceBuffer(z);
+				}else if (z < zCoordMin + image.getDepth()){
+					slice = image.getSliceBuffer(z - zCoordMin);
+				}else{
+					slice = source.getSliceBuffer(z - image.getDepth());
+				}
+				slice.copyTo(0, result.getSliceBuffer(z), 0, sliceSize);
+			}
+		});
+		result.setTitle(source.getTitle());
+		result.mergeMetaData(source);
+		return result;
+	}
+
+
+	/**
+	 * The slices are appended in a new temporary mapped image (see {@link #insertSlices(ImageCore, int)}).
+	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageDomainOperation#mergeSlices(wrapScienceJ.wrapImaJ.core.ImageCore)
+	 */
+	@Override
+	public ImageCoreMapped mergeSlices(ImageCore image) {
+		return insertSlices(image, this.m_image.getDepth());
+	}
+
+} // End of class
@@ -0,0 +1,64 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File:  ImageDomainTransformMapped.java                                   * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+package wrapScienceJ.wrapImaJ.wrappers.mapped.core.operation;
+
+import wrapScienceJ.utils.SliceScheduler;
+import wrapScienceJ.utils.SliceScheduler.SliceTask;
+import wrapScienceJ.wrapImaJ.core.ImageCore;
+import wrapScienceJ.wrapImaJ.core.operation.generic.ImageDomainTransformGeneric;
+import wrapScienceJ.wrapImaJ.wrappers.mapped.core.ImageCoreMapped;
+
+/**
+ * Domain transforms on mapped images, through the slice buffers of the mapped file.
+ * The transformed images are allocated in memory, as for the ImageJ images.
+ * To keep a large image out of the heap, copy it into a temporary mapped image
+ * instead (e.g. with copyAxisSwapped). The transforms performed in place
+ * (axis reversal) modify the mapped file, which must therefore be writable.
+ *
+ * @author Rémy Malgouyres
+ */
+public class ImageDomainTransformMapped extends ImageDomainTransformGeneric {
+
+	/**
+	 * @param image The image to process
+	 */
+	public ImageDomainTransformMapped(ImageCoreMapped image){
+		super(image);
+	}
+
+
+	/**
+	 * The slices are copied in parallel, straight from the mapped file.
+	 * @see wrapScienceJ.wrapImaJ.core.operation.generic.ImageDomainTransformGeneric#copyTo(wrapScienceJ.wrapImaJ.core.ImageCore)
+	 */
+	@Override
+	public ImageCore copyTo(final ImageCore destinationImage) {
+		if (this.m_image.getWidth() != destinationImage.getWidth() ||
+			this.m_image.getHeight() != destinationImage.getHeight() ||
+			this.m_image.getDepth() != destinationImage.getDepth()){
+
+			throw new IllegalArgumentException("Cannot copy to an image with incompatible size");
+		}
+		if (this.m_image.getBitDepth() != destinationImage.getBitDepth()){
+			throw new IllegalArgumentException("Cannot copy to an image with different bit depth");
+		}
+		final ImageCore image = this.m_image;
+		final int sliceSize = image.getWidth()*image.getHeight();
+		SliceScheduler.forEachSlice(image.getDepth(), new SliceTask(){
+			@Override
+			public void processSlice(int z) {
+				image.getSliceBuffer(z).copyTo(0, destinationImage.getSliceBuffer(z), 0, sliceSize);
+			}
+		});
+		destinationImage.mergeMetaData(this.m_image);
+
+		return destinationImage;
+	}
+
+} // End of class
@@ -0,0 +1,828 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File: ImageCoreView.java                                                 * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+
+package wrapScienceJ.wrapImaJ.wrappers.view.core;
+
+import java.io.IOException;
+
+import wrapScienceJ.factory.image.ImageCoreFactoryIJ;
+import wrapScienceJ.io.stream.FileHelper;
+import wrapScienceJ.metaData.container.MetaDataRetriever;
+import wrapScienceJ.metaData.container.MetaDataRetriever.RetrievalPolicy;
+import wrapScienceJ.resource.BufferEnlargementPolicy;
+import wrapScienceJ.resource.ResourceCore;
+import wrapScienceJ.resource.generic.ModelCoreImageGeneric;
+import wrapScienceJ.resource.generic.ResourceCoreGeneric;
+import wrapScienceJ.utils.SliceScheduler;
+import wrapScienceJ.utils.SliceScheduler.SliceTask;
+import wrapScienceJ.wrapImaJ.core.CoordinateAxis;
+import wrapScienceJ.wrapImaJ.core.ImageCalibration;
+import wrapScienceJ.wrapImaJ.core.ImageCalibrationGeneric;
+import wrapScienceJ.wrapImaJ.core.ImageCore;
+import wrapScienceJ.wrapImaJ.core.SliceBuffer;
+import wrapScienceJ.wrapImaJ.core.VoxelDouble;
+import wrapScienceJ.wrapImaJ.core.VoxelShort;
+import wrapScienceJ.wrapImaJ.core.operation.convolve.generic.BlurFactoryGeneric;
+import wrapScienceJ.wrapImaJ.core.operation.convolve.generic.ImageDifferentialOperatorGeneric;
+import wrapScienceJ.wrapImaJ.core.operation.generic.ImageConnectedComponentsGeneric;
+import wrapScienceJ.wrapImaJ.core.operation.generic.ImageContrastGeneric;
+import wrapScienceJ.wrapImaJ.core.operation.generic.ImageDomainProjectionGeneric;
+import wrapScienceJ.wrapImaJ.core.operation.generic.ImageDrawAwt;
+import wrapScienceJ.wrapImaJ.core.operation.generic.ImageSignPolicyEmbedGeneric;
+import wrapScienceJ.wrapImaJ.gui.render.RenderTool;
+import wrapScienceJ.wrapImaJ.wrappers.imagej.core.ImageCoreIJ;
+import wrapScienceJ.wrapImaJ.wrappers.imagej.core.ImageThresholdingIJ;
+import wrapScienceJ.wrapImaJ.wrappers.imagej.gui.GuiFrameworkIJ;
+import wrapScienceJ.wrapImaJ.wrappers.imagej.gui.render.RenderToolIJ;
+import wrapScienceJ.wrapImaJ.wrappers.view.core.operation.ImageConvertView;
+import wrapScienceJ.wrapImaJ.wrappers.view.core.operation.ImageDomainOperationView;
+import wrapScienceJ.wrapImaJ.wrappers.view.core.operation.ImageDomainTransformView;
+
+/**
+ * Implementation of ImageCore as a lightweight view on another image (the parent image),
+ * which shares the voxel data of the parent image instead of copying it.
+ * Each axis of the view corresponds to an axis of the parent image, with an offset
+ * and a step, which allows to represent cropped windows, permutations of the axis
+ * and subsampled images (as well as any composition of those) without allocating
+ * a new buffer for the voxel data.
+ *
+ * The view is copy on write with the granularity of a slice: the first time
+ * a slice of the view is modified, or is retrieved with {@link #getSliceBuffer(int)}
+ * (through which it may be modified), its gray levels are copied into a private
+ * buffer. The parent image is thus never modified through the view. Until a slice
+ * is copied, it reflects the current gray levels of the parent image.
+ * Read only algorithms should therefore favor {@link #getVoxel(int, int, int)},
+ * which never copies the data.
+ *
+ * Only 8 or 16 bits per voxel images are supported. The contrast adjustments and format
+ * conversions read and write the slices of the view, whereas the thresholding and
+ * the operations which add slices to the view work on images in memory,
+ * such as the copy of the view returned by {@link #materialize()}.
+ *
+ * @author Rémy Malgouyres
+ */
+public class ImageCoreView extends ResourceCoreGeneric implements ImageCore {
+
+	/** Image whose voxel data is viewed */
+	protected ImageCore m_parent;
+
+	/**
+	 * Slice buffers of the parent image, indexed by the parent's z coordinate
+	 * (null for slices which have not been accessed yet).
+	 */
+	protected SliceBuffer[] m_parentSlices;
+
+	/** Axis of the parent image corresponding to each axis of the view (0 for X, 1 for Y, 2 for Z) */
+	protected int[] m_parentAxis;
+
+	/** Coordinate in the parent image of the origin of the view, along each axis of the view */
+	protected int[] m_offset;
+
+	/** Step in the parent image between two consecutive voxels of the view, along each axis of the view */
+	protected int[] m_step;
+
+	/** Width (first coordinate's dimension) of the view */
+	protected int m_width;
+
+	/** Height (second coordinate's dimension) of the view */
+	protected int m_height;
+
+	/** Depth (third coordinate's dimension) of the view */
+	protected int m_depth;
+
+	/** Parent's z coordinate of the voxel (0, 0, 0) of the view */
+	protected int m_sliceBase;
+
+	/** Increment of the parent's z coordinate for a step along each axis of the view */
+	protected int[] m_sliceIncrement;
+
+	/** Index in the parent's slice buffer of the voxel (0, 0, 0) of the view */
+	protected int m_indexBase;
+
+	/** Increment of the index in the parent's slice buffer for a step along each axis of the view */
+	protected int[] m_indexIncrement;
+
+	/**
+	 * Private copies of the slices of the view, indexed by the z coordinate
+	 * (null for slices which are still read from the parent image).
+	 */
+	protected SliceBuffer[] m_slices;
+
+	/** Title of the image */
+	protected String m_title;
+
+	/** Calibration Data of the image */
+	protected ImageCalibration m_calibration;
+
+	/** Denotes the last slice accessed */
+	protected int m_currentZ;
+
+
+	/**
+	 * Constructs a view on an image, without copying the voxel data.
+	 * @param parent Image whose voxel data is viewed
+	 * @param parentAxis Axis of the parent image corresponding to each axis of the view
+	 * 					 (0 for X, 1 for Y, 2 for Z)
+	 * @param offset Coordinate in the parent image of the origin of the view, along each axis of the view
+	 * @param step Step in the parent image between two consecutive voxels, along each axis of the view
+	 * @param size Number of voxels of the view along each axis of the view
+	 * @param calibration Calibration data of the view
+	 */
+	protected ImageCoreView(ImageCore parent, int[] parentAxis, int[] offset, int[] step, int[] size,
+							ImageCalibration calibration) {
+		if (parent.getBitDepth() != 8 && parent.getBitDepth() != 16){
+			throw new IllegalArgumentException("Views are only supported for 8 or 16 bits per voxel images.");
+		}
+		this.m_parent = parent;
+		this.m_parentSlices = new SliceBuffer[parent.getDepth()];
+		this.m_parentAxis = parentAxis;
+		this.m_offset = offset;
+		this.m_step = step;
+		this.m_width = size[0];
+		this.m_height = size[1];
+		this.m_depth = size[2];
+
+		int parentWidth = parent.getWidth();
+		this.m_sliceIncrement = new int[3];
+		this.m_indexIncrement = new int[3];
+		this.m_sliceBase = 0;
+		this.m_indexBase = 0;
+		for (int i=0 ; i<3 ; i++){
+			switch (parentAxis[i]){
+			case 0:
+				this.m_indexBase += offset[i];
+				this.m_indexIncrement[i] = step[i];
+				break;
+			case 1:
+				this.m_indexBase += offset[i]*parentWidth;
+				this.m_indexIncrement[i] = step[i]*parentWidth;
+				break;
+			default:
+				this.m_sliceBase += offset[i];
+				this.m_sliceIncrement[i] = step[i];
+			}
+		}
+
+		this.m_slices = new SliceBuffer[this.m_depth];
+		this.m_title = parent.getTitle();
+		this.m_calibration = calibration;
+		this.m_currentZ = 0;
+		this.m_modelCoreImage = new ModelCoreImageGeneric(this, RetrievalPolicy.UseKnownValues);
+	}
+
+
+	/**
+	 * Creates a view on an image. If the image is itself a view which has no private
+	 * slice, the view is created directly on its parent, so that chains of views
+	 * do not add indirections to the voxel accesses.
+	 * @param image Image whose voxel data is viewed
+	 * @param axis Axis of the image corresponding to each axis of the view
+	 * @param offset Coordinate in the image of the origin of the view, along each axis of the view
+	 * @param step Step in the image between two consecutive voxels, along each axis of the view
+	 * @param size Number of voxels of the view along each axis of the view
+	 * @return The view on the image
+	 */
+	private static ImageCoreView createView(ImageCore image, int[] axis, int[] offset, int[] step, int[] size){
+		VoxelDouble length = image.getImageCalibration().getVoxelLength();
+		double[] imageLength = {length.getX(), length.getY(), length.getZ()};
+		ImageCalibration calibration = new ImageCalibrationGeneric(
+											new VoxelDouble(imageLength[axis[0]]*step[0],
+															imageLength[axis[1]]*step[1],
+															imageLength[axis[2]]*step[2]),
+											image.getImageCalibration().getUnitLength());
+
+		if (!(image instanceof ImageCoreView) || ((ImageCoreView)image).hasPrivateSlices()){
+			return new ImageCoreView(image, axis, offset, step, size, calibration);
+		}
+		ImageCoreView view = (ImageCoreView)image;
+		int[] parentAxis = new int[3];
+		int[] parentOffset = new int[3];
+		int[] parentStep = new int[3];
+		for (int i=0 ; i<3 ; i++){
+			int j = axis[i];
+			parentAxis[i] = view.m_parentAxis[j];
+			parentOffset[i] = view.m_offset[j] + view.m_step[j]*offset[i];
+			parentStep[i] = view.m_step[j]*step[i];
+		}
+		ImageCoreView composed = new ImageCoreView(view.m_parent, parentAxis, parentOffset, parentStep,
+												   size, calibration);
+		composed.m_title = view.getTitle();
+		return composed;
+	}
+
+
+	/**
+	 * Creates a view on a box of an image, as a zero copy alternative to
+	 * {@link wrapScienceJ.wrapImaJ.core.operation.ImageDomainOperation#crop(int, int, int, int, int, int)}.
+	 * The bounds of the box are clamped to the image's boundaries.
+	 * @param image Image whose voxel data is viewed
+	 * @param xmin minimal X coordinate of the box
+	 * @param ymin minimal Y coordinate of the box
+	 * @param zmin minimal Z coordinate of the box
+	 * @param xmax maximal X coordinate of the box plus 1
+	 * @param ymax maximal Y coordinate of the box plus 1
+	 * @param zmax maximal Z coordinate of the box plus 1
+	 * @return A view with the size of the (clamped) box.
+	 * @throws IllegalArgumentException if the clamped box is empty.
+	 */
+	public static ImageCoreView getCropView(ImageCore image, int xmin, int ymin, int zmin,
+											int xmax, int ymax, int zmax){
+		int xMin = xmin >= 0 ? xmin : 0;
+		int yMin = ymin >= 0 ? ymin : 0;
+		int zMin = zmin >= 0 ? zmin : 0;
+
+		int xMax = xmax < image.getWidth() ? xmax : image.getWidth();
+		int yMax = ymax < image.getHeight() ? ymax : image.getHeight();
+		int zMax = zmax < image.getDepth() ? zmax : image.getDepth();
+
+		if (xMax <= xMin || yMax <= yMin || zMax <= zMin){
+			throw new IllegalArgumentException("Cannot crop an empty box.");
+		}
+		return createView(image, new int[]{0, 1, 2}, new int[]{xMin, yMin, zMin}, new int[]{1, 1, 1},
+						  new int[]{xMax-xMin, yMax-yMin, zMax-zMin});
+	}
+
+
+	/**
+	 * Creates a view on an image with two coordinates swapped, as a zero copy alternative to
+	 * {@link wrapScienceJ.wrapImaJ.core.operation.ImageDomainTransform#getAxisSwapped(CoordinateAxis, CoordinateAxis)}.
+	 * @param image Image whose voxel data is viewed
+	 * @param axis1 First coordinate axis to swap
+	 * @param axis2 Second coordinate axis to swap
+	 * @return A view in which the voxel (x, y, z) is the voxel of the image
+	 * 		   with the coordinates along axis1 and axis2 swapped.
+	 */
+	public static ImageCoreView getAxisSwappedView(ImageCore image, CoordinateAxis axis1, CoordinateAxis axis2){
+		int[] axis = {0, 1, 2};
+		axis[axis1.getValue()-1] = axis2.getValue()-1;
+		axis[axis2.getValue()-1] = axis1.getValue()-1;
+		int[] imageSize = {image.getWidth(), image.getHeight(), image.getDepth()};
+		return createView(image, axis, new int[]{0, 0, 0}, new int[]{1, 1, 1},
+						  new int[]{imageSize[axis[0]], imageSize[axis[1]], imageSize[axis[2]]});
+	}
+
+
+	/**
+	 * Creates a view on an image which retains one voxel out of a given step along each axis,
+	 * starting with the voxel (0, 0, 0). The voxels edges lengths are multiplied by the steps.
+	 * @param image Image whose voxel data is viewed
+	 * @param stepX Step between two consecutive voxels of the view along the X axis
+	 * @param stepY Step between two consecutive voxels of the view along the Y axis
+	 * @param stepZ Step between two consecutive voxels of the view along the Z axis
+	 * @return A view with size ceil(getWidth()/stepX) x ceil(getHeight()/stepY) x ceil(getDepth()/stepZ).
+	 * @throws IllegalArgumentException if a step is not positive.
+	 */
+	public static ImageCoreView getSubsampledView(ImageCore image, int stepX, int stepY, int stepZ){
+		if (stepX <= 0 || stepY <= 0 || stepZ <= 0){
+			throw new IllegalArgumentException("Subsampling steps must be positive.");
+		}
+		return createView(image, new int[]{0, 1, 2}, new int[]{0, 0, 0}, new int[]{stepX, stepY, stepZ},
+						  new int[]{(image.getWidth()+stepX-1)/stepX,
+									(image.getHeight()+stepY-1)/stepY,
+									(image.getDepth()+stepZ-1)/stepZ});
+	}
+
+
+	/**
+	 * @return The image whose voxel data is viewed.
+	 */
+	public ImageCore getParent(){
+		return this.m_parent;
+	}
+
+
+	/**
+	 * @return true if at least one slice of the view has been copied into a private buffer,
+	 * 		   which happens when the view is modified or when its slice buffers are retrieved.
+	 */
+	public boolean hasPrivateSlices(){
+		for (SliceBuffer slice : this.m_slices){
+			if (slice != null){
+				return true;
+			}
+		}
+		return false;
+	}
+
+
+	/**
+	 * Retrieves a slice buffer of the parent image.
+	 * @param parentZ the z coordinate of the slice in the parent image
+	 * @return The slice buffer of the parent image.
+	 */
+	private SliceBuffer getParentSlice(int parentZ){
+		SliceBuffer slice = this.m_parentSlices[parentZ];
+		if (slice == null){
+			slice = this.m_parent.getSliceBuffer(parentZ);
+			this.m_parentSlices[parentZ] = slice;
+		}
+		return slice;
+	}
+
+
+	/**
+	 * Copies the gray levels of a slice of the view into a slice buffer,
+	 * without creating a private copy of the slice in the view.
+	 * Rows which are contiguous in the parent image are copied as a whole.
+	 * @param zCoord the id (z-value) of the slice, between zero and (getDepth()-1).
+	 * @param dest slice buffer with the width, height and bit depth of the view.
+	 */
+	public void copySliceTo(int zCoord, SliceBuffer dest){
+		SliceBuffer slice = this.m_slices[zCoord];
+		if (slice != null){
+			slice.copyTo(0, dest, 0, this.m_width*this.m_height);
+			return;
+		}
+		int sliceBase = this.m_sliceBase + zCoord*this.m_sliceIncrement[2];
+		int indexBase = this.m_indexBase + zCoord*this.m_indexIncrement[2];
+		int sliceIncrementX = this.m_sliceIncrement[0];
+		int indexIncrementX = this.m_indexIncrement[0];
+		int destIndex = 0;
+		for (int y=0 ; y<this.m_height ; y++){
+			int parentZ = sliceBase + y*this.m_sliceIncrement[1];
+			int index = indexBase + y*this.m_indexIncrement[1];
+			if (sliceIncrementX == 0 && indexIncrementX == 1){
+				getParentSlice(parentZ).copyTo(index, dest, destIndex, this.m_width);
+				destIndex += this.m_width;
+			}else if (sliceIncrementX == 0){
+				SliceBuffer source = getParentSlice(parentZ);
+				for (int x=0 ; x<this.m_width ; x++){
+					dest.set(destIndex++, source.get(index));
+					index += indexIncrementX;
+				}
+			}else{
+				for (int x=0 ; x<this.m_width ; x++){
+					dest.set(destIndex++, getParentSlice(parentZ).get(index));
+					parentZ += sliceIncrementX;
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Copies the view into an image in memory, which can be processed with all
+	 * the ImageJ operations. The slices are copied in parallel.
+	 * @return A new image with the size, gray levels, calibration and title of the view.
+	 */
+	public ImageCoreIJ materialize(){
+		final ImageCoreIJ copy = ImageCoreFactoryIJ.getInstance()
+												   .getEmptyImageCore(this.m_width, this.m_height, this.m_depth,
+														   			  getBitDepth());
+		SliceScheduler.forEachSlice(this.m_depth, new SliceTask(){
+			@Override
+			public void processSlice(int z) {
+				copySliceTo(z, copy.getSliceBuffer(z));
+			}
+		});
+		copy.getImageCalibration().setVoxelLength(this.m_calibration.getVoxelLength());
+		copy.getImageCalibration().setUnitLenth(this.m_calibration.getUnitLength());
+		copy.setTitle(getTitle());
+		return copy;
+	}
+
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getPreferedFactory()
+	 */
+	@Override
+	public ImageCoreFactoryIJ getPreferedFactory(){
+		return ImageCoreFactoryIJ.getInstance();
+	}
+	
+	/**
+	 * The memory is released by the prefered factory.
+	 * @see wrapScienceJ.resource.ResourceCore#close()
+	 * @see wrapScienceJ.factory.image.ImageCoreFactory#releaseImageCore(ImageCore)
+	 */
+	@Override
+	public void close(){
+		getPreferedFactory().releaseImageCore(this);
+	}
+
+
+	/**
+	 * Releases the private slices and the references to the parent's slices.
+	 * The parent image itself is left unchanged.
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#deleteMemory()
+	 */
+	@Override
+	public void deleteMemory() {
+		synchronized (this.m_slices){
+			for (int z=0 ; z<this.m_slices.length ; z++){
+				this.m_slices[z] = null;
+			}
+			for (int z=0 ; z<this.m_parentSlices.length ; z++){
+				this.m_parentSlices[z] = null;
+			}
+		}
+	}
+
+
+	/**
+	 * @see wrapScienceJ.resource.generic.ResourceCoreGeneric#getPath()
+	 */
+	@Override
+	public String getPath() {
+		return this.m_parent.getPath();
+	}
+
+	/**
+	 * @see wrapScienceJ.resource.generic.ResourceCoreGeneric#getTitle()
+	 */
+	@Override
+	public String getTitle() {
+		return this.m_title;
+	}
+
+	/**
+	 * @see wrapScienceJ.resource.generic.ResourceCoreGeneric#setTitle(java.lang.String)
+	 */
+	@Override
+	public ImageCore setTitle(String title) {
+		this.m_title = title;
+		return this;
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getWidth()
+	 */
+	@Override
+	public int getWidth() {
+		return this.m_width;
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getHeight()
+	 */
+	@Override
+	public int getHeight() {
+		return this.m_height;
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getDepth()
+	 */
+	@Override
+	public int getDepth() {
+		return this.m_depth;
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getSize(wrapScienceJ.wrapImaJ.core.CoordinateAxis)
+	 */
+	@Override
+	public int getSize(CoordinateAxis axis) {
+		switch(axis){
+		case X: return this.getWidth();
+		case Y: return this.getHeight();
+		case Z: return this.getDepth();
+		default:
+			throw new IllegalArgumentException("Unknown coordinate axis");
+		}
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getBitDepth()
+	 */
+	@Override
+	public int getBitDepth() {
+		return this.m_parent.getBitDepth();
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getWhiteValue()
+	 */
+	@Override
+	public int getWhiteValue(){
+		return this.m_parent.getWhiteValue();
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#setCurrentZ(int)
+	 */
+	@Override
+	public void setCurrentZ(int zCoord) {
+		this.m_currentZ = zCoord;
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getCurrentZ()
+	 */
+	@Override
+	public int getCurrentZ() {
+		return this.m_currentZ;
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getPixel(int, int)
+	 */
+	@Override
+	public int getPixel(int x, int y) {
+		return getVoxel(x, y, this.m_currentZ);
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#setPixel(int, int, int)
+	 */
+	@Override
+	public void setPixel(int x, int y, int value) {
+		setVoxel(x, y, this.m_currentZ, value);
+	}
+
+	/**
+	 * The slice is copied into a private buffer the first time it is modified.
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#setVoxel(int, int, int, int)
+	 */
+	@Override
+	public void setVoxel(int x, int y, int z, int value) {
+		getSliceBuffer(z).set(y*this.m_width + x, value);
+	}
+
+	/**
+	 * The value is rounded and clamped to the range of the gray levels.
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#setVoxelFloat(int, int, int, float)
+	 */
+	@Override
+	public void setVoxelFloat(int x, int y, int z, float floatValue) {
+		float value = Math.max(0.0f, Math.min(getWhiteValue(), floatValue));
+		setVoxel(x, y, z, (int)(value+0.5f));
+	}
+
+	/**
+	 * Reads the gray level from the parent image, unless the slice has been copied.
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getVoxel(int, int, int)
+	 */
+	@Override
+	public int getVoxel(int x, int y, int z) {
+		SliceBuffer slice = this.m_slices[z];
+		if (slice != null){
+			return slice.get(y*this.m_width + x);
+		}
+		return getParentSlice(this.m_sliceBase + x*this.m_sliceIncrement[0]
+								+ y*this.m_sliceIncrement[1] + z*this.m_sliceIncrement[2])
+				.get(this.m_indexBase + x*this.m_indexIncrement[0]
+						+ y*this.m_indexIncrement[1] + z*this.m_indexIncrement[2]);
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getVoxelFloat(int, int, int)
+	 */
+	@Override
+	public float getVoxelFloat(int x, int y, int z) {
+		return getVoxel(x, y, z);
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#setVoxel(wrapScienceJ.wrapImaJ.core.VoxelShort, int)
+	 */
+	@Override
+	public void setVoxel(VoxelShort voxel, int value) {
+		setVoxel(voxel.getX(), voxel.getY(), voxel.getZ(), value);
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getVoxel(wrapScienceJ.wrapImaJ.core.VoxelShort)
+	 */
+	@Override
+	public int getVoxel(VoxelShort voxel) {
+		return getVoxel(voxel.getX(), voxel.getY(), voxel.getZ());
+	}
+
+	/**
+	 * The slice is copied into a private buffer the first time it is retrieved,
+	 * so that the modifications through the buffer do not affect the parent image.
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getSliceBuffer(int)
+	 */
+	@Override
+	public SliceBuffer getSliceBuffer(int zCoord) {
+		SliceBuffer slice = this.m_slices[zCoord];
+		if (slice != null){
+			return slice;
+		}
+		synchronized (this.m_slices){
+			if (this.m_slices[zCoord] == null){
+				int sliceSize = this.m_width*this.m_height;
+				Object pixels = getBitDepth() == 8 ? new byte[sliceSize] : new short[sliceSize];
+				SliceBuffer copy = new SliceBuffer(pixels, this.m_width, this.m_height);
+				copySliceTo(zCoord, copy);
+				this.m_slices[zCoord] = copy;
+			}
+			return this.m_slices[zCoord];
+		}
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getImageCalibration()
+	 */
+	@Override
+	public ImageCalibration getImageCalibration(){
+		return this.m_calibration;
+	}
+
+	/**
+	 * The view is displayed through an in memory copy.
+	 * @see wrapScienceJ.resource.generic.ResourceCoreGeneric#getPreferedRenderTool()
+	 */
+	@Override
+	public RenderTool getPreferedRenderTool() {
+		return RenderToolIJ.getInstance();
+	}
+
+	/**
+	 * @see wrapScienceJ.resource.generic.ResourceCoreGeneric#getFileHelper()
+	 */
+	@Override
+	public FileHelper getFileHelper() {
+		return GuiFrameworkIJ.getInstance().getFileHelper();
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getImageConvert()
+	 */
+	@Override
+	public ImageConvertView getImageConvert(){
+		return new ImageConvertView(this);
+	}
+
+	/**
+	 * Cropping and slices extraction produce in memory images.
+	 * Operations which change the domain of this image are not supported.
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getImageDomainOperation()
+	 */
+	@Override
+	public ImageDomainOperationView getImageDomainOperation() {
+		return new ImageDomainOperationView(this);
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getImageDomainProjection()
+	 */
+	@Override
+	public ImageDomainProjectionGeneric getImageDomainProjection() {
+		return new ImageDomainProjectionGeneric(this);
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getImageDomainTransform()
+	 */
+	@Override
+	public ImageDomainTransformView getImageDomainTransform() {
+		return new ImageDomainTransformView(this);
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getImageSignPolicyEmbed(boolean)
+	 */
+	@Override
+	public ImageSignPolicyEmbedGeneric getImageSignPolicyEmbed(boolean allowSignedValues){
+		return ImageSignPolicyEmbedGeneric.linearCombinationFactory(this, allowSignedValues);
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getImageSignPolicyEmbed()
+	 */
+	@Override
+	public ImageSignPolicyEmbedGeneric getImageSignPolicyEmbed(){
+		return ImageSignPolicyEmbedGeneric.linearCombinationFactory(this, false);
+	}
+
+	/**
+	 * The contrast is adjusted in place, so all the slices are copied.
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getImageContrast()
+	 */
+	@Override
+	public ImageContrastGeneric getImageContrast() {
+		return new ImageContrastGeneric(this);
+	}
+
+	/**
+	 * The blur is performed in place, so all the slices are copied.
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getImageBlur()
+	 */
+	@Override
+	public BlurFactoryGeneric getImageBlur() {
+		return new BlurFactoryGeneric(this);
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getImageConnectedComponents()
+	 */
+	@Override
+	public ImageConnectedComponentsGeneric getImageConnectedComponents() {
+		return new ImageConnectedComponentsGeneric(this);
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getImageDifferential(boolean, int, int, int, wrapScienceJ.resource.BufferEnlargementPolicy, int)
+	 */
+	@Override
+	public ImageDifferentialOperatorGeneric getImageDifferential(boolean autoAllowSignedValues,
+													int inputImageMarginX, int inputImageMarginY, int inputImageMarginZ,
+													BufferEnlargementPolicy enlargementPolicy,
+													int embedBitDepth) {
+		return new ImageDifferentialOperatorGeneric(this, autoAllowSignedValues,
+													inputImageMarginX, inputImageMarginY, inputImageMarginZ,
+													enlargementPolicy,
+													embedBitDepth
+												   );
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getImageDifferential()
+	 */
+	@Override
+	public ImageDifferentialOperatorGeneric getImageDifferential() {
+		return new ImageDifferentialOperatorGeneric(this, true, 0, 0, 0, BufferEnlargementPolicy.Mirror, getBitDepth());
+	}
+
+	/**
+	 * The thresholding is performed on the in memory copy of the view returned
+	 * by {@link #materialize()}, which holds the results of the thresholding methods.
+	 * The view and its parent image are unchanged.
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getImageThresholding()
+	 */
+	@Override
+	public ImageThresholdingIJ getImageThresholding(){
+		return materialize().getImageThresholding();
+	}
+
+	/**
+	 * @see wrapScienceJ.wrapImaJ.core.ImageCore#getImageDraw()
+	 */
+	@Override
+	public ImageDrawAwt getImageDraw() {
+		return new ImageDrawAwt(this);
+	}
+
+	/**
+	 * @see wrapScienceJ.resource.generic.ResourceCoreGeneric#duplicate()
+	 */
+	@Override
+	public ImageCoreIJ duplicate(){
+		ImageCoreIJ copy = materialize();
+		copy.mergeMetaData(this);
+		return copy;
+	}
+
+	/**
+	 * Writes an in memory copy of the view.
+	 * @see wrapScienceJ.resource.generic.ResourceCoreGeneric#writeToFile(java.lang.String)
+	 */
+	@Override
+	public ImageCoreView writeToFile(String destinationFilePath) throws IOException {
+		ImageCoreIJ copy = duplicate();
+		copy.writeToFile(destinationFilePath);
+		copy.deleteMemory();
+		return this;
+	}
+
+
+	////////////////////////////////////////////////////////////////////////
+	// Overrides from ResourceCore
+	////////////////////////////////////////////////////////////////////////
+
+
+	/**
+	 * @see wrapScienceJ.resource.ResourceCore#addMetaData(wrapScienceJ.metaData.container.MetaDataRetriever)
+	 */
+	@Override
+	public ImageCoreView addMetaData(MetaDataRetriever config){
+		super.addMetaData(config);
+		return this;
+	}
+
+	/**
+	 * @see wrapScienceJ.resource.ResourceCore#retrieveMetaData()
+	 */
+	@Override
+	public ImageCoreView retrieveMetaData() throws IOException {
+		super.retrieveMetaData();
+		return this;
+	}
+
+	/**
+	 * @see wrapScienceJ.resource.ResourceCore#mergeMetaData(wrapScienceJ.resource.ResourceCore)
+	 */
+	@Override
+	public ImageCoreView mergeMetaData(ResourceCore resource){
+		super.mergeMetaData(resource);
+		return this;
+	}
+
+	/**
+	 * @see wrapScienceJ.resource.ResourceCore#writeToFileWithMetaData(java.lang.String, java.lang.String, java.lang.String)
+	 */
+	@Override
+	public ImageCoreView writeToFileWithMetaData(String directory, String basename, String extension) throws IOException {
+		super.writeToFileWithMetaData(directory, basename, extension);
+		return this;
+	}
+
+} // End of class
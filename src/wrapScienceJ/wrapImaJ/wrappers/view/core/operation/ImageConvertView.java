@@ -0,0 +1,49 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File:  ImageConvertView.java                                             * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+package wrapScienceJ.wrapImaJ.wrappers.view.core.operation;
+
+import wrapScienceJ.wrapImaJ.core.SliceBuffer;
+import wrapScienceJ.wrapImaJ.core.operation.generic.ImageConvertGeneric;
+import wrapScienceJ.wrapImaJ.wrappers.view.core.ImageCoreView;
+
+/**
+ * Format conversions of image views.
+ * The converted copies are allocated in memory, as for the ImageJ images, and the slices
+ * of the view are read without creating private copies of the slices in the view.
+ * The slices added to the view are merged into a new image in memory
+ * (see {@link ImageDomainOperationView#mergeSlices(wrapScienceJ.wrapImaJ.core.ImageCore)}).
+ *
+ * @author Rémy Malgouyres
+ */
+public class ImageConvertView extends ImageConvertGeneric {
+
+	/**
+	 * @param image The image to process
+	 */
+	public ImageConvertView(ImageCoreView image){
+		super(image);
+	}
+
+
+	/**
+	 * The gray levels of the slice are copied into a temporary buffer
+	 * (see {@link ImageCoreView#copySliceTo(int, SliceBuffer)}).
+	 * @see wrapScienceJ.wrapImaJ.core.operation.generic.ImageConvertGeneric#getSliceForReading(int)
+	 */
+	@Override
+	protected SliceBuffer getSliceForReading(int zCoord){
+		ImageCoreView view = (ImageCoreView)this.m_image;
+		int sliceSize = view.getWidth()*view.getHeight();
+		Object pixels = view.getBitDepth() == 8 ? new byte[sliceSize] : new short[sliceSize];
+		SliceBuffer slice = new SliceBuffer(pixels, view.getWidth(), view.getHeight());
+		view.copySliceTo(zCoord, slice);
+		return slice;
+	}
+
+} // End of class
@@ -0,0 +1,126 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File:  ImageDomainOperationView.java                                     * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+package wrapScienceJ.wrapImaJ.wrappers.view.core.operation;
+
+import wrapScienceJ.factory.image.ImageCoreFactoryIJ;
+import wrapScienceJ.utils.SliceScheduler;
+import wrapScienceJ.utils.SliceScheduler.SliceTask;
+import wrapScienceJ.wrapImaJ.core.ImageCore;
+import wrapScienceJ.wrapImaJ.core.SliceBuffer;
+import wrapScienceJ.wrapImaJ.core.operation.generic.ImageDomainOperationGeneric;
+import wrapScienceJ.wrapImaJ.wrappers.imagej.core.ImageCoreIJ;
+import wrapScienceJ.wrapImaJ.wrappers.view.core.ImageCoreView;
+
+/**
+ * Domain operations on image views.
+ *
+ * The domain of a view is determined by its parent image, so the operations
+ * which add slices to the view return a new image in memory, the view being unchanged.
+ * Cropped images and extracted slices are copied into images in memory.
+ * Use {@link #getCropView(int, int, int, int, int, int)} to crop without copying.
+ *
+ * @author Rémy Malgouyres
+ */
+public class ImageDomainOperationView extends ImageDomainOperationGeneric {
+
+	/**
+	 * @param image The image to process
+	 */
+	public ImageDomainOperationView(ImageCoreView image){
+		super(image);
+	}
+
+
+	/**
+	 * Copies the voxels of a box of the view into an image in memory.
+	 * @see wrapScienceJ.wrapImaJ.core.operation.generic.ImageDomainOperationGeneric#crop(int, int, int, int, int, int)
+	 */
+	@Override
+	public ImageCoreIJ crop(int xmin, int ymin, int zmin, int xmax, int ymax, int zmax){
+		ImageCoreIJ imageCrop = ImageCoreView.getCropView(this.m_image, xmin, ymin, zmin, xmax, ymax, zmax)
+											 .materialize();
+		imageCrop.mergeMetaData(this.m_image);
+		return imageCrop;
+	}
+
+
+	/**
+	 * The gray levels of the slice are copied, so that modifying the extracted
+	 * slice does not modify the view.
+	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageDomainOperation#extractSlice(int)
+	 */
+	@Override
+	public ImageCoreIJ extractSlice(int zCoord) {
+		return crop(0, 0, zCoord, this.m_image.getWidth(), this.m_image.getHeight(), zCoord+1);
+	}
+
+
+	/**
+	 * Copies the slice z of an image into a slice buffer, without copying
+	 * the slice into the private storage of the image if it is a view.
+	 * @param image The image to read
+	 * @param z The z coordinate of the slice in image
+	 * @param dest The slice buffer to write, with the width and height of the image
+	 */
+	private static void copySlice(ImageCore image, int z, SliceBuffer dest){
+		if (image instanceof ImageCoreView){
+			((ImageCoreView)image).copySliceTo(z, dest);
+		}else{
+			image.getSliceBuffer(z).copyTo(0, dest, 0, dest.getSize());
+		}
+	}
+
+
+	/**
+	 * The domain of a view is fixed by its parent image, so the slices of the view
+	 * and of the image are copied into a new image in memory, which is returned.
+	 * The view and its parent image are unchanged.
+	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageDomainOperation#insertSlices(wrapScienceJ.wrapImaJ.core.ImageCore, int)
+	 */
+	@Override
+	public ImageCoreIJ insertSlices(final ImageCore image, final int zCoordMin) {
+		if (this.m_image.getBitDepth() != image.getBitDepth() ||
+			this.m_image.getWidth() != image.getWidth() ||
+			this.m_image.getHeight() != image.getHeight() ||
+			zCoordMin < 0 || zCoordMin > this.m_image.getDepth()){
+			throw new IllegalArgumentException("Wrong type or size of image to merge.");
+		}
+		final ImageCore source = this.m_image;
+		final ImageCoreIJ result = ImageCoreFactoryIJ.getInstance()
+													 .getEmptyImageCore(source.getWidth(), source.getHeight(),
+																		source.getDepth() + image.getDepth(),
+																		source.getBitDepth());
+		SliceScheduler.forEachSlice(result.getDepth(), new SliceTask() {
+			@Override
+			public void processSlice(int z) {
+				if (z < zCoordMin){
+					copySlice(source, z, result.getSliceBuffer(z));
+				}else if (z < zCoordMin + image.getDepth()){
+					copySlice(image, z - zCoordMin, result.getSliceBuffer(z));
+				}else{
+					copySlice(source, z - image.getDepth(), result.getSliceBuffer(z));
+				}
+			}
+		});
+		result.setTitle(source.getTitle());
+		result.mergeMetaData(source);
+		return result;
+	}
+
+
+	/**
+	 * The slices are appended in a new image in memory (see {@link #insertSlices(ImageCore, int)}).
+	 * @see wrapScienceJ.wrapImaJ.core.operation.ImageDomainOperation#mergeSlices(wrapScienceJ.wrapImaJ.core.ImageCore)
+	 */
+	@Override
+	public ImageCoreIJ mergeSlices(ImageCore image) {
+		return insertSlices(image, this.m_image.getDepth());
+	}
+
+} // End of class
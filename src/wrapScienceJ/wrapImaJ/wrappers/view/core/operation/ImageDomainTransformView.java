@@ -0,0 +1,61 @@
+/******************************************************************************\
+*     Copyright (C) 2018 by Rémy Malgouyres                                    * 
+*     http://malgouyres.org                                                    * 
+*     File:  ImageDomainTransformView.java                                     * 
+*                                                                              * 
+* The program is distributed under the terms of the GNU General Public License * 
+*                                                                              * 
+\******************************************************************************/ 
+package wrapScienceJ.wrapImaJ.wrappers.view.core.operation;
+
+import wrapScienceJ.utils.SliceScheduler;
+import wrapScienceJ.utils.SliceScheduler.SliceTask;
+import wrapScienceJ.wrapImaJ.core.ImageCore;
+import wrapScienceJ.wrapImaJ.core.operation.generic.ImageDomainTransformGeneric;
+import wrapScienceJ.wrapImaJ.wrappers.view.core.ImageCoreView;
+
+/**
+ * Domain transforms on image views.
+ * The transformed images are allocated in memory, as for the ImageJ images.
+ *
+ * @author Rémy Malgouyres
+ */
+public class ImageDomainTransformView extends ImageDomainTransformGeneric {
+
+	/**
+	 * @param image The image to process
+	 */
+	public ImageDomainTransformView(ImageCoreView image){
+		super(image);
+	}
+
+
+	/**
+	 * The slices of the view are copied in parallel, without creating private
+	 * copies of the slices in the view.
+	 * @see wrapScienceJ.wrapImaJ.core.operation.generic.ImageDomainTransformGeneric#copyTo(wrapScienceJ.wrapImaJ.core.ImageCore)
+	 */
+	@Override
+	public ImageCore copyTo(final ImageCore destinationImage) {
+		if (this.m_image.getWidth() != destinationImage.getWidth() ||
+			this.m_image.getHeight() != destinationImage.getHeight() ||
+			this.m_image.getDepth() != destinationImage.getDepth()){
+
+			throw new IllegalArgumentException("Cannot copy to an image with incompatible size");
+		}
+		if (this.m_image.getBitDepth() != destinationImage.getBitDepth()){
+			throw new IllegalArgumentException("Cannot copy to an image with different bit depth");
+		}
+		final ImageCoreView view = (ImageCoreView)this.m_image;
+		SliceScheduler.forEachSlice(view.getDepth(), new SliceTask(){
+			@Override
+			public void processSlice(int z) {
+				view.copySliceTo(z, destinationImage.getSliceBuffer(z));
+			}
+		});
+		destinationImage.mergeMetaData(this.m_image);
+
+		return destinationImage;
+	}
+
+} // End of class